@@ -40,4 +40,9 @@ do
        --member="serviceAccount:${SA_SNAPSHOTER_GCS_EMAIL}" \
        --role="roles/bigquery.jobUser"
 
+  # GCS Snapshoter needs to create read sessions when using the STORAGE_READ_API snapshot engine
+  gcloud projects add-iam-policy-binding "${project}" \
+       --member="serviceAccount:${SA_SNAPSHOTER_GCS_EMAIL}" \
+       --role="roles/bigquery.readSessionUser"
+
 done
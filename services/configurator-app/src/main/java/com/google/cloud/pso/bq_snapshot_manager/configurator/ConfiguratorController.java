@@ -21,20 +21,33 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.cloud.Tuple;
 import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
 import com.google.cloud.pso.bq_snapshot_manager.entities.PubSubEvent;
-import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.FallbackBackupPolicy;
 import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.Configurator;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorBatchRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorBatchResponse;
 import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorRequest;
 import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorResponse;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.ControllerExceptionHelper;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.LoggingHelper;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.ServiceCallInstrumentation;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.TrackingHelper;
 import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.BackupPolicyServiceGCSImpl;
+import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.FallbackPolicyReloader;
+import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.FallbackPolicySourceGCSImpl;
+import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.FallbackPolicySourceStaticImpl;
 import com.google.cloud.pso.bq_snapshot_manager.services.bq.BigQueryServiceImpl;
+import com.google.cloud.pso.bq_snapshot_manager.services.bq.TableMetadataCache;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.IoExecutors;
 import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.BackupPolicyService;
 import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubServiceImpl;
 import com.google.cloud.pso.bq_snapshot_manager.services.scan.ResourceScannerImpl;
 import com.google.cloud.pso.bq_snapshot_manager.services.set.GCSPersistentSetImpl;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubMessageHandler;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubJsonReader;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubMessageCodec;
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.http.HttpStatus;
@@ -44,17 +57,29 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ExecutorService;
+
 @SpringBootApplication(scanBasePackages = "com.google.cloud.pso.bq_snapshot_manager")
 @RestController
-public class ConfiguratorController {
+public class ConfiguratorController implements PubSubMessageHandler {
 
   private final LoggingHelper logger;
+  private final ServiceCallInstrumentation serviceCallInstrumentation;
 
   private static final Integer functionNumber = 2;
 
+  // upper bound of table creation times kept in memory across all prefetched datasets
+  private static final long TABLE_METADATA_CACHE_MAX_TABLES = 200_000;
+
   private Gson gson;
   private Environment environment;
-  private FallbackBackupPolicy fallbackBackupPolicy;
+  private FallbackPolicyReloader fallbackPolicyReloader;
+  private TableMetadataCache tableMetadataCache;
+  private ExecutorService ioExecutor;
+  // caps the concurrent calls per downstream API across all requests of the instance
+  private DownstreamBulkheads bulkheads;
   private String trackingId = TrackingHelper.MIN_RUN_ID;
 
   public ConfiguratorController() throws NonRetryableApplicationException {
@@ -68,10 +93,37 @@ public class ConfiguratorController {
             environment.getApplicationName()
     );
 
+    serviceCallInstrumentation = new ServiceCallInstrumentation(
+            environment.isServiceCallInstrumentationEnabled(),
+            logger,
+            environment.getSlowCallThresholdMs()
+    );
+
+    // shared by all requests to run the independent API calls of each request concurrently on virtual threads.
+    // The concurrent calls per downstream API are capped by the bulkheads wrapping the services, not by the number of threads
+    ioExecutor = IoExecutors.newIoExecutor("configurator-io");
+    bulkheads = DownstreamBulkheads.fromEnv();
+
+    logger.logInfoWithTracker(
+            trackingId,
+            null,
+            String.format("Running I/O calls with %s", bulkheads)
+    );
+
+    // shared by all requests so that the tables of a dataset are listed once per run
+    if (environment.getTableMetadataCacheTtlSeconds() > 0) {
+      tableMetadataCache = new TableMetadataCache(
+              environment.getTableMetadataCacheTtlSeconds(),
+              TABLE_METADATA_CACHE_MAX_TABLES);
+    }
+
+    boolean isGcsFallbackPolicy = !environment.getBackupPolicyGcsUri().isBlank();
+
     logger.logInfoWithTracker(
             trackingId,
             null,
-            "Will try to parse fallback backup policy.."
+            String.format("Will try to parse fallback backup policy from %s..",
+                    isGcsFallbackPolicy ? environment.getBackupPolicyGcsUri() : "BACKUP_POLICY_JSON")
     );
 
     // initializing in the constructor to fail the Cloud Run deployment
@@ -79,7 +131,14 @@ public class ConfiguratorController {
     // solution silently with invalid fallback configuration that fails during runtime
 
     try {
-      fallbackBackupPolicy = FallbackBackupPolicy.fromJson(environment.getBackupPolicyJson());
+      // compile the policy overrides (incl. wildcards and regular expressions) once for all requests.
+      // A policy in GCS is recompiled in the background whenever a new generation of the object is uploaded
+      fallbackPolicyReloader = new FallbackPolicyReloader(
+              isGcsFallbackPolicy ?
+                      new FallbackPolicySourceGCSImpl(environment.getBackupPolicyGcsUri()) :
+                      new FallbackPolicySourceStaticImpl(environment.getBackupPolicyJson())
+      );
+      fallbackPolicyReloader.reload();
     } catch (Exception ex) {
       String msg =
               String.format(
@@ -91,13 +150,20 @@ public class ConfiguratorController {
     logger.logInfoWithTracker(
             trackingId,
             null,
-            "Successfully parsed fallback backup policy"
+            String.format("Successfully parsed fallback backup policy version '%s'",
+                    fallbackPolicyReloader.getResolver().getVersion())
     );
+
+    if (isGcsFallbackPolicy) {
+      fallbackPolicyReloader.startRefreshing(environment.getBackupPolicyRefreshSeconds(), logger, trackingId);
+    }
   }
 
+  @Override
   @RequestMapping(value = "/", method = RequestMethod.POST)
   public ResponseEntity receiveMessage(@RequestBody PubSubEvent requestBody) {
 
+    long startNanos = System.nanoTime();
 
     BackupPolicyService backupPolicyService = null;
 
@@ -117,31 +183,48 @@ public class ConfiguratorController {
         throw new NonRetryableApplicationException("Request body or message is Null.");
       }
 
-      String requestJsonString = requestBody.getMessage().dataToUtf8String();
-
-      // remove any escape characters (e.g. from Terraform
-      requestJsonString = requestJsonString.replace("\\", "");
-
-      logger.logInfoWithTracker(trackingId, null, String.format("Received payload: %s", requestJsonString));
-
-      configuratorRequest = gson.fromJson(requestJsonString, ConfiguratorRequest.class);
+      PubSubEvent.Message message = requestBody.getMessage();
+      String contentType = PubSubMessageCodec.getContentType(message.getAttributes());
+
+      if (contentType != null) {
+        // binary messages are logged once parsed.
+        // the Dispatcher could send several tables in one message
+        if (contentType.equals(PubSubMessageCodec.CONFIGURATOR_BATCH_REQUEST)) {
+          return receiveBatch(
+                  PubSubMessageCodec.decodeConfiguratorBatchRequest(contentType, message.getData()),
+                  message.getMessageId(),
+                  startNanos
+          );
+        }
+        configuratorRequest = PubSubMessageCodec.decodeConfiguratorRequest(contentType, message.getData());
+      } else {
+        // JSON messages are parsed straight from the message bytes and logged once parsed
+        JsonObject requestJson = PubSubJsonReader.readObject(message.getData());
+
+        // the Dispatcher could send several tables in one message
+        if (requestJson.has(ConfiguratorBatchRequest.REQUESTS_FIELD)) {
+          return receiveBatch(
+                  gson.fromJson(requestJson, ConfiguratorBatchRequest.class),
+                  message.getMessageId(),
+                  startNanos
+          );
+        }
+
+        configuratorRequest = gson.fromJson(requestJson, ConfiguratorRequest.class);
+      }
 
       trackingId = configuratorRequest.getTrackingId();
 
       logger.logInfoWithTracker(configuratorRequest.isDryRun(), trackingId, configuratorRequest.getTargetTable(), String.format("Parsed Request: %s", configuratorRequest.toString()));
 
-      backupPolicyService = new BackupPolicyServiceGCSImpl(environment.getGcsBackupPoliciesBucket());
-
-      Configurator configurator = new Configurator(
-              environment.toConfig(),
-              new BigQueryServiceImpl(configuratorRequest.getTargetTable().getProject()),
-              backupPolicyService,
-              new PubSubServiceImpl(),
-              new ResourceScannerImpl(),
-              new GCSPersistentSetImpl(environment.getGcsFlagsBucket()),
-              fallbackBackupPolicy,
-              "configurator-flags",
-              functionNumber
+      backupPolicyService = bulkheads.wrapBackupPolicyService(serviceCallInstrumentation.wrapBackupPolicyService(
+              new BackupPolicyServiceGCSImpl(environment.getGcsBackupPoliciesBucket())
+      ));
+
+      Configurator configurator = createConfigurator(
+              configuratorRequest.getTargetTable().getProject(),
+              configuratorRequest.getRunId(),
+              backupPolicyService
       );
 
       configuratorResponse = configurator.execute(configuratorRequest, requestBody.getMessage().getMessageId());
@@ -182,9 +265,113 @@ public class ConfiguratorController {
             isRetryableError
     );
 
+    PipelineMetrics.global().recordStage("configurator", isSuccess, isRetryableError, startNanos);
+
     return responseEntity;
   }
 
+  private ResponseEntity receiveBatch(ConfiguratorBatchRequest batchRequest, String pubSubMessageId, long startNanos)
+          throws IOException, InterruptedException, GeneralSecurityException {
+
+    logger.logInfoWithTracker(batchRequest.getRunId(), null, () -> String.format("Parsed Request: %s", batchRequest));
+
+    if (batchRequest.getRequests() == null || batchRequest.getRequests().isEmpty()) {
+      return new ResponseEntity("Process completed successfully. Empty batch.", HttpStatus.OK);
+    }
+
+    BackupPolicyService backupPolicyService = bulkheads.wrapBackupPolicyService(serviceCallInstrumentation.wrapBackupPolicyService(
+            new BackupPolicyServiceGCSImpl(environment.getGcsBackupPoliciesBucket())
+    ));
+    try {
+      Configurator configurator = createConfigurator(
+              batchRequest.getRequests().get(0).getTargetTable().getProject(),
+              batchRequest.getRunId(),
+              backupPolicyService
+      );
+
+      ConfiguratorBatchResponse batchResponse = configurator.executeBatch(batchRequest, pubSubMessageId);
+
+      // log each table separately, same as single table requests
+      int retryableErrors = 0;
+      int nonRetryableErrors = 0;
+      for (ConfiguratorBatchResponse.TableResult tableResult : batchResponse.getTableResults()) {
+        if (tableResult.isSkipped()) {
+          // already logged by the delivery that processed it
+          continue;
+        }
+        ConfiguratorRequest request = tableResult.getRequest();
+        boolean isRetryableError = false;
+        if (!tableResult.isSuccess()) {
+          isRetryableError = ControllerExceptionHelper.handleException(
+                  tableResult.getError(),
+                  logger,
+                  request.getTrackingId(),
+                  request.getTargetTable()
+          ).y();
+          if (isRetryableError) {
+            retryableErrors++;
+          } else {
+            nonRetryableErrors++;
+          }
+        }
+
+        logger.logUnified(
+                request.isDryRun(),
+                functionNumber.toString(),
+                request.getRunId(),
+                request.getTrackingId(),
+                request.getTargetTable(),
+                request,
+                tableResult.getResponse(),
+                tableResult.isSuccess(),
+                tableResult.getError(),
+                isRetryableError
+        );
+      }
+
+      // one sample per batch, the tables of a batch share the same lookups
+      PipelineMetrics.global().recordStage(
+              "configurator-batch",
+              retryableErrors == 0 && nonRetryableErrors == 0,
+              retryableErrors > 0,
+              startNanos
+      );
+
+      if (retryableErrors > 0) {
+        // let PubSub retry the whole batch. Tables that were already processed are skipped via their tracking flags,
+        // without logging them again
+        return new ResponseEntity(
+                String.format("%s tables of the batch failed with retryable errors.", retryableErrors),
+                HttpStatus.TOO_MANY_REQUESTS);
+      }
+      return new ResponseEntity("Process completed successfully.", HttpStatus.OK);
+
+    } finally {
+      backupPolicyService.shutdown();
+    }
+  }
+
+  private Configurator createConfigurator(String project, String runId, BackupPolicyService backupPolicyService)
+          throws IOException, GeneralSecurityException {
+    return new Configurator(
+            environment.toConfig(),
+            bulkheads.wrapBigQueryService(serviceCallInstrumentation.wrapBigQueryService(
+                    tableMetadataCache == null ?
+                            new BigQueryServiceImpl(project) :
+                            new BigQueryServiceImpl(project, tableMetadataCache, runId)
+            )),
+            backupPolicyService,
+            bulkheads.wrapPubSubService(serviceCallInstrumentation.wrapPubSubService(new PubSubServiceImpl(environment.getPubSubMessageEncoding()))),
+            bulkheads.wrapResourceScanner(serviceCallInstrumentation.wrapResourceScanner(new ResourceScannerImpl())),
+            bulkheads.wrapPersistentSet(serviceCallInstrumentation.wrapPersistentSet(new GCSPersistentSetImpl(environment.getGcsFlagsBucket()))),
+            // use the same policy version for the whole request even if a new one is swapped in meanwhile
+            fallbackPolicyReloader.getResolver(),
+            "configurator-flags",
+            functionNumber,
+            ioExecutor
+    );
+  }
+
   public static void main(String[] args) {
     SpringApplication.run(ConfiguratorController.class, args);
   }
@@ -20,6 +20,7 @@ package com.google.cloud.pso.bq_snapshot_manager.configurator;
 import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorConfig;
 import com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter.SnapshoterConfig;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.Utils;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubMessageEncoding;
 
 public class Environment {
 
@@ -32,7 +33,8 @@ public class Environment {
                 getBqSnapshoterOutputTopic(),
                 getGCSSnapshoterOutputTopic(),
                 getBackupTagTemplateId(),
-                getApplicationName()
+                getApplicationName(),
+                getCronJitterWindowSeconds()
         );
     }
 
@@ -52,6 +54,16 @@ public class Environment {
         return Utils.getConfigFromEnv("BACKUP_POLICY_JSON", true);
     }
 
+    // optional gs://bucket/path/to/fallback_policy.json. When set, it's used instead of BACKUP_POLICY_JSON
+    public String getBackupPolicyGcsUri(){
+        return Utils.getConfigFromEnv("BACKUP_POLICY_GCS_URI", false);
+    }
+
+    // how often to check the BACKUP_POLICY_GCS_URI object for a new generation. 0 disables reloading
+    public Integer getBackupPolicyRefreshSeconds(){
+        return Utils.getConfigFromEnv("BACKUP_POLICY_REFRESH_SECONDS", 60);
+    }
+
     public String getBqSnapshoterOutputTopic() { return Utils.getConfigFromEnv("SNAPSHOTER_BQ_OUTPUT_TOPIC", true); }
 
     public String getGCSSnapshoterOutputTopic() { return Utils.getConfigFromEnv("SNAPSHOTER_GCS_OUTPUT_TOPIC", true); }
@@ -70,4 +82,27 @@ public class Environment {
         return Utils.getConfigFromEnv("GCS_BACKUP_POLICIES_BUCKET", true);
     }
 
+    // how long the table creation times listed per dataset are reused within a run. 0 disables the prefetching
+    public Integer getTableMetadataCacheTtlSeconds(){
+        return Utils.getConfigFromEnv("TABLE_METADATA_CACHE_TTL_SECONDS", 600);
+    }
+
+    // 0 (default) disables the cron jitter
+    public Integer getCronJitterWindowSeconds(){
+        return Utils.getConfigFromEnv("CRON_JITTER_WINDOW_SECONDS", 0);
+    }
+
+    public PubSubMessageEncoding getPubSubMessageEncoding(){
+        return PubSubMessageEncoding.fromEnv();
+    }
+
+    // wraps the services in decorators that record the latency and outcome of each call
+    public boolean isServiceCallInstrumentationEnabled(){
+        return Utils.getBooleanConfigFromEnv("SERVICE_CALL_INSTRUMENTATION_ENABLED", true);
+    }
+
+    // service calls slower than this are logged. 0 disables the slow call logs
+    public Integer getSlowCallThresholdMs(){
+        return Utils.getConfigFromEnv("SLOW_CALL_THRESHOLD_MS", 5000);
+    }
 }
@@ -24,11 +24,16 @@ import com.google.cloud.pso.bq_snapshot_manager.entities.PubSubEvent;
 import com.google.cloud.pso.bq_snapshot_manager.functions.f01_dispatcher.Dispatcher;
 import com.google.cloud.pso.bq_snapshot_manager.functions.f01_dispatcher.DispatcherRequest;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.LoggingHelper;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.ServiceCallInstrumentation;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.TrackingHelper;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads;
 import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubPublishResults;
 import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubServiceImpl;
 import com.google.cloud.pso.bq_snapshot_manager.services.scan.ResourceScannerImpl;
 import com.google.cloud.pso.bq_snapshot_manager.services.set.GCSPersistentSetImpl;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubMessageHandler;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubJsonReader;
 import com.google.gson.Gson;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -42,14 +47,17 @@ import org.springframework.web.bind.annotation.RestController;
 
 @SpringBootApplication(scanBasePackages = "com.google.cloud.pso.bq_snapshot_manager")
 @RestController
-public class DispatcherController {
+public class DispatcherController implements PubSubMessageHandler {
 
     private final LoggingHelper logger;
+    private final ServiceCallInstrumentation serviceCallInstrumentation;
 
     private static final Integer functionNumber = 1;
 
     private Gson gson;
     private Environment environment;
+    // caps the concurrent calls per downstream API across all requests of the instance
+    private final DownstreamBulkheads bulkheads;
 
     public DispatcherController() {
 
@@ -61,13 +69,29 @@ public class DispatcherController {
                 environment.getProjectId(),
                 environment.getApplicationName()
                 );
+
+        serviceCallInstrumentation = new ServiceCallInstrumentation(
+                environment.isServiceCallInstrumentationEnabled(),
+                logger,
+                environment.getSlowCallThresholdMs()
+        );
+        bulkheads = DownstreamBulkheads.fromEnv();
+        logger.logInfoWithTracker(
+                TrackingHelper.MIN_RUN_ID,
+                null,
+                String.format("Running I/O calls with %s", bulkheads)
+        );
     }
 
+    @Override
     @RequestMapping(value = "/", method = RequestMethod.POST)
     public ResponseEntity receiveMessage(@RequestBody PubSubEvent requestBody) {
 
+        long startNanos = System.nanoTime();
+
         String runId = TrackingHelper.MIN_RUN_ID;
         String state = "";
+        boolean isSuccess = false;
         // These values will be updated based on the execution flow and logged at the end
 
         try {
@@ -78,14 +102,8 @@ public class DispatcherController {
                 throw new NonRetryableApplicationException("Request body or message is Null.");
             }
 
-            String requestJsonString = requestBody.getMessage().dataToUtf8String();
-
-            // remove any escape characters (e.g. from Terraform
-            requestJsonString = requestJsonString.replace("\\", "");
-
-            logger.logInfoWithTracker(runId, null, String.format("Received payload: %s", requestJsonString));
-
-            DispatcherRequest dispatcherRequest = gson.fromJson(requestJsonString, DispatcherRequest.class);
+            // parse straight from the message bytes. Escaped payloads (e.g. from Terraform/Cloud Scheduler) are handled by the reader
+            DispatcherRequest dispatcherRequest = PubSubJsonReader.read(gson, requestBody.getMessage().getData(), DispatcherRequest.class);
 
             if(dispatcherRequest.isDryRun()){
                 runId = TrackingHelper.generateDryRunId();
@@ -101,9 +119,9 @@ public class DispatcherController {
 
             Dispatcher dispatcher = new Dispatcher(
                     environment.toConfig(),
-                    new PubSubServiceImpl(),
-                    new ResourceScannerImpl(),
-                    new GCSPersistentSetImpl(environment.getGcsFlagsBucket()),
+                    bulkheads.wrapPubSubService(serviceCallInstrumentation.wrapPubSubService(new PubSubServiceImpl(environment.getPubSubMessageEncoding()))),
+                    bulkheads.wrapResourceScanner(serviceCallInstrumentation.wrapResourceScanner(new ResourceScannerImpl())),
+                    bulkheads.wrapPersistentSet(serviceCallInstrumentation.wrapPersistentSet(new GCSPersistentSetImpl(environment.getGcsFlagsBucket()))),
                     "dispatcher-flags",
                     functionNumber,
                     runId
@@ -116,12 +134,15 @@ public class DispatcherController {
                     results.getFailedMessages().size());
 
             logger.logInfoWithTracker(dispatcherRequest.isDryRun(), runId, null, state);
+            isSuccess = true;
 
         } catch (Exception e) {
             logger.logNonRetryableExceptions(runId, null, e);
             state = String.format("ERROR '%s'", e.getMessage());
         }
 
+        PipelineMetrics.global().recordStage("dispatcher", isSuccess, false, startNanos);
+
         // Always ACK the pubsub message to avoid retries
         // The dispatcher is the entry point and retrying it could cause
         // unnecessary runs and costs
@@ -20,6 +20,7 @@ package com.google.cloud.pso.bq_snapshot_manager.dispatcher;
 
 import com.google.cloud.pso.bq_snapshot_manager.functions.f01_dispatcher.DispatcherConfig;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.Utils;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubMessageEncoding;
 
 public class Environment {
 
@@ -29,7 +30,9 @@ public class Environment {
                 getComputeRegionId(),
                 getDataRegionId(),
                 getOutputTopic(),
-                getApplicationName()
+                getApplicationName(),
+                getConfiguratorBatchSize(),
+                getLogSamplingPercentage()
         );
     }
 
@@ -54,4 +57,28 @@ public class Environment {
     public String getApplicationName(){
         return Utils.getConfigFromEnv("APPLICATION_NAME", true);
     }
+
+    // 0 (default) sends one Configurator request per table
+    public Integer getConfiguratorBatchSize(){
+        return Utils.getConfigFromEnv("CONFIGURATOR_BATCH_SIZE", 0);
+    }
+
+    // 100 (default) logs all the per-table INFO entries of a run. They are counted in the run summaries regardless
+    public Integer getLogSamplingPercentage(){
+        return Utils.getConfigFromEnv("LOG_SAMPLING_PERCENTAGE", 100);
+    }
+
+    public PubSubMessageEncoding getPubSubMessageEncoding(){
+        return PubSubMessageEncoding.fromEnv();
+    }
+
+    // wraps the services in decorators that record the latency and outcome of each call
+    public boolean isServiceCallInstrumentationEnabled(){
+        return Utils.getBooleanConfigFromEnv("SERVICE_CALL_INSTRUMENTATION_ENABLED", true);
+    }
+
+    // service calls slower than this are logged. 0 disables the slow call logs
+    public Integer getSlowCallThresholdMs(){
+        return Utils.getConfigFromEnv("SLOW_CALL_THRESHOLD_MS", 5000);
+    }
 }
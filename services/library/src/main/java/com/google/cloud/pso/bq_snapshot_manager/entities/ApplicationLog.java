@@ -34,5 +34,7 @@ public enum ApplicationLog {
     // To capture trackers with retryable exceptions during processing
     RETRYABLE_EXCEPTIONS_LOG,
     // Unified log for service requests
-    UNIFIED_LOG
+    UNIFIED_LOG,
+    // Aggregated counts of high-volume events per run (see RunLogAggregator)
+    RUN_SUMMARY_LOG
 }
@@ -25,6 +25,9 @@ public class BackupPolicy {
 
     @SerializedName("backup_operation_project")
     private final String backupOperationProject;
+
+    @SerializedName("backup_operation_project_pool")
+    private final List<String> backupOperationProjectPool;
     @SerializedName("bq_snapshot_storage_dataset")
     private final String bigQuerySnapshotStorageDataset;
     @SerializedName("gcs_snapshot_storage_location")
@@ -41,6 +44,9 @@ public class BackupPolicy {
     @SerializedName("gcs_avro_use_logical_types")
     private final Boolean gcsUseAvroLogicalTypes;
 
+    @SerializedName("gcs_snapshot_engine")
+    private final GCSSnapshotEngine gcsSnapshotEngine;
+
     @SerializedName("config_source")
     private final BackupConfigSource configSource;
 
@@ -57,18 +63,41 @@ public class BackupPolicy {
             );
         }
 
+        if (builder.gcsSnapshotEngine != null && builder.gcsExportFormat != null
+                && !GCSSnapshotEngine.isSupportedFormat(builder.gcsSnapshotEngine, builder.gcsExportFormat)) {
+            throw new IllegalArgumentException(
+                    String.format("Backup policy is invalid. GCS snapshot engine '%s' doesn't support the export format '%s'",
+                            builder.gcsSnapshotEngine,
+                            builder.gcsExportFormat
+                    )
+            );
+        }
+
+        // the Storage Read API returns an Avro schema with logical types, they can't be exported as strings
+        if (GCSSnapshotEngine.STORAGE_READ_API.equals(builder.gcsSnapshotEngine)
+                && Boolean.FALSE.equals(builder.gcsUseAvroLogicalTypes)) {
+            throw new IllegalArgumentException(
+                    String.format("Backup policy is invalid. GCS snapshot engine '%s' always writes Avro logical types and doesn't support '%s' = false",
+                            builder.gcsSnapshotEngine,
+                            BackupPolicyFields.gcs_avro_use_logical_types
+                    )
+            );
+        }
+
         this.cron = builder.cron;
         this.method = builder.method;
         this.timeTravelOffsetDays = builder.timeTravelOffsetDays;
         this.bigQuerySnapshotExpirationDays = builder.bigQuerySnapshotExpirationDays;
         this.backupStorageProject = builder.backupStorageProject;
         this.backupOperationProject = builder.backupOperationProject;
+        this.backupOperationProjectPool = builder.backupOperationProjectPool;
         this.bigQuerySnapshotStorageDataset = builder.bigQuerySnapshotStorageDataset;
         this.gcsSnapshotStorageLocation = builder.gcsSnapshotStorageLocation;
         this.gcsExportFormat = builder.gcsExportFormat;
         this.gcsCsvDelimiter = builder.gcsCsvDelimiter;
         this.gcsCsvExportHeader = builder.gcsCsvExportHeader;
         this.gcsUseAvroLogicalTypes = builder.gcsUseAvroLogicalTypes;
+        this.gcsSnapshotEngine = builder.gcsSnapshotEngine;
         this.configSource = builder.configSource;
     }
 
@@ -155,6 +184,11 @@ public class BackupPolicy {
             fields.put(BackupPolicyFields.backup_operation_project.toString(), this.getBackupOperationProject());
         }
 
+        if (this.getBackupOperationProjectPool() != null && !this.getBackupOperationProjectPool().isEmpty()) {
+            fields.put(BackupPolicyFields.backup_operation_project_pool.toString(),
+                    String.join(",", this.getBackupOperationProjectPool()));
+        }
+
         if (this.getBigQuerySnapshotExpirationDays() != null) {
             fields.put(BackupPolicyFields.bq_snapshot_expiration_days.toString(),
                     this.getBigQuerySnapshotExpirationDays().toString());
@@ -187,6 +221,10 @@ public class BackupPolicy {
                     this.getGcsUseAvroLogicalTypes().toString());
         }
 
+        if (this.getGcsSnapshotEngine() != null) {
+            fields.put(BackupPolicyFields.gcs_snapshot_engine.toString(), this.getGcsSnapshotEngine().toString());
+        }
+
         return fields;
     }
 
@@ -228,6 +266,16 @@ public class BackupPolicy {
                 )
         );
 
+        // comma separated list of projects (same format in data catalog tags and fallback policies)
+        String backupOperationProjectPoolStr = fieldsMap.getOrDefault(
+                BackupPolicyFields.backup_operation_project_pool.toString(),
+                null);
+        List<String> backupOperationProjectPool = backupOperationProjectPoolStr == null ? null :
+                Utils.tokenize(backupOperationProjectPoolStr, ",", false);
+        backupPolicyBuilder.setBackupOperationProjectPool(
+                backupOperationProjectPool == null || backupOperationProjectPool.isEmpty() ? null : backupOperationProjectPool
+        );
+
         backupPolicyBuilder.setBigQuerySnapshotStorageDataset(
                 fieldsMap.getOrDefault(
                         BackupPolicyFields.bq_snapshot_storage_dataset.toString(),
@@ -278,6 +326,13 @@ public class BackupPolicy {
                 gcsAvroUseLogicalAvroTypeStr == null ? null : Boolean.valueOf(gcsAvroUseLogicalAvroTypeStr)
         );
 
+        String gcsSnapshotEngineStr = fieldsMap.getOrDefault(
+                BackupPolicyFields.gcs_snapshot_engine.toString(),
+                null);
+        backupPolicyBuilder.setGcsSnapshotEngine(
+                gcsSnapshotEngineStr == null ? null : GCSSnapshotEngine.valueOf(gcsSnapshotEngineStr)
+        );
+
         return backupPolicyBuilder.build();
     }
 
@@ -318,6 +373,10 @@ public class BackupPolicy {
         return backupOperationProject;
     }
 
+    public List<String> getBackupOperationProjectPool() {
+        return backupOperationProjectPool;
+    }
+
     public String getBigQuerySnapshotStorageDataset() {
         return bigQuerySnapshotStorageDataset;
     }
@@ -342,6 +401,10 @@ public class BackupPolicy {
         return gcsUseAvroLogicalTypes;
     }
 
+    public GCSSnapshotEngine getGcsSnapshotEngine() {
+        return gcsSnapshotEngine;
+    }
+
     public BackupConfigSource getConfigSource() {
         return configSource;
     }
@@ -351,12 +414,12 @@ public class BackupPolicy {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         BackupPolicy that = (BackupPolicy) o;
-        return Objects.equal(cron, that.cron) && method == that.method && timeTravelOffsetDays == that.timeTravelOffsetDays && Objects.equal(bigQuerySnapshotExpirationDays, that.bigQuerySnapshotExpirationDays) && Objects.equal(backupStorageProject, that.backupStorageProject) && Objects.equal(backupOperationProject, that.backupOperationProject) && Objects.equal(bigQuerySnapshotStorageDataset, that.bigQuerySnapshotStorageDataset) && Objects.equal(gcsSnapshotStorageLocation, that.gcsSnapshotStorageLocation) && gcsExportFormat == that.gcsExportFormat && Objects.equal(gcsCsvDelimiter, that.gcsCsvDelimiter) && Objects.equal(gcsCsvExportHeader, that.gcsCsvExportHeader) && Objects.equal(gcsUseAvroLogicalTypes, that.gcsUseAvroLogicalTypes) && configSource == that.configSource;
+        return Objects.equal(cron, that.cron) && method == that.method && timeTravelOffsetDays == that.timeTravelOffsetDays && Objects.equal(bigQuerySnapshotExpirationDays, that.bigQuerySnapshotExpirationDays) && Objects.equal(backupStorageProject, that.backupStorageProject) && Objects.equal(backupOperationProject, that.backupOperationProject) && Objects.equal(backupOperationProjectPool, that.backupOperationProjectPool) && Objects.equal(bigQuerySnapshotStorageDataset, that.bigQuerySnapshotStorageDataset) && Objects.equal(gcsSnapshotStorageLocation, that.gcsSnapshotStorageLocation) && gcsExportFormat == that.gcsExportFormat && Objects.equal(gcsCsvDelimiter, that.gcsCsvDelimiter) && Objects.equal(gcsCsvExportHeader, that.gcsCsvExportHeader) && Objects.equal(gcsUseAvroLogicalTypes, that.gcsUseAvroLogicalTypes) && gcsSnapshotEngine == that.gcsSnapshotEngine && configSource == that.configSource;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(cron, method, timeTravelOffsetDays, bigQuerySnapshotExpirationDays, backupStorageProject, backupOperationProject, bigQuerySnapshotStorageDataset, gcsSnapshotStorageLocation, gcsExportFormat, gcsCsvDelimiter, gcsCsvExportHeader, gcsUseAvroLogicalTypes, configSource);
+        return Objects.hashCode(cron, method, timeTravelOffsetDays, bigQuerySnapshotExpirationDays, backupStorageProject, backupOperationProject, backupOperationProjectPool, bigQuerySnapshotStorageDataset, gcsSnapshotStorageLocation, gcsExportFormat, gcsCsvDelimiter, gcsCsvExportHeader, gcsUseAvroLogicalTypes, gcsSnapshotEngine, configSource);
     }
 
     @Override
@@ -368,12 +431,14 @@ public class BackupPolicy {
                 ", bigQuerySnapshotExpirationDays=" + bigQuerySnapshotExpirationDays +
                 ", backupStorageProject='" + backupStorageProject + '\'' +
                 ", backupOperationProject='" + backupOperationProject + '\'' +
+                ", backupOperationProjectPool=" + backupOperationProjectPool +
                 ", bigQuerySnapshotStorageDataset='" + bigQuerySnapshotStorageDataset + '\'' +
                 ", gcsSnapshotStorageLocation='" + gcsSnapshotStorageLocation + '\'' +
                 ", gcsExportFormat=" + gcsExportFormat +
                 ", gcsCsvDelimiter='" + gcsCsvDelimiter + '\'' +
                 ", gcsCsvExportHeader=" + gcsCsvExportHeader +
                 ", gcsUseAvroLogicalTypes=" + gcsUseAvroLogicalTypes +
+                ", gcsSnapshotEngine=" + gcsSnapshotEngine +
                 ", configSource=" + configSource +
                 '}';
     }
@@ -391,6 +456,9 @@ public class BackupPolicy {
         // project where operations will run (e.g. snapshot, export, etc)
         private String backupOperationProject;
 
+        // pool of projects to spread operations on. Takes precedence over backupOperationProject
+        private List<String> backupOperationProjectPool;
+
         // optional
         private Double bigQuerySnapshotExpirationDays;
         private String bigQuerySnapshotStorageDataset;
@@ -399,7 +467,7 @@ public class BackupPolicy {
         private String gcsCsvDelimiter;
         private Boolean gcsCsvExportHeader;
         private Boolean gcsUseAvroLogicalTypes;
-
+        private GCSSnapshotEngine gcsSnapshotEngine;
 
         public static BackupPolicy.BackupPolicyBuilder from(BackupPolicy backupPolicy) {
             return new BackupPolicy.BackupPolicyBuilder(
@@ -410,12 +478,14 @@ public class BackupPolicy {
                     backupPolicy.backupStorageProject
             ).setBigQuerySnapshotExpirationDays(backupPolicy.bigQuerySnapshotExpirationDays)
                     .setBackupOperationProject(backupPolicy.backupOperationProject)
+                    .setBackupOperationProjectPool(backupPolicy.backupOperationProjectPool)
                     .setBigQuerySnapshotStorageDataset(backupPolicy.bigQuerySnapshotStorageDataset)
                     .setGcsSnapshotStorageLocation(backupPolicy.gcsSnapshotStorageLocation)
                     .setGcsExportFormat(backupPolicy.gcsExportFormat)
                     .setGcsCsvDelimiter(backupPolicy.gcsCsvDelimiter)
                     .setGcsCsvExportHeader(backupPolicy.gcsCsvExportHeader)
-                    .setGcsUseAvroLogicalTypes(backupPolicy.gcsUseAvroLogicalTypes);
+                    .setGcsUseAvroLogicalTypes(backupPolicy.gcsUseAvroLogicalTypes)
+                    .setGcsSnapshotEngine(backupPolicy.gcsSnapshotEngine);
         }
 
         public BackupPolicyBuilder(String cron, BackupMethod method, TimeTravelOffsetDays timeTravelOffsetDays,
@@ -433,6 +503,11 @@ public class BackupPolicy {
             return this;
         }
 
+        public BackupPolicy.BackupPolicyBuilder setBackupOperationProjectPool(List<String> backupOperationProjectPool) {
+            this.backupOperationProjectPool = backupOperationProjectPool;
+            return this;
+        }
+
         public BackupPolicy.BackupPolicyBuilder setBigQuerySnapshotExpirationDays(Double bigQuerySnapshotExpirationDays) {
             this.bigQuerySnapshotExpirationDays = bigQuerySnapshotExpirationDays;
             return this;
@@ -468,6 +543,11 @@ public class BackupPolicy {
             return this;
         }
 
+        public BackupPolicy.BackupPolicyBuilder setGcsSnapshotEngine(GCSSnapshotEngine gcsSnapshotEngine) {
+            this.gcsSnapshotEngine = gcsSnapshotEngine;
+            return this;
+        }
+
         public BackupPolicy build() {
             return new BackupPolicy(this);
         }
@@ -22,6 +22,8 @@ package com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy;
 import com.google.cloud.Timestamp;
 import com.google.common.base.Objects;
 
+import java.util.List;
+
 public class BackupPolicyAndState {
 
     private BackupPolicy policy;
@@ -66,6 +68,10 @@ public class BackupPolicyAndState {
         return policy != null? policy.getBackupOperationProject(): null;
     }
 
+    public List<String> getBackupOperationProjectPool() {
+        return policy != null? policy.getBackupOperationProjectPool(): null;
+    }
+
     public String getBigQuerySnapshotStorageDataset() {
         return policy != null? policy.getBigQuerySnapshotStorageDataset(): null;
     }
@@ -90,6 +96,10 @@ public class BackupPolicyAndState {
         return policy != null? policy.getGcsUseAvroLogicalTypes(): null;
     }
 
+    public GCSSnapshotEngine getGcsSnapshotEngine() {
+        return policy != null? policy.getGcsSnapshotEngine(): null;
+    }
+
     public BackupConfigSource getConfigSource() {
         return policy != null? policy.getConfigSource(): null;
     }
@@ -27,11 +27,13 @@ public enum BackupPolicyFields {
     bq_snapshot_storage_dataset,
     backup_storage_project,
     backup_operation_project,
+    backup_operation_project_pool,
     gcs_snapshot_storage_location,
     gcs_snapshot_format,
     gcs_csv_delimiter,
     gcs_csv_export_header,
     gcs_avro_use_logical_types,
+    gcs_snapshot_engine,
     config_source,
     last_backup_at,
     last_gcs_snapshot_storage_uri,
@@ -0,0 +1,90 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy;
+
+import java.util.Objects;
+
+/**
+ * The result of resolving a fallback policy for a table: the matched level, the override key (rule) that matched
+ * and the policy. Instances are created once when compiling the FallbackPolicyResolver and shared by all lookups.
+ */
+public class FallbackPolicyMatch {
+
+    public enum Level {
+        TABLE("table"),
+        DATASET("dataset"),
+        PROJECT("project"),
+        FOLDER("folder"),
+        DEFAULT("default");
+
+        private final String text;
+
+        Level(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    private final Level level;
+    private final String rule;
+    private final BackupPolicy policy;
+
+    public FallbackPolicyMatch(Level level, String rule, BackupPolicy policy) {
+        this.level = level;
+        this.rule = rule;
+        this.policy = policy;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public String getRule() {
+        return rule;
+    }
+
+    public BackupPolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FallbackPolicyMatch that = (FallbackPolicyMatch) o;
+        return level == that.level && Objects.equals(rule, that.rule) && Objects.equals(policy, that.policy);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(level, rule, policy);
+    }
+
+    @Override
+    public String toString() {
+        return "FallbackPolicyMatch{" +
+                "level=" + level +
+                ", rule='" + rule + '\'' +
+                ", policy=" + policy +
+                '}';
+    }
+}
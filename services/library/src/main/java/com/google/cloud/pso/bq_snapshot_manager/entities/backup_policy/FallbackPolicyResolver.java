@@ -0,0 +1,398 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled index of a FallbackBackupPolicy, built once and shared by all lookups.
+ * <p>
+ * Table, dataset and project override keys could be:
+ * <ul>
+ *     <li>Exact names, e.g. "project.dataset"</li>
+ *     <li>Wildcards per name part, where '*' matches any sequence of characters and '?' matches one character,
+ *     e.g. "project.raw_*" or "*.landing.*_tmp"</li>
+ *     <li>Regular expressions on the fully qualified name, e.g. "regex:^project\.raw_[0-9]+$". Like the Dispatcher
+ *     exclude lists, they match if found anywhere in the name, so use '^' and '$' to match the whole name</li>
+ * </ul>
+ * Exact and wildcard keys are stored in a trie over project > dataset > table.
+ * The most granular level wins (table > dataset > project). Within a level, exact names win over wildcards
+ * (from left to right), wildcards win over regular expressions, and between several matching wildcards or
+ * regular expressions the one with most literal characters wins (ties are broken alphabetically).
+ * <p>
+ * Lookups don't allocate: the matches are created when compiling and regular expressions run on reusable
+ * per-thread matchers.
+ */
+public class FallbackPolicyResolver {
+
+    public static final String REGEX_PREFIX = "regex:";
+
+    private final FallbackBackupPolicy fallbackBackupPolicy;
+    // identifies where the policy was loaded from, e.g. a GCS object generation. Could be null
+    private final String version;
+
+    private final Node root = new Node(null);
+    private final List<RegexRule> tableRegexRules = new ArrayList<>();
+    private final List<RegexRule> datasetRegexRules = new ArrayList<>();
+    private final List<RegexRule> projectRegexRules = new ArrayList<>();
+    private final Map<String, FallbackPolicyMatch> folderMatches = new HashMap<>();
+    private final FallbackPolicyMatch defaultMatch;
+
+    private final ThreadLocal<QualifiedName> qualifiedNames = ThreadLocal.withInitial(QualifiedName::new);
+
+    private FallbackPolicyResolver(FallbackBackupPolicy fallbackBackupPolicy, String version) {
+        this.fallbackBackupPolicy = fallbackBackupPolicy;
+        this.version = version;
+        this.defaultMatch = new FallbackPolicyMatch(
+                FallbackPolicyMatch.Level.DEFAULT,
+                "default_policy",
+                fallbackBackupPolicy.getDefaultPolicy());
+    }
+
+    /**
+     * @throws IllegalArgumentException if an override key is invalid
+     */
+    public static FallbackPolicyResolver compile(FallbackBackupPolicy fallbackBackupPolicy) {
+        return compile(fallbackBackupPolicy, null);
+    }
+
+    /**
+     * @param version identifies the compiled policy (e.g. in the Configurator response)
+     * @throws IllegalArgumentException if an override key is invalid
+     */
+    public static FallbackPolicyResolver compile(FallbackBackupPolicy fallbackBackupPolicy, @Nullable String version) {
+
+        FallbackPolicyResolver resolver = new FallbackPolicyResolver(fallbackBackupPolicy, version);
+
+        resolver.addOverrides(fallbackBackupPolicy.getTableOverrides(), FallbackPolicyMatch.Level.TABLE, 3, resolver.tableRegexRules);
+        resolver.addOverrides(fallbackBackupPolicy.getDatasetOverrides(), FallbackPolicyMatch.Level.DATASET, 2, resolver.datasetRegexRules);
+        resolver.addOverrides(fallbackBackupPolicy.getProjectOverrides(), FallbackPolicyMatch.Level.PROJECT, 1, resolver.projectRegexRules);
+
+        for (Map.Entry<String, BackupPolicy> entry : fallbackBackupPolicy.getFolderOverrides().entrySet()) {
+            resolver.folderMatches.put(
+                    entry.getKey(),
+                    new FallbackPolicyMatch(FallbackPolicyMatch.Level.FOLDER, entry.getKey(), entry.getValue()));
+        }
+
+        resolver.root.sortWildcards();
+        resolver.tableRegexRules.sort(RegexRule.PRECEDENCE);
+        resolver.datasetRegexRules.sort(RegexRule.PRECEDENCE);
+        resolver.projectRegexRules.sort(RegexRule.PRECEDENCE);
+
+        return resolver;
+    }
+
+    public FallbackBackupPolicy getFallbackBackupPolicy() {
+        return fallbackBackupPolicy;
+    }
+
+    @Nullable
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Looks up the table, dataset and project levels (in that order).
+     * These levels don't require any API calls, unlike the folder level.
+     *
+     * @return the most granular match or null if none of these levels match
+     */
+    @Nullable
+    public FallbackPolicyMatch resolveOverride(TableSpec table) {
+        FallbackPolicyMatch match = resolveLevel(table, 3, tableRegexRules);
+        if (match != null) {
+            return match;
+        }
+        match = resolveLevel(table, 2, datasetRegexRules);
+        if (match != null) {
+            return match;
+        }
+        return resolveLevel(table, 1, projectRegexRules);
+    }
+
+    /**
+     * @return the folder level match or null if the folder has no override
+     */
+    @Nullable
+    public FallbackPolicyMatch resolveFolder(String folderId) {
+        return folderMatches.get(folderId);
+    }
+
+    public FallbackPolicyMatch getDefaultMatch() {
+        return defaultMatch;
+    }
+
+    private FallbackPolicyMatch resolveLevel(TableSpec table, int depth, List<RegexRule> regexRules) {
+        FallbackPolicyMatch match = find(root, 0, depth, table.getProject(), table.getDataset(), table.getTable());
+        if (match != null || regexRules.isEmpty()) {
+            return match;
+        }
+        QualifiedName name = qualifiedNames.get().set(table, depth);
+        for (int i = 0; i < regexRules.size(); i++) {
+            RegexRule rule = regexRules.get(i);
+            if (rule.matches(name)) {
+                return rule.match;
+            }
+        }
+        return null;
+    }
+
+    private static FallbackPolicyMatch find(Node node, int depth, int targetDepth, String project, String dataset, String table) {
+        if (depth == targetDepth) {
+            return node.match;
+        }
+        String name = depth == 0 ? project : depth == 1 ? dataset : table;
+
+        Node exact = node.exactChildren.get(name);
+        if (exact != null) {
+            FallbackPolicyMatch match = find(exact, depth + 1, targetDepth, project, dataset, table);
+            if (match != null) {
+                return match;
+            }
+        }
+        for (int i = 0; i < node.wildcardChildren.size(); i++) {
+            Node wildcard = node.wildcardChildren.get(i);
+            if (wildcard.glob.matches(name)) {
+                FallbackPolicyMatch match = find(wildcard, depth + 1, targetDepth, project, dataset, table);
+                if (match != null) {
+                    return match;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void addOverrides(Map<String, BackupPolicy> overrides,
+                              FallbackPolicyMatch.Level level,
+                              int depth,
+                              List<RegexRule> regexRules) {
+
+        for (Map.Entry<String, BackupPolicy> entry : overrides.entrySet()) {
+            String key = entry.getKey();
+            FallbackPolicyMatch match = new FallbackPolicyMatch(level, key, entry.getValue());
+
+            if (key.startsWith(REGEX_PREFIX)) {
+                regexRules.add(new RegexRule(Pattern.compile(key.substring(REGEX_PREFIX.length())), match));
+                continue;
+            }
+
+            Node node = root;
+            for (String name : splitKey(key, depth, level)) {
+                node = node.getOrCreateChild(name);
+            }
+            node.match = match;
+        }
+    }
+
+    /**
+     * Splits "project.dataset.table" keys from the right since domain-scoped project names could contain dots
+     */
+    static String[] splitKey(String key, int depth, FallbackPolicyMatch.Level level) {
+        String[] names = new String[depth];
+        int end = key.length();
+        for (int i = depth - 1; i > 0; i--) {
+            int separator = key.lastIndexOf('.', end - 1);
+            if (separator <= 0) {
+                throw new IllegalArgumentException(String.format(
+                        "Invalid %s override key '%s'. Expected %s dot-separated names or a '%s' prefix",
+                        level.getText(), key, depth, REGEX_PREFIX));
+            }
+            names[i] = key.substring(separator + 1, end);
+            end = separator;
+        }
+        names[0] = key.substring(0, end);
+        for (String name : names) {
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException(String.format(
+                        "Invalid %s override key '%s'. Names can't be empty", level.getText(), key));
+            }
+        }
+        return names;
+    }
+
+    private static class Node {
+        // null for exact nodes
+        private final Glob glob;
+        private final Map<String, Node> exactChildren = new HashMap<>();
+        private final List<Node> wildcardChildren = new ArrayList<>();
+        private FallbackPolicyMatch match;
+
+        Node(Glob glob) {
+            this.glob = glob;
+        }
+
+        Node getOrCreateChild(String name) {
+            if (!Glob.isGlob(name)) {
+                return exactChildren.computeIfAbsent(name, n -> new Node(null));
+            }
+            for (Node child : wildcardChildren) {
+                if (child.glob.pattern.equals(name)) {
+                    return child;
+                }
+            }
+            Node child = new Node(new Glob(name));
+            wildcardChildren.add(child);
+            return child;
+        }
+
+        void sortWildcards() {
+            wildcardChildren.sort(Comparator.comparing((Node n) -> n.glob, Glob.PRECEDENCE));
+            exactChildren.values().forEach(Node::sortWildcards);
+            wildcardChildren.forEach(Node::sortWildcards);
+        }
+    }
+
+    static class Glob {
+
+        // more literal characters first, then alphabetically
+        static final Comparator<Glob> PRECEDENCE = Comparator
+                .comparingInt((Glob g) -> -g.literals)
+                .thenComparing(g -> g.pattern);
+
+        private final String pattern;
+        private final char[] chars;
+        private final int literals;
+
+        Glob(String pattern) {
+            this.pattern = pattern;
+            this.chars = pattern.toCharArray();
+            int count = 0;
+            for (char c : chars) {
+                if (c != '*' && c != '?') {
+                    count++;
+                }
+            }
+            this.literals = count;
+        }
+
+        static boolean isGlob(String name) {
+            return name.indexOf('*') >= 0 || name.indexOf('?') >= 0;
+        }
+
+        boolean matches(CharSequence value) {
+            int p = 0;
+            int v = 0;
+            int starP = -1;
+            int starV = 0;
+            while (v < value.length()) {
+                if (p < chars.length && (chars[p] == '?' || chars[p] == value.charAt(v))) {
+                    p++;
+                    v++;
+                } else if (p < chars.length && chars[p] == '*') {
+                    starP = p++;
+                    starV = v;
+                } else if (starP != -1) {
+                    // backtrack: let the last '*' consume one more character
+                    p = starP + 1;
+                    v = ++starV;
+                } else {
+                    return false;
+                }
+            }
+            while (p < chars.length && chars[p] == '*') {
+                p++;
+            }
+            return p == chars.length;
+        }
+    }
+
+    private static class RegexRule {
+
+        static final Comparator<RegexRule> PRECEDENCE = Comparator
+                .comparingInt((RegexRule r) -> -r.pattern.pattern().length())
+                .thenComparing(r -> r.pattern.pattern());
+
+        private final Pattern pattern;
+        private final ThreadLocal<Matcher> matchers;
+        private final FallbackPolicyMatch match;
+
+        RegexRule(Pattern pattern, FallbackPolicyMatch match) {
+            this.pattern = pattern;
+            this.matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+            this.match = match;
+        }
+
+        boolean matches(CharSequence value) {
+            return matchers.get().reset(value).find();
+        }
+    }
+
+    /**
+     * Reusable view of "project", "project.dataset" or "project.dataset.table" that doesn't copy the names
+     */
+    private static class QualifiedName implements CharSequence {
+
+        private final String[] names = new String[3];
+        private int depth;
+        private int length;
+
+        QualifiedName set(TableSpec table, int depth) {
+            this.names[0] = table.getProject();
+            this.names[1] = table.getDataset();
+            this.names[2] = table.getTable();
+            this.depth = depth;
+            this.length = depth - 1;
+            for (int i = 0; i < depth; i++) {
+                this.length += names[i].length();
+            }
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            int remaining = index;
+            for (int i = 0; i < depth; i++) {
+                if (remaining < names[i].length()) {
+                    return names[i].charAt(remaining);
+                }
+                remaining -= names[i].length();
+                if (remaining == 0) {
+                    return '.';
+                }
+                remaining--;
+            }
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return String.join(".", Arrays.asList(names).subList(0, depth));
+        }
+    }
+}
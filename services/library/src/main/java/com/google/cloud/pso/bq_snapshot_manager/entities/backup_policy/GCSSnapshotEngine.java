@@ -0,0 +1,37 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy;
+
+public enum GCSSnapshotEngine {
+    // async BigQuery extract job. Completion is reported to the Tagger via log sinks
+    EXTRACT_JOB,
+    // in-process export that reads the table via the BigQuery Storage Read API and writes Avro files to GCS
+    STORAGE_READ_API;
+
+    public static boolean isSupportedFormat(GCSSnapshotEngine engine, GCSSnapshotFormat format) {
+        switch (engine) {
+            case EXTRACT_JOB:
+                return true;
+            case STORAGE_READ_API:
+                return GCSSnapshotFormat.getFormatAndCompression(format).x().equals("AVRO");
+            default:
+                return false;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import com.google.cloud.Tuple;
 import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
 import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.LoggingHelper;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.RunLogAggregator;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.Utils;
 import com.google.cloud.pso.bq_snapshot_manager.services.scan.ResourceScanner;
 
@@ -35,15 +36,32 @@ public class BigQueryScopeLister {
     private final ResourceScanner resourceScanner;
     private LoggingHelper logger;
     private final String runId;
+    // per-entity INFO entries are sampled and rolled up into per-run summaries
+    private final RunLogAggregator logAggregator;
 
     private static final String REGEX_PREFIX = "regex:";
 
+    public static final String TABLE_EXCLUDED_EVENT = "table_excluded";
+    public static final String DATASET_EXCLUDED_EVENT = "dataset_excluded";
+    public static final String PROJECT_EXCLUDED_EVENT = "project_excluded";
+    public static final String DATASET_TABLES_LISTED_EVENT = "dataset_tables_listed";
+    public static final String PROJECT_DATASETS_LISTED_EVENT = "project_datasets_listed";
+    private static final String LISTED_REASON = "listed";
+
     public BigQueryScopeLister(ResourceScanner resourceScanner,
                                LoggingHelper logger,
                                String runId) {
+        this(resourceScanner, logger, runId, new RunLogAggregator(logger, runId, 100));
+    }
+
+    public BigQueryScopeLister(ResourceScanner resourceScanner,
+                               LoggingHelper logger,
+                               String runId,
+                               RunLogAggregator logAggregator) {
         this.resourceScanner = resourceScanner;
         this.logger = logger;
         this.runId = runId;
+        this.logAggregator = logAggregator;
     }
 
     /**
@@ -131,6 +149,8 @@ public class BigQueryScopeLister {
             }
         }
 
+        logAggregator.flush();
+
         return tablesInScope;
     }
 
@@ -147,7 +167,14 @@ public class BigQueryScopeLister {
                 if (!checkResults.x()) {
                     output.add(tableSpec);
                 } else {
-                    logger.logInfoWithTracker(runId, tableSpec, String.format("Table %s is excluded by %s", table, checkResults.y()));
+                    logAggregator.logInfo(
+                            TABLE_EXCLUDED_EVENT,
+                            checkResults.y(),
+                            String.format("%s.%s", tableSpec.getProject(), tableSpec.getDataset()),
+                            tableSpec,
+                            table,
+                            1,
+                            () -> String.format("Table %s is excluded by %s", table, checkResults.y()));
                 }
             } catch (Exception ex) {
                 // log and continue
@@ -189,10 +216,24 @@ public class BigQueryScopeLister {
 
                         logger.logWarnWithTracker(runId, null, msg);
                     } else {
-                        logger.logInfoWithTracker(runId, null, String.format("Found %s tables under dataset %s", datasetTables.size(), dataset));
+                        logAggregator.logInfo(
+                                DATASET_TABLES_LISTED_EVENT,
+                                LISTED_REASON,
+                                dataset,
+                                null,
+                                dataset,
+                                datasetTables.size(),
+                                () -> String.format("Found %s tables under dataset %s", datasetTables.size(), dataset));
                     }
                 } else {
-                    logger.logInfoWithTracker(runId, null, String.format("Dataset %s is excluded by %s", dataset, checkResults.y()));
+                    logAggregator.logInfo(
+                            DATASET_EXCLUDED_EVENT,
+                            checkResults.y(),
+                            dataset,
+                            null,
+                            dataset,
+                            1,
+                            () -> String.format("Dataset %s is excluded by %s", dataset, checkResults.y()));
                 }
             } catch (Exception exception) {
                 // log and continue
@@ -227,8 +268,6 @@ public class BigQueryScopeLister {
 
                 if (!checkResults.x()) {
 
-                    logger.logInfoWithTracker(runId, null, String.format("Inspecting project %s", project));
-
                     // get all datasets in this project
                     List<String> projectDatasets = resourceScanner.listDatasets(project);
                     datasetIncludeList.addAll(projectDatasets);
@@ -241,10 +280,24 @@ public class BigQueryScopeLister {
                         logger.logWarnWithTracker(runId, null, msg);
                     } else {
 
-                        logger.logInfoWithTracker(runId, null, String.format("Datasets found in project %s : %s", project, projectDatasets));
+                        logAggregator.logInfo(
+                                PROJECT_DATASETS_LISTED_EVENT,
+                                LISTED_REASON,
+                                null,
+                                null,
+                                project,
+                                projectDatasets.size(),
+                                () -> String.format("Datasets found in project %s : %s", project, projectDatasets));
                     }
                 } else {
-                    logger.logInfoWithTracker(runId, null, String.format("Project %s is excluded by %s", project, checkResults.y()));
+                    logAggregator.logInfo(
+                            PROJECT_EXCLUDED_EVENT,
+                            checkResults.y(),
+                            null,
+                            null,
+                            project,
+                            1,
+                            () -> String.format("Project %s is excluded by %s", project, checkResults.y()));
                 }
 
             } catch (Exception exception) {
@@ -22,8 +22,11 @@ import com.google.cloud.Timestamp;
 import com.google.cloud.pso.bq_snapshot_manager.entities.JsonMessage;
 import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
 import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorBatchRequest;
 import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorRequest;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.LoggingHelper;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.RunLogAggregator;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.TrackingHelper;
 import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.FailedPubSubMessage;
 import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubPublishResults;
@@ -31,10 +34,14 @@ import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubService;
 import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.SuccessPubSubMessage;
 import com.google.cloud.pso.bq_snapshot_manager.services.scan.*;
 import com.google.cloud.pso.bq_snapshot_manager.services.set.PersistentSet;
+import com.google.common.collect.Lists;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 
 public class Dispatcher {
@@ -48,6 +55,10 @@ public class Dispatcher {
     private final Integer functionNumber;
     private final String runId;
 
+    public static final String DISPATCH_EVENT = "dispatched";
+    public static final String FAILED_DISPATCH_EVENT = "failed_dispatch";
+    private static final String PUBLISHED_REASON = "published";
+
     public Dispatcher(DispatcherConfig config,
                       PubSubService pubSubService,
                       ResourceScanner resourceScanner,
@@ -81,6 +92,7 @@ public class Dispatcher {
          */
         String flagFileName = String.format("%s/%s", persistentSetObjectPrefix, pubSubMessageId);
         if (persistentSet.contains(flagFileName)) {
+            PipelineMetrics.global().recordDedupHit("dispatcher", "pubsub_message_id");
             // log error and ACK and return
             String msg = String.format("PubSub message ID '%s' has been processed before by the dispatcher. The message should be ACK to PubSub to stop retries. Please investigate further why the message was retried in the first place.",
                     pubSubMessageId);
@@ -93,26 +105,28 @@ public class Dispatcher {
         }
 
         // construct a BigQueryScopeLister using the input resourceScanner implementation
+        LoggingHelper listerLogger = new LoggingHelper(
+                BigQueryScopeLister.class.getSimpleName(),
+                functionNumber,
+                config.getProjectId(),
+                config.getApplicationName()
+        );
         BigQueryScopeLister bqScopeLister = new BigQueryScopeLister(
                 resourceScanner,
-                new LoggingHelper(
-                        BigQueryScopeLister.class.getSimpleName(),
-                        functionNumber,
-                        config.getProjectId(),
-                        config.getApplicationName()
-                ),
-                runId
+                listerLogger,
+                runId,
+                new RunLogAggregator(listerLogger, runId, config.getLogSamplingPercentage())
         );
 
         // List down which tables to publish a request for based on the input scan scope
         List<TableSpec> tablesInScope = bqScopeLister.listTablesInScope(dispatcherRequest.getBigQueryScope());
 
-        // Convert each table in scope to a ConfiguratorRequest to be sent as a PubSub message
-        List<JsonMessage> pubSubMessagesToPublish = new ArrayList<>();
+        // Convert each table in scope to a ConfiguratorRequest
+        List<ConfiguratorRequest> configuratorRequests = new ArrayList<>(tablesInScope.size());
         // use the start time of this run as a reference point in time for CRON checks across all requests in this run
         Timestamp refTs = TrackingHelper.parseRunIdAsTimestamp(runId);
         for (TableSpec tableSpec : tablesInScope) {
-            pubSubMessagesToPublish.add(
+            configuratorRequests.add(
                     new ConfiguratorRequest(
                             tableSpec,
                             runId,
@@ -124,6 +138,11 @@ public class Dispatcher {
             );
         }
 
+        // Send each ConfiguratorRequest as a PubSub message or group them in batches per dataset
+        List<JsonMessage> pubSubMessagesToPublish = config.getConfiguratorBatchSize() > 1 ?
+                new ArrayList<>(createBatchesPerDataset(configuratorRequests, config.getConfiguratorBatchSize(), runId)) :
+                new ArrayList<>(configuratorRequests);
+
         // Publish the list of requests to PubSub
         PubSubPublishResults publishResults = pubSubService.publishTableOperationRequests(
                 config.getProjectId(),
@@ -131,34 +150,77 @@ public class Dispatcher {
                 pubSubMessagesToPublish
         );
 
+        // DISPATCHED_REQUESTS_LOG entries are read by the BigQuery views, so they are all logged and only counted in the run summary
+        RunLogAggregator logAggregator = new RunLogAggregator(logger, runId, config.getLogSamplingPercentage());
+
         // handle failed publishing requests
         for (FailedPubSubMessage msg : publishResults.getFailedMessages()) {
-            ConfiguratorRequest request = (ConfiguratorRequest) msg.getMsg();
+            List<ConfiguratorRequest> failedRequests = toConfiguratorRequests(msg.getMsg());
 
+            // logged once per message since a batch message contains all of its requests
             String logMsg = String.format("Failed to publish this PubSub messages %s", msg.toString());
-            logger.logWarnWithTracker(runId, request.getTargetTable(), logMsg);
-
-            logger.logFailedDispatcherEntityId(
-                    request.getTrackingId(),
-                    request.getTargetTable(),
-                    request.getTargetTable().toSqlString(),
-                    msg.getExceptionMessage(),
-                    msg.getExceptionClass()
-            );
+            logger.logWarnWithTracker(runId, failedRequests.size() == 1 ? failedRequests.get(0).getTargetTable() : null, logMsg);
+
+            for (ConfiguratorRequest request : failedRequests) {
+
+                logAggregator.count(FAILED_DISPATCH_EVENT, msg.getExceptionClass(), datasetOf(request.getTargetTable()), 1);
+
+                logger.logFailedDispatcherEntityId(
+                        request.getTrackingId(),
+                        request.getTargetTable(),
+                        request.getTargetTable().toSqlString(),
+                        msg.getExceptionMessage(),
+                        msg.getExceptionClass()
+                );
+            }
         }
 
         // handle success publishing requests
         for (SuccessPubSubMessage msg : publishResults.getSuccessMessages()) {
             // this enable us to detect dispatched messages within a runId that fail in later stages (i.e. Tagger)
-            ConfiguratorRequest request = (ConfiguratorRequest) msg.getMsg();
-
-            logger.logSuccessDispatcherTrackingId(runId, request.getTrackingId(), request.getTargetTable());
+            for (ConfiguratorRequest request : toConfiguratorRequests(msg.getMsg())) {
+                logger.logSuccessDispatcherTrackingId(runId, request.getTrackingId(), request.getTargetTable());
+                logAggregator.count(DISPATCH_EVENT, PUBLISHED_REASON, datasetOf(request.getTargetTable()), 1);
+            }
         }
 
+        logAggregator.flush();
+
         logger.logFunctionEnd(runId, null);
 
         return publishResults;
     }
 
+    /**
+     * Groups the requests by dataset (keeping the listing order) and splits each group in batches of at most batchSize tables.
+     * Tables of the same dataset share most of the Configurator lookups (e.g. policies and table metadata)
+     */
+    public static List<ConfiguratorBatchRequest> createBatchesPerDataset(List<ConfiguratorRequest> requests,
+                                                                         int batchSize,
+                                                                         String runId) {
+        Map<String, List<ConfiguratorRequest>> requestsPerDataset = new LinkedHashMap<>();
+        for (ConfiguratorRequest request : requests) {
+            String dataset = String.format("%s.%s", request.getTargetTable().getProject(), request.getTargetTable().getDataset());
+            requestsPerDataset.computeIfAbsent(dataset, key -> new ArrayList<>()).add(request);
+        }
+
+        List<ConfiguratorBatchRequest> batches = new ArrayList<>();
+        for (List<ConfiguratorRequest> datasetRequests : requestsPerDataset.values()) {
+            for (List<ConfiguratorRequest> batch : Lists.partition(datasetRequests, batchSize)) {
+                batches.add(new ConfiguratorBatchRequest(runId, new ArrayList<>(batch)));
+            }
+        }
+        return batches;
+    }
+
+    private static List<ConfiguratorRequest> toConfiguratorRequests(JsonMessage msg) {
+        if (msg instanceof ConfiguratorBatchRequest) {
+            return ((ConfiguratorBatchRequest) msg).getRequests();
+        }
+        return Collections.singletonList((ConfiguratorRequest) msg);
+    }
 
+    private static String datasetOf(TableSpec tableSpec) {
+        return String.format("%s.%s", tableSpec.getProject(), tableSpec.getDataset());
+    }
 }
@@ -27,17 +27,46 @@ public class DispatcherConfig {
 
     private String applicationName;
 
+    // max number of tables of the same dataset sent to the Configurator in one message. <= 1 sends one message per table
+    private int configuratorBatchSize;
+
+    // percentage of the per-entity INFO entries of a run that are logged individually. All of them are counted in the run summaries
+    private int logSamplingPercentage;
+
     public DispatcherConfig(String projectId,
                             String computeRegionId,
                             String dataRegionId,
                             String outputTopic,
                             String applicationName
                             ) {
+        this(projectId, computeRegionId, dataRegionId, outputTopic, applicationName, 0);
+    }
+
+    public DispatcherConfig(String projectId,
+                            String computeRegionId,
+                            String dataRegionId,
+                            String outputTopic,
+                            String applicationName,
+                            int configuratorBatchSize
+                            ) {
+        this(projectId, computeRegionId, dataRegionId, outputTopic, applicationName, configuratorBatchSize, 100);
+    }
+
+    public DispatcherConfig(String projectId,
+                            String computeRegionId,
+                            String dataRegionId,
+                            String outputTopic,
+                            String applicationName,
+                            int configuratorBatchSize,
+                            int logSamplingPercentage
+                            ) {
         this.projectId = projectId;
         this.computeRegionId = computeRegionId;
         this.dataRegionId = dataRegionId;
         this.outputTopic = outputTopic;
         this.applicationName = applicationName;
+        this.configuratorBatchSize = configuratorBatchSize;
+        this.logSamplingPercentage = logSamplingPercentage;
     }
 
     public String getDataRegionId() {
@@ -60,6 +89,14 @@ public class DispatcherConfig {
         return applicationName;
     }
 
+    public int getConfiguratorBatchSize() {
+        return configuratorBatchSize;
+    }
+
+    public int getLogSamplingPercentage() {
+        return logSamplingPercentage;
+    }
+
     @Override
     public String toString() {
         return "DispatcherConfig{" +
@@ -68,6 +105,8 @@ public class DispatcherConfig {
                 ", dataRegionId='" + dataRegionId + '\'' +
                 ", outputTopic='" + outputTopic + '\'' +
                 ", applicationName='" + applicationName + '\'' +
+                ", configuratorBatchSize=" + configuratorBatchSize +
+                ", logSamplingPercentage=" + logSamplingPercentage +
                 '}';
     }
 }
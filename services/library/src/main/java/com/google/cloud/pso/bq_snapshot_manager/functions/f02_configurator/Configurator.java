@@ -20,26 +20,40 @@ package com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator;
 
 import com.google.cloud.Timestamp;
 import com.google.cloud.Tuple;
+import com.google.cloud.pso.bq_snapshot_manager.entities.DuplicateRequestException;
 import com.google.cloud.pso.bq_snapshot_manager.entities.JsonMessage;
 import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
 import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.*;
 import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
 import com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter.SnapshoterRequest;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.ControllerExceptionHelper;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.LoggingHelper;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.Utils;
 import com.google.cloud.pso.bq_snapshot_manager.services.bq.BigQueryService;
 import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.BackupPolicyService;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.FailedPubSubMessage;
 import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubPublishResults;
 import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubService;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.SuccessPubSubMessage;
 import com.google.cloud.pso.bq_snapshot_manager.services.scan.ResourceScanner;
 import com.google.cloud.pso.bq_snapshot_manager.services.set.PersistentSet;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.springframework.scheduling.support.CronExpression;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class Configurator {
 
@@ -54,8 +68,11 @@ public class Configurator {
 
     private final ResourceScanner resourceScanner;
     private final PersistentSet persistentSet;
-    private final FallbackBackupPolicy fallbackBackupPolicy;
+    private final FallbackPolicyResolver fallbackPolicyResolver;
     private final String persistentSetObjectPrefix;
+    // runs the independent API calls of a request concurrently. The concurrent calls per downstream API are capped
+    // by the services themselves (see DownstreamBulkheads)
+    private final ExecutorService ioExecutor;
 
 
     public Configurator(ConfiguratorConfig config,
@@ -64,18 +81,42 @@ public class Configurator {
                         PubSubService pubSubService,
                         ResourceScanner resourceScanner,
                         PersistentSet persistentSet,
-                        FallbackBackupPolicy fallbackBackupPolicy,
+                        FallbackPolicyResolver fallbackPolicyResolver,
                         String persistentSetObjectPrefix,
                         Integer functionNumber) {
+        // run all API calls sequentially on the caller thread
+        this(config,
+                bqService,
+                backupPolicyService,
+                pubSubService,
+                resourceScanner,
+                persistentSet,
+                fallbackPolicyResolver,
+                persistentSetObjectPrefix,
+                functionNumber,
+                MoreExecutors.newDirectExecutorService());
+    }
+
+    public Configurator(ConfiguratorConfig config,
+                        BigQueryService bqService,
+                        BackupPolicyService backupPolicyService,
+                        PubSubService pubSubService,
+                        ResourceScanner resourceScanner,
+                        PersistentSet persistentSet,
+                        FallbackPolicyResolver fallbackPolicyResolver,
+                        String persistentSetObjectPrefix,
+                        Integer functionNumber,
+                        ExecutorService ioExecutor) {
         this.config = config;
         this.bqService = bqService;
         this.backupPolicyService = backupPolicyService;
         this.pubSubService = pubSubService;
         this.resourceScanner = resourceScanner;
         this.persistentSet = persistentSet;
-        this.fallbackBackupPolicy = fallbackBackupPolicy;
+        this.fallbackPolicyResolver = fallbackPolicyResolver;
         this.persistentSetObjectPrefix = persistentSetObjectPrefix;
         this.functionNumber = functionNumber;
+        this.ioExecutor = ioExecutor;
 
         logger = new LoggingHelper(
                 Configurator.class.getSimpleName(),
@@ -96,8 +137,371 @@ public class Configurator {
                 request.getTrackingId()
         );
 
+        TableSpec targetTable = request.getTargetTable();
+
+        // API Calls: start the lookups that don't depend on each other at once,
+        // so that the request waits for the slowest of them instead of their sum
+        Future<BackupPolicyAndState> attachedBackupPolicyFuture = submit(() -> backupPolicyService.getBackupPolicyAndStateForTable(targetTable));
+        Future<Long> tableCreationTimeFuture = submit(() -> bqService.getTableCreationTime(targetTable));
+        // the folder is only needed if no table, dataset or project override matches (resolved in memory).
+        // It's fetched even if a manually attached policy is found later, which is cached per project and run anyway
+        Future<Tuple<String, String>> folderLookupFuture = fallbackPolicyResolver.resolveOverride(targetTable) == null ?
+                submit(() -> resourceScanner.getParentFolderId(targetTable.getProject(), request.getRunId())) :
+                null;
+
+        // 1 & 2. Find the backup policy of this table and decide if it should be backed up at this run
+        TableBackupDecision decision = decideBackup(
+                request,
+                getOrThrow(attachedBackupPolicyFuture),
+                () -> getOrThrow(folderLookupFuture),
+                tableCreationTimeFuture
+        );
+
+        // 3. Send the backup request(s) if required
+        PubSubPublishResults bqSnapshotPublishResults = null;
+        PubSubPublishResults gcsSnapshotPublishResults = null;
+        if (decision.isBackupTime) {
+
+            // Publish the list of bq snapshot requests and the list of gcs snapshot requests to PubSub concurrently
+            Future<PubSubPublishResults> bqSnapshotPublishFuture = submit(() -> pubSubService.publishTableOperationRequests(
+                    config.getProjectId(),
+                    config.getBigQuerySnapshoterTopic(),
+                    decision.getBigQuerySnapshotRequests()
+            ));
+
+            Future<PubSubPublishResults> gcsSnapshotPublishFuture = submit(() -> pubSubService.publishTableOperationRequests(
+                    config.getProjectId(),
+                    config.getGcsSnapshoterTopic(),
+                    decision.getGcsSnapshotRequests()
+            ));
+
+            bqSnapshotPublishResults = getOrThrow(bqSnapshotPublishFuture);
+            gcsSnapshotPublishResults = getOrThrow(gcsSnapshotPublishFuture);
+
+            logPublishResults(request, bqSnapshotPublishResults, gcsSnapshotPublishResults);
+        }
+
+        // run common service end logging and adding pubsub message to processed list
+        Utils.runServiceEndRoutines(
+                logger,
+                request,
+                persistentSet,
+                persistentSetObjectPrefix,
+                request.getTrackingId()
+        );
+
+        return decision.toResponse(bqSnapshotPublishResults, gcsSnapshotPublishResults);
+    }
+
+    /**
+     * Configures all tables of a batch as in execute() while sharing the API calls between them:
+     * the duplicate checks and the policy, state and creation time lookups of all tables run concurrently,
+     * the parent folder is looked up once per project and all snapshot requests are sent in one publish call
+     * per snapshoter topic.
+     * <p>
+     * A failure of one table doesn't fail the other tables. It's reported in its table result instead.
+     *
+     * @return one result per table, in the order of the batch requests
+     */
+    public ConfiguratorBatchResponse executeBatch(ConfiguratorBatchRequest batchRequest, String pubSubMessageId) throws InterruptedException {
+
+        List<ConfiguratorRequest> requests = batchRequest.getRequests();
+        int size = requests.size();
+
+        // API Calls: duplicate checks, attached policies and creation times of all tables
+        List<Future<BackupPolicyAndState>> attachedBackupPolicyFutures = new ArrayList<>(size);
+        List<Future<Long>> tableCreationTimeFutures = new ArrayList<>(size);
+        // one folder lookup per project, only for projects with tables that don't match any other override
+        Map<String, Future<Tuple<String, String>>> folderLookupFutures = new HashMap<>();
+        for (ConfiguratorRequest request : requests) {
+            TableSpec targetTable = request.getTargetTable();
+
+            attachedBackupPolicyFutures.add(submit(() -> {
+                // run common service start logging and checks
+                Utils.runServiceStartRoutines(
+                        logger,
+                        request,
+                        persistentSet,
+                        persistentSetObjectPrefix,
+                        request.getTrackingId()
+                );
+                return backupPolicyService.getBackupPolicyAndStateForTable(targetTable);
+            }));
+
+            tableCreationTimeFutures.add(submit(() -> bqService.getTableCreationTime(targetTable)));
+
+            if (fallbackPolicyResolver.resolveOverride(targetTable) == null
+                    && !folderLookupFutures.containsKey(targetTable.getProject())) {
+                folderLookupFutures.put(
+                        targetTable.getProject(),
+                        submit(() -> resourceScanner.getParentFolderId(targetTable.getProject(), request.getRunId()))
+                );
+            }
+        }
+
+        // 1. Find the backup policy of each table
+        List<Tuple<BackupPolicyAndState, String>> backupPolicyTuples = new ArrayList<>(size);
+        Exception[] errors = new Exception[size];
+        // tables already processed by a previous delivery of the batch (e.g. retried for another table's error)
+        boolean[] skipped = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            ConfiguratorRequest request = requests.get(i);
+            Tuple<BackupPolicyAndState, String> backupPolicyTuple = null;
+            try {
+                backupPolicyTuple = getBackupPolicyAndState(
+                        request,
+                        getOrThrow(attachedBackupPolicyFutures.get(i)),
+                        () -> getOrThrow(folderLookupFutures.get(request.getTargetTable().getProject()))
+                );
+                // an invalid cron fails its table only, before the crons of all tables are evaluated at once
+                CronCache.getCompiled(backupPolicyTuple.x().getCron());
+            } catch (InterruptedException ex) {
+                throw ex;
+            } catch (DuplicateRequestException ex) {
+                skipped[i] = true;
+                logger.logInfoWithTracker(
+                        request.isDryRun(),
+                        request.getTrackingId(),
+                        request.getTargetTable(),
+                        "Skipping table of a redelivered batch. It was processed by a previous delivery."
+                );
+            } catch (Exception ex) {
+                errors[i] = ex;
+            }
+            backupPolicyTuples.add(errors[i] == null ? backupPolicyTuple : null);
+        }
+
+        // 2. Decide if each table should be backed up at this run
+        boolean[] isBackupCronTimes = evaluateBackupCronTimes(requests, backupPolicyTuples);
+        TableBackupDecision[] decisions = new TableBackupDecision[size];
+        List<JsonMessage> bqSnapshotRequests = new ArrayList<>();
+        List<JsonMessage> gcsSnapshotRequests = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (backupPolicyTuples.get(i) == null) {
+                continue;
+            }
+            try {
+                decisions[i] = decideBackup(
+                        requests.get(i),
+                        backupPolicyTuples.get(i),
+                        isBackupCronTimes[i],
+                        tableCreationTimeFutures.get(i)
+                );
+                if (decisions[i].isBackupTime) {
+                    bqSnapshotRequests.addAll(decisions[i].getBigQuerySnapshotRequests());
+                    gcsSnapshotRequests.addAll(decisions[i].getGcsSnapshotRequests());
+                }
+            } catch (InterruptedException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                errors[i] = ex;
+            }
+        }
+
+        // 3. Send the backup requests of all tables in one call per topic
+        Future<PubSubPublishResults> bqSnapshotPublishFuture = publishAsync(
+                config.getBigQuerySnapshoterTopic(),
+                bqSnapshotRequests
+        );
+        Future<PubSubPublishResults> gcsSnapshotPublishFuture = publishAsync(
+                config.getGcsSnapshoterTopic(),
+                gcsSnapshotRequests
+        );
+
+        PublishResultsIndex bqSnapshotPublishResults = null;
+        PublishResultsIndex gcsSnapshotPublishResults = null;
+        Exception publishError = null;
+        try {
+            bqSnapshotPublishResults = new PublishResultsIndex(getOrThrow(bqSnapshotPublishFuture));
+            gcsSnapshotPublishResults = new PublishResultsIndex(getOrThrow(gcsSnapshotPublishFuture));
+        } catch (InterruptedException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            // only fails the tables that have something to publish
+            publishError = ex;
+        }
+
+        // run common service end routines for all configured tables
+        List<Future<ConfiguratorResponse>> responseFutures = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ConfiguratorRequest request = requests.get(i);
+            TableBackupDecision decision = decisions[i];
+            if (decision == null) {
+                responseFutures.add(null);
+                continue;
+            }
+            if (decision.isBackupTime && publishError != null) {
+                errors[i] = publishError;
+                responseFutures.add(null);
+                continue;
+            }
+
+            PubSubPublishResults tableBqPublishResults = decision.isBackupTime ?
+                    bqSnapshotPublishResults.filter(decision.getBigQuerySnapshotRequests()) :
+                    null;
+            PubSubPublishResults tableGcsPublishResults = decision.isBackupTime ?
+                    gcsSnapshotPublishResults.filter(decision.getGcsSnapshotRequests()) :
+                    null;
+            if (decision.isBackupTime) {
+                logPublishResults(request, tableBqPublishResults, tableGcsPublishResults);
+            }
+
+            responseFutures.add(submit(() -> {
+                Utils.runServiceEndRoutines(
+                        logger,
+                        request,
+                        persistentSet,
+                        persistentSetObjectPrefix,
+                        request.getTrackingId()
+                );
+                return decision.toResponse(tableBqPublishResults, tableGcsPublishResults);
+            }));
+        }
+
+        List<ConfiguratorBatchResponse.TableResult> tableResults = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (skipped[i]) {
+                tableResults.add(ConfiguratorBatchResponse.TableResult.skipped(requests.get(i)));
+                continue;
+            }
+            ConfiguratorResponse response = null;
+            if (responseFutures.get(i) != null) {
+                try {
+                    response = getOrThrow(responseFutures.get(i));
+                } catch (InterruptedException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    errors[i] = ex;
+                }
+            }
+            tableResults.add(new ConfiguratorBatchResponse.TableResult(requests.get(i), response, errors[i]));
+        }
+
+        markNonRetryableFailuresAsProcessed(requests, errors);
+
+        return new ConfiguratorBatchResponse(tableResults);
+    }
+
+    /**
+     * Persists the processing key of the tables that failed with a non-retryable error, same as runServiceEndRoutines
+     * does for the configured tables. If the batch is redelivered because of another table's retryable error, these
+     * tables are then skipped instead of failing (and being logged) again.
+     */
+    private void markNonRetryableFailuresAsProcessed(List<ConfiguratorRequest> requests, Exception[] errors) throws InterruptedException {
+        Map<Integer, Future<Void>> flagFutures = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (errors[i] == null || ControllerExceptionHelper.isCausedByRetryableException(errors[i])) {
+                continue;
+            }
+            String flagFileName = String.format("%s/%s", persistentSetObjectPrefix, requests.get(i).getTrackingId());
+            flagFutures.put(i, submit(() -> {
+                persistentSet.add(flagFileName);
+                return null;
+            }));
+        }
+
+        for (Map.Entry<Integer, Future<Void>> entry : flagFutures.entrySet()) {
+            ConfiguratorRequest request = requests.get(entry.getKey());
+            try {
+                getOrThrow(entry.getValue());
+            } catch (InterruptedException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                // the table already failed. At worst it fails again on a redelivery
+                logger.logWarnWithTracker(
+                        request.getTrackingId(),
+                        request.getTargetTable(),
+                        String.format("Failed to persist the processing key of a failed table: %s", ex.getMessage())
+                );
+            }
+        }
+    }
+
+    /**
+     * Same decision as isBackupCronTime for the tables of a batch, evaluated in bulk per reference time (i.e. per run)
+     *
+     * @param backupPolicyTuples backup policies aligned with the requests. Null for tables without a policy
+     * @return isBackupCronTime flags aligned with the requests. False for tables without a policy
+     */
+    private boolean[] evaluateBackupCronTimes(List<ConfiguratorRequest> requests,
+                                              List<Tuple<BackupPolicyAndState, String>> backupPolicyTuples) {
+
+        Map<Long, List<Integer>> indexesPerReference = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (backupPolicyTuples.get(i) != null) {
+                indexesPerReference
+                        .computeIfAbsent(requests.get(i).getRefTimestamp().getSeconds(), k -> new ArrayList<>())
+                        .add(i);
+            }
+        }
+
+        boolean[] isBackupCronTimes = new boolean[requests.size()];
+        for (Map.Entry<Long, List<Integer>> entry : indexesPerReference.entrySet()) {
+            List<Integer> indexes = entry.getValue();
+            String[] crons = new String[indexes.size()];
+            long[] lastBackupAtSeconds = new long[indexes.size()];
+            long[] offsetSeconds = new long[indexes.size()];
+            for (int j = 0; j < indexes.size(); j++) {
+                BackupPolicyAndState backupPolicy = backupPolicyTuples.get(indexes.get(j)).x();
+                crons[j] = backupPolicy.getCron();
+                // tables that were never backed up are due, whatever the config source
+                lastBackupAtSeconds[j] = backupPolicy.getLastBackupAt() == null ?
+                        Long.MIN_VALUE :
+                        backupPolicy.getLastBackupAt().getSeconds();
+                offsetSeconds[j] = CronJitter.computeOffsetSeconds(
+                        requests.get(indexes.get(j)).getTargetTable(),
+                        config.getCronJitterWindowSeconds()
+                );
+            }
+
+            boolean[] due = CronCache.evaluateDue(crons, lastBackupAtSeconds, offsetSeconds, entry.getKey());
+            for (int j = 0; j < indexes.size(); j++) {
+                isBackupCronTimes[indexes.get(j)] = due[j];
+
+                // same decision log as isBackupCronTime. The next backup time is only calculated if the log is emitted
+                BackupPolicyAndState backupPolicy = backupPolicyTuples.get(indexes.get(j)).x();
+                if (backupPolicy.getLastBackupAt() != null) {
+                    ConfiguratorRequest request = requests.get(indexes.get(j));
+                    boolean takeBackup = due[j];
+                    long tableOffsetSeconds = offsetSeconds[j];
+                    logger.logInfoWithTracker(
+                            request.getTrackingId(),
+                            request.getTargetTable(),
+                            () -> backupCronTimeMessage(
+                                    request.getTargetTable(),
+                                    takeBackup,
+                                    getCronNextTrigger(
+                                            backupPolicy.getCron(),
+                                            backupPolicy.getLastBackupAt(),
+                                            request.getRefTimestamp(),
+                                            tableOffsetSeconds
+                                    ).y(),
+                                    request.getRefTimestamp()));
+                }
+            }
+        }
+        return isBackupCronTimes;
+    }
+
+    /**
+     * Finds the backup policy of the table, decides if it should be backed up at this run and prepares the
+     * snapshot requests if so
+     *
+     * @param folderLookup returns the parent folder of the table project, only called if no other override matches
+     * @param tableCreationTimeFuture creation time of the table (in progress)
+     */
+    private TableBackupDecision decideBackup(ConfiguratorRequest request,
+                                             BackupPolicyAndState attachedBackupPolicyAndState,
+                                             Callable<Tuple<String, String>> folderLookup,
+                                             Future<Long> tableCreationTimeFuture
+    ) throws IOException, NonRetryableApplicationException, InterruptedException {
+
         // 1. Find the backup policy of this table
-        Tuple<BackupPolicyAndState, String> backupPolicyTuple = getBackupPolicyAndState(request);
+        Tuple<BackupPolicyAndState, String> backupPolicyTuple = getBackupPolicyAndState(
+                request,
+                attachedBackupPolicyAndState,
+                folderLookup
+        );
         BackupPolicyAndState backupPolicy = backupPolicyTuple.x();
 
         // 2a. Determine if we should take a backup at this run given the policy CRON expression
@@ -108,10 +512,26 @@ public class Configurator {
                 request.getRefTimestamp(),
                 backupPolicy.getConfigSource(),
                 backupPolicy.getLastBackupAt(),
+                config.getCronJitterWindowSeconds(),
                 logger,
                 request.getTrackingId()
         );
 
+        return decideBackup(request, backupPolicyTuple, isBackupCronTime, tableCreationTimeFuture);
+    }
+
+    /**
+     * Same as decideBackup for a table whose backup policy is already found and whose cron is already evaluated
+     * (e.g. in bulk for a batch)
+     */
+    private TableBackupDecision decideBackup(ConfiguratorRequest request,
+                                             Tuple<BackupPolicyAndState, String> backupPolicyTuple,
+                                             boolean isBackupCronTime,
+                                             Future<Long> tableCreationTimeFuture
+    ) throws IOException, NonRetryableApplicationException, InterruptedException {
+
+        BackupPolicyAndState backupPolicy = backupPolicyTuple.x();
+
         // 2b. Check if the table has been created before the desired time travel
         Tuple<TableSpec, Long> sourceTableWithTimeTravelTuple = Utils.getTableSpecWithTimeTravel(
                 request.getTargetTable(),
@@ -119,8 +539,7 @@ public class Configurator {
                 request.getRefTimestamp()
         );
 
-        // API Call
-        Long tableCreationTime = bqService.getTableCreationTime(request.getTargetTable());
+        Long tableCreationTime = getOrThrow(tableCreationTimeFuture);
 
         // check if the table is created after the time travel timestamp
         boolean isTableCreatedBeforeTimeTravel = tableCreationTime < sourceTableWithTimeTravelTuple.y();
@@ -138,112 +557,174 @@ public class Configurator {
                         isBackupTime, request.isForceRun(), isBackupCronTime, isTableCreatedBeforeTimeTravel)
         );
 
-        // 3. Prepare and send the backup request(s) if required
-        SnapshoterRequest bqSnapshotRequest = null;
-        SnapshoterRequest gcsSnapshotRequest = null;
-        PubSubPublishResults bqSnapshotPublishResults = null;
-        PubSubPublishResults gcsSnapshotPublishResults = null;
-        if (isBackupTime) {
-            Tuple<SnapshoterRequest, SnapshoterRequest> snapshotRequestsTuple = prepareSnapshotRequests(
-                    backupPolicy,
-                    request
+        // 3. Prepare the backup request(s) if required
+        Tuple<SnapshoterRequest, SnapshoterRequest> snapshotRequestsTuple = isBackupTime ?
+                prepareSnapshotRequests(backupPolicy, request) :
+                Tuple.of(null, null);
+
+        return new TableBackupDecision(
+                request,
+                backupPolicyTuple,
+                isBackupCronTime,
+                isTableCreatedBeforeTimeTravel,
+                isBackupTime,
+                snapshotRequestsTuple.x(),
+                snapshotRequestsTuple.y()
+        );
+    }
+
+    private void logPublishResults(ConfiguratorRequest request,
+                                   PubSubPublishResults bqSnapshotPublishResults,
+                                   PubSubPublishResults gcsSnapshotPublishResults) {
+
+        if (!bqSnapshotPublishResults.getSuccessMessages().isEmpty()) {
+            logger.logInfoWithTracker(
+                    request.isDryRun(),
+                    request.getTrackingId(),
+                    request.getTargetTable(),
+                    String.format("Published %s BigQuery Snapshot requests %s",
+                            bqSnapshotPublishResults.getSuccessMessages().size(),
+                            bqSnapshotPublishResults.getSuccessMessages())
             );
+        }
 
-            List<JsonMessage> bqSnapshotRequests = new ArrayList<>(1);
-            if (snapshotRequestsTuple.x() != null) {
-                bqSnapshotRequest = snapshotRequestsTuple.x();
-                bqSnapshotRequests.add(bqSnapshotRequest);
-            }
+        if (!gcsSnapshotPublishResults.getSuccessMessages().isEmpty()) {
+            logger.logInfoWithTracker(
+                    request.isDryRun(),
+                    request.getTrackingId(),
+                    request.getTargetTable(),
+                    String.format("Published %s GCS Snapshot requests %s",
+                            gcsSnapshotPublishResults.getSuccessMessages().size(),
+                            gcsSnapshotPublishResults.getSuccessMessages())
+            );
+        }
 
-            List<JsonMessage> gcsSnapshotRequests = new ArrayList<>(1);
-            if (snapshotRequestsTuple.y() != null) {
-                gcsSnapshotRequest = snapshotRequestsTuple.y();
-                gcsSnapshotRequests.add(gcsSnapshotRequest);
-            }
+        if (!bqSnapshotPublishResults.getFailedMessages().isEmpty()) {
+            logger.logWarnWithTracker(
+                    request.isDryRun(),
+                    request.getTrackingId(),
+                    request.getTargetTable(),
+                    String.format("Failed to publish BigQuery Snapshot request %s", bqSnapshotPublishResults.getFailedMessages().toString())
 
-            // Publish the list of bq snapshot requests to PubSub
-            bqSnapshotPublishResults = pubSubService.publishTableOperationRequests(
-                    config.getProjectId(),
-                    config.getBigQuerySnapshoterTopic(),
-                    bqSnapshotRequests
             );
+        }
+
+        if (!gcsSnapshotPublishResults.getFailedMessages().isEmpty()) {
+            logger.logWarnWithTracker(
+                    request.isDryRun(),
+                    request.getTrackingId(),
+                    request.getTargetTable(),
+                    String.format("Failed to publish GCS Snapshot request %s", gcsSnapshotPublishResults.getFailedMessages().toString())
 
-            // Publish the list of gcs snapshot requests to PubSub
-            gcsSnapshotPublishResults = pubSubService.publishTableOperationRequests(
-                    config.getProjectId(),
-                    config.getGcsSnapshoterTopic(),
-                    gcsSnapshotRequests
             );
+        }
+    }
 
-            if (!bqSnapshotPublishResults.getSuccessMessages().isEmpty()) {
-                logger.logInfoWithTracker(
-                        request.isDryRun(),
-                        request.getTrackingId(),
-                        request.getTargetTable(),
-                        String.format("Published %s BigQuery Snapshot requests %s",
-                                bqSnapshotPublishResults.getSuccessMessages().size(),
-                                bqSnapshotPublishResults.getSuccessMessages())
-                );
-            }
+    private Future<PubSubPublishResults> publishAsync(String topic, List<JsonMessage> messages) {
+        if (messages.isEmpty()) {
+            // avoid creating a publisher for nothing
+            return CompletableFuture.completedFuture(
+                    new PubSubPublishResults(Collections.emptyList(), Collections.emptyList()));
+        }
+        return submit(() -> pubSubService.publishTableOperationRequests(config.getProjectId(), topic, messages));
+    }
 
-            if (!gcsSnapshotPublishResults.getSuccessMessages().isEmpty()) {
-                logger.logInfoWithTracker(
-                        request.isDryRun(),
-                        request.getTrackingId(),
-                        request.getTargetTable(),
-                        String.format("Published %s GCS Snapshot requests %s",
-                                gcsSnapshotPublishResults.getSuccessMessages().size(),
-                                gcsSnapshotPublishResults.getSuccessMessages())
-                );
-            }
+    private <T> Future<T> submit(Callable<T> callable) {
+        return ioExecutor.submit(callable);
+    }
 
-            if (!bqSnapshotPublishResults.getFailedMessages().isEmpty()) {
-                logger.logWarnWithTracker(
-                        request.isDryRun(),
-                        request.getTrackingId(),
-                        request.getTargetTable(),
-                        String.format("Failed to publish BigQuery Snapshot request %s", bqSnapshotPublishResults.getFailedMessages().toString())
+    /**
+     * Publishing results of a whole batch, indexed by message to split them per table
+     */
+    private static class PublishResultsIndex {
 
-                );
-            }
+        private final Map<JsonMessage, SuccessPubSubMessage> successMessages = new IdentityHashMap<>();
+        private final Map<JsonMessage, FailedPubSubMessage> failedMessages = new IdentityHashMap<>();
 
-            if (!gcsSnapshotPublishResults.getFailedMessages().isEmpty()) {
-                logger.logWarnWithTracker(
-                        request.isDryRun(),
-                        request.getTrackingId(),
-                        request.getTargetTable(),
-                        String.format("Failed to publish GCS Snapshot request %s", gcsSnapshotPublishResults.getFailedMessages().toString())
+        PublishResultsIndex(PubSubPublishResults publishResults) {
+            for (SuccessPubSubMessage successMessage : publishResults.getSuccessMessages()) {
+                successMessages.put(successMessage.getMsg(), successMessage);
+            }
+            for (FailedPubSubMessage failedMessage : publishResults.getFailedMessages()) {
+                failedMessages.put(failedMessage.getMsg(), failedMessage);
+            }
+        }
 
-                );
+        /**
+         * @return the publishing results of the given messages only
+         */
+        PubSubPublishResults filter(List<JsonMessage> messages) {
+            List<SuccessPubSubMessage> success = new ArrayList<>(messages.size());
+            List<FailedPubSubMessage> failed = new ArrayList<>(0);
+            for (JsonMessage message : messages) {
+                if (successMessages.containsKey(message)) {
+                    success.add(successMessages.get(message));
+                }
+                if (failedMessages.containsKey(message)) {
+                    failed.add(failedMessages.get(message));
+                }
             }
+            return new PubSubPublishResults(success, failed);
         }
+    }
 
-        // run common service end logging and adding pubsub message to processed list
-        Utils.runServiceEndRoutines(
-                logger,
-                request,
-                persistentSet,
-                persistentSetObjectPrefix,
-                request.getTrackingId()
-        );
+    /**
+     * Outcome of the policy and cron checks of one table, before publishing the snapshot requests
+     */
+    private class TableBackupDecision {
+
+        private final ConfiguratorRequest request;
+        private final Tuple<BackupPolicyAndState, String> backupPolicyTuple;
+        private final boolean isBackupCronTime;
+        private final boolean isTableCreatedBeforeTimeTravel;
+        private final boolean isBackupTime;
+        private final SnapshoterRequest bqSnapshotRequest;
+        private final SnapshoterRequest gcsSnapshotRequest;
+
+        TableBackupDecision(ConfiguratorRequest request,
+                            Tuple<BackupPolicyAndState, String> backupPolicyTuple,
+                            boolean isBackupCronTime,
+                            boolean isTableCreatedBeforeTimeTravel,
+                            boolean isBackupTime,
+                            SnapshoterRequest bqSnapshotRequest,
+                            SnapshoterRequest gcsSnapshotRequest) {
+            this.request = request;
+            this.backupPolicyTuple = backupPolicyTuple;
+            this.isBackupCronTime = isBackupCronTime;
+            this.isTableCreatedBeforeTimeTravel = isTableCreatedBeforeTimeTravel;
+            this.isBackupTime = isBackupTime;
+            this.bqSnapshotRequest = bqSnapshotRequest;
+            this.gcsSnapshotRequest = gcsSnapshotRequest;
+        }
 
+        List<JsonMessage> getBigQuerySnapshotRequests() {
+            return bqSnapshotRequest == null ? Collections.emptyList() : Collections.singletonList(bqSnapshotRequest);
+        }
 
-        return new ConfiguratorResponse(
-                request.getTargetTable(),
-                request.getRunId(),
-                request.getTrackingId(),
-                request.isDryRun(),
-                backupPolicy,
-                backupPolicyTuple.y(), // source of the backup policy
-                request.getRefTimestamp(),
-                isBackupCronTime,
-                isTableCreatedBeforeTimeTravel,
-                isBackupTime,
-                bqSnapshotRequest,
-                gcsSnapshotRequest,
-                bqSnapshotPublishResults,
-                gcsSnapshotPublishResults
-        );
+        List<JsonMessage> getGcsSnapshotRequests() {
+            return gcsSnapshotRequest == null ? Collections.emptyList() : Collections.singletonList(gcsSnapshotRequest);
+        }
+
+        ConfiguratorResponse toResponse(PubSubPublishResults bqSnapshotPublishResults,
+                                        PubSubPublishResults gcsSnapshotPublishResults) {
+            return new ConfiguratorResponse(
+                    request.getTargetTable(),
+                    request.getRunId(),
+                    request.getTrackingId(),
+                    request.isDryRun(),
+                    backupPolicyTuple.x(),
+                    backupPolicyTuple.y(), // source of the backup policy
+                    fallbackPolicyResolver.getVersion(),
+                    request.getRefTimestamp(),
+                    isBackupCronTime,
+                    isTableCreatedBeforeTimeTravel,
+                    isBackupTime,
+                    bqSnapshotRequest,
+                    gcsSnapshotRequest,
+                    bqSnapshotPublishResults,
+                    gcsSnapshotPublishResults
+            );
+        }
     }
 
     /**
@@ -252,13 +733,29 @@ public class Configurator {
      * @return Tuple<BackupPolicy, String> where x = the backup policy for the table and y = description of how the backup policy was found/computed (used for logging and debugging)
      * @throws IOException
      */
-    public Tuple<BackupPolicyAndState, String> getBackupPolicyAndState(ConfiguratorRequest request) throws IOException {
+    public Tuple<BackupPolicyAndState, String> getBackupPolicyAndState(ConfiguratorRequest request) throws IOException, NonRetryableApplicationException, InterruptedException {
 
         // Check if the table has a back policy attached to it
         BackupPolicyAndState attachedBackupPolicyAndState = backupPolicyService.getBackupPolicyAndStateForTable(
                 request.getTargetTable()
         );
 
+        return getBackupPolicyAndState(
+                request,
+                attachedBackupPolicyAndState,
+                () -> resourceScanner.getParentFolderId(request.getTargetTable().getProject(), request.getRunId())
+        );
+    }
+
+    /**
+     * @param attachedBackupPolicyAndState the policy and state attached to the table, if any
+     * @param folderLookup returns the parent folder of the table project, only called if no other override matches
+     */
+    private Tuple<BackupPolicyAndState, String> getBackupPolicyAndState(ConfiguratorRequest request,
+                                                                       BackupPolicyAndState attachedBackupPolicyAndState,
+                                                                       Callable<Tuple<String, String>> folderLookup)
+            throws IOException, NonRetryableApplicationException, InterruptedException {
+
         // if there is manually attached backup policy (e.g. by the table designer) then use it.
         if (attachedBackupPolicyAndState != null && attachedBackupPolicyAndState.getConfigSource().equals(BackupConfigSource.MANUAL)) {
 
@@ -281,19 +778,22 @@ public class Configurator {
                     String.format("No 'config_source=MANUAL' backup policy found for table %s. Will search for a fallback policy.", request.getTargetTable())
             );
 
-            // find the most granular fallback policy table > dataset > project
-            Tuple<String, BackupPolicy> fallbackBackupPolicyTuple = findFallbackBackupPolicy(
-                    fallbackBackupPolicy,
+            // find the most granular fallback policy table > dataset > project > folder > default
+            Tuple<String, FallbackPolicyMatch> fallbackBackupPolicyTuple = findFallbackPolicyMatch(
+                    fallbackPolicyResolver,
                     request.getTargetTable(),
-                    request.getRunId()
+                    folderLookup
             );
 
-            BackupPolicy fallbackPolicy = fallbackBackupPolicyTuple.y();
+            BackupPolicy fallbackPolicy = fallbackBackupPolicyTuple.y().getPolicy();
 
             logger.logInfoWithTracker(request.isDryRun(),
                     request.getTrackingId(),
                     request.getTargetTable(),
-                    String.format("Will use a %s-level fallback policy", fallbackBackupPolicyTuple.x())
+                    String.format("Will use a %s-level fallback policy matched by rule '%s' from fallback policy version '%s'",
+                            fallbackBackupPolicyTuple.x(),
+                            fallbackBackupPolicyTuple.y().getRule(),
+                            fallbackPolicyResolver.getVersion())
             );
 
             // if there is a system attached policy, then only use the last_xyz fields from it and use the latest fallback policy
@@ -333,6 +833,33 @@ public class Configurator {
             LoggingHelper logger,
             String trackingId
     ) {
+        return isBackupCronTime(
+                targetTable,
+                cron,
+                referencePoint,
+                configSource,
+                lastBackupAt,
+                CronJitter.DISABLED,
+                logger,
+                trackingId
+        );
+    }
+
+    /**
+     * @param cronJitterWindowSeconds when > 0, the cron schedule of the table is shifted by a stable per-table
+     *                                offset within this window (see CronJitter) to spread the load of tables
+     *                                sharing the same cron over time
+     */
+    public static boolean isBackupCronTime(
+            TableSpec targetTable,
+            String cron,
+            Timestamp referencePoint,
+            BackupConfigSource configSource,
+            Timestamp lastBackupAt,
+            long cronJitterWindowSeconds,
+            LoggingHelper logger,
+            String trackingId
+    ) {
 
         boolean takeBackup;
 
@@ -355,32 +882,32 @@ public class Configurator {
                 Tuple<Boolean, LocalDateTime> takeBackupTuple = getCronNextTrigger(
                         cron,
                         lastBackupAt,
-                        referencePoint
+                        referencePoint,
+                        CronJitter.computeOffsetSeconds(targetTable, cronJitterWindowSeconds)
                 );
 
                 // .x() is a boolean flag to take a backup or not
                 // .y() is the calculated next cron date used in the comparison
-                if (takeBackupTuple.x()) {
-                    takeBackup = true;
-                    logger.logInfoWithTracker(
-                            trackingId,
-                            targetTable,
-                            String.format("Will backup table %s at this run. Calculated next backup time is %s and this run is %s",
-                                    targetTable.toSqlString(), takeBackupTuple.y(), referencePoint));
-
-                } else {
-                    takeBackup = false;
-                    logger.logInfoWithTracker(
-                            trackingId,
-                            targetTable,
-                            String.format("Will skip backup for table %s at this run. Calculated next backup time is %s and this run is %s",
-                                    targetTable.toSqlString(), takeBackupTuple.y(), referencePoint));
-                }
+                takeBackup = takeBackupTuple.x();
+                logger.logInfoWithTracker(
+                        trackingId,
+                        targetTable,
+                        backupCronTimeMessage(targetTable, takeBackup, takeBackupTuple.y(), referencePoint));
             }
         }
         return takeBackup;
     }
 
+    private static String backupCronTimeMessage(TableSpec targetTable,
+                                                boolean takeBackup,
+                                                LocalDateTime nextBackupTime,
+                                                Timestamp referencePoint) {
+        return String.format(takeBackup ?
+                        "Will backup table %s at this run. Calculated next backup time is %s and this run is %s" :
+                        "Will skip backup for table %s at this run. Calculated next backup time is %s and this run is %s",
+                targetTable.toSqlString(), nextBackupTime, referencePoint);
+    }
+
     public static boolean isBackupTime(boolean isForceRun,
                                        boolean isBackupCronTime,
                                        boolean isTableCreatedBeforeTimeTravel) {
@@ -402,8 +929,26 @@ public class Configurator {
                                                                    Timestamp lastBackupAtTs,
                                                                    Timestamp referencePoint
     ) {
+        return getCronNextTrigger(cronExpression, lastBackupAtTs, referencePoint, CronJitter.DISABLED);
+    }
 
-        CronExpression cron = CronExpression.parse(cronExpression);
+    /**
+     * Same as getCronNextTrigger but with the whole cron schedule shifted by offsetSeconds.
+     * The last backup time is shifted back before computing the next cron trigger and the result is shifted
+     * forward again. This way the table keeps the frequency of the cron even if the offset is larger than the
+     * cron period.
+     *
+     * @param cronExpression
+     * @param lastBackupAtTs
+     * @param referencePoint
+     * @param offsetSeconds  offset to apply to the cron schedule. 0 means no offset
+     * @return Tuple of yes/no and computed next cron expression (including the offset)
+     */
+    public static Tuple<Boolean, LocalDateTime> getCronNextTrigger(String cronExpression,
+                                                                   Timestamp lastBackupAtTs,
+                                                                   Timestamp referencePoint,
+                                                                   long offsetSeconds
+    ) {
 
         LocalDateTime nowDt = LocalDateTime.ofEpochSecond(
                 referencePoint.getSeconds(),
@@ -417,8 +962,10 @@ public class Configurator {
                 ZoneOffset.UTC
         );
 
-        // get next execution date based on the last backup date
-        LocalDateTime nextExecutionDt = cron.next(lastBackupAtDt);
+        // get next execution date based on the last backup date.
+        // The compiled cron and its next trigger are cached since few distinct crons are used across all tables
+        LocalDateTime nextExecutionDt = CronCache.next(cronExpression, lastBackupAtDt.minusSeconds(offsetSeconds))
+                .plusSeconds(offsetSeconds);
 
         return Tuple.of(
                 nextExecutionDt.isBefore(nowDt),
@@ -426,6 +973,15 @@ public class Configurator {
         );
     }
 
+    /**
+     * @return the next trigger of the cron schedule shifted by offsetSeconds, strictly after lastBackupAt.
+     * Null if the cron has no next trigger
+     */
+    static LocalDateTime getCronNextTrigger(CronExpression cron, LocalDateTime lastBackupAt, long offsetSeconds) {
+        LocalDateTime next = cron.next(lastBackupAt.minusSeconds(offsetSeconds));
+        return next == null ? null : next.plusSeconds(offsetSeconds);
+    }
+
     public Tuple<SnapshoterRequest, SnapshoterRequest> prepareSnapshotRequests(BackupPolicyAndState backupPolicy, ConfiguratorRequest request) {
 
         SnapshoterRequest bqSnapshotRequest = null;
@@ -458,40 +1014,89 @@ public class Configurator {
                                                                         TableSpec tableSpec,
                                                                         String runId
     ) throws IOException {
+        Tuple<String, FallbackPolicyMatch> matchTuple = findFallbackPolicyMatch(
+                FallbackPolicyResolver.compile(fallbackBackupPolicy),
+                tableSpec,
+                runId
+        );
+        return Tuple.of(matchTuple.x(), matchTuple.y().getPolicy());
+    }
 
-        BackupPolicy tableLevel = fallbackBackupPolicy.getTableOverrides().get(tableSpec.toSqlString());
-        if (tableLevel != null) {
-            return Tuple.of("table", tableLevel);
+    /**
+     * @return Tuple of the matched level (including the folder lookup source) and the matched fallback policy rule
+     */
+    public Tuple<String, FallbackPolicyMatch> findFallbackPolicyMatch(FallbackPolicyResolver fallbackPolicyResolver,
+                                                                      TableSpec tableSpec,
+                                                                      String runId
+    ) throws IOException {
+        try {
+            return findFallbackPolicyMatch(
+                    fallbackPolicyResolver,
+                    tableSpec,
+                    () -> resourceScanner.getParentFolderId(tableSpec.getProject(), runId)
+            );
+        } catch (NonRetryableApplicationException | InterruptedException ex) {
+            // not thrown by a direct folder lookup
+            throw new IOException(ex);
         }
+    }
 
-        BackupPolicy datasetLevel = fallbackBackupPolicy.getDatasetOverrides().get(
-                String.format("%s.%s", tableSpec.getProject(), tableSpec.getDataset())
-        );
-        if (datasetLevel != null) {
-            return Tuple.of("dataset", datasetLevel);
-        }
+    private Tuple<String, FallbackPolicyMatch> findFallbackPolicyMatch(FallbackPolicyResolver fallbackPolicyResolver,
+                                                                       TableSpec tableSpec,
+                                                                       Callable<Tuple<String, String>> folderLookup
+    ) throws IOException, NonRetryableApplicationException, InterruptedException {
 
-        BackupPolicy projectLevel = fallbackBackupPolicy.getProjectOverrides().get(
-                tableSpec.getProject()
-        );
-        if (projectLevel != null) {
-            return Tuple.of("project", projectLevel);
+        FallbackPolicyMatch overrideMatch = fallbackPolicyResolver.resolveOverride(tableSpec);
+        if (overrideMatch != null) {
+            return Tuple.of(overrideMatch.getLevel().getText(), overrideMatch);
         }
 
         // API CALL (or cache)
-        Tuple<String, String> folderLookupTuple = resourceScanner.getParentFolderId(tableSpec.getProject(), runId);
+        Tuple<String, String> folderLookupTuple = call(folderLookup);
         if (folderLookupTuple != null) {
 
             String folderId = folderLookupTuple.x();
-            BackupPolicy folderLevel = fallbackBackupPolicy.getFolderOverrides().get(folderId);
+            FallbackPolicyMatch folderMatch = fallbackPolicyResolver.resolveFolder(folderId);
 
-            if (folderLevel != null) {
+            if (folderMatch != null) {
                 // source is folder-cache or folder-api to trace and debug cache performance
-                return Tuple.of(String.format("folder-from-%s", folderLookupTuple.y()), folderLevel);
+                return Tuple.of(String.format("folder-from-%s", folderLookupTuple.y()), folderMatch);
             }
         }
 
         // else return the global default policy
-        return Tuple.of("default", fallbackBackupPolicy.getDefaultPolicy());
+        return Tuple.of("default", fallbackPolicyResolver.getDefaultMatch());
+    }
+
+    private static <T> T call(Callable<T> callable) throws IOException, NonRetryableApplicationException, InterruptedException {
+        try {
+            return callable.call();
+        } catch (IOException | NonRetryableApplicationException | InterruptedException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private static <T> T getOrThrow(Future<T> future) throws IOException, NonRetryableApplicationException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            // surface the original exception so that retryable API errors are still detected by the controllers
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof NonRetryableApplicationException) {
+                throw (NonRetryableApplicationException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
     }
 }
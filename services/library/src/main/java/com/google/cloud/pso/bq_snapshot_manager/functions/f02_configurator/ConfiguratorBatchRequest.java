@@ -0,0 +1,57 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.JsonMessage;
+
+import java.util.List;
+
+/**
+ * Several ConfiguratorRequests of the same run sent in one PubSub message (e.g. all tables of a dataset).
+ * Each request keeps its own tracking id so that all tables are still traced and logged individually.
+ */
+public class ConfiguratorBatchRequest extends JsonMessage {
+
+    // presence of this JSON field distinguishes batch requests from single table requests
+    public static final String REQUESTS_FIELD = "requests";
+
+    private String runId;
+    private List<ConfiguratorRequest> requests;
+
+    public ConfiguratorBatchRequest(String runId, List<ConfiguratorRequest> requests) {
+        this.runId = runId;
+        this.requests = requests;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public List<ConfiguratorRequest> getRequests() {
+        return requests;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfiguratorBatchRequest{" +
+                "runId='" + runId + '\'' +
+                ", requests=" + requests.size() +
+                '}';
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+public class ConfiguratorBatchResponse {
+
+    private final List<TableResult> tableResults;
+
+    public ConfiguratorBatchResponse(List<TableResult> tableResults) {
+        this.tableResults = tableResults;
+    }
+
+    /**
+     * @return one result per request in the batch, in the same order
+     */
+    public List<TableResult> getTableResults() {
+        return tableResults;
+    }
+
+    /**
+     * Outcome of one table in the batch. Either the response or the error is set, unless the table was skipped
+     * because it was already processed by a previous delivery of the batch.
+     */
+    public static class TableResult {
+
+        private final ConfiguratorRequest request;
+        private final ConfiguratorResponse response;
+        private final Exception error;
+        private final boolean skipped;
+
+        public TableResult(ConfiguratorRequest request, @Nullable ConfiguratorResponse response, @Nullable Exception error) {
+            this(request, response, error, false);
+        }
+
+        private TableResult(ConfiguratorRequest request,
+                            @Nullable ConfiguratorResponse response,
+                            @Nullable Exception error,
+                            boolean skipped) {
+            this.request = request;
+            this.response = response;
+            this.error = error;
+            this.skipped = skipped;
+        }
+
+        public static TableResult skipped(ConfiguratorRequest request) {
+            return new TableResult(request, null, null, true);
+        }
+
+        public ConfiguratorRequest getRequest() {
+            return request;
+        }
+
+        public ConfiguratorResponse getResponse() {
+            return response;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        public boolean isSkipped() {
+            return skipped;
+        }
+    }
+}
@@ -27,17 +27,22 @@ public class ConfiguratorConfig {
 
     private final String applicationName;
 
+    // 0 disables the cron jitter
+    private final long cronJitterWindowSeconds;
+
     public ConfiguratorConfig(String projectId,
                               String bigQuerySnapshoterTopic,
                               String gcsSnapshoterTopic,
                               String backupTagTemplateId,
-                              String applicationName
+                              String applicationName,
+                              long cronJitterWindowSeconds
                               ) {
         this.projectId = projectId;
         this.bigQuerySnapshoterTopic = bigQuerySnapshoterTopic;
         this.gcsSnapshoterTopic = gcsSnapshoterTopic;
         this.backupTagTemplateId = backupTagTemplateId;
         this.applicationName = applicationName;
+        this.cronJitterWindowSeconds = cronJitterWindowSeconds;
     }
 
     public String getProjectId() {
@@ -60,6 +65,10 @@ public class ConfiguratorConfig {
         return applicationName;
     }
 
+    public long getCronJitterWindowSeconds() {
+        return cronJitterWindowSeconds;
+    }
+
     @Override
     public String toString() {
         return "ConfiguratorConfig{" +
@@ -68,6 +77,7 @@ public class ConfiguratorConfig {
                 ", gcsSnapshoterTopic='" + gcsSnapshoterTopic + '\'' +
                 ", backupTagTemplateId='" + backupTagTemplateId + '\'' +
                 ", applicationName='" + applicationName + '\'' +
+                ", cronJitterWindowSeconds=" + cronJitterWindowSeconds +
                 '}';
     }
 }
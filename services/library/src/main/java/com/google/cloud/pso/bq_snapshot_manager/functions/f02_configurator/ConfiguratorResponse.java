@@ -30,6 +30,8 @@ public class ConfiguratorResponse extends TableOperationRequestResponse {
     private final BackupPolicyAndState backupPolicy;
 
     private final String backupPolicySource;
+    // version of the fallback policy used by this request
+    private final String fallbackPolicyVersion;
     private final Timestamp refTs;
 
     // If the table should be backed up this run based on the backup cron only
@@ -43,10 +45,11 @@ public class ConfiguratorResponse extends TableOperationRequestResponse {
     private final PubSubPublishResults bigQueryBackupPublishingResults;
     private final PubSubPublishResults gcsBackupPublishingResults;
 
-    public ConfiguratorResponse(TableSpec targetTable, String runId, String trackingId, boolean isDryRun, BackupPolicyAndState backupPolicy, String backupPolicySource, Timestamp refTs, boolean  isBackupCronTime, boolean  isTableCreatedBeforeTimeTravel, boolean isBackupTime, SnapshoterRequest bqSnapshoterRequest, SnapshoterRequest gcsSnapshoterRequest, PubSubPublishResults bigQueryBackupPublishingResults, PubSubPublishResults gcsBackupPublishingResults) {
+    public ConfiguratorResponse(TableSpec targetTable, String runId, String trackingId, boolean isDryRun, BackupPolicyAndState backupPolicy, String backupPolicySource, String fallbackPolicyVersion, Timestamp refTs, boolean  isBackupCronTime, boolean  isTableCreatedBeforeTimeTravel, boolean isBackupTime, SnapshoterRequest bqSnapshoterRequest, SnapshoterRequest gcsSnapshoterRequest, PubSubPublishResults bigQueryBackupPublishingResults, PubSubPublishResults gcsBackupPublishingResults) {
         super(targetTable, runId, trackingId, isDryRun);
         this.backupPolicy = backupPolicy;
         this.backupPolicySource = backupPolicySource;
+        this.fallbackPolicyVersion = fallbackPolicyVersion;
         this.refTs = refTs;
         this.isBackupCronTime = isBackupCronTime;
         this.isTableCreatedBeforeTimeTravel = isTableCreatedBeforeTimeTravel;
@@ -100,4 +103,8 @@ public class ConfiguratorResponse extends TableOperationRequestResponse {
     public String getBackupPolicySource() {
         return backupPolicySource;
     }
+
+    public String getFallbackPolicyVersion() {
+        return fallbackPolicyVersion;
+    }
 }
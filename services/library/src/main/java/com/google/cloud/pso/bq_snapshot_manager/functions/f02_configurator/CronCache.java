@@ -0,0 +1,282 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator;
+
+import com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.springframework.scheduling.support.CronExpression;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Process-wide cache of compiled cron expressions and of their next trigger times.
+ * <p>
+ * The estate uses few distinct cron strings, so each one is parsed once. The next trigger after a time t is
+ * memoised per (cron, bucket of t): the first trigger after the bucket start is also the first trigger after t
+ * as long as it's later than t. If the cron triggers inside the bucket, the next trigger is computed directly.
+ */
+public class CronCache {
+
+    static final long BUCKET_SECONDS = 3600;
+
+    // guard against very frequent crons (e.g. every second) combined with a large jitter window
+    static final int MAX_INDEXED_TRIGGERS = 100_000;
+
+    private static final Cache<String, CronExpression> COMPILED = CacheBuilder.newBuilder()
+            .maximumSize(1_000)
+            .recordStats()
+            .build();
+
+    private static final Cache<BucketKey, Long> NEXT_TRIGGERS = CacheBuilder.newBuilder()
+            .maximumSize(100_000)
+            .recordStats()
+            .build();
+
+    // returned when the cron doesn't trigger anymore (Guava caches don't accept null values)
+    private static final long NO_TRIGGER = Long.MAX_VALUE;
+
+    static {
+        PipelineMetrics.global().monitorCache(COMPILED, "cron_compiled");
+        PipelineMetrics.global().monitorCache(NEXT_TRIGGERS, "cron_next_triggers");
+    }
+
+    private CronCache() {
+    }
+
+    /**
+     * @return the compiled cron expression. Throws IllegalArgumentException if the expression is invalid
+     */
+    public static CronExpression getCompiled(String cronExpression) {
+        CronExpression compiled = COMPILED.getIfPresent(cronExpression);
+        if (compiled == null) {
+            // invalid expressions throw here and are not cached
+            compiled = CronExpression.parse(cronExpression);
+            COMPILED.put(cronExpression, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * @return the first trigger of the cron strictly after the given time, or null if the cron doesn't trigger anymore
+     */
+    public static LocalDateTime next(String cronExpression, LocalDateTime after) {
+        long nextSeconds = next(cronExpression, after.toEpochSecond(ZoneOffset.UTC));
+        return nextSeconds == NO_TRIGGER ? null : toDateTime(nextSeconds);
+    }
+
+    /**
+     * @return the first trigger of the cron strictly after the given epoch seconds, or Long.MAX_VALUE if the cron
+     * doesn't trigger anymore
+     */
+    public static long next(String cronExpression, long afterEpochSeconds) {
+        long bucketStart = Math.floorDiv(afterEpochSeconds, BUCKET_SECONDS) * BUCKET_SECONDS;
+        BucketKey key = new BucketKey(cronExpression, bucketStart);
+
+        Long bucketNext = NEXT_TRIGGERS.getIfPresent(key);
+        if (bucketNext == null) {
+            bucketNext = computeNext(getCompiled(cronExpression), bucketStart);
+            NEXT_TRIGGERS.put(key, bucketNext);
+        }
+
+        if (bucketNext > afterEpochSeconds) {
+            return bucketNext;
+        }
+        // the cron triggers inside the bucket, between the bucket start and the given time
+        return computeNext(getCompiled(cronExpression), afterEpochSeconds);
+    }
+
+    /**
+     * Same as evaluateDue with offsets, without jitter
+     */
+    public static boolean[] evaluateDue(String[] crons, long[] lastBackupAtEpochSeconds, long referenceEpochSeconds) {
+        return evaluateDue(crons, lastBackupAtEpochSeconds, new long[crons.length], referenceEpochSeconds);
+    }
+
+    /**
+     * Evaluates in bulk if backups are due at a reference time, with the same semantics as
+     * Configurator.getCronNextTrigger (i.e. the next trigger of the shifted cron after the last backup is strictly
+     * before the reference).
+     * <p>
+     * A backup is due iff the last backup is strictly before the latest trigger of its shifted cron that is strictly
+     * before the reference time. The triggers of each distinct cron that could be the latest one for any of the
+     * offsets are computed once, and each pair is then a binary search over them.
+     *
+     * @param crons                    cron expressions
+     * @param lastBackupAtEpochSeconds last backup times, aligned with crons. Long.MIN_VALUE for tables that were never
+     *                                 backed up, which are always due
+     * @param offsetSeconds            offsets of the cron schedules (see CronJitter), aligned with crons. 0 means no
+     *                                 offset
+     * @param referenceEpochSeconds    the reference time (e.g. the run time)
+     * @return due flags aligned with the inputs
+     */
+    public static boolean[] evaluateDue(String[] crons,
+                                        long[] lastBackupAtEpochSeconds,
+                                        long[] offsetSeconds,
+                                        long referenceEpochSeconds) {
+        if (crons.length != lastBackupAtEpochSeconds.length || crons.length != offsetSeconds.length) {
+            throw new IllegalArgumentException(
+                    String.format("crons, lastBackupAtEpochSeconds and offsetSeconds must have the same length. Got %s, %s and %s",
+                            crons.length, lastBackupAtEpochSeconds.length, offsetSeconds.length));
+        }
+
+        // range of the shifted reference times (i.e. reference - offset) per cron
+        Map<String, long[]> shiftedRanges = new HashMap<>();
+        for (int i = 0; i < crons.length; i++) {
+            if (lastBackupAtEpochSeconds[i] == Long.MIN_VALUE) {
+                continue;
+            }
+            long shiftedReference = referenceEpochSeconds - offsetSeconds[i];
+            long[] range = shiftedRanges.computeIfAbsent(crons[i], k -> new long[]{Long.MAX_VALUE, Long.MIN_VALUE});
+            range[0] = Math.min(range[0], shiftedReference);
+            range[1] = Math.max(range[1], shiftedReference);
+        }
+
+        Map<String, long[]> triggers = new HashMap<>();
+        for (Map.Entry<String, long[]> entry : shiftedRanges.entrySet()) {
+            triggers.put(entry.getKey(), triggersBefore(getCompiled(entry.getKey()), entry.getValue()[0], entry.getValue()[1]));
+        }
+
+        boolean[] due = new boolean[crons.length];
+        for (int i = 0; i < crons.length; i++) {
+            if (lastBackupAtEpochSeconds[i] == Long.MIN_VALUE) {
+                due[i] = true;
+                continue;
+            }
+            long shiftedReference = referenceEpochSeconds - offsetSeconds[i];
+            long[] cronTriggers = triggers.get(crons[i]);
+            long latestTrigger = cronTriggers == null ?
+                    latestTriggerBefore(getCompiled(crons[i]), shiftedReference) :
+                    latestBefore(cronTriggers, shiftedReference);
+            due[i] = lastBackupAtEpochSeconds[i] - offsetSeconds[i] < latestTrigger;
+        }
+        return due;
+    }
+
+    /**
+     * @return the sorted triggers that could be the latest trigger strictly before any time in [from, to], i.e. the
+     * latest one before from and all of them in [from, to). Null if there are too many to keep in memory
+     */
+    static long[] triggersBefore(CronExpression cron, long fromEpochSeconds, long toEpochSeconds) {
+        long[] buffer = new long[16];
+        int count = 0;
+
+        long latestBeforeFrom = latestTriggerBefore(cron, fromEpochSeconds);
+        if (latestBeforeFrom != Long.MIN_VALUE) {
+            buffer[count++] = latestBeforeFrom;
+        }
+        for (long next = computeNext(cron, fromEpochSeconds - 1); next < toEpochSeconds; next = computeNext(cron, next)) {
+            if (count == MAX_INDEXED_TRIGGERS) {
+                return null;
+            }
+            if (count == buffer.length) {
+                buffer = Arrays.copyOf(buffer, count * 2);
+            }
+            buffer[count++] = next;
+        }
+        return Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * @return the latest of the sorted triggers that is strictly before the given time, or Long.MIN_VALUE if none
+     */
+    static long latestBefore(long[] sortedTriggers, long beforeEpochSeconds) {
+        int low = 0;
+        int high = sortedTriggers.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedTriggers[mid] < beforeEpochSeconds) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low == 0 ? Long.MIN_VALUE : sortedTriggers[low - 1];
+    }
+
+    /**
+     * @return the latest trigger strictly before the given time, or Long.MIN_VALUE if there is none within a year
+     */
+    static long latestTriggerBefore(CronExpression cron, long beforeEpochSeconds) {
+        // CronExpression can only look forward. Look back with a growing window until a trigger is found
+        for (long window = 60; window <= 366L * 24 * 3600 * 2; window *= 2) {
+            long latest = Long.MIN_VALUE;
+            long next = computeNext(cron, beforeEpochSeconds - window - 1);
+            while (next < beforeEpochSeconds) {
+                latest = next;
+                next = computeNext(cron, next);
+            }
+            if (latest != Long.MIN_VALUE) {
+                return latest;
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    public static CacheStats getCompiledCacheStats() {
+        return COMPILED.stats();
+    }
+
+    public static CacheStats getNextTriggerCacheStats() {
+        return NEXT_TRIGGERS.stats();
+    }
+
+    static void invalidateAll() {
+        COMPILED.invalidateAll();
+        NEXT_TRIGGERS.invalidateAll();
+    }
+
+    private static long computeNext(CronExpression cron, long afterEpochSeconds) {
+        LocalDateTime next = cron.next(toDateTime(afterEpochSeconds));
+        return next == null ? NO_TRIGGER : next.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime toDateTime(long epochSeconds) {
+        return LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC);
+    }
+
+    private static class BucketKey {
+        private final String cron;
+        private final long bucketStart;
+
+        BucketKey(String cron, long bucketStart) {
+            this.cron = cron;
+            this.bucketStart = bucketStart;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            BucketKey that = (BucketKey) o;
+            return bucketStart == that.bucketStart && cron.equals(that.cron);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(cron, bucketStart);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Computes a stable per-table offset used to spread the cron triggers of tables sharing the same
+ * backup cron over a configurable window. The offset only depends on the table name, so a table is
+ * always shifted by the same amount across runs and the backup frequency is preserved.
+ */
+public class CronJitter {
+
+    public static final long DISABLED = 0L;
+
+    /**
+     * @param table         the table to compute the offset for
+     * @param windowSeconds the jitter window. Values <= 0 disable the jitter
+     * @return offset in seconds in the range [0, windowSeconds)
+     */
+    public static long computeOffsetSeconds(TableSpec table, long windowSeconds) {
+        if (windowSeconds <= 0) {
+            return DISABLED;
+        }
+        int hash = Hashing.murmur3_32_fixed()
+                .hashString(table.toSqlString(), StandardCharsets.UTF_8)
+                .asInt();
+        return Integer.toUnsignedLong(hash) % windowSeconds;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupMethod;
+import org.springframework.scheduling.support.CronExpression;
+
+import javax.annotation.Nullable;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays the Configurator cron decision (Configurator.getCronNextTrigger) for a set of tables over the
+ * heartbeats of the Dispatcher and reports how many backups become due at each heartbeat, and the jobs and bytes
+ * they produce per hour and backup operation project.
+ * It's used to compare the peak load with and without cron jitter before enabling it, and by BackupLoadSimulator
+ * to plan the capacity of a fallback policy change.
+ */
+public class CronLoadPlanner {
+
+    // tables are evaluated in chunks, so that large inventories could be streamed
+    static final int CHUNK_SIZE = 10_000;
+
+    public static class TableSchedule {
+        private final TableSpec table;
+        private final String cron;
+        @Nullable
+        private final Timestamp lastBackupAt;
+        private final BackupMethod method;
+        private final long sizeBytes;
+        // backup operation projects to spread the jobs over. Null to use the table project
+        @Nullable
+        private final List<String> operationProjects;
+
+        public TableSchedule(TableSpec table, String cron, @Nullable Timestamp lastBackupAt) {
+            this(table, cron, lastBackupAt, BackupMethod.BIGQUERY_SNAPSHOT, 0, null);
+        }
+
+        /**
+         * @param operationProjects the backup operation project or pool of the table's policy. Null or empty to use
+         *                          the table project
+         */
+        public TableSchedule(TableSpec table,
+                             String cron,
+                             @Nullable Timestamp lastBackupAt,
+                             BackupMethod method,
+                             long sizeBytes,
+                             @Nullable List<String> operationProjects) {
+            this.table = table;
+            this.cron = cron;
+            this.lastBackupAt = lastBackupAt;
+            this.method = method;
+            this.sizeBytes = sizeBytes;
+            this.operationProjects = operationProjects == null || operationProjects.isEmpty() ? null : operationProjects;
+        }
+
+        public TableSpec getTable() {
+            return table;
+        }
+
+        public String getCron() {
+            return cron;
+        }
+
+        @Nullable
+        public Timestamp getLastBackupAt() {
+            return lastBackupAt;
+        }
+
+        public BackupMethod getMethod() {
+            return method;
+        }
+
+        public long getSizeBytes() {
+            return sizeBytes;
+        }
+
+        @Nullable
+        public List<String> getOperationProjects() {
+            return operationProjects;
+        }
+    }
+
+    public static CronLoadReport plan(List<TableSchedule> tables,
+                                      String heartbeatCron,
+                                      Timestamp from,
+                                      Timestamp to,
+                                      long cronJitterWindowSeconds) {
+        return plan(tables.iterator(), heartbeatCron, from, to, cronJitterWindowSeconds);
+    }
+
+    /**
+     * @param tables                  tables with their backup cron and last backup time (null if never backed up).
+     *                                It's consumed once, so it could be streamed from a file
+     * @param heartbeatCron           the cron of the Dispatcher Cloud Scheduler (Spring 6-fields format)
+     * @param from                    start of the planning horizon (exclusive)
+     * @param to                      end of the planning horizon (inclusive)
+     * @param cronJitterWindowSeconds the jitter window to plan with. 0 plans without jitter
+     * @return the number of due backups per heartbeat and the jobs and bytes per hour and operation project
+     */
+    public static CronLoadReport plan(Iterator<TableSchedule> tables,
+                                      String heartbeatCron,
+                                      Timestamp from,
+                                      Timestamp to,
+                                      long cronJitterWindowSeconds) {
+
+        long fromSeconds = from.getSeconds();
+        long toSeconds = to.getSeconds();
+
+        long[] heartbeats = computeHeartbeats(CronCache.getCompiled(heartbeatCron), fromSeconds, toSeconds);
+        CronLoadReport report = new CronLoadReport(heartbeats, fromSeconds, toSeconds);
+        if (heartbeats.length == 0) {
+            return report;
+        }
+
+        // the estate uses few distinct crons and operation projects, prepare them once.
+        // Cron lookups could go back up to one jitter window before the horizon
+        long timelineFromSeconds = fromSeconds - Math.max(cronJitterWindowSeconds, 0);
+        Map<String, CronTimeline> timelines = new HashMap<>();
+        Map<List<String>, int[]> projectIndexes = new HashMap<>();
+
+        List<TableSchedule> chunk = new ArrayList<>(CHUNK_SIZE);
+        while (tables.hasNext()) {
+            chunk.clear();
+            while (tables.hasNext() && chunk.size() < CHUNK_SIZE) {
+                chunk.add(tables.next());
+            }
+
+            String[] crons = new String[chunk.size()];
+            long[] lastBackupAtSeconds = new long[chunk.size()];
+            long[] offsetSeconds = new long[chunk.size()];
+            for (int t = 0; t < chunk.size(); t++) {
+                TableSchedule schedule = chunk.get(t);
+                crons[t] = schedule.getCron();
+                lastBackupAtSeconds[t] = schedule.getLastBackupAt() == null ?
+                        Long.MIN_VALUE :
+                        schedule.getLastBackupAt().getSeconds();
+                offsetSeconds[t] = CronJitter.computeOffsetSeconds(schedule.getTable(), cronJitterWindowSeconds);
+            }
+
+            // the first heartbeat is evaluated in bulk, the same way as the Configurator evaluates a batch of tables
+            boolean[] isDueAtFirstHeartbeat = CronCache.evaluateDue(crons, lastBackupAtSeconds, offsetSeconds, heartbeats[0]);
+
+            for (int t = 0; t < chunk.size(); t++) {
+                TableSchedule schedule = chunk.get(t);
+                CronTimeline timeline = timelines.computeIfAbsent(
+                        schedule.getCron(),
+                        cron -> new CronTimeline(CronCache.getCompiled(cron), timelineFromSeconds, toSeconds)
+                );
+                int[] scheduleProjectIndexes = projectIndexes.computeIfAbsent(
+                        schedule.getOperationProjects() == null ?
+                                List.of(schedule.getTable().getProject()) :
+                                schedule.getOperationProjects(),
+                        projects -> projects.stream().mapToInt(report::getOrCreateProjectIndex).toArray()
+                );
+                int tableHash = schedule.getTable().hashCode();
+
+                // same rules as Configurator.isBackupCronTime: a table that was never backed up is due at the first run.
+                // Otherwise, it's due at the first heartbeat strictly after the next cron trigger
+                int i = isDueAtFirstHeartbeat[t] ?
+                        0 :
+                        firstHeartbeatAfter(heartbeats, timeline, lastBackupAtSeconds[t], offsetSeconds[t], 1);
+                while (i < heartbeats.length) {
+                    // at runtime the project is picked from a pool based on the (random) tracking ID, i.e. uniformly.
+                    // Model it with a cheap hash of the table and the heartbeat
+                    int projectIndex = scheduleProjectIndexes.length == 1 ?
+                            scheduleProjectIndexes[0] :
+                            scheduleProjectIndexes[Math.floorMod(mix(tableHash, i), scheduleProjectIndexes.length)];
+
+                    report.record(i, projectIndex, schedule.getMethod(), schedule.getSizeBytes());
+
+                    i = firstHeartbeatAfter(heartbeats, timeline, heartbeats[i], offsetSeconds[t], i + 1);
+                }
+            }
+        }
+
+        return report;
+    }
+
+    static long[] computeHeartbeats(CronExpression heartbeatCron, long fromSeconds, long toSeconds) {
+        List<Long> heartbeats = new ArrayList<>();
+        for (LocalDateTime next = heartbeatCron.next(CronTimeline.toDateTime(fromSeconds));
+             next != null && next.toEpochSecond(ZoneOffset.UTC) <= toSeconds;
+             next = heartbeatCron.next(next)) {
+            heartbeats.add(next.toEpochSecond(ZoneOffset.UTC));
+        }
+        return heartbeats.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * @return index of the first heartbeat (starting from fromIndex) that is strictly after the next trigger of the
+     * shifted cron following lastBackupAtSeconds, or heartbeats.length if none
+     */
+    static int firstHeartbeatAfter(long[] heartbeats,
+                                   CronTimeline timeline,
+                                   long lastBackupAtSeconds,
+                                   long offsetSeconds,
+                                   int fromIndex) {
+        long nextTrigger = timeline.next(lastBackupAtSeconds - offsetSeconds);
+        if (nextTrigger == Long.MAX_VALUE) {
+            return heartbeats.length;
+        }
+        return CronTimeline.firstAfter(heartbeats, nextTrigger + offsetSeconds, fromIndex);
+    }
+
+    // murmur3 finalizer over the table hash and the heartbeat index
+    static int mix(int tableHash, int heartbeatIndex) {
+        long h = ((long) tableHash << 32) | (heartbeatIndex & 0xffffffffL);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
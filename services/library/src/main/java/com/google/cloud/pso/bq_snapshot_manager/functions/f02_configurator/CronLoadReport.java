@@ -0,0 +1,238 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupMethod;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Load produced by CronLoadPlanner: the number of due backups per heartbeat and the hourly histograms of backup jobs
+ * and bytes per backup operation project.
+ */
+public class CronLoadReport {
+
+    public static final String CSV_HEADER =
+            "hour,operation_project,bq_snapshot_jobs,bq_snapshot_bytes,gcs_export_jobs,gcs_export_bytes";
+
+    private static final long SECONDS_PER_HOUR = 3600;
+
+    private final long[] heartbeats;
+    private final long[] dueBackups;
+
+    private final long firstHourSeconds;
+    private final int hoursCount;
+    // hour index of each heartbeat
+    private final int[] heartbeatHours;
+
+    private final Map<String, Integer> projectIndex = new HashMap<>();
+    private final List<String> operationProjects = new ArrayList<>();
+    private final List<long[]> bqSnapshotJobs = new ArrayList<>();
+    private final List<long[]> bqSnapshotBytes = new ArrayList<>();
+    private final List<long[]> gcsExportJobs = new ArrayList<>();
+    private final List<long[]> gcsExportBytes = new ArrayList<>();
+
+    /**
+     * @param heartbeats heartbeats of the horizon in epoch seconds, sorted
+     * @param fromSeconds start of the horizon (exclusive)
+     * @param toSeconds end of the horizon (inclusive)
+     */
+    CronLoadReport(long[] heartbeats, long fromSeconds, long toSeconds) {
+        this.heartbeats = heartbeats;
+        this.dueBackups = new long[heartbeats.length];
+
+        this.firstHourSeconds = Math.floorDiv(fromSeconds, SECONDS_PER_HOUR) * SECONDS_PER_HOUR;
+        this.hoursCount = (int) ((toSeconds - firstHourSeconds) / SECONDS_PER_HOUR) + 1;
+        this.heartbeatHours = new int[heartbeats.length];
+        for (int i = 0; i < heartbeats.length; i++) {
+            heartbeatHours[i] = (int) ((heartbeats[i] - firstHourSeconds) / SECONDS_PER_HOUR);
+        }
+    }
+
+    int getOrCreateProjectIndex(String operationProject) {
+        return projectIndex.computeIfAbsent(operationProject, this::addProject);
+    }
+
+    void record(int heartbeatIndex, int projectIndex, BackupMethod method, long bytes) {
+        dueBackups[heartbeatIndex]++;
+
+        int hour = heartbeatHours[heartbeatIndex];
+        if (method.equals(BackupMethod.BIGQUERY_SNAPSHOT) || method.equals(BackupMethod.BOTH)) {
+            bqSnapshotJobs.get(projectIndex)[hour]++;
+            bqSnapshotBytes.get(projectIndex)[hour] += bytes;
+        }
+        if (method.equals(BackupMethod.GCS_SNAPSHOT) || method.equals(BackupMethod.BOTH)) {
+            gcsExportJobs.get(projectIndex)[hour]++;
+            gcsExportBytes.get(projectIndex)[hour] += bytes;
+        }
+    }
+
+    private int addProject(String operationProject) {
+        operationProjects.add(operationProject);
+        bqSnapshotJobs.add(new long[hoursCount]);
+        bqSnapshotBytes.add(new long[hoursCount]);
+        gcsExportJobs.add(new long[hoursCount]);
+        gcsExportBytes.add(new long[hoursCount]);
+        return operationProjects.size() - 1;
+    }
+
+    /**
+     * @return number of due backups per heartbeat, in heartbeat order
+     */
+    public Map<LocalDateTime, Long> getDueBackupsPerHeartbeat() {
+        Map<LocalDateTime, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < heartbeats.length; i++) {
+            result.put(CronTimeline.toDateTime(heartbeats[i]), dueBackups[i]);
+        }
+        return result;
+    }
+
+    public int getHeartbeatsCount() {
+        return heartbeats.length;
+    }
+
+    public long getTotalBackups() {
+        long total = 0;
+        for (long count : dueBackups) {
+            total += count;
+        }
+        return total;
+    }
+
+    public long getPeakBackups() {
+        long peak = 0;
+        for (long count : dueBackups) {
+            peak = Math.max(peak, count);
+        }
+        return peak;
+    }
+
+    public double getAverageBackups() {
+        return heartbeats.length == 0 ? 0 : (double) getTotalBackups() / heartbeats.length;
+    }
+
+    public LocalDateTime getHour(int hour) {
+        return CronTimeline.toDateTime(firstHourSeconds + hour * SECONDS_PER_HOUR);
+    }
+
+    public int getHoursCount() {
+        return hoursCount;
+    }
+
+    public List<String> getOperationProjects() {
+        return Collections.unmodifiableList(operationProjects);
+    }
+
+    public long getBqSnapshotJobs(String operationProject, int hour) {
+        return get(bqSnapshotJobs, operationProject, hour);
+    }
+
+    public long getBqSnapshotBytes(String operationProject, int hour) {
+        return get(bqSnapshotBytes, operationProject, hour);
+    }
+
+    public long getGcsExportJobs(String operationProject, int hour) {
+        return get(gcsExportJobs, operationProject, hour);
+    }
+
+    public long getGcsExportBytes(String operationProject, int hour) {
+        return get(gcsExportBytes, operationProject, hour);
+    }
+
+    private long get(List<long[]> histogram, String operationProject, int hour) {
+        Integer index = projectIndex.get(operationProject);
+        return index == null ? 0 : histogram.get(index)[hour];
+    }
+
+    /**
+     * @return total number of jobs (BigQuery snapshot and GCS export) of all operation projects per hour
+     */
+    public long[] getTotalJobsPerHour() {
+        long[] total = new long[hoursCount];
+        for (int p = 0; p < operationProjects.size(); p++) {
+            for (int h = 0; h < hoursCount; h++) {
+                total[h] += bqSnapshotJobs.get(p)[h] + gcsExportJobs.get(p)[h];
+            }
+        }
+        return total;
+    }
+
+    public long getTotalJobs() {
+        long total = 0;
+        for (long jobs : getTotalJobsPerHour()) {
+            total += jobs;
+        }
+        return total;
+    }
+
+    public long getPeakHourlyJobs() {
+        long peak = 0;
+        for (long jobs : getTotalJobsPerHour()) {
+            peak = Math.max(peak, jobs);
+        }
+        return peak;
+    }
+
+    /**
+     * Writes one CSV row per hour and operation project that has at least one job
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        for (int h = 0; h < hoursCount; h++) {
+            for (int p = 0; p < operationProjects.size(); p++) {
+                long bqJobs = bqSnapshotJobs.get(p)[h];
+                long gcsJobs = gcsExportJobs.get(p)[h];
+                if (bqJobs == 0 && gcsJobs == 0) {
+                    continue;
+                }
+                writer.write(String.format("%s,%s,%d,%d,%d,%d\n",
+                        getHour(h),
+                        operationProjects.get(p),
+                        bqJobs,
+                        bqSnapshotBytes.get(p)[h],
+                        gcsJobs,
+                        gcsExportBytes.get(p)[h]));
+            }
+        }
+        writer.flush();
+    }
+
+    @Override
+    public String toString() {
+        return "CronLoadReport{" +
+                "heartbeats=" + getHeartbeatsCount() +
+                ", totalBackups=" + getTotalBackups() +
+                ", peakBackups=" + getPeakBackups() +
+                ", averageBackups=" + getAverageBackups() +
+                ", hoursCount=" + hoursCount +
+                ", operationProjects=" + operationProjects.size() +
+                ", totalJobs=" + getTotalJobs() +
+                ", peakHourlyJobs=" + getPeakHourlyJobs() +
+                '}';
+    }
+}
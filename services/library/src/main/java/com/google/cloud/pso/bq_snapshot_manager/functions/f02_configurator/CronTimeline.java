@@ -0,0 +1,104 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator;
+
+import org.springframework.scheduling.support.CronExpression;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Precomputed trigger times of a cron expression over a time range. Lookups inside the range are a binary search
+ * instead of a CronExpression.next() call, which makes replaying the same cron for many tables cheap.
+ * Lookups outside the range fall back to CronExpression.next().
+ */
+public class CronTimeline {
+
+    // guard against very frequent crons (e.g. every second) over long horizons
+    static final int MAX_TRIGGERS = 100_000;
+
+    private final CronExpression cron;
+    private final long coveredFromEpochSeconds;
+    // sorted trigger times in epoch seconds. Null if the cron triggers too often to be precomputed
+    private final long[] triggers;
+
+    /**
+     * @param cron              the cron expression
+     * @param fromEpochSeconds  lookups at or after this time are served from the precomputed triggers
+     * @param toEpochSeconds    triggers are precomputed until the first one strictly after this time
+     */
+    public CronTimeline(CronExpression cron, long fromEpochSeconds, long toEpochSeconds) {
+        this.cron = cron;
+        this.coveredFromEpochSeconds = fromEpochSeconds;
+
+        long[] buffer = new long[64];
+        int count = 0;
+        LocalDateTime next = cron.next(toDateTime(fromEpochSeconds));
+        while (next != null && count < MAX_TRIGGERS) {
+            long nextEpochSeconds = next.toEpochSecond(ZoneOffset.UTC);
+            if (count == buffer.length) {
+                buffer = Arrays.copyOf(buffer, count * 2);
+            }
+            buffer[count++] = nextEpochSeconds;
+            if (nextEpochSeconds > toEpochSeconds) {
+                break;
+            }
+            next = cron.next(next);
+        }
+        this.triggers = count < MAX_TRIGGERS ? Arrays.copyOf(buffer, count) : null;
+    }
+
+    /**
+     * @return the first trigger strictly after the given time in epoch seconds, or Long.MAX_VALUE if the cron
+     * doesn't trigger anymore
+     */
+    public long next(long epochSeconds) {
+        if (triggers != null && epochSeconds >= coveredFromEpochSeconds) {
+            int index = firstAfter(triggers, epochSeconds, 0);
+            if (index < triggers.length) {
+                return triggers[index];
+            }
+        }
+        LocalDateTime next = cron.next(toDateTime(epochSeconds));
+        return next == null ? Long.MAX_VALUE : next.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * @return the index of the first element (starting from fromIndex) of the sorted array that is strictly greater
+     * than value, or sortedValues.length if none
+     */
+    static int firstAfter(long[] sortedValues, long value, int fromIndex) {
+        int low = fromIndex;
+        int high = sortedValues.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedValues[mid] > value) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    static LocalDateTime toDateTime(long epochSeconds) {
+        return LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC);
+    }
+}
@@ -21,19 +21,26 @@ package com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter;
 import com.google.cloud.Timestamp;
 import com.google.cloud.Tuple;
 import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.RetryableApplicationException;
 import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
 import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupMethod;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.GCSSnapshotEngine;
 import com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.TaggerRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.TaggerRequestLookup;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.TaggerRequestTransport;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.LoggingHelper;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.TrackingHelper;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.Utils;
 import com.google.cloud.pso.bq_snapshot_manager.services.bq.BigQueryService;
+import com.google.cloud.pso.bq_snapshot_manager.services.export.StorageReadExporter;
 import com.google.cloud.pso.bq_snapshot_manager.services.map.PersistentMap;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.FailedPubSubMessage;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubPublishResults;
 import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubService;
 import com.google.cloud.pso.bq_snapshot_manager.services.set.PersistentSet;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
 
 public class GCSSnapshoter {
@@ -50,6 +57,10 @@ public class GCSSnapshoter {
 
     private final String persistentMapObjectPrefix;
 
+    private final StorageReadExporter storageReadExporter;
+
+    private final TaggerRequestTransport taggerRequestTransport;
+
     public GCSSnapshoter(SnapshoterConfig config,
                          BigQueryService bqService,
                          PubSubService pubSubService,
@@ -57,6 +68,30 @@ public class GCSSnapshoter {
                          String persistentSetObjectPrefix,
                          PersistentMap persistentMap,
                          String persistentMapObjectPrefix,
+                         StorageReadExporter storageReadExporter,
+                         Integer functionNumber
+    ) {
+        this(config,
+                bqService,
+                pubSubService,
+                persistentSet,
+                persistentSetObjectPrefix,
+                persistentMap,
+                persistentMapObjectPrefix,
+                storageReadExporter,
+                TaggerRequestTransport.PERSISTENT_MAP,
+                functionNumber);
+    }
+
+    public GCSSnapshoter(SnapshoterConfig config,
+                         BigQueryService bqService,
+                         PubSubService pubSubService,
+                         PersistentSet persistentSet,
+                         String persistentSetObjectPrefix,
+                         PersistentMap persistentMap,
+                         String persistentMapObjectPrefix,
+                         StorageReadExporter storageReadExporter,
+                         TaggerRequestTransport taggerRequestTransport,
                          Integer functionNumber
     ) {
         this.config = config;
@@ -66,6 +101,8 @@ public class GCSSnapshoter {
         this.persistentSetObjectPrefix = persistentSetObjectPrefix;
         this.persistentMap = persistentMap;
         this.persistentMapObjectPrefix = persistentMapObjectPrefix;
+        this.storageReadExporter = storageReadExporter;
+        this.taggerRequestTransport = taggerRequestTransport;
 
         logger = new LoggingHelper(
                 GCSSnapshoter.class.getSimpleName(),
@@ -92,7 +129,7 @@ public class GCSSnapshoter {
         }
     }
 
-    public GCSSnapshoterResponse execute(SnapshoterRequest request, Timestamp operationTs, String pubSubMessageId) throws IOException, NonRetryableApplicationException, InterruptedException {
+    public GCSSnapshoterResponse execute(SnapshoterRequest request, Timestamp operationTs, String pubSubMessageId) throws IOException, NonRetryableApplicationException, RetryableApplicationException, InterruptedException {
 
         // run common service start logging and checks
         Utils.runServiceStartRoutines(
@@ -145,32 +182,37 @@ public class GCSSnapshoter {
                 )
         );
 
-        if(!request.isDryRun()){
-            // create an async bq export job
-
-            String jobId = TrackingHelper.generateBQExportJobId(request.getTrackingId(), config.getApplicationName());
+        GCSSnapshotEngine engine = getSnapshotEngine(request);
 
-            // We create the tagging request and added it to a persistent storage
-            // The Tagger service will receive notifications of export job completion via log sinks and pick up the tagger request from the persistent storage
-            // Make sure the file is stored first before running the export job. In case of non-fatal error of file creation and retry, we don't re-run the export job
-            TaggerRequest taggerRequest = new TaggerRequest(
-                    request.getTargetTable(),
-                    request.getRunId(),
-                    request.getTrackingId(),
-                    request.isDryRun(),
-                    request.getBackupPolicyAndState(),
-                    BackupMethod.GCS_SNAPSHOT,
-                    null,
+        if(!request.isDryRun() && engine.equals(GCSSnapshotEngine.STORAGE_READ_API)){
+            // export in-process and notify the Tagger directly since there is no job completion event to wait for
+            exportWithStorageReadApi(
+                    request,
+                    sourceTableWithTimeTravelTuple.y(),
                     gcsDestinationUri,
                     operationTs
             );
+        }
 
-            String taggerRequestFile = String.format("%s/%s", persistentMapObjectPrefix, jobId);
-            persistentMap.put(taggerRequestFile, taggerRequest.toJsonString());
+        if(!request.isDryRun() && engine.equals(GCSSnapshotEngine.EXTRACT_JOB)){
+            // create an async bq export job
+
+            String jobId = TrackingHelper.generateBQExportJobId(request.getTrackingId(), config.getApplicationName());
+
+            // The Tagger service will receive notifications of export job completion via log sinks and rebuild the tagger request from
+            // the event and the job labels if possible, otherwise pick it up from the persistent storage
+            boolean rebuildFromJobLabels = taggerRequestTransport.equals(TaggerRequestTransport.JOB_LABELS)
+                    && TaggerRequestLookup.canRebuildFromJobLabels(request.getBackupPolicyAndState());
+
+            if (!rebuildFromJobLabels) {
+                storeTaggerRequest(request, jobId, gcsDestinationUri, operationTs);
+            }
 
-            Map<String, String> jobLabels = new HashMap<>();
             // labels has to be max 63 chars, contain only lowercase letters, numeric characters, underscores, and dashes. All characters must use UTF-8 encoding, and international characters are allowed.
-            jobLabels.put("app", config.getApplicationName());
+            Map<String, String> jobLabels = TaggerRequestLookup.createJobLabels(
+                    config.getApplicationName(),
+                    rebuildFromJobLabels ? operationTs : null
+            );
 
             // API Call
             bqService.exportToGCS(
@@ -190,9 +232,11 @@ public class GCSSnapshoter {
                 request.isDryRun(),
                 request.getTrackingId(),
                 request.getTargetTable(),
-                String.format("BigQuery GCS export submitted for table %s to %s",
+                String.format("BigQuery GCS export %s for table %s to %s using engine %s",
+                        engine.equals(GCSSnapshotEngine.EXTRACT_JOB)? "submitted": "completed",
                         request.getTargetTable().toSqlString(),
-                        gcsDestinationUri
+                        gcsDestinationUri,
+                        engine
                 )
         );
 
@@ -215,6 +259,85 @@ public class GCSSnapshoter {
         );
     }
 
+    // Make sure the file is stored first before running the export job. In case of non-fatal error of file creation and retry, we don't re-run the export job
+    private void storeTaggerRequest(SnapshoterRequest request,
+                                    String jobId,
+                                    String gcsDestinationUri,
+                                    Timestamp operationTs) {
+
+        TaggerRequest taggerRequest = new TaggerRequest(
+                request.getTargetTable(),
+                request.getRunId(),
+                request.getTrackingId(),
+                request.isDryRun(),
+                request.getBackupPolicyAndState(),
+                BackupMethod.GCS_SNAPSHOT,
+                null,
+                gcsDestinationUri,
+                operationTs
+        );
+
+        String taggerRequestFile = String.format("%s/%s", persistentMapObjectPrefix, jobId);
+        persistentMap.put(taggerRequestFile, taggerRequest.toJsonString());
+    }
+
+    private void exportWithStorageReadApi(SnapshoterRequest request,
+                                          Long timeTravelMillis,
+                                          String gcsDestinationUri,
+                                          Timestamp operationTs) throws IOException, InterruptedException {
+
+        if (storageReadExporter == null) {
+            throw new IllegalStateException(String.format("%s engine is requested but no StorageReadExporter is configured",
+                    GCSSnapshotEngine.STORAGE_READ_API));
+        }
+
+        Tuple<Integer, Long> filesAndRows = storageReadExporter.export(
+                request.getTargetTable(),
+                timeTravelMillis,
+                gcsDestinationUri,
+                request.getBackupPolicyAndState().getGcsExportFormat()
+        );
+
+        logger.logInfoWithTracker(
+                request.isDryRun(),
+                request.getTrackingId(),
+                request.getTargetTable(),
+                String.format("Storage Read API export wrote %s rows in %s files to %s",
+                        filesAndRows.y(),
+                        filesAndRows.x(),
+                        gcsDestinationUri
+                )
+        );
+
+        TaggerRequest taggerRequest = new TaggerRequest(
+                request.getTargetTable(),
+                request.getRunId(),
+                request.getTrackingId(),
+                request.isDryRun(),
+                request.getBackupPolicyAndState(),
+                BackupMethod.GCS_SNAPSHOT,
+                null,
+                gcsDestinationUri,
+                operationTs
+        );
+
+        PubSubPublishResults publishResults = pubSubService.publishTableOperationRequests(
+                config.getProjectId(),
+                config.getOutputTopic(),
+                Arrays.asList(taggerRequest)
+        );
+
+        for (FailedPubSubMessage msg : publishResults.getFailedMessages()) {
+            String logMsg = String.format("Failed to publish this message %s", msg.toString());
+            logger.logWarnWithTracker(request.isDryRun(),request.getTrackingId(), request.getTargetTable(), logMsg);
+        }
+    }
+
+    public static GCSSnapshotEngine getSnapshotEngine(SnapshoterRequest request) {
+        // policies created before the engine option was introduced default to extract jobs
+        GCSSnapshotEngine engine = request.getBackupPolicyAndState().getGcsSnapshotEngine();
+        return engine == null ? GCSSnapshotEngine.EXTRACT_JOB : engine;
+    }
 
     public static String prepareGcsUriForMultiFileExport(String gcsUri, String folderName) {
         // when exporting multiple files the uri should be gs://path/*
@@ -21,8 +21,12 @@ package com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter;
 import com.google.cloud.pso.bq_snapshot_manager.entities.TableOperationRequestResponse;
 import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
 import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicyAndState;
+import com.google.cloud.pso.bq_snapshot_manager.services.bq.OperationProjectScheduler;
 import com.google.common.base.Objects;
 
+import javax.annotation.Nullable;
+import java.util.List;
+
 public class SnapshoterRequest extends TableOperationRequestResponse {
 
     private final BackupPolicyAndState backupPolicyAndState;
@@ -58,6 +62,19 @@ public class SnapshoterRequest extends TableOperationRequestResponse {
     }
 
     public String computeBackupOperationProject(){
+        return computeBackupOperationProject(null);
+    }
+
+    public String computeBackupOperationProject(@Nullable OperationProjectScheduler scheduler){
+        // if the backup policy specifies a pool of projects, spread the operations over them based on the tracking ID
+        // (and skip saturated projects if a scheduler is available)
+        List<String> pool = this.backupPolicyAndState.getBackupOperationProjectPool();
+        if (pool != null && !pool.isEmpty()) {
+            return scheduler == null ?
+                    OperationProjectScheduler.selectProjectByHash(pool, this.getTrackingId()) :
+                    scheduler.selectProject(pool, this.getTrackingId());
+        }
+
         // if the backup policy specifies a project to run the backup operations on, use it. Otherwise,
         // use the source table project
         return this.backupPolicyAndState.getBackupOperationProject() != null?
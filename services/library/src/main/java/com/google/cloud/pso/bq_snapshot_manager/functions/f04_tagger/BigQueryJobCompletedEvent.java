@@ -0,0 +1,418 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubJsonReader;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The fields of a BigQuery job completion audit log entry (protoPayload.serviceData.jobCompletedEvent.job)
+ * that the Tagger needs. The entry is parsed in one streaming pass and all other subtrees
+ * (e.g. statistics, referenced tables, request metadata) are skipped without being materialized.
+ */
+public class BigQueryJobCompletedEvent {
+
+    private final String jobId;
+    private final String projectId;
+    private final String location;
+    private final Map<String, String> labels;
+    private final String state;
+    private final String errorMessage;
+    private final TableSpec sourceTable;
+    private final String destinationUri;
+
+    public BigQueryJobCompletedEvent(String jobId,
+                                     String projectId,
+                                     @Nullable String location,
+                                     Map<String, String> labels,
+                                     @Nullable String state,
+                                     @Nullable String errorMessage,
+                                     @Nullable TableSpec sourceTable,
+                                     @Nullable String destinationUri) {
+        this.jobId = jobId;
+        this.projectId = projectId;
+        this.location = location;
+        this.labels = labels;
+        this.state = state;
+        this.errorMessage = errorMessage;
+        this.sourceTable = sourceTable;
+        this.destinationUri = destinationUri;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getProjectId() {
+        return projectId;
+    }
+
+    @Nullable
+    public String getLocation() {
+        return location;
+    }
+
+    public Map<String, String> getLabels() {
+        return labels;
+    }
+
+    @Nullable
+    public String getLabel(String label) {
+        return labels.get(label);
+    }
+
+    @Nullable
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * @return the job error message or null if the job has no error
+     */
+    @Nullable
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * @return the exported table without the time travel decorator, or null if it's not an extract job
+     */
+    @Nullable
+    public TableSpec getSourceTable() {
+        return sourceTable;
+    }
+
+    /**
+     * @return the first destination URI of an extract job (i.e. the wildcard URI of a multi-file export), or null if it's not an extract job
+     */
+    @Nullable
+    public String getDestinationUri() {
+        return destinationUri;
+    }
+
+    // if job has error message then it's not successful
+    public boolean isSuccessful() {
+        return errorMessage == null;
+    }
+
+    /**
+     * @return the parsed event or null if the payload is not a BigQuery job completion event
+     * @throws NonRetryableApplicationException if the payload is not valid JSON
+     */
+    @Nullable
+    public static BigQueryJobCompletedEvent parse(byte[] data) throws NonRetryableApplicationException {
+        try {
+            return parse(PubSubJsonReader.open(data));
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            throw new NonRetryableApplicationException(
+                    String.format("Failed to parse BigQuery job completion event: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * @return the parsed event or null if the document is not a BigQuery job completion event
+     */
+    @Nullable
+    public static BigQueryJobCompletedEvent parse(JsonReader reader) throws IOException {
+        Builder builder = new Builder();
+        if (!beginObject(reader)) {
+            return null;
+        }
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("protoPayload") && beginObject(reader)) {
+                readProtoPayload(reader, builder);
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return builder.build();
+    }
+
+    private static void readProtoPayload(JsonReader reader, Builder builder) throws IOException {
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("serviceData") && beginObject(reader)) {
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("jobCompletedEvent") && beginObject(reader)) {
+                        while (reader.hasNext()) {
+                            if (reader.nextName().equals("job") && beginObject(reader)) {
+                                readJob(reader, builder);
+                                reader.endObject();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+    }
+
+    private static void readJob(JsonReader reader, Builder builder) throws IOException {
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "jobName":
+                    if (beginObject(reader)) {
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "jobId":
+                                    builder.jobId = nextStringOrNull(reader);
+                                    break;
+                                case "projectId":
+                                    builder.projectId = nextStringOrNull(reader);
+                                    break;
+                                case "location":
+                                    builder.location = nextStringOrNull(reader);
+                                    break;
+                                default:
+                                    reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case "jobConfiguration":
+                    if (beginObject(reader)) {
+                        while (reader.hasNext()) {
+                            String name = reader.nextName();
+                            if (name.equals("labels") && beginObject(reader)) {
+                                while (reader.hasNext()) {
+                                    String label = reader.nextName();
+                                    builder.labels.put(label, nextStringOrNull(reader));
+                                }
+                                reader.endObject();
+                            } else if (name.equals("extract") && beginObject(reader)) {
+                                readExtract(reader, builder);
+                                reader.endObject();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case "jobStatus":
+                    if (beginObject(reader)) {
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "state":
+                                    builder.state = nextStringOrNull(reader);
+                                    break;
+                                case "error":
+                                    builder.errorMessage = readErrorMessage(reader);
+                                    break;
+                                default:
+                                    reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+    }
+
+    private static void readExtract(JsonReader reader, Builder builder) throws IOException {
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("sourceTable") && beginObject(reader)) {
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "projectId":
+                            builder.sourceProject = nextStringOrNull(reader);
+                            break;
+                        case "datasetId":
+                            builder.sourceDataset = nextStringOrNull(reader);
+                            break;
+                        case "tableId":
+                            builder.sourceTable = nextStringOrNull(reader);
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (name.equals("destinationUris") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    String uri = nextStringOrNull(reader);
+                    if (builder.destinationUri == null) {
+                        builder.destinationUri = uri;
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+    }
+
+    /**
+     * The error is an object with a 'message' field. Successful jobs have an empty object (or, in some sinks, the string "{}")
+     */
+    @Nullable
+    private static String readErrorMessage(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING) {
+            String error = reader.nextString();
+            return error.isEmpty() || error.equals("{}") ? null : error;
+        }
+        if (token != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String message = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("message")) {
+                message = nextStringOrNull(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return message;
+    }
+
+    /**
+     * Begins the next value if it's an object. Other values are left for the caller to skip
+     *
+     * @return true if an object was started
+     */
+    private static boolean beginObject(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            return true;
+        }
+        return false;
+    }
+
+    @Nullable
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        // numbers and booleans are returned as strings
+        if (reader.peek() == JsonToken.BOOLEAN) {
+            return String.valueOf(reader.nextBoolean());
+        }
+        if (reader.peek() == JsonToken.BEGIN_OBJECT || reader.peek() == JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static class Builder {
+        private String jobId;
+        private String projectId;
+        private String location;
+        private final Map<String, String> labels = new HashMap<>();
+        private String state;
+        private String errorMessage;
+        private String sourceProject;
+        private String sourceDataset;
+        private String sourceTable;
+        private String destinationUri;
+
+        @Nullable
+        private BigQueryJobCompletedEvent build() {
+            if (jobId == null) {
+                return null;
+            }
+            TableSpec sourceTableSpec = null;
+            if (sourceProject != null && sourceDataset != null && sourceTable != null) {
+                // remove the time travel decorator (i.e. table@millis)
+                int decorator = sourceTable.indexOf('@');
+                sourceTableSpec = new TableSpec(sourceProject,
+                        sourceDataset,
+                        decorator < 0 ? sourceTable : sourceTable.substring(0, decorator));
+            }
+            return new BigQueryJobCompletedEvent(jobId,
+                    projectId,
+                    location,
+                    Collections.unmodifiableMap(labels),
+                    state,
+                    errorMessage,
+                    sourceTableSpec,
+                    destinationUri);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BigQueryJobCompletedEvent that = (BigQueryJobCompletedEvent) o;
+        return Objects.equals(jobId, that.jobId) &&
+                Objects.equals(projectId, that.projectId) &&
+                Objects.equals(location, that.location) &&
+                Objects.equals(labels, that.labels) &&
+                Objects.equals(state, that.state) &&
+                Objects.equals(errorMessage, that.errorMessage) &&
+                Objects.equals(sourceTable, that.sourceTable) &&
+                Objects.equals(destinationUri, that.destinationUri);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(jobId, projectId, location, labels, state, errorMessage, sourceTable, destinationUri);
+    }
+
+    @Override
+    public String toString() {
+        return "BigQueryJobCompletedEvent{" +
+                "jobId='" + jobId + '\'' +
+                ", projectId='" + projectId + '\'' +
+                ", location='" + location + '\'' +
+                ", labels=" + labels +
+                ", state='" + state + '\'' +
+                ", errorMessage='" + errorMessage + '\'' +
+                ", sourceTable=" + sourceTable +
+                ", destinationUri='" + destinationUri + '\'' +
+                '}';
+    }
+}
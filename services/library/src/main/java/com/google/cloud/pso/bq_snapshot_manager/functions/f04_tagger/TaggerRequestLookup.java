@@ -0,0 +1,168 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.RetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupConfigSource;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupMethod;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicyAndState;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.TrackingHelper;
+import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.BackupPolicyService;
+import com.google.cloud.pso.bq_snapshot_manager.services.map.PersistentMap;
+import com.google.gson.Gson;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves the TaggerRequest of a GCS export job from its completion event.
+ * <p>
+ * With {@link TaggerRequestTransport#JOB_LABELS}, the request is rebuilt from the event (tracking ID in the job ID,
+ * source table and destination URI), the operation time label and the backup policy stored for the table.
+ * Otherwise, or if any of these is missing, the request is read from the persistent map where the GCS Snapshoter
+ * stored it before submitting the job.
+ * <p>
+ * Jobs of another application are rejected, and failed jobs are resolved from the event only since they don't update the backup state.
+ */
+public class TaggerRequestLookup {
+
+    public static final String PERSISTENT_MAP_PREFIX = "snapshoter-gcs-tagger-requests";
+    public static final String APP_LABEL = "app";
+    // operation time in microseconds since epoch. Only set if the request can be rebuilt from the job labels
+    public static final String OPERATION_TS_LABEL = "operation_ts";
+
+    private final PersistentMap persistentMap;
+    private final String applicationName;
+    private final Gson gson;
+
+    public TaggerRequestLookup(PersistentMap persistentMap, String applicationName) {
+        this.persistentMap = persistentMap;
+        this.applicationName = applicationName;
+        this.gson = new Gson();
+    }
+
+    public static String getPersistentMapKey(String jobId) {
+        return String.format("%s/%s", PERSISTENT_MAP_PREFIX, jobId);
+    }
+
+    /**
+     * The Tagger writes back the policy it receives. Only a manually attached policy is read by the Configurator
+     * from the backup policy store as is, so only then it can be taken from the store instead of the request.
+     * Fallback policies are resolved from the Configurator's config and might differ from the stored one.
+     */
+    public static boolean canRebuildFromJobLabels(BackupPolicyAndState backupPolicyAndState) {
+        return backupPolicyAndState.getConfigSource() == BackupConfigSource.MANUAL;
+    }
+
+    /**
+     * @param operationTs the operation time of a request that can be rebuilt from the job labels, or null if the request is
+     * stored in the persistent map
+     * @return the labels of the export job. Label values are max 63 chars of lowercase letters, numbers, underscores and dashes
+     */
+    public static Map<String, String> createJobLabels(String applicationName, @Nullable Timestamp operationTs) {
+        Map<String, String> jobLabels = new HashMap<>();
+        jobLabels.put(APP_LABEL, applicationName);
+        if (operationTs != null) {
+            jobLabels.put(OPERATION_TS_LABEL, String.valueOf(toMicros(operationTs)));
+        }
+        return jobLabels;
+    }
+
+    static long toMicros(Timestamp timestamp) {
+        return timestamp.getSeconds() * 1_000_000L + timestamp.getNanos() / 1_000;
+    }
+
+    /**
+     * @param backupPolicyService used to read the policy of requests rebuilt from the job labels
+     * @throws RetryableApplicationException if the stored request is not found. It's written before the export job
+     * is submitted, so it's expected to become readable on a retry
+     * @throws NonRetryableApplicationException if the job wasn't submitted by this application, or if the request
+     * can neither be rebuilt from the job labels nor found in the persistent map
+     */
+    public TaggerRequest lookup(BigQueryJobCompletedEvent event, BackupPolicyService backupPolicyService)
+            throws RetryableApplicationException, NonRetryableApplicationException, IOException {
+
+        String appLabel = event.getLabel(APP_LABEL);
+        if (appLabel != null && !appLabel.equals(applicationName)) {
+            throw new NonRetryableApplicationException(
+                    String.format("Job '%s' was submitted by application '%s' and not by '%s'",
+                            event.getJobId(),
+                            appLabel,
+                            applicationName));
+        }
+
+        String trackingId = TrackingHelper.parseTrackingIdFromBQExportJobId(event.getJobId());
+
+        // fast path: a failed job won't update the backup state
+        if (!event.isSuccessful() && event.getSourceTable() != null) {
+            return new TaggerRequest(
+                    event.getSourceTable(),
+                    TrackingHelper.parseRunIdAsPrefix(trackingId),
+                    trackingId,
+                    false,
+                    null,
+                    BackupMethod.GCS_SNAPSHOT,
+                    null,
+                    null,
+                    null
+            );
+        }
+
+        String operationTsLabel = event.getLabel(OPERATION_TS_LABEL);
+        if (operationTsLabel != null && event.getSourceTable() != null && event.getDestinationUri() != null) {
+            BackupPolicyAndState storedPolicyAndState = backupPolicyService.getBackupPolicyAndStateForTable(event.getSourceTable());
+            if (storedPolicyAndState != null && storedPolicyAndState.getPolicy() != null) {
+                return new TaggerRequest(
+                        event.getSourceTable(),
+                        TrackingHelper.parseRunIdAsPrefix(trackingId),
+                        trackingId,
+                        // dry runs don't submit export jobs
+                        false,
+                        storedPolicyAndState,
+                        BackupMethod.GCS_SNAPSHOT,
+                        null,
+                        event.getDestinationUri(),
+                        Timestamp.ofTimeMicroseconds(Long.parseLong(operationTsLabel))
+                );
+            }
+        }
+
+        String taggerRequestJson = persistentMap.get(getPersistentMapKey(event.getJobId()));
+        if (taggerRequestJson == null) {
+            if (operationTsLabel != null) {
+                // the GCS Snapshoter doesn't store the requests it expects to be rebuilt from the job labels
+                throw new NonRetryableApplicationException(
+                        String.format("Tagger request for job '%s' can't be rebuilt from the job labels and is not stored under '%s'. " +
+                                        "The backup policy of table '%s' might have been removed after the backup was taken.",
+                                event.getJobId(),
+                                getPersistentMapKey(event.getJobId()),
+                                event.getSourceTable()));
+            }
+            throw new RetryableApplicationException(
+                    String.format("Tagger request for job '%s' is not found under '%s'. It might not be visible yet.",
+                            event.getJobId(),
+                            getPersistentMapKey(event.getJobId())));
+        }
+        return gson.fromJson(taggerRequestJson, TaggerRequest.class);
+    }
+}
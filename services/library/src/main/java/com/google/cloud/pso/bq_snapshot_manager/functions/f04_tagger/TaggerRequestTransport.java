@@ -0,0 +1,56 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger;
+
+import com.google.cloud.pso.bq_snapshot_manager.helpers.Utils;
+
+import java.util.Arrays;
+
+/**
+ * How the GCS Snapshoter passes the TaggerRequest of an export job to the Tagger.
+ * The Tagger accepts both, so it must be deployed before switching the GCS Snapshoter to JOB_LABELS.
+ */
+public enum TaggerRequestTransport {
+    // the request is stored in the persistent map before the job is submitted
+    PERSISTENT_MAP,
+    // the request is rebuilt from the job completion event, the job labels and the stored backup policy.
+    // Requests that can't be rebuilt are still stored in the persistent map
+    JOB_LABELS;
+
+    public static final String ENV = "TAGGER_REQUEST_TRANSPORT";
+
+    public static TaggerRequestTransport fromEnv() {
+        String value = Utils.getConfigFromEnv(ENV, false).trim();
+        return value.isBlank() ? PERSISTENT_MAP : fromString(value);
+    }
+
+    public static TaggerRequestTransport fromString(String text) throws IllegalArgumentException {
+        for (TaggerRequestTransport transport : TaggerRequestTransport.values()) {
+            if (transport.name().equalsIgnoreCase(text)) {
+                return transport;
+            }
+        }
+        throw new IllegalArgumentException(
+                String.format("Invalid enum text '%s'. Available values are '%s'",
+                        text,
+                        Arrays.asList(TaggerRequestTransport.values())
+                )
+        );
+    }
+}
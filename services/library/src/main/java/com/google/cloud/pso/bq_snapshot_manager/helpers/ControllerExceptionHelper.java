@@ -158,6 +158,47 @@ public class ControllerExceptionHelper {
         }
     }
 
+    // Checks if the given throwable or recursively any of it's causes are Retryable, without logging it
+    public static boolean isCausedByRetryableException(Throwable throwable) {
+        return causedByRetryableException(throwable).isRetryable();
+    }
+
+    // Checks if the given throwable or any of its causes signals that a rate limit or quota was hit.
+    // Unlike isRetryableException, transient server errors (e.g. 500) are not considered a rate limit signal
+    public static boolean isRateLimitException(Throwable throwable) {
+
+        for (Throwable current = throwable; current != null; current = current.getCause()) {
+
+            if (current instanceof StatusRuntimeException
+                    && Status.RESOURCE_EXHAUSTED.getCode().equals(((StatusRuntimeException) current).getStatus().getCode())) {
+                return true;
+            }
+
+            if (current instanceof ResourceExhaustedException) {
+                return true;
+            }
+
+            if (current instanceof BigQueryException) {
+                String reason = ((BigQueryException) current).getReason();
+                if ("jobRateLimitExceeded".equals(reason)
+                        || "rateLimitExceeded".equals(reason)
+                        || "quotaExceeded".equals(reason)) {
+                    return true;
+                }
+            }
+
+            if (current instanceof BaseServiceException && ((BaseServiceException) current).getCode() == 429) {
+                return true;
+            }
+
+            // avoid infinite loops on self-referencing causes
+            if (current.getCause() == current) {
+                break;
+            }
+        }
+        return false;
+    }
+
     /**
      * @param ex
      * @param logger
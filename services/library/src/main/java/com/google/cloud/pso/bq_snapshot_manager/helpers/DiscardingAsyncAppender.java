@@ -0,0 +1,94 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.helpers;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the log entries from a bounded queue on a background thread, so that request threads don't wait for stdout.
+ * <p>
+ * When the remaining capacity of the queue is below the discarding threshold (default: 20% of the queue size),
+ * DEBUG and INFO entries are discarded, except for the entries that the BigQuery views rely on (see {@link LoggingHelper#isReportingLog}).
+ * WARN and ERROR entries are never discarded. If the queue is full, they wait for free capacity.
+ * The discarded entries are counted per level, and the counts are added to the logback status when the appender stops.
+ */
+public class DiscardingAsyncAppender extends AsyncAppender {
+
+    // shared by all instances so that the services can report them without access to the logback context
+    private static final AtomicLong DISCARDED_DEBUG_EVENTS = new AtomicLong();
+    private static final AtomicLong DISCARDED_INFO_EVENTS = new AtomicLong();
+
+    public DiscardingAsyncAppender() {
+        // blocking is the only way to keep WARN and ERROR entries when the queue is full
+        setNeverBlock(false);
+    }
+
+    /**
+     * Only called when the queue is below the discarding threshold. Returning true discards the event
+     */
+    @Override
+    protected boolean isDiscardable(ILoggingEvent event) {
+        int level = event.getLevel().toInt();
+        if (level > Level.INFO_INT || LoggingHelper.isReportingLog(event.getArgumentArray())) {
+            return false;
+        }
+        if (level == Level.INFO_INT) {
+            DISCARDED_INFO_EVENTS.incrementAndGet();
+        } else {
+            DISCARDED_DEBUG_EVENTS.incrementAndGet();
+        }
+        return true;
+    }
+
+    @Override
+    public void setNeverBlock(boolean neverBlock) {
+        if (neverBlock) {
+            addWarn("neverBlock is not supported since it would discard WARN and ERROR entries on a full queue. Ignoring it.");
+        }
+        super.setNeverBlock(false);
+    }
+
+    @Override
+    public void stop() {
+        long discarded = getDiscardedEventCount();
+        if (discarded > 0) {
+            addWarn(String.format("Discarded %s DEBUG and %s INFO log entries because the queue of %s entries was almost full",
+                    DISCARDED_DEBUG_EVENTS.get(),
+                    DISCARDED_INFO_EVENTS.get(),
+                    getQueueSize()));
+        }
+        super.stop();
+    }
+
+    public static long getDiscardedDebugEventCount() {
+        return DISCARDED_DEBUG_EVENTS.get();
+    }
+
+    public static long getDiscardedInfoEventCount() {
+        return DISCARDED_INFO_EVENTS.get();
+    }
+
+    public static long getDiscardedEventCount() {
+        return DISCARDED_DEBUG_EVENTS.get() + DISCARDED_INFO_EVENTS.get();
+    }
+}
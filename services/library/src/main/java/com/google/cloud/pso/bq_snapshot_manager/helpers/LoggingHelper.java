@@ -20,14 +20,22 @@ package com.google.cloud.pso.bq_snapshot_manager.helpers;
 
 import com.google.cloud.bigquery.BigQueryException;
 import com.google.cloud.pso.bq_snapshot_manager.entities.*;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.event.Level;
 
 import javax.annotation.Nullable;
-import java.util.Arrays;
-import java.util.stream.Stream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import static net.logstash.logback.argument.StructuredArguments.kv;
 
@@ -41,13 +49,79 @@ public class LoggingHelper {
 
     private final String applicationName;
 
+    private static final Object[] NO_ATTRIBUTES = new Object[]{};
+    private static final int GLOBAL_ATTRIBUTES_COUNT = 12;
+
+    // attributes that don't depend on the entry are created once and shared by all entries
+    private static final Object IS_DRY_RUN_NULL = kv("global_is_dry_run", null);
+    private static final Object IS_DRY_RUN_TRUE = kv("global_is_dry_run", Boolean.TRUE.toString());
+    private static final Object IS_DRY_RUN_FALSE = kv("global_is_dry_run", Boolean.FALSE.toString());
+    private static final Object TABLESPEC_PROJECT_NULL = kv("global_tablespec_project", null);
+    private static final Object TABLESPEC_DATASET_NULL = kv("global_tablespec_dataset", null);
+    private static final Object TABLESPEC_TABLE_NULL = kv("global_tablespec_table", null);
+    private static final Map<Level, Object> SEVERITY_ATTRIBUTES = new EnumMap<>(Level.class);
+    private static final Map<FunctionLifeCycleEvent, Object> LIFECYCLE_EVENT_ATTRIBUTES = new EnumMap<>(FunctionLifeCycleEvent.class);
+    private static final Map<ApplicationLog, Object> APP_LOG_ATTRIBUTES = new EnumMap<>(ApplicationLog.class);
+    // attributes of the entries read by the BigQuery views, or that summarize the entries that are sampled out
+    private static final Set<Object> REPORTING_ATTRIBUTES = Collections.newSetFromMap(new IdentityHashMap<>());
+    private static final Gson GSON = new Gson();
+
+    static {
+        for (Level level : Level.values()) {
+            SEVERITY_ATTRIBUTES.put(level, kv("severity", level.toString()));
+        }
+        for (FunctionLifeCycleEvent event : FunctionLifeCycleEvent.values()) {
+            LIFECYCLE_EVENT_ATTRIBUTES.put(event, kv("function_lifecycle_event", event));
+        }
+        for (ApplicationLog log : ApplicationLog.values()) {
+            APP_LOG_ATTRIBUTES.put(log, kv("global_app_log", log));
+        }
+        REPORTING_ATTRIBUTES.add(APP_LOG_ATTRIBUTES.get(ApplicationLog.UNIFIED_LOG));
+        REPORTING_ATTRIBUTES.add(APP_LOG_ATTRIBUTES.get(ApplicationLog.DISPATCHED_REQUESTS_LOG));
+        REPORTING_ATTRIBUTES.add(APP_LOG_ATTRIBUTES.get(ApplicationLog.RUN_SUMMARY_LOG));
+        REPORTING_ATTRIBUTES.addAll(LIFECYCLE_EVENT_ATTRIBUTES.values());
+    }
+
+    // read once per instance of the service. See UnifiedLogFormat
+    private static final UnifiedLogFormat DEFAULT_UNIFIED_LOG_FORMAT = UnifiedLogFormat.fromEnv();
+    private static final int DEFAULT_UNIFIED_LOG_MAX_JSON_BYTES = UnifiedLogFormat.maxJsonBytesFromEnv();
+
+    private final UnifiedLogFormat unifiedLogFormat;
+    private final int unifiedLogMaxJsonBytes;
+
+    private final Object appAttribute;
+    private final Object loggerNameAttribute;
+    private final Object functionNumberAttribute;
+
+    // a helper usually logs many entries for the same tracker in a row
+    private volatile TrackerAttributes lastTrackerAttributes;
+
     public LoggingHelper(String loggerName, Integer functionNumber, String projectId, String applicationName) {
+        this(LoggerFactory.getLogger(loggerName), loggerName, functionNumber, projectId, applicationName);
+    }
+
+    LoggingHelper(Logger logger, String loggerName, Integer functionNumber, String projectId, String applicationName) {
+        this(logger, loggerName, functionNumber, projectId, applicationName, DEFAULT_UNIFIED_LOG_FORMAT, DEFAULT_UNIFIED_LOG_MAX_JSON_BYTES);
+    }
+
+    LoggingHelper(Logger logger,
+                  String loggerName,
+                  Integer functionNumber,
+                  String projectId,
+                  String applicationName,
+                  UnifiedLogFormat unifiedLogFormat,
+                  int unifiedLogMaxJsonBytes) {
+        this.logger = logger;
+        this.unifiedLogFormat = unifiedLogFormat;
+        this.unifiedLogMaxJsonBytes = unifiedLogMaxJsonBytes;
         this.loggerName = loggerName;
         this.functionNumber = functionNumber;
         this.projectId = projectId;
         this.applicationName = applicationName;
 
-        logger = LoggerFactory.getLogger(loggerName);
+        appAttribute = kv("global_app", applicationName);
+        loggerNameAttribute = kv("global_logger_name", loggerName);
+        functionNumberAttribute = kv("function_lifecycle_functionNumber", functionNumber);
     }
 
     public void logDebugWithTracker(Boolean isDryRun, String tracker, @Nullable TableSpec tableSpec, String msg) {
@@ -82,12 +156,130 @@ public class LoggingHelper {
         logWithTracker(ApplicationLog.DEFAULT_LOG, null, tableSpec, tracker, msg, Level.ERROR);
     }
 
+    // the msg supplier is only called if the level is enabled
+
+    public void logDebugWithTracker(Boolean isDryRun, String tracker, @Nullable TableSpec tableSpec, Supplier<String> msg) {
+        logWithTracker(ApplicationLog.DEFAULT_LOG, isDryRun, tableSpec, tracker, msg, Level.DEBUG);
+    }
+
+    public void logDebugWithTracker(String tracker, @Nullable TableSpec tableSpec, Supplier<String> msg) {
+        logWithTracker(ApplicationLog.DEFAULT_LOG, null, tableSpec, tracker, msg, Level.DEBUG);
+    }
+
+    public void logInfoWithTracker(Boolean isDryRun, String tracker, @Nullable TableSpec tableSpec, Supplier<String> msg) {
+        logWithTracker(ApplicationLog.DEFAULT_LOG, isDryRun, tableSpec, tracker, msg, Level.INFO);
+    }
+
+    public void logInfoWithTracker(String tracker, @Nullable TableSpec tableSpec, Supplier<String> msg) {
+        logWithTracker(ApplicationLog.DEFAULT_LOG, null, tableSpec, tracker, msg, Level.INFO);
+    }
+
+    public void logWarnWithTracker(Boolean isDryRun, String tracker, @Nullable TableSpec tableSpec, Supplier<String> msg) {
+        logWithTracker(ApplicationLog.DEFAULT_LOG, isDryRun, tableSpec, tracker, msg, Level.WARN);
+    }
+
+    public void logWarnWithTracker(String tracker, @Nullable TableSpec tableSpec, Supplier<String> msg) {
+        logWithTracker(ApplicationLog.DEFAULT_LOG, null, tableSpec, tracker, msg, Level.WARN);
+    }
+
+    public void logSevereWithTracker(Boolean isDryRun, String tracker, @Nullable TableSpec tableSpec, Supplier<String> msg) {
+        logWithTracker(ApplicationLog.DEFAULT_LOG, isDryRun, tableSpec, tracker, msg, Level.ERROR);
+    }
+
+    public void logSevereWithTracker(String tracker, @Nullable TableSpec tableSpec, Supplier<String> msg) {
+        logWithTracker(ApplicationLog.DEFAULT_LOG, null, tableSpec, tracker, msg, Level.ERROR);
+    }
+
     private void logWithTracker(ApplicationLog log, Boolean isDryRun, @Nullable TableSpec tableSpec, String tracker, String msg, Level level) {
-        logWithTracker(log,isDryRun, tracker, tableSpec, msg, level, new Object[]{});
+        if (isEnabled(level)) {
+            logWithTracker(log, isDryRun, tracker, tableSpec, msg, level, NO_ATTRIBUTES);
+        }
+    }
+
+    private void logWithTracker(ApplicationLog log, Boolean isDryRun, @Nullable TableSpec tableSpec, String tracker, Supplier<String> msg, Level level) {
+        if (isEnabled(level)) {
+            logWithTracker(log, isDryRun, tracker, tableSpec, msg.get(), level, NO_ATTRIBUTES);
+        }
+    }
+
+    private boolean isEnabled(Level level) {
+        return logger.isEnabledForLevel(level);
+    }
+
+    /**
+     * @param arguments the arguments of a logging event
+     * @return true if the event is a UNIFIED_LOG, DISPATCHED_REQUESTS_LOG, RUN_SUMMARY_LOG or function lifecycle entry
+     * written by a LoggingHelper. These are the entries that the BigQuery views rely on.
+     */
+    public static boolean isReportingLog(@Nullable Object [] arguments) {
+        if (arguments != null) {
+            for (Object argument : arguments) {
+                if (REPORTING_ATTRIBUTES.contains(argument)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deterministic sampling: a key is either always or never sampled for a given percentage, so that all the entries
+     * of the same tracking ID or entity are kept or dropped together across services and retries.
+     *
+     * @param key                a tracking ID or entity ID
+     * @param samplingPercentage percentage of keys that are sampled. >= 100 samples all keys and <= 0 none
+     */
+    public static boolean isSampled(String key, int samplingPercentage) {
+        if (samplingPercentage >= 100) {
+            return true;
+        }
+        if (samplingPercentage <= 0) {
+            return false;
+        }
+        int hash = Hashing.murmur3_32_fixed()
+                .hashString(key, StandardCharsets.UTF_8)
+                .asInt();
+        return Integer.toUnsignedLong(hash) % 100 < samplingPercentage;
+    }
+
+    // To log the counts of high-volume events of a run since the previous summary. See RunLogAggregator
+    public void logRunSummary(String runId,
+                              String event,
+                              long count,
+                              long sampledCount,
+                              Map<String, Long> countsByReason,
+                              Map<String, Long> countsByDataset) {
+
+        if (!isEnabled(Level.INFO)) {
+            return;
+        }
+
+        // the counts are kept as JSON strings to not add one column per reason or dataset to the log sink tables
+        Object [] attributes = new Object[]{
+                kv("run_summary_event", event),
+                kv("run_summary_count", count),
+                kv("run_summary_sampled_count", sampledCount),
+                kv("run_summary_counts_by_reason", GSON.toJson(countsByReason)),
+                kv("run_summary_counts_by_dataset", GSON.toJson(countsByDataset))
+        };
+
+        logWithTracker(
+                ApplicationLog.RUN_SUMMARY_LOG,
+                null,
+                runId,
+                null,
+                String.format("%s: %s (%s logged individually)", event, count, sampledCount),
+                Level.INFO,
+                attributes
+        );
     }
 
     public void logSuccessDispatcherTrackingId(String trackingId, String dispatchedTrackingId, TableSpec tableSpec) {
 
+        if (!isEnabled(Level.INFO)) {
+            return;
+        }
+
         Object [] attributes = new Object[]{
                 kv("dispatched_tracking_id", dispatchedTrackingId),
                 kv("dispatched_tablespec", tableSpec.toSqlString()),
@@ -113,6 +305,10 @@ public class LoggingHelper {
                                             String exceptionClassName
                                             ) {
 
+        if (!isEnabled(Level.ERROR)) {
+            return;
+        }
+
         Object [] attributes = new Object[]{
                 kv("failed_dispatcher_entity_id", entityId),
                 kv("failed_dispatcher_ex_name", exceptionClassName),
@@ -137,6 +333,11 @@ public class LoggingHelper {
     // To log failed processing of projects, datasets or tables
     public void logNonRetryableExceptions(String trackingId, @Nullable TableSpec tableSpec, Exception ex) {
 
+        if (!isEnabled(Level.ERROR)) {
+            ex.printStackTrace();
+            return;
+        }
+
         Object [] attributes = new Object[]{
                 kv("non_retryable_ex_tracking_id", trackingId),
                 kv("non_retryable_ex_name", ex.getClass().getName()),
@@ -162,6 +363,11 @@ public class LoggingHelper {
     // To log failed processing of projects, datasets or tables
     public void logRetryableExceptions(String trackingId, @Nullable  TableSpec tableSpec, Exception ex, String reason) {
 
+        if (!isEnabled(Level.WARN)) {
+            ex.printStackTrace();
+            return;
+        }
+
         Object [] attributes = new Object[]{
                 kv("retryable_ex_tracking_id", trackingId),
                 kv("retryable_ex_name", ex.getClass().getName()),
@@ -196,9 +402,13 @@ public class LoggingHelper {
 
     private void logFunctionLifeCycleEvent(String trackingId, @Nullable TableSpec tableSpec, FunctionLifeCycleEvent event) {
 
+        if (!isEnabled(Level.INFO)) {
+            return;
+        }
+
         Object [] attributes = new Object[]{
-                kv("function_lifecycle_event", event),
-                kv("function_lifecycle_functionNumber", functionNumber),
+                LIFECYCLE_EVENT_ATTRIBUTES.get(event),
+                functionNumberAttribute,
         };
 
         logWithTracker(
@@ -206,12 +416,7 @@ public class LoggingHelper {
                 null,
                 trackingId,
                 tableSpec,
-                String.format("%s | %s | %s | %s",
-                        loggerName,
-                        functionNumber,
-                        event,
-                        tableSpec == null? null: tableSpec.toSqlString()
-                        ),
+                loggerName + " | " + functionNumber + " | " + event + " | " + (tableSpec == null? null: tableSpec.toSqlString()),
                 Level.INFO,
                 attributes
         );
@@ -232,17 +437,48 @@ public class LoggingHelper {
             boolean isRetryableError
     ){
 
-        Object [] attributes = new Object[]{
-                kv("unified_component", component),
-                kv("unified_run_id", runId),
-                kv("unified_tracking_id", trackingId),
-                kv("unified_target_table", targetTable != null? targetTable.toSqlString(): null),
-                kv("unified_input_json", inputJson != null? inputJson.toJsonString(): null),
-                kv("unified_output_json", outputJson != null? outputJson.toJsonString(): null),
-                kv("unified_is_successful", String.valueOf(isSuccess)),
-                kv("unified_error", exception != null? ExceptionUtils.getStackTrace(exception) : null),
-                kv("unified_is_retryable_error", String.valueOf(isRetryableError))
-        };
+        Level level = isSuccess || isRetryableError? Level.INFO : Level.ERROR;
+        if (!isEnabled(level)) {
+            return;
+        }
+
+        Object [] attributes;
+        if (unifiedLogFormat == UnifiedLogFormat.COMPACT) {
+            // same fields as FULL, with the JSON fields capped and the stack traces deduplicated, so the BigQuery views keep working
+            UnifiedLogPayloads.CompactJson input = UnifiedLogPayloads.compact(inputJson, unifiedLogMaxJsonBytes);
+            UnifiedLogPayloads.CompactJson output = UnifiedLogPayloads.compact(outputJson, unifiedLogMaxJsonBytes);
+            String errorFingerprint = exception != null? UnifiedLogPayloads.fingerprint(exception): null;
+
+            attributes = new Object[]{
+                    kv("unified_component", component),
+                    kv("unified_run_id", runId),
+                    kv("unified_tracking_id", trackingId),
+                    kv("unified_target_table", targetTable != null? targetTable.toSqlString(): null),
+                    kv("unified_input_json", input.json),
+                    kv("unified_output_json", output.json),
+                    kv("unified_is_successful", String.valueOf(isSuccess)),
+                    kv("unified_error", exception != null?
+                            UnifiedLogPayloads.compactError(exception, errorFingerprint, unifiedLogMaxJsonBytes) : null),
+                    kv("unified_is_retryable_error", String.valueOf(isRetryableError)),
+                    kv("unified_input_json_hash", input.hash),
+                    kv("unified_input_json_bytes", input.bytes),
+                    kv("unified_output_json_hash", output.hash),
+                    kv("unified_output_json_bytes", output.bytes),
+                    kv("unified_error_fingerprint", errorFingerprint)
+            };
+        } else {
+            attributes = new Object[]{
+                    kv("unified_component", component),
+                    kv("unified_run_id", runId),
+                    kv("unified_tracking_id", trackingId),
+                    kv("unified_target_table", targetTable != null? targetTable.toSqlString(): null),
+                    kv("unified_input_json", inputJson != null? inputJson.toJsonString(): null),
+                    kv("unified_output_json", outputJson != null? outputJson.toJsonString(): null),
+                    kv("unified_is_successful", String.valueOf(isSuccess)),
+                    kv("unified_error", exception != null? ExceptionUtils.getStackTrace(exception) : null),
+                    kv("unified_is_retryable_error", String.valueOf(isRetryableError))
+            };
+        }
 
         logWithTracker(
                 ApplicationLog.UNIFIED_LOG,
@@ -255,7 +491,7 @@ public class LoggingHelper {
                         isSuccess,
                         isRetryableError
                 ),
-                isSuccess || isRetryableError? Level.INFO : Level.ERROR,
+                level,
                 attributes
         );
     }
@@ -264,49 +500,82 @@ public class LoggingHelper {
 
         // Enable JSON logging with Logback and SLF4J by enabling the Logstash JSON Encoder in your logback.xml configuration.
 
-        String payload = String.format("%s | %s | %s | %s | %s | %s",
-                applicationName,
-                log,
-                loggerName,
-                isDryRun!=null? (isDryRun?"Dry-Run":"Wet-Run") : null,
-                tracker,
-                msg
-        );
-
-        String runId;
-        try{
-            runId = TrackingHelper.parseRunIdAsPrefix(tracker);
-        }catch (Exception e){
-            // so that it never appears in max(run_id) queries
-            runId = TrackingHelper.MIN_RUN_ID;
+        String payload = applicationName + " | " +
+                log + " | " +
+                loggerName + " | " +
+                (isDryRun!=null? (isDryRun?"Dry-Run":"Wet-Run") : null) + " | " +
+                tracker + " | " +
+                msg;
+
+        TrackerAttributes trackerAttributes = getTrackerAttributes(tracker);
+
+        // one array for the global and the extra attributes
+        Object [] attributes = new Object[GLOBAL_ATTRIBUTES_COUNT + extraAttributes.length];
+        attributes[0] = appAttribute;
+        attributes[1] = loggerNameAttribute;
+        attributes[2] = APP_LOG_ATTRIBUTES.get(log);
+        attributes[3] = trackerAttributes.tracker;
+        attributes[4] = isDryRun == null? IS_DRY_RUN_NULL: (isDryRun? IS_DRY_RUN_TRUE: IS_DRY_RUN_FALSE);
+        attributes[5] = tableSpec == null? TABLESPEC_PROJECT_NULL: kv("global_tablespec_project", tableSpec.getProject());
+        attributes[6] = tableSpec == null? TABLESPEC_DATASET_NULL: kv("global_tablespec_dataset", tableSpec.getDataset());
+        attributes[7] = tableSpec == null? TABLESPEC_TABLE_NULL: kv("global_tablespec_table", tableSpec.getTable());
+        attributes[8] = trackerAttributes.runId;
+        attributes[9] = kv("global_msg", msg);
+        attributes[10] = SEVERITY_ATTRIBUTES.get(level);
+        // Group all log entries with the same tracker in CLoud Logging iew
+        attributes[11] = trackerAttributes.trace;
+        System.arraycopy(extraAttributes, 0, attributes, GLOBAL_ATTRIBUTES_COUNT, extraAttributes.length);
+
+        // the "severity" KV sets the Cloud Logging severity. The entry is also logged at that level so that
+        // appenders can filter on it (e.g. the async appender only discards DEBUG and INFO entries)
+        switch (level) {
+            case ERROR:
+                logger.error(payload, attributes);
+                break;
+            case WARN:
+                logger.warn(payload, attributes);
+                break;
+            case DEBUG:
+                logger.debug(payload, attributes);
+                break;
+            case TRACE:
+                logger.trace(payload, attributes);
+                break;
+            default:
+                logger.info(payload, attributes);
         }
+    }
 
-        Object [] globalAttributes = new Object[]{
-                kv("global_app", applicationName),
-                kv("global_logger_name", this.loggerName),
-                kv("global_app_log", log),
-                kv("global_tracker", tracker),
-                kv("global_is_dry_run", isDryRun == null? null: isDryRun.toString()),
-                kv("global_tablespec_project", tableSpec == null? null: tableSpec.getProject()),
-                kv("global_tablespec_dataset", tableSpec == null? null: tableSpec.getDataset()),
-                kv("global_tablespec_table", tableSpec == null? null: tableSpec.getTable()),
-                kv("global_run_id", runId),
-                kv("global_msg", msg),
-                kv("severity", level.toString()),
-
-                // Group all log entries with the same tracker in CLoud Logging iew
-                kv("logging.googleapis.com/trace",
-                        String.format("projects/%s/traces/%s", projectId, tracker))
-        };
+    private TrackerAttributes getTrackerAttributes(String tracker) {
+        TrackerAttributes trackerAttributes = lastTrackerAttributes;
+        if (trackerAttributes == null || !Objects.equals(trackerAttributes.trackerId, tracker)) {
+            trackerAttributes = new TrackerAttributes(tracker, projectId);
+            lastTrackerAttributes = trackerAttributes;
+        }
+        return trackerAttributes;
+    }
 
-        // setting the "severity" KV will override the logger.<severity>
-        logger.info(
-                payload,
-                Stream.concat(
-                        Arrays.stream(globalAttributes),
-                        Arrays.stream(extraAttributes)
-                ).toArray()
-        );
+    // the attributes derived from a tracker
+    private static final class TrackerAttributes {
+        private final String trackerId;
+        private final Object tracker;
+        private final Object runId;
+        private final Object trace;
+
+        private TrackerAttributes(String trackerId, String projectId) {
+            String runId;
+            try{
+                runId = TrackingHelper.parseRunIdAsPrefix(trackerId);
+            }catch (Exception e){
+                // so that it never appears in max(run_id) queries
+                runId = TrackingHelper.MIN_RUN_ID;
+            }
+
+            this.trackerId = trackerId;
+            this.tracker = kv("global_tracker", trackerId);
+            this.runId = kv("global_run_id", runId);
+            this.trace = kv("logging.googleapis.com/trace", String.format("projects/%s/traces/%s", projectId, trackerId));
+        }
     }
 
     public Integer getExceptionCode(Exception ex) {
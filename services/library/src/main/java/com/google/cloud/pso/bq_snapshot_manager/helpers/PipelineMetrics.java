@@ -0,0 +1,176 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.helpers;
+
+import com.google.common.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the pipeline stages, their external calls, caches and deduplication checks.
+ * <p>
+ * The meters are registered in the global registry by default, which the apps' actuator exports
+ * (e.g. /actuator/prometheus). Tests can pass an in-memory registry (e.g. SimpleMeterRegistry).
+ */
+public class PipelineMetrics {
+
+    public static final String EXTERNAL_CALL_METRIC = "bq_backup_manager.external.calls";
+    public static final String STAGE_METRIC = "bq_backup_manager.stage.requests";
+    // same name and tags as the Guava cache binder, so that all caches can be queried the same way
+    public static final String CACHE_GETS_METRIC = "cache.gets";
+    public static final String DEDUP_METRIC = "bq_backup_manager.dedup.hits";
+    public static final String DISCARDED_LOGS_METRIC = "bq_backup_manager.logs.discarded";
+
+    public static final String SUCCESS = "success";
+    public static final String ERROR = "error";
+    public static final String RETRYABLE_ERROR = "retryable_error";
+    public static final String NON_RETRYABLE_ERROR = "non_retryable_error";
+
+    public enum ExternalService {
+        GCS,
+        DATASTORE,
+        RESOURCE_MANAGER,
+        BIGQUERY,
+        PUBSUB;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    @FunctionalInterface
+    public interface VoidCall<E extends Exception> {
+        void call() throws E;
+    }
+
+    private static final PipelineMetrics GLOBAL = new PipelineMetrics(Metrics.globalRegistry);
+
+    private final MeterRegistry meterRegistry;
+
+    public PipelineMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+
+        FunctionCounter.builder(DISCARDED_LOGS_METRIC, DiscardingAsyncAppender.class, c -> DiscardingAsyncAppender.getDiscardedDebugEventCount())
+                .description("Log entries discarded by the async appender because its queue was almost full")
+                .tag("level", "debug")
+                .register(meterRegistry);
+        FunctionCounter.builder(DISCARDED_LOGS_METRIC, DiscardingAsyncAppender.class, c -> DiscardingAsyncAppender.getDiscardedInfoEventCount())
+                .description("Log entries discarded by the async appender because its queue was almost full")
+                .tag("level", "info")
+                .register(meterRegistry);
+    }
+
+    public static PipelineMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Times a call to a Google Cloud API. The outcome tag is "error" if the call throws
+     *
+     * @param operation the API method, e.g. "get" or "create_job"
+     */
+    public <T, E extends Exception> T timeExternalCall(ExternalService service, String operation, Call<T, E> call) throws E {
+        long startNanos = System.nanoTime();
+        String outcome = ERROR;
+        try {
+            T result = call.call();
+            outcome = SUCCESS;
+            return result;
+        } finally {
+            externalCallTimer(service, operation, outcome).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public <E extends Exception> void timeExternalCall(ExternalService service, String operation, VoidCall<E> call) throws E {
+        timeExternalCall(service, operation, () -> {
+            call.call();
+            return null;
+        });
+    }
+
+    /**
+     * Records the duration of a request processed by a stage (e.g. one Configurator or Tagger request)
+     *
+     * @param startNanos System.nanoTime() when the request was received
+     */
+    public void recordStage(String stage, boolean isSuccess, boolean isRetryableError, long startNanos) {
+        String outcome = isSuccess ? SUCCESS : (isRetryableError ? RETRYABLE_ERROR : NON_RETRYABLE_ERROR);
+        Timer.builder(STAGE_METRIC)
+                .description("Duration of the requests processed by each stage")
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(10))
+                .maximumExpectedValue(Duration.ofMinutes(15))
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Exports the hit, miss, eviction and size metrics of a Guava cache built with recordStats()
+     */
+    public void monitorCache(Cache<?, ?> cache, String cacheName) {
+        GuavaCacheMetrics.monitor(meterRegistry, cache, cacheName);
+    }
+
+    // for caches that are not Guava caches (e.g. the Datastore project folder cache)
+    public void recordCacheGet(String cacheName, boolean isHit) {
+        Counter.builder(CACHE_GETS_METRIC)
+                .tag("cache", cacheName)
+                .tag("result", isHit ? "hit" : "miss")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Counts work skipped because it was done before, e.g. a Pub/Sub message delivered twice
+     *
+     * @param check what was found to be a duplicate, e.g. "tracking_id"
+     */
+    public void recordDedupHit(String stage, String check) {
+        Counter.builder(DEDUP_METRIC)
+                .description("Requests or writes skipped because they were processed before")
+                .tag("stage", stage)
+                .tag("check", check)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private Timer externalCallTimer(ExternalService service, String operation, String outcome) {
+        return Timer.builder(EXTERNAL_CALL_METRIC)
+                .description("Duration of the calls to Google Cloud APIs")
+                .tag("service", service.tag)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.helpers;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+
+import javax.annotation.Nullable;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Rolls up high-volume INFO entries of a run (e.g. one entry per excluded table) into RUN_SUMMARY_LOG entries
+ * with the counts per event, reason and dataset. Only a deterministic sample of the entries is still logged individually.
+ * <p>
+ * A summary is logged for each event every summaryInterval recorded entries and on flush(). Each summary holds the counts
+ * since the previous one, so the counts of a run are the sum of its summaries.
+ * <p>
+ * Entries that the BigQuery views rely on (e.g. DISPATCHED_REQUESTS_LOG) must not be routed through the aggregator.
+ */
+public class RunLogAggregator {
+
+    public static final int DEFAULT_SUMMARY_INTERVAL = 10000;
+    // keeps the summaries of runs with many reasons or datasets under the Cloud Logging entry size limit
+    public static final int MAX_GROUPS_PER_SUMMARY = 100;
+    public static final String OTHER_GROUPS = "_others";
+    public static final String NO_DATASET = "_none";
+
+    private final LoggingHelper logger;
+    private final String runId;
+    private final int samplingPercentage;
+    private final int summaryInterval;
+
+    private final Map<String, EventCounts> countsPerEvent = new LinkedHashMap<>();
+    private int entriesSinceLastSummary = 0;
+
+    public RunLogAggregator(LoggingHelper logger, String runId, int samplingPercentage) {
+        this(logger, runId, samplingPercentage, DEFAULT_SUMMARY_INTERVAL);
+    }
+
+    public RunLogAggregator(LoggingHelper logger, String runId, int samplingPercentage, int summaryInterval) {
+        this.logger = logger;
+        this.runId = runId;
+        this.samplingPercentage = samplingPercentage;
+        this.summaryInterval = summaryInterval;
+    }
+
+    /**
+     * Counts the entry and logs it at INFO only if the samplingKey is sampled
+     *
+     * @param samplingKey a tracking ID or the ID of the entity the entry is about
+     * @param count       the number of items the entry is about (e.g. number of tables found in a dataset)
+     */
+    public synchronized void logInfo(String event,
+                                     String reason,
+                                     @Nullable String dataset,
+                                     @Nullable TableSpec tableSpec,
+                                     String samplingKey,
+                                     long count,
+                                     Supplier<String> msg) {
+        boolean sampled = LoggingHelper.isSampled(samplingKey, samplingPercentage);
+        if (sampled) {
+            logger.logInfoWithTracker(runId, tableSpec, msg);
+        }
+        record(event, reason, dataset, count, sampled);
+    }
+
+    /**
+     * Counts an entry that is logged separately (or not at all)
+     */
+    public synchronized void count(String event, String reason, @Nullable String dataset, long count) {
+        record(event, reason, dataset, count, false);
+    }
+
+    /**
+     * Logs one summary per event with the counts recorded since the previous summary
+     */
+    public synchronized void flush() {
+        for (Map.Entry<String, EventCounts> entry : countsPerEvent.entrySet()) {
+            EventCounts counts = entry.getValue();
+            logger.logRunSummary(
+                    runId,
+                    entry.getKey(),
+                    counts.count,
+                    counts.sampledCount,
+                    topGroups(counts.countsByReason),
+                    topGroups(counts.countsByDataset)
+            );
+        }
+        countsPerEvent.clear();
+        entriesSinceLastSummary = 0;
+    }
+
+    private void record(String event, String reason, @Nullable String dataset, long count, boolean sampled) {
+        EventCounts counts = countsPerEvent.computeIfAbsent(event, k -> new EventCounts());
+        counts.count += count;
+        counts.sampledCount += sampled ? count : 0;
+        counts.countsByReason.merge(reason, count, Long::sum);
+        counts.countsByDataset.merge(dataset == null ? NO_DATASET : dataset, count, Long::sum);
+
+        if (++entriesSinceLastSummary >= summaryInterval) {
+            flush();
+        }
+    }
+
+    // keeps the groups with the highest counts and adds up the rest under OTHER_GROUPS
+    static Map<String, Long> topGroups(Map<String, Long> counts) {
+        if (counts.size() <= MAX_GROUPS_PER_SUMMARY) {
+            return new TreeMap<>(counts);
+        }
+        List<Map.Entry<String, Long>> sorted = counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .collect(Collectors.toList());
+
+        Map<String, Long> top = new TreeMap<>();
+        long others = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            if (i < MAX_GROUPS_PER_SUMMARY - 1) {
+                top.put(sorted.get(i).getKey(), sorted.get(i).getValue());
+            } else {
+                others += sorted.get(i).getValue();
+            }
+        }
+        top.merge(OTHER_GROUPS, others, Long::sum);
+        return top;
+    }
+
+    private static final class EventCounts {
+        private long count = 0;
+        private long sampledCount = 0;
+        private final Map<String, Long> countsByReason = new HashMap<>();
+        private final Map<String, Long> countsByDataset = new HashMap<>();
+    }
+}
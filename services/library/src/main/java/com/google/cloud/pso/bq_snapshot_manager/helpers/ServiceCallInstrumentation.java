@@ -0,0 +1,146 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.helpers;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.BackupPolicyService;
+import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.InstrumentedBackupPolicyService;
+import com.google.cloud.pso.bq_snapshot_manager.services.bq.BigQueryService;
+import com.google.cloud.pso.bq_snapshot_manager.services.bq.InstrumentedBigQueryService;
+import com.google.cloud.pso.bq_snapshot_manager.services.map.InstrumentedPersistentMap;
+import com.google.cloud.pso.bq_snapshot_manager.services.map.PersistentMap;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.InstrumentedPubSubService;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubService;
+import com.google.cloud.pso.bq_snapshot_manager.services.scan.InstrumentedResourceScanner;
+import com.google.cloud.pso.bq_snapshot_manager.services.scan.ResourceScanner;
+import com.google.cloud.pso.bq_snapshot_manager.services.set.InstrumentedPersistentSet;
+import com.google.cloud.pso.bq_snapshot_manager.services.set.PersistentSet;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the latency and outcome of each call to the service interfaces (BigQueryService, BackupPolicyService, etc.)
+ * and logs the calls slower than a threshold.
+ * <p>
+ * The Instrumented* decorators report to this class. Failed calls are classified as retryable or not with
+ * ControllerExceptionHelper, the same way the controllers classify them. The wrap* methods return the service as is
+ * if the instrumentation is disabled, so the apps can wire the decorators by configuration.
+ */
+public class ServiceCallInstrumentation {
+
+    public static final String SERVICE_CALL_METRIC = "bq_backup_manager.service.calls";
+
+    private final boolean enabled;
+    private final LoggingHelper logger;
+    // 0 disables the slow call logs
+    private final long slowCallThresholdMs;
+    private final MeterRegistry meterRegistry;
+
+    public ServiceCallInstrumentation(boolean enabled, LoggingHelper logger, long slowCallThresholdMs) {
+        this(enabled, logger, slowCallThresholdMs, Metrics.globalRegistry);
+    }
+
+    public ServiceCallInstrumentation(boolean enabled, LoggingHelper logger, long slowCallThresholdMs, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.logger = logger;
+        this.slowCallThresholdMs = slowCallThresholdMs;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public BigQueryService wrapBigQueryService(BigQueryService service) {
+        return enabled ? new InstrumentedBigQueryService(service, this) : service;
+    }
+
+    public BackupPolicyService wrapBackupPolicyService(BackupPolicyService service) {
+        return enabled ? new InstrumentedBackupPolicyService(service, this) : service;
+    }
+
+    public PersistentSet wrapPersistentSet(PersistentSet set) {
+        return enabled ? new InstrumentedPersistentSet(set, this) : set;
+    }
+
+    public PersistentMap wrapPersistentMap(PersistentMap map) {
+        return enabled ? new InstrumentedPersistentMap(map, this) : map;
+    }
+
+    public PubSubService wrapPubSubService(PubSubService service) {
+        return enabled ? new InstrumentedPubSubService(service, this) : service;
+    }
+
+    public ResourceScanner wrapResourceScanner(ResourceScanner scanner) {
+        return enabled ? new InstrumentedResourceScanner(scanner, this) : scanner;
+    }
+
+    /**
+     * Records a call that started at startNanos (System.nanoTime())
+     *
+     * @param error     the exception thrown by the call, or null if it succeeded
+     * @param tracker   tracking or run ID to log slow calls with, if known by the caller
+     * @param tableSpec table of the call, if any
+     */
+    public void record(String service,
+                       String method,
+                       long startNanos,
+                       @Nullable Exception error,
+                       @Nullable String tracker,
+                       @Nullable TableSpec tableSpec) {
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        String outcome = error == null ?
+                PipelineMetrics.SUCCESS :
+                (ControllerExceptionHelper.isCausedByRetryableException(error) ?
+                        PipelineMetrics.RETRYABLE_ERROR :
+                        PipelineMetrics.NON_RETRYABLE_ERROR);
+
+        Timer.builder(SERVICE_CALL_METRIC)
+                .description("Duration of the calls to the service interfaces")
+                .tag("service", service)
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        if (slowCallThresholdMs > 0 && elapsedMs >= slowCallThresholdMs) {
+            logger.logWarnWithTracker(
+                    tracker == null ? TrackingHelper.MIN_RUN_ID : tracker,
+                    tableSpec,
+                    () -> String.format("Slow call %s.%s took %s ms (threshold %s ms). Outcome: %s%s",
+                            service,
+                            method,
+                            elapsedMs,
+                            slowCallThresholdMs,
+                            outcome,
+                            error == null ? "" : String.format(". Exception: %s", error.getClass().getName())
+                    ));
+        }
+    }
+}
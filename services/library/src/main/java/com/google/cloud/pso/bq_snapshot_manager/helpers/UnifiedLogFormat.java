@@ -0,0 +1,58 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.helpers;
+
+import java.util.Arrays;
+
+/**
+ * Format of the input/output JSON and the error of UNIFIED_LOG entries.
+ * FULL logs them as they are. COMPACT caps the JSON fields to UNIFIED_LOG_MAX_JSON_BYTES, adds a content hash and size
+ * for each of them, and only logs the full stack trace of an error the first time its fingerprint is seen by the instance.
+ */
+public enum UnifiedLogFormat {
+    FULL,
+    COMPACT;
+
+    public static final String ENV = "UNIFIED_LOG_FORMAT";
+    public static final String MAX_JSON_BYTES_ENV = "UNIFIED_LOG_MAX_JSON_BYTES";
+    public static final int DEFAULT_MAX_JSON_BYTES = 8192;
+
+    public static UnifiedLogFormat fromEnv() {
+        String value = Utils.getConfigFromEnv(ENV, false).trim();
+        return value.isBlank() ? FULL : fromString(value);
+    }
+
+    public static int maxJsonBytesFromEnv() {
+        return Utils.getConfigFromEnv(MAX_JSON_BYTES_ENV, DEFAULT_MAX_JSON_BYTES);
+    }
+
+    public static UnifiedLogFormat fromString(String text) throws IllegalArgumentException {
+        for (UnifiedLogFormat format : UnifiedLogFormat.values()) {
+            if (format.name().equalsIgnoreCase(text)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException(
+                String.format("Invalid enum text '%s'. Available values are '%s'",
+                        text,
+                        Arrays.asList(UnifiedLogFormat.values())
+                )
+        );
+    }
+}
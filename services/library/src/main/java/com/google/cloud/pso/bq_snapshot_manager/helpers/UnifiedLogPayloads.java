@@ -0,0 +1,271 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.helpers;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.JsonMessage;
+import com.google.common.base.Utf8;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the compact UNIFIED_LOG fields (see {@link UnifiedLogFormat#COMPACT}).
+ */
+class UnifiedLogPayloads {
+
+    // member paths (dot separated) of nested JSON fields read by the BigQuery views in terraform/modules/bigquery/views.
+    // Top level primitives are always kept, so only nested paths have to be listed
+    static final List<String> RETAINED_PATHS = List.of("backupPolicy.policy.backup_method");
+
+    static final int MAX_STRING_CHARS = 256;
+    static final int MAX_ARRAY_ELEMENTS = 10;
+    static final String TRUNCATED_FROM_BYTES = "_truncated_from_bytes";
+    static final String TRUNCATED = "_truncated";
+
+    private static final Gson GSON = new Gson();
+
+    // fingerprints of the stack traces already logged by this instance
+    private static final Cache<String, Boolean> LOGGED_FINGERPRINTS = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(Duration.ofHours(1))
+            .build();
+
+    static final class CompactJson {
+        @Nullable final String json;
+        @Nullable final String hash;
+        final int bytes;
+
+        private CompactJson(@Nullable String json, @Nullable String hash, int bytes) {
+            this.json = json;
+            this.hash = hash;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final CompactJson NULL_JSON = new CompactJson(null, null, 0);
+
+    /**
+     * @return the JSON of the message if it fits in maxBytes, otherwise a truncated JSON that keeps the top level
+     * primitives and the RETAINED_PATHS. The hash and size are computed on the full JSON
+     */
+    static CompactJson compact(@Nullable JsonMessage message, int maxBytes) {
+        if (message == null) {
+            return NULL_JSON;
+        }
+        JsonElement tree = GSON.toJsonTree(message);
+        String json = GSON.toJson(tree);
+        int bytes = Utf8.encodedLength(json);
+        String hash = Hashing.murmur3_128().hashString(json, StandardCharsets.UTF_8).toString();
+
+        if (bytes <= maxBytes || !tree.isJsonObject()) {
+            return new CompactJson(json, hash, bytes);
+        }
+
+        JsonObject truncated = truncateLeaves(tree).getAsJsonObject();
+        truncated.addProperty(TRUNCATED_FROM_BYTES, bytes);
+        String truncatedJson = GSON.toJson(truncated);
+        // drop the largest nested objects and arrays until the JSON fits
+        while (Utf8.encodedLength(truncatedJson) > maxBytes && pruneHeaviestPath(truncated, "")) {
+            truncatedJson = GSON.toJson(truncated);
+        }
+        return new CompactJson(truncatedJson, hash, bytes);
+    }
+
+    /**
+     * @return a copy of the element with long strings and arrays cut
+     */
+    static JsonElement truncateLeaves(JsonElement element) {
+        if (element.isJsonObject()) {
+            JsonObject copy = new JsonObject();
+            for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                copy.add(member.getKey(), truncateLeaves(member.getValue()));
+            }
+            return copy;
+        }
+        if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            JsonArray copy = new JsonArray();
+            for (int i = 0; i < Math.min(array.size(), MAX_ARRAY_ELEMENTS); i++) {
+                copy.add(truncateLeaves(array.get(i)));
+            }
+            if (array.size() > MAX_ARRAY_ELEMENTS) {
+                copy.add(String.format("<%s more elements>", array.size() - MAX_ARRAY_ELEMENTS));
+            }
+            return copy;
+        }
+        if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
+            String value = element.getAsString();
+            if (value.length() > MAX_STRING_CHARS) {
+                return new JsonPrimitive(String.format("%s<%s more chars>",
+                        value.substring(0, MAX_STRING_CHARS),
+                        value.length() - MAX_STRING_CHARS));
+            }
+        }
+        return element;
+    }
+
+    /**
+     * Follows the largest nested object or array down to one that has no prunable children and replaces it with a placeholder.
+     * Objects on a RETAINED_PATHS prefix only lose their members that are not retained.
+     *
+     * @return false if nothing could be pruned
+     */
+    private static boolean pruneHeaviestPath(JsonElement node, String path) {
+        String heaviestKey = null;
+        int heaviestIndex = -1;
+        JsonElement heaviest = null;
+        int heaviestSize = -1;
+
+        if (node.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> member : node.getAsJsonObject().entrySet()) {
+                String memberPath = childPath(path, member.getKey());
+                if (isPrunable(member.getValue(), memberPath)) {
+                    int size = GSON.toJson(member.getValue()).length();
+                    if (size > heaviestSize) {
+                        heaviestKey = member.getKey();
+                        heaviest = member.getValue();
+                        heaviestSize = size;
+                    }
+                }
+            }
+        } else if (node.isJsonArray()) {
+            JsonArray array = node.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                if (isPrunable(array.get(i), null)) {
+                    int size = GSON.toJson(array.get(i)).length();
+                    if (size > heaviestSize) {
+                        heaviestIndex = i;
+                        heaviest = array.get(i);
+                        heaviestSize = size;
+                    }
+                }
+            }
+        }
+
+        if (heaviest == null) {
+            return false;
+        }
+
+        // array elements are never on a retained path
+        String heaviestPath = heaviestKey != null ? childPath(path, heaviestKey) : null;
+        if (pruneHeaviestPath(heaviest, heaviestPath)) {
+            return true;
+        }
+
+        if (heaviestPath != null && isRetainedPrefix(heaviestPath)) {
+            // only reached for objects with no prunable children
+            JsonObject object = heaviest.getAsJsonObject();
+            object.entrySet().removeIf(member -> !isRetainedPrefix(childPath(heaviestPath, member.getKey())));
+            object.addProperty(TRUNCATED, true);
+            return true;
+        }
+
+        JsonPrimitive placeholder = new JsonPrimitive(String.format("<truncated %s chars>", heaviestSize));
+        if (heaviestKey != null) {
+            node.getAsJsonObject().add(heaviestKey, placeholder);
+        } else {
+            node.getAsJsonArray().set(heaviestIndex, placeholder);
+        }
+        return true;
+    }
+
+    // non-empty objects and arrays, except objects on a retained path that only have retained members left
+    private static boolean isPrunable(JsonElement element, @Nullable String path) {
+        if (element.isJsonArray()) {
+            return element.getAsJsonArray().size() > 0;
+        }
+        if (!element.isJsonObject() || element.getAsJsonObject().size() == 0) {
+            return false;
+        }
+        if (path == null || !isRetainedPrefix(path)) {
+            return true;
+        }
+        for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+            if (TRUNCATED.equals(member.getKey())) {
+                continue;
+            }
+            String memberPath = childPath(path, member.getKey());
+            if (!isRetainedPrefix(memberPath) || isPrunable(member.getValue(), memberPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRetainedPrefix(String path) {
+        for (String retainedPath : RETAINED_PATHS) {
+            if (retainedPath.equals(path) || retainedPath.startsWith(path + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String childPath(@Nullable String path, String key) {
+        return path == null || path.isEmpty() ? key : path + "." + key;
+    }
+
+    /**
+     * The fingerprint only depends on the exception classes and stack frames of the cause chain, not on the messages,
+     * so that the same failure on different tables has the same fingerprint.
+     */
+    static String fingerprint(Throwable throwable) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (Throwable current : ExceptionUtils.getThrowableList(throwable)) {
+            hasher.putString(current.getClass().getName(), StandardCharsets.UTF_8);
+            for (StackTraceElement frame : current.getStackTrace()) {
+                hasher.putString(frame.getClassName(), StandardCharsets.UTF_8)
+                        .putString(frame.getMethodName(), StandardCharsets.UTF_8)
+                        .putInt(frame.getLineNumber());
+            }
+        }
+        return hasher.hash().toString().substring(0, 16);
+    }
+
+    /**
+     * @return the stack trace (capped to maxBytes) the first time the fingerprint is seen by this instance,
+     * otherwise the messages of the exception and its root cause and a reference to the fingerprint
+     */
+    static String compactError(Throwable throwable, String fingerprint, int maxBytes) {
+        if (LOGGED_FINGERPRINTS.asMap().putIfAbsent(fingerprint, Boolean.TRUE) == null) {
+            String stackTrace = ExceptionUtils.getStackTrace(throwable);
+            // capped in chars, stack traces are mostly ASCII
+            return stackTrace.length() > maxBytes ?
+                    String.format("%s<%s more chars>", stackTrace.substring(0, maxBytes), stackTrace.length() - maxBytes) :
+                    stackTrace;
+        }
+        return String.format("%s | Root cause: %s | Stack trace %s was logged before",
+                ExceptionUtils.getMessage(throwable),
+                ExceptionUtils.getRootCauseMessage(throwable),
+                fingerprint);
+    }
+}
@@ -20,6 +20,7 @@ package com.google.cloud.pso.bq_snapshot_manager.helpers;
 
 import com.google.cloud.Timestamp;
 import com.google.cloud.Tuple;
+import com.google.cloud.pso.bq_snapshot_manager.entities.DuplicateRequestException;
 import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
 import com.google.cloud.pso.bq_snapshot_manager.entities.TableOperationRequestResponse;
 import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
@@ -87,6 +88,16 @@ public class Utils {
         return value;
     }
 
+    public static Integer getConfigFromEnv(String config, Integer defaultValue) {
+        String value = getConfigFromEnv(config, false);
+        return value.isBlank() ? defaultValue : Integer.valueOf(value.trim());
+    }
+
+    public static boolean getBooleanConfigFromEnv(String config, boolean defaultValue) {
+        String value = getConfigFromEnv(config, false);
+        return value.isBlank() ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
 
     public static void runServiceStartRoutines(LoggingHelper logger,
                                                TableOperationRequestResponse request,
@@ -97,7 +108,7 @@ public class Utils {
         logger.logFunctionStart(request.getTrackingId(), request.getTargetTable());
         logger.logInfoWithTracker(request.getTrackingId(),
                 request.getTargetTable(),
-                String.format("Request : %s", request.toString()));
+                () -> String.format("Request : %s", request));
 
         /**
          *  Check if we already processed this table before by this service to avoid submitting extra API requests
@@ -106,11 +117,13 @@ public class Utils {
          */
         String flagFileName = String.format("%s/%s", persistentSetObjectPrefix, trackingId);
         if (persistentSet.contains(flagFileName)) {
+            // flag prefixes are named after the service, e.g. "tagger-flags"
+            PipelineMetrics.global().recordDedupHit(StringUtils.removeEnd(persistentSetObjectPrefix, "-flags"), "tracking_id");
             // log error and ACK and return
             String msg = String.format("tracking_id '%s' has been processed before by the service. This could be a PubSub duplicate message and safe to ignore or the previous messages were not ACK to PubSub to stop retries. Please investigate further if needed.",
                     trackingId
             );
-            throw new NonRetryableApplicationException(msg);
+            throw new DuplicateRequestException(msg);
         }
     }
 
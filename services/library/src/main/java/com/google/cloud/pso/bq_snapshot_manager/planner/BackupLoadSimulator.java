@@ -0,0 +1,242 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.planner;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicy;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.FallbackBackupPolicy;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.FallbackPolicyMatch;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.FallbackPolicyResolver;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.CronCache;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.CronLoadPlanner;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.CronLoadReport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline backup load simulator.
+ * It resolves the fallback policy of each table of an inventory (as Configurator.findFallbackPolicyMatch does) and
+ * replays the Configurator cron decisions over the Dispatcher heartbeats of a time horizon with CronLoadPlanner,
+ * which reports the number of backup jobs and bytes per hour and backup operation project.
+ *
+ * Assumptions:
+ * - All tables use the fallback policies (i.e. no manual policies attached to tables).
+ * - All tables are older than the time travel offset of their policy.
+ * - The backup of a table is recorded at the heartbeat that triggered it.
+ */
+public class BackupLoadSimulator {
+
+    private static final long SECONDS_PER_HOUR = 3600;
+
+    private final FallbackPolicyResolver fallbackPolicyResolver;
+    private final String heartbeatCron;
+    private final long cronJitterWindowSeconds;
+
+    public BackupLoadSimulator(FallbackBackupPolicy fallbackBackupPolicy,
+                               String heartbeatCron,
+                               long cronJitterWindowSeconds) {
+        this.fallbackPolicyResolver = FallbackPolicyResolver.compile(fallbackBackupPolicy);
+        // fail fast on an invalid heartbeat cron
+        CronCache.getCompiled(heartbeatCron);
+        this.heartbeatCron = heartbeatCron;
+        this.cronJitterWindowSeconds = cronJitterWindowSeconds;
+    }
+
+    /**
+     * @param inventory          tables to simulate. It's consumed once, so it could be streamed from a file
+     * @param lastBackupAtStates last backup time per table in "project.dataset.table" format. Tables without a state
+     *                           are considered as never backed up
+     * @param from               start of the horizon (exclusive)
+     * @param to                 end of the horizon (inclusive)
+     */
+    public CronLoadReport simulate(Iterator<InventoryTable> inventory,
+                                   Map<String, Timestamp> lastBackupAtStates,
+                                   Timestamp from,
+                                   Timestamp to) {
+
+        // the estate uses few distinct policies, prepare their operation projects once
+        Map<BackupPolicy, List<String>> operationProjects = new IdentityHashMap<>();
+
+        Iterator<CronLoadPlanner.TableSchedule> schedules = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return inventory.hasNext();
+            }
+
+            @Override
+            public CronLoadPlanner.TableSchedule next() {
+                InventoryTable inventoryTable = inventory.next();
+                TableSpec table = inventoryTable.getTable();
+                BackupPolicy policy = findFallbackBackupPolicy(table, inventoryTable.getFolderId());
+
+                return new CronLoadPlanner.TableSchedule(
+                        table,
+                        policy.getCron(),
+                        lastBackupAtStates.get(table.toSqlString()),
+                        policy.getMethod(),
+                        inventoryTable.getSizeBytes(),
+                        operationProjects.computeIfAbsent(policy, BackupLoadSimulator::getOperationProjects)
+                );
+            }
+        };
+
+        return CronLoadPlanner.plan(schedules, heartbeatCron, from, to, cronJitterWindowSeconds);
+    }
+
+    /**
+     * Mirrors Configurator.findFallbackPolicyMatch with the folder taken from the inventory instead of the API
+     */
+    BackupPolicy findFallbackBackupPolicy(TableSpec table, String folderId) {
+        FallbackPolicyMatch match = fallbackPolicyResolver.resolveOverride(table);
+        if (match == null && folderId != null) {
+            match = fallbackPolicyResolver.resolveFolder(folderId);
+        }
+        return match != null ? match.getPolicy() : fallbackPolicyResolver.getDefaultMatch().getPolicy();
+    }
+
+    /**
+     * Same rules as SnapshoterRequest.computeBackupOperationProject
+     *
+     * @return the pool or the operation project of the policy. Null if the table project is used
+     */
+    static List<String> getOperationProjects(BackupPolicy policy) {
+        List<String> pool = policy.getBackupOperationProjectPool();
+        if (pool != null && !pool.isEmpty()) {
+            return pool;
+        }
+        return policy.getBackupOperationProject() != null ?
+                Collections.singletonList(policy.getBackupOperationProject()) :
+                null;
+    }
+
+    /**
+     * Reads "project.dataset.table,last_backup_at" lines, where last_backup_at is an RFC 3339 timestamp
+     */
+    public static Map<String, Timestamp> readStates(BufferedReader reader) throws IOException {
+        Map<String, Timestamp> states = new HashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (isSkippedLine(line, "table")) {
+                continue;
+            }
+            String[] tokens = line.split(",", -1);
+            if (tokens.length < 2 || tokens[1].isBlank()) {
+                continue;
+            }
+            states.put(tokens[0].trim(), Timestamp.parseTimestamp(tokens[1].trim()));
+        }
+        return states;
+    }
+
+    /**
+     * Lazily reads "project.dataset.table,size_bytes[,folder_id]" lines
+     */
+    public static Iterator<InventoryTable> readInventory(BufferedReader reader) {
+        return reader.lines()
+                .filter(line -> !isSkippedLine(line, "table"))
+                .map(InventoryTable::fromCsvLine)
+                .iterator();
+    }
+
+    // skip empty lines, comments and the optional header line
+    private static boolean isSkippedLine(String line, String headerPrefix) {
+        String trimmed = line.trim();
+        return trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.startsWith(headerPrefix + ",");
+    }
+
+    /**
+     * Usage:
+     * --inventory=<csv file> --fallback-policy=<json file> [--states=<csv file>] [--from=<RFC 3339 timestamp>]
+     * [--days=30] [--heartbeat-cron="0 0 * * * *"] [--cron-jitter-window-seconds=0] [--output=<csv file>]
+     */
+    public static void main(String[] args) throws IOException {
+
+        Map<String, String> arguments = parseArguments(args);
+
+        String inventoryPath = arguments.get("inventory");
+        String policyPath = arguments.get("fallback-policy");
+        if (inventoryPath == null || policyPath == null) {
+            throw new IllegalArgumentException("Both --inventory and --fallback-policy must be provided");
+        }
+
+        FallbackBackupPolicy fallbackBackupPolicy = FallbackBackupPolicy.fromJson(
+                Files.readString(Path.of(policyPath), StandardCharsets.UTF_8));
+
+        Map<String, Timestamp> states = new HashMap<>();
+        if (arguments.containsKey("states")) {
+            try (BufferedReader reader = Files.newBufferedReader(Path.of(arguments.get("states")), StandardCharsets.UTF_8)) {
+                states = readStates(reader);
+            }
+        }
+
+        Timestamp from = arguments.containsKey("from") ?
+                Timestamp.parseTimestamp(arguments.get("from")) :
+                Timestamp.ofTimeSecondsAndNanos(Instant.now().truncatedTo(ChronoUnit.HOURS).getEpochSecond(), 0);
+        int days = Integer.parseInt(arguments.getOrDefault("days", "30"));
+        Timestamp to = Timestamp.ofTimeSecondsAndNanos(from.getSeconds() + days * 24 * SECONDS_PER_HOUR, 0);
+
+        BackupLoadSimulator simulator = new BackupLoadSimulator(
+                fallbackBackupPolicy,
+                arguments.getOrDefault("heartbeat-cron", "0 0 * * * *"),
+                Long.parseLong(arguments.getOrDefault("cron-jitter-window-seconds", "0"))
+        );
+
+        long startMs = System.currentTimeMillis();
+        CronLoadReport report;
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(inventoryPath), StandardCharsets.UTF_8)) {
+            report = simulator.simulate(readInventory(reader), states, from, to);
+        }
+
+        Writer writer = arguments.containsKey("output") ?
+                Files.newBufferedWriter(Path.of(arguments.get("output")), StandardCharsets.UTF_8) :
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        try (writer) {
+            report.writeCsv(writer);
+        }
+
+        System.err.printf("%s computed in %d ms%n", report, System.currentTimeMillis() - startMs);
+    }
+
+    static Map<String, String> parseArguments(String[] args) {
+        Map<String, String> arguments = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException(String.format("Invalid argument '%s'. Expected --name=value", arg));
+            }
+            int separator = arg.indexOf('=');
+            arguments.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return arguments;
+    }
+}
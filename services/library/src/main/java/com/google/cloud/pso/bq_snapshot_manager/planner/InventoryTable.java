@@ -0,0 +1,91 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.planner;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+
+public class InventoryTable {
+
+    private final TableSpec table;
+    private final long sizeBytes;
+    // used to match folder level fallback policies. Null if unknown
+    @Nullable
+    private final String folderId;
+
+    public InventoryTable(TableSpec table, long sizeBytes, @Nullable String folderId) {
+        this.table = table;
+        this.sizeBytes = sizeBytes;
+        this.folderId = folderId;
+    }
+
+    public TableSpec getTable() {
+        return table;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    @Nullable
+    public String getFolderId() {
+        return folderId;
+    }
+
+    // parse from "project.dataset.table,size_bytes[,folder_id]" format
+    public static InventoryTable fromCsvLine(String line) {
+        String[] tokens = line.split(",", -1);
+        if (tokens.length < 2) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid inventory line '%s'. Expected 'project.dataset.table,size_bytes[,folder_id]'", line));
+        }
+        String folderId = tokens.length > 2 && !tokens[2].isBlank() ? tokens[2].trim() : null;
+        return new InventoryTable(
+                TableSpec.fromSqlString(tokens[0].trim()),
+                Long.parseLong(tokens[1].trim()),
+                folderId
+        );
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        InventoryTable that = (InventoryTable) o;
+        return sizeBytes == that.sizeBytes &&
+                Objects.equals(table, that.table) &&
+                Objects.equals(folderId, that.folderId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(table, sizeBytes, folderId);
+    }
+
+    @Override
+    public String toString() {
+        return "InventoryTable{" +
+                "table=" + table +
+                ", sizeBytes=" + sizeBytes +
+                ", folderId='" + folderId + '\'' +
+                '}';
+    }
+}
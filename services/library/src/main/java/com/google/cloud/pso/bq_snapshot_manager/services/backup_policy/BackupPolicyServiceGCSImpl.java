@@ -22,12 +22,21 @@ import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
 import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicy;
 import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicyAndState;
 import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupState;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics;
 import com.google.cloud.storage.*;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import javax.annotation.Nullable;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics.ExternalService.GCS;
 
 public class BackupPolicyServiceGCSImpl implements BackupPolicyService {
 
@@ -36,11 +45,19 @@ public class BackupPolicyServiceGCSImpl implements BackupPolicyService {
 
     private Storage storage;
     private String bucketName;
+    // runs the policy and state writes of a table concurrently
+    private final ExecutorService writeExecutor;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
 
     public BackupPolicyServiceGCSImpl(String bucketName) {
+        this(bucketName, MoreExecutors.newDirectExecutorService());
+    }
+
+    public BackupPolicyServiceGCSImpl(String bucketName, ExecutorService writeExecutor) {
         // Instantiates a client
         this.storage = StorageOptions.getDefaultInstance().getService();
         this.bucketName = bucketName;
+        this.writeExecutor = writeExecutor;
     }
 
 
@@ -50,16 +67,72 @@ public class BackupPolicyServiceGCSImpl implements BackupPolicyService {
         String policyFilePath = tableToBackupPolicyGcsKey(tableSpec);
         String stateFilePath = tableToBackupStateGcsKey(tableSpec);
 
-        writeGCSFileAsUTF8(bucketName, policyFilePath, backupPolicyAndState.getPolicy().toJson());
-        writeGCSFileAsUTF8(bucketName, stateFilePath, backupPolicyAndState.getState().toJson());
+        // the policy rarely changes between runs while the state changes on every backup
+        Future<Boolean> policyWrite = writeExecutor.submit(() ->
+                writeGCSFileAsUTF8IfChanged(bucketName, policyFilePath, backupPolicyAndState.getPolicy().toJson()));
+        Future<Boolean> stateWrite = writeExecutor.submit(() -> {
+            writeGCSFileAsUTF8(bucketName, stateFilePath, backupPolicyAndState.getState().toJson());
+            return true;
+        });
+
+        getOrThrow(policyWrite);
+        getOrThrow(stateWrite);
+    }
+
+    /**
+     * Skips the upload if the stored object already has the same content, based on the MD5 hash kept by GCS
+     *
+     * @return true if the file was written
+     */
+    private boolean writeGCSFileAsUTF8IfChanged(String bucketName, String filePath, String contentStr) {
+        byte[] contentBytes = contentStr.getBytes(StandardCharsets.UTF_8);
+
+        // metadata only lookup. Composite objects have no MD5 and are always rewritten
+        Blob existing = metrics.timeExternalCall(GCS, "get",
+                () -> storage.get(BlobId.of(bucketName, filePath), Storage.BlobGetOption.fields(Storage.BlobField.MD5HASH)));
+        if (existing != null && md5(contentBytes).equals(existing.getMd5())) {
+            metrics.recordDedupHit("backup_policy", "unchanged_policy_file");
+            return false;
+        }
+        writeGCSFileAsUTF8(bucketName, filePath, contentBytes);
+        return true;
     }
 
-    private void writeGCSFileAsUTF8(String bucketName, String filePath, String contentStr) throws IOException {
+    private void writeGCSFileAsUTF8(String bucketName, String filePath, String contentStr) {
+        writeGCSFileAsUTF8(bucketName, filePath, contentStr.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeGCSFileAsUTF8(String bucketName, String filePath, byte[] contentBytes) {
         BlobId blobId = BlobId.of(bucketName, filePath);
         BlobInfo blobInfo = BlobInfo.newBuilder(blobId).setContentType("text").build();
 
-        byte[] contentBytes = contentStr.getBytes(StandardCharsets.UTF_8);
-        storage.createFrom(blobInfo, new ByteArrayInputStream(contentBytes));
+        // policy and state files are small, a single request upload avoids the resumable upload session of createFrom
+        metrics.timeExternalCall(GCS, "create", () -> storage.create(blobInfo, contentBytes));
+    }
+
+    // base64 encoded MD5 as returned by Blob.getMd5(). MD5 is what GCS keeps for non-composite objects
+    @SuppressWarnings("deprecation")
+    static String md5(byte[] content) {
+        return BaseEncoding.base64().encode(Hashing.md5().hashBytes(content).asBytes());
+    }
+
+    static <T> T getOrThrow(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        } catch (ExecutionException ex) {
+            // surface the original exception so that retryable API errors are still detected by the controllers
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
     }
 
 
@@ -84,11 +157,11 @@ public class BackupPolicyServiceGCSImpl implements BackupPolicyService {
 
     private @Nullable String readGcsFileAsUTF8(String bucketName, String filePath){
         BlobId blobId = BlobId.of(bucketName, filePath);
-        Blob blob = storage.get(blobId);
+        Blob blob = metrics.timeExternalCall(GCS, "get", () -> storage.get(blobId));
         if (blob == null) {
             return null;
         } else {
-            byte[] contentBytes = storage.readAllBytes(blobId);
+            byte[] contentBytes = metrics.timeExternalCall(GCS, "read", () -> storage.readAllBytes(blobId));
             return new String(contentBytes, StandardCharsets.UTF_8);
         }
     }
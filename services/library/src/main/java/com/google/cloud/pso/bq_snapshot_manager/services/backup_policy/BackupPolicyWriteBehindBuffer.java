@@ -0,0 +1,172 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.backup_policy;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicyAndState;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the policy and state updates of the same table received within a short window and
+ * writes them to the delegate in parallel.
+ * <p>
+ * Durability: createOrUpdateBackupPolicyAndStateForTable only returns once the update, or a later update of
+ * the same table that replaced it, has been written by the delegate. The Tagger (and so the PubSub ack) never
+ * completes before its update is persisted, so a crashed instance doesn't lose acknowledged updates.
+ * If a write fails, every caller whose update was part of it gets the error and its message is redelivered.
+ * The price is up to one window of extra latency per update.
+ * <p>
+ * Coalesced updates resolve like sequential writes: the last update received for a table wins. Writes of
+ * the same table never overlap, so an older update can't overwrite a newer one.
+ */
+public class BackupPolicyWriteBehindBuffer implements BackupPolicyService {
+
+    private final BackupPolicyService delegate;
+    private final long windowMs;
+    private final ExecutorService flushExecutor;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    // guarded by lock
+    private Map<TableSpec, PendingUpdate> pending = new LinkedHashMap<>();
+    private final Map<TableSpec, CompletableFuture<Void>> inFlight = new HashMap<>();
+    private boolean isShutdown = false;
+
+    private static class PendingUpdate {
+        private BackupPolicyAndState policyAndState;
+        private final CompletableFuture<Void> written = new CompletableFuture<>();
+    }
+
+    public BackupPolicyWriteBehindBuffer(BackupPolicyService delegate, long windowMs, ExecutorService flushExecutor) {
+        this.delegate = delegate;
+        this.windowMs = windowMs;
+        this.flushExecutor = flushExecutor;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("policy-write-behind-%d").setDaemon(true).build()
+        );
+    }
+
+    @Override
+    public void createOrUpdateBackupPolicyAndStateForTable(TableSpec tableSpec,
+                                                           BackupPolicyAndState backupPolicyAndState)
+            throws IOException {
+
+        CompletableFuture<Void> written;
+        synchronized (lock) {
+            if (isShutdown) {
+                written = null;
+            } else {
+                if (pending.isEmpty()) {
+                    scheduler.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+                }
+                PendingUpdate update = pending.computeIfAbsent(tableSpec, key -> new PendingUpdate());
+                update.policyAndState = backupPolicyAndState;
+                written = update.written;
+            }
+        }
+
+        if (written == null) {
+            delegate.createOrUpdateBackupPolicyAndStateForTable(tableSpec, backupPolicyAndState);
+        } else {
+            BackupPolicyServiceGCSImpl.getOrThrow(written);
+        }
+    }
+
+    @Override
+    public @Nullable BackupPolicyAndState getBackupPolicyAndStateForTable(TableSpec tableSpec)
+            throws IOException, IllegalArgumentException {
+        // read your own writes
+        synchronized (lock) {
+            PendingUpdate update = pending.get(tableSpec);
+            if (update != null) {
+                return update.policyAndState;
+            }
+        }
+        return delegate.getBackupPolicyAndStateForTable(tableSpec);
+    }
+
+    /**
+     * Writes all pending updates in parallel
+     */
+    void flush() {
+        synchronized (lock) {
+            Map<TableSpec, PendingUpdate> batch = pending;
+            pending = new LinkedHashMap<>();
+
+            for (Map.Entry<TableSpec, PendingUpdate> entry : batch.entrySet()) {
+                TableSpec tableSpec = entry.getKey();
+                PendingUpdate update = entry.getValue();
+
+                // chain after the previous write of the same table, if it's still running
+                CompletableFuture<Void> previous = inFlight.getOrDefault(tableSpec, CompletableFuture.completedFuture(null));
+                CompletableFuture<Void> write = previous
+                        .handle((result, ex) -> null)
+                        .thenRunAsync(() -> {
+                            try {
+                                delegate.createOrUpdateBackupPolicyAndStateForTable(tableSpec, update.policyAndState);
+                                update.written.complete(null);
+                            } catch (Exception ex) {
+                                update.written.completeExceptionally(ex);
+                            }
+                        }, flushExecutor);
+
+                inFlight.put(tableSpec, write);
+                write.whenComplete((result, ex) -> {
+                    synchronized (lock) {
+                        inFlight.remove(tableSpec, write);
+                    }
+                });
+            }
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Flushes the pending updates and waits for all writes to finish. Later updates are written directly
+     */
+    @Override
+    public void shutdown() {
+        CompletableFuture<?>[] writes;
+        synchronized (lock) {
+            isShutdown = true;
+            flush();
+            writes = inFlight.values().toArray(new CompletableFuture<?>[0]);
+        }
+        // failures were already reported to the callers
+        CompletableFuture.allOf(writes).handle((result, ex) -> null).join();
+        scheduler.shutdownNow();
+        delegate.shutdown();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.backup_policy;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicyAndState;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads.Downstream;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+// Decorates a BackupPolicyService to cap the concurrent GCS calls of the instance
+public class BulkheadedBackupPolicyService implements BackupPolicyService {
+
+    private final BackupPolicyService delegate;
+    private final DownstreamBulkheads bulkheads;
+
+    public BulkheadedBackupPolicyService(BackupPolicyService delegate, DownstreamBulkheads bulkheads) {
+        this.delegate = delegate;
+        this.bulkheads = bulkheads;
+    }
+
+    @Override
+    public void createOrUpdateBackupPolicyAndStateForTable(TableSpec tableSpec, BackupPolicyAndState backupPolicyAndState) throws IOException {
+        bulkheads.acquire(Downstream.GCS);
+        try {
+            delegate.createOrUpdateBackupPolicyAndStateForTable(tableSpec, backupPolicyAndState);
+        } finally {
+            bulkheads.release(Downstream.GCS);
+        }
+    }
+
+    @Nullable
+    @Override
+    public BackupPolicyAndState getBackupPolicyAndStateForTable(TableSpec tableSpec) throws IOException, IllegalArgumentException {
+        bulkheads.acquire(Downstream.GCS);
+        try {
+            return delegate.getBackupPolicyAndStateForTable(tableSpec);
+        } finally {
+            bulkheads.release(Downstream.GCS);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+}
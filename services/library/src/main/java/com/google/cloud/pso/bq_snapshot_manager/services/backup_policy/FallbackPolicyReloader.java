@@ -0,0 +1,123 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.backup_policy;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.FallbackBackupPolicy;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.FallbackPolicyResolver;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.LoggingHelper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the compiled fallback policy and reloads it when its source has a new version.
+ * <p>
+ * Requests read the current resolver once and use it for the whole request, while a reload compiles the new
+ * version aside and swaps it atomically. A failed reload (e.g. invalid JSON) keeps serving the last valid version.
+ */
+public class FallbackPolicyReloader {
+
+    private final FallbackPolicySource source;
+    private final AtomicReference<FallbackPolicyResolver> current = new AtomicReference<>();
+    private ScheduledExecutorService executor;
+
+    public FallbackPolicyReloader(FallbackPolicySource source) {
+        this.source = source;
+    }
+
+    /**
+     * Loads the latest version if it's different from the current one
+     *
+     * @return true if a new version was compiled and swapped in
+     * @throws NonRetryableApplicationException if the policy doesn't exist or can't be parsed
+     */
+    public synchronized boolean reload() throws IOException, NonRetryableApplicationException {
+
+        String latestVersion = source.getLatestVersion();
+        if (latestVersion == null) {
+            throw new NonRetryableApplicationException("Fallback backup policy doesn't exist in its source");
+        }
+
+        FallbackPolicyResolver currentResolver = current.get();
+        if (currentResolver != null && Objects.equals(latestVersion, currentResolver.getVersion())) {
+            return false;
+        }
+
+        String policyJson = source.read(latestVersion);
+
+        FallbackPolicyResolver newResolver;
+        try {
+            newResolver = FallbackPolicyResolver.compile(FallbackBackupPolicy.fromJson(policyJson), latestVersion);
+        } catch (Exception ex) {
+            throw new NonRetryableApplicationException(
+                    String.format("Failed to parse fallback backup policy version '%s'. %s", latestVersion, ex.getMessage()));
+        }
+
+        current.set(newResolver);
+        return true;
+    }
+
+    /**
+     * @return the last successfully loaded policy. Null if nothing was loaded yet
+     */
+    public FallbackPolicyResolver getResolver() {
+        return current.get();
+    }
+
+    /**
+     * Checks for new versions in the background every periodSeconds. Errors are logged and retried next period.
+     */
+    public synchronized void startRefreshing(long periodSeconds, LoggingHelper logger, String trackingId) {
+        if (executor != null || periodSeconds <= 0) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("fallback-policy-reloader-%d")
+                        .setDaemon(true)
+                        .build()
+        );
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                if (reload()) {
+                    logger.logInfoWithTracker(trackingId, null,
+                            String.format("Reloaded fallback backup policy version '%s'", getResolver().getVersion()));
+                }
+            } catch (Exception ex) {
+                logger.logWarnWithTracker(trackingId, null,
+                        String.format("Failed to reload fallback backup policy. Will keep using version '%s'. %s",
+                                getResolver() == null ? null : getResolver().getVersion(),
+                                ex.getMessage()));
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
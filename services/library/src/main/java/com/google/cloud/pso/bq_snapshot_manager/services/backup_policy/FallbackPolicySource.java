@@ -0,0 +1,43 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.backup_policy;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * Location of the fallback backup policy JSON. Versions are opaque strings that change whenever the content changes,
+ * which allows checking for updates without reading the policy itself.
+ */
+public interface FallbackPolicySource {
+
+    /**
+     * A cheap check (e.g. metadata only) of the current version
+     *
+     * @return the current version or null if the policy doesn't exist
+     */
+    @Nullable
+    String getLatestVersion() throws IOException;
+
+    /**
+     * @param version as returned by getLatestVersion
+     * @return the policy JSON of that exact version
+     */
+    String read(String version) throws IOException;
+}
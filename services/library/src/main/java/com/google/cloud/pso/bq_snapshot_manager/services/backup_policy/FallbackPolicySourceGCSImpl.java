@@ -0,0 +1,88 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.backup_policy;
+
+import com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics.ExternalService.GCS;
+
+/**
+ * Reads the fallback policy from a GCS object. Versions are the object URI and generation in the format
+ * "gs://bucket/path/policy.json#generation", so every upload of the object is a new version and
+ * each version is read as an immutable snapshot.
+ */
+public class FallbackPolicySourceGCSImpl implements FallbackPolicySource {
+
+    private static final String GENERATION_SEPARATOR = "#";
+
+    private final Storage storage;
+    private final String bucketName;
+    private final String objectName;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+
+    public FallbackPolicySourceGCSImpl(String gcsUri) {
+        this(StorageOptions.getDefaultInstance().getService(), gcsUri);
+    }
+
+    public FallbackPolicySourceGCSImpl(Storage storage, String gcsUri) {
+        // Instantiates a client
+        this.storage = storage;
+        BlobId blobId = BlobId.fromGsUtilUri(gcsUri);
+        this.bucketName = blobId.getBucket();
+        this.objectName = blobId.getName();
+    }
+
+    @Override
+    public @Nullable String getLatestVersion() throws IOException {
+        // only fetch the generation metadata field, not the object content
+        Blob blob = metrics.timeExternalCall(GCS, "get", () -> storage.get(
+                BlobId.of(bucketName, objectName),
+                Storage.BlobGetOption.fields(Storage.BlobField.GENERATION)
+        ));
+        return blob == null ? null : toVersion(blob.getGeneration());
+    }
+
+    @Override
+    public String read(String version) throws IOException {
+        // read the exact generation to avoid mixing up versions if the object was overwritten in the meantime
+        byte[] content = metrics.timeExternalCall(GCS, "read",
+                () -> storage.readAllBytes(BlobId.of(bucketName, objectName, toGeneration(version))));
+        return new String(content, StandardCharsets.UTF_8);
+    }
+
+    public String toVersion(long generation) {
+        return String.format("gs://%s/%s%s%s", bucketName, objectName, GENERATION_SEPARATOR, generation);
+    }
+
+    public static long toGeneration(String version) {
+        int separatorIndex = version.lastIndexOf(GENERATION_SEPARATOR);
+        if (separatorIndex < 0) {
+            throw new IllegalArgumentException(String.format("Version '%s' has no GCS generation", version));
+        }
+        return Long.parseLong(version.substring(separatorIndex + 1));
+    }
+}
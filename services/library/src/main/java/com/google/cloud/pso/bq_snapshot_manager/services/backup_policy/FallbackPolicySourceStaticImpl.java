@@ -0,0 +1,48 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.backup_policy;
+
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A fixed fallback policy (e.g. from the BACKUP_POLICY_JSON env variable). The version is a hash of the content.
+ */
+public class FallbackPolicySourceStaticImpl implements FallbackPolicySource {
+
+    private final String policyJson;
+    private final String version;
+
+    public FallbackPolicySourceStaticImpl(String policyJson) {
+        this.policyJson = policyJson;
+        this.version = String.format("sha256:%s",
+                Hashing.sha256().hashString(policyJson, StandardCharsets.UTF_8).toString().substring(0, 12));
+    }
+
+    @Override
+    public String getLatestVersion() {
+        return version;
+    }
+
+    @Override
+    public String read(String version) {
+        return policyJson;
+    }
+}
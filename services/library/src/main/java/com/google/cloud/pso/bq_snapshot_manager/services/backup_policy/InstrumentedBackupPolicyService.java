@@ -0,0 +1,73 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.backup_policy;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicyAndState;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.ServiceCallInstrumentation;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+// Decorates a BackupPolicyService to record the latency and outcome of each call
+public class InstrumentedBackupPolicyService implements BackupPolicyService {
+
+    private static final String SERVICE = "BackupPolicyService";
+
+    private final BackupPolicyService delegate;
+    private final ServiceCallInstrumentation instrumentation;
+
+    public InstrumentedBackupPolicyService(BackupPolicyService delegate, ServiceCallInstrumentation instrumentation) {
+        this.delegate = delegate;
+        this.instrumentation = instrumentation;
+    }
+
+    @Override
+    public void createOrUpdateBackupPolicyAndStateForTable(TableSpec tableSpec,
+                                                           BackupPolicyAndState backupPolicyAndState) throws IOException {
+
+        long startNanos = System.nanoTime();
+        try {
+            delegate.createOrUpdateBackupPolicyAndStateForTable(tableSpec, backupPolicyAndState);
+        } catch (Exception ex) {
+            instrumentation.record(SERVICE, "createOrUpdateBackupPolicyAndStateForTable", startNanos, ex, null, tableSpec);
+            throw ex;
+        }
+        instrumentation.record(SERVICE, "createOrUpdateBackupPolicyAndStateForTable", startNanos, null, null, tableSpec);
+    }
+
+    @Override
+    public @Nullable BackupPolicyAndState getBackupPolicyAndStateForTable(TableSpec tableSpec)
+            throws IOException, IllegalArgumentException {
+
+        long startNanos = System.nanoTime();
+        try {
+            BackupPolicyAndState backupPolicyAndState = delegate.getBackupPolicyAndStateForTable(tableSpec);
+            instrumentation.record(SERVICE, "getBackupPolicyAndStateForTable", startNanos, null, null, tableSpec);
+            return backupPolicyAndState;
+        } catch (Exception ex) {
+            instrumentation.record(SERVICE, "getBackupPolicyAndStateForTable", startNanos, ex, null, tableSpec);
+            throw ex;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+}
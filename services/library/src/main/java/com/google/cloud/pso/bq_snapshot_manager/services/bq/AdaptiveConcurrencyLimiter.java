@@ -0,0 +1,176 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.bq;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.RetryableApplicationException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AIMD (additive increase, multiplicative decrease) concurrency limiter keyed by backup operation project.
+ * The limit grows by ~1 for every "limit" successful calls and is cut by the backoff ratio on each rate limit signal.
+ * Callers that can't get a permit wait locally for up to maxWaitMs before failing with a RetryableApplicationException,
+ * which is then handled as a normal Pub/Sub retry.
+ *
+ * The limiter is process-wide state and must be shared across requests (e.g. held by the controller)
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    public static final String LIMIT_METRIC = "bq_backup_manager.concurrency.limit";
+    public static final String IN_FLIGHT_METRIC = "bq_backup_manager.concurrency.in_flight";
+
+    public static final double DEFAULT_BACKOFF_RATIO = 0.5;
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long maxWaitMs;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, KeyState> states = new ConcurrentHashMap<>();
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long maxWaitMs) {
+        this(initialLimit, minLimit, maxLimit, backoffRatio, maxWaitMs, Metrics.globalRegistry);
+    }
+
+    public AdaptiveConcurrencyLimiter(int initialLimit,
+                                      int minLimit,
+                                      int maxLimit,
+                                      double backoffRatio,
+                                      long maxWaitMs,
+                                      MeterRegistry meterRegistry) {
+
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException(String.format(
+                    "Limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit. Received min=%s, initial=%s, max=%s",
+                    minLimit, initialLimit, maxLimit));
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException(String.format("backoffRatio must be in (0, 1). Received %s", backoffRatio));
+        }
+
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.maxWaitMs = maxWaitMs;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Blocks until a permit is available for the key or the max wait time elapses.
+     * Every successful acquire must be followed by exactly one call to onSuccess, onDropped or onIgnore
+     */
+    public void acquire(String key) throws InterruptedException, RetryableApplicationException {
+        KeyState state = getState(key);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+
+        synchronized (state) {
+            while (state.inFlight >= (int) state.limit) {
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    throw new RetryableApplicationException(String.format(
+                            "Concurrency limit of %s reached for backup operation project '%s' after waiting %s ms",
+                            (int) state.limit,
+                            key,
+                            maxWaitMs));
+                }
+                state.wait(remainingMs);
+            }
+            state.inFlight++;
+        }
+    }
+
+    // call completed normally. Probe upward
+    public void onSuccess(String key) {
+        KeyState state = getState(key);
+        synchronized (state) {
+            state.limit = Math.min(maxLimit, state.limit + 1.0 / state.limit);
+            release(state);
+        }
+    }
+
+    // call was rejected due to rate limits or quotas. Back off
+    public void onDropped(String key) {
+        KeyState state = getState(key);
+        synchronized (state) {
+            state.limit = Math.max(minLimit, state.limit * backoffRatio);
+            release(state);
+        }
+    }
+
+    // call failed for reasons unrelated to load. Keep the limit as is
+    public void onIgnore(String key) {
+        KeyState state = getState(key);
+        synchronized (state) {
+            release(state);
+        }
+    }
+
+    public int getLimit(String key) {
+        KeyState state = getState(key);
+        synchronized (state) {
+            return (int) state.limit;
+        }
+    }
+
+    public int getInFlight(String key) {
+        KeyState state = getState(key);
+        synchronized (state) {
+            return state.inFlight;
+        }
+    }
+
+    private void release(KeyState state) {
+        state.inFlight = Math.max(0, state.inFlight - 1);
+        state.notifyAll();
+    }
+
+    private KeyState getState(String key) {
+        return states.computeIfAbsent(key, this::newState);
+    }
+
+    private KeyState newState(String key) {
+        KeyState state = new KeyState(initialLimit);
+        Gauge.builder(LIMIT_METRIC, state, s -> s.limit)
+                .description("Current adaptive concurrency limit of BigQuery jobs per backup operation project")
+                .tag("operation_project", key)
+                .register(meterRegistry);
+        Gauge.builder(IN_FLIGHT_METRIC, state, s -> s.inFlight)
+                .description("BigQuery job calls currently in flight per backup operation project")
+                .tag("operation_project", key)
+                .register(meterRegistry);
+        return state;
+    }
+
+    private static class KeyState {
+        // volatile so that gauges could read them without locking
+        private volatile double limit;
+        private volatile int inFlight;
+
+        private KeyState(double limit) {
+            this.limit = limit;
+        }
+    }
+}
@@ -53,7 +53,7 @@ public interface BigQueryService {
             @Nullable Boolean useAvroLogicalTypes,
             String trackingId,
             Map<String, String> jobLabels
-    ) throws InterruptedException;
+    ) throws InterruptedException, RetryableApplicationException;
 
     Long getTableCreationTime(TableSpec table) throws NonRetryableApplicationException;
 }
@@ -25,15 +25,27 @@ import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplication
 import com.google.cloud.pso.bq_snapshot_manager.entities.RetryableApplicationException;
 import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
 import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.GCSSnapshotFormat;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics.ExternalService.BIGQUERY;
 
 public class BigQueryServiceImpl implements BigQueryService {
 
     private BigQuery bigQuery;
 
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+
+    // optional, to prefetch table metadata per dataset
+    private TableMetadataCache tableMetadataCache;
+    private String runId;
+
     public BigQueryServiceImpl(String projectId) throws IOException {
         bigQuery = BigQueryOptions
                 .newBuilder()
@@ -42,6 +54,12 @@ public class BigQueryServiceImpl implements BigQueryService {
                 .getService();
     }
 
+    public BigQueryServiceImpl(String projectId, TableMetadataCache tableMetadataCache, String runId) throws IOException {
+        this(projectId);
+        this.tableMetadataCache = tableMetadataCache;
+        this.runId = runId;
+    }
+
 
     public void createSnapshot(String jobId, TableSpec sourceTable, TableSpec destinationTable, Timestamp snapshotExpirationTs, String trackingId) throws InterruptedException, RetryableApplicationException, NonRetryableApplicationException {
         CopyJobConfiguration copyJobConfiguration = CopyJobConfiguration
@@ -51,13 +69,13 @@ public class BigQueryServiceImpl implements BigQueryService {
                 .setDestinationExpirationTime(snapshotExpirationTs.toString())
                 .build();
 
-        Job job = bigQuery.create(JobInfo
+        Job createdJob = metrics.timeExternalCall(BIGQUERY, "create_job", () -> bigQuery.create(JobInfo
                 .newBuilder(copyJobConfiguration)
                 .setJobId(JobId.of(jobId))
-                .build());
+                .build()));
 
         // wait for the job to complete
-        job = job.waitFor();
+        Job job = metrics.timeExternalCall(BIGQUERY, "wait_for_job", () -> createdJob.waitFor());
 
         // if job finished with errors
         if (job.getStatus().getError() != null) {
@@ -129,19 +147,71 @@ public class BigQueryServiceImpl implements BigQueryService {
         }
 
         // async call to create an export job
-        bigQuery.create(JobInfo
+        metrics.timeExternalCall(BIGQUERY, "create_job", () -> bigQuery.create(JobInfo
                 .newBuilder(extractConfigurationBuilder.build())
                 .setJobId(JobId.of(jobId))
-                .build());
+                .build()));
     }
 
     @Override
     public Long getTableCreationTime(TableSpec tableSpec) throws NonRetryableApplicationException {
-        Table table = bigQuery.getTable(tableSpec.toTableId());
+
+        if (tableMetadataCache != null) {
+            Long creationTime = getPrefetchedTableCreationTime(tableSpec);
+            if (creationTime != null) {
+                return creationTime;
+            }
+            // tables created after the dataset was listed, or evicted from the cache, fall back to a single table lookup
+        }
+
+        // only request the needed fields instead of the whole table resource (incl. schema)
+        Table table = metrics.timeExternalCall(BIGQUERY, "get_table", () -> bigQuery.getTable(
+                tableSpec.toTableId(),
+                BigQuery.TableOption.fields(BigQuery.TableField.CREATION_TIME, BigQuery.TableField.LAST_MODIFIED_TIME)
+        ));
         if(table != null){
             return table.getCreationTime();
         }else{
             throw new NonRetryableApplicationException(String.format("Requested table %s is not found. The table might have been deleted.", tableSpec.toSqlString()));
         }
     }
-}
\ No newline at end of file
+
+    private @Nullable Long getPrefetchedTableCreationTime(TableSpec tableSpec) {
+        try {
+            return tableMetadataCache.getTableCreationTime(
+                    runId,
+                    tableSpec.getProject(),
+                    tableSpec.getDataset(),
+                    tableSpec.getTable(),
+                    () -> listTableCreationTimes(tableSpec.getProject(), tableSpec.getDataset())
+            );
+        } catch (ExecutionException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Lists the creation times of all tables in a dataset. The tables.list API returns the creation time without
+     * the schema or any other heavy fields and up to 1000 tables per call.
+     * @return table name to creation time in epoch millis. Empty if the dataset couldn't be listed
+     */
+    public Map<String, Long> listTableCreationTimes(String project, String dataset) {
+        Map<String, Long> creationTimes = new HashMap<>();
+        try {
+            metrics.timeExternalCall(BIGQUERY, "list_tables", () -> {
+                for (Table table : bigQuery.listTables(
+                        DatasetId.of(project, dataset),
+                        BigQuery.TableListOption.pageSize(1000)).iterateAll()) {
+                    if (table.getCreationTime() != null) {
+                        creationTimes.put(table.getTableId().getTable(), table.getCreationTime());
+                    }
+                }
+            });
+        } catch (BigQueryException ex) {
+            // e.g. missing bigquery.tables.list permission. Cache the empty listing so that all tables of this
+            // dataset fall back to single table lookups instead of re-trying the listing for each table
+            return Collections.emptyMap();
+        }
+        return creationTimes;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.bq;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.RetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.GCSSnapshotFormat;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads.Downstream;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+// Decorates a BigQueryService to cap the concurrent BigQuery calls of the instance
+public class BulkheadedBigQueryService implements BigQueryService {
+
+    private final BigQueryService delegate;
+    private final DownstreamBulkheads bulkheads;
+
+    public BulkheadedBigQueryService(BigQueryService delegate, DownstreamBulkheads bulkheads) {
+        this.delegate = delegate;
+        this.bulkheads = bulkheads;
+    }
+
+    @Override
+    public void createSnapshot(String jobId,
+                               TableSpec sourceTable,
+                               TableSpec destinationId,
+                               Timestamp snapshotExpirationTs,
+                               String trackingId) throws InterruptedException, RetryableApplicationException, NonRetryableApplicationException {
+        bulkheads.acquire(Downstream.BIGQUERY);
+        try {
+            delegate.createSnapshot(jobId, sourceTable, destinationId, snapshotExpirationTs, trackingId);
+        } finally {
+            bulkheads.release(Downstream.BIGQUERY);
+        }
+    }
+
+    @Override
+    public void exportToGCS(String jobId,
+                            TableSpec sourceTable,
+                            String gcsDestinationUri,
+                            GCSSnapshotFormat exportFormat,
+                            @Nullable String csvFieldDelimiter,
+                            @Nullable Boolean csvPrintHeader,
+                            @Nullable Boolean useAvroLogicalTypes,
+                            String trackingId,
+                            Map<String, String> jobLabels) throws InterruptedException, RetryableApplicationException {
+        bulkheads.acquire(Downstream.BIGQUERY);
+        try {
+            delegate.exportToGCS(jobId,
+                    sourceTable,
+                    gcsDestinationUri,
+                    exportFormat,
+                    csvFieldDelimiter,
+                    csvPrintHeader,
+                    useAvroLogicalTypes,
+                    trackingId,
+                    jobLabels);
+        } finally {
+            bulkheads.release(Downstream.BIGQUERY);
+        }
+    }
+
+    @Override
+    public Long getTableCreationTime(TableSpec table) throws NonRetryableApplicationException {
+        bulkheads.acquire(Downstream.BIGQUERY);
+        try {
+            return delegate.getTableCreationTime(table);
+        } finally {
+            bulkheads.release(Downstream.BIGQUERY);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.bq;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.RetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.GCSSnapshotFormat;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.ControllerExceptionHelper;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+// Decorates a BigQueryService to run job submissions under the adaptive concurrency limit of the operation project
+public class ConcurrencyLimitedBigQueryService implements BigQueryService {
+
+    private final BigQueryService delegate;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final String operationProject;
+
+    public ConcurrencyLimitedBigQueryService(BigQueryService delegate,
+                                             AdaptiveConcurrencyLimiter limiter,
+                                             String operationProject) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.operationProject = operationProject;
+    }
+
+    @Override
+    public void createSnapshot(String jobId,
+                               TableSpec sourceTable,
+                               TableSpec destinationId,
+                               Timestamp snapshotExpirationTs,
+                               String trackingId) throws InterruptedException, RetryableApplicationException, NonRetryableApplicationException {
+
+        limiter.acquire(operationProject);
+        try {
+            delegate.createSnapshot(jobId, sourceTable, destinationId, snapshotExpirationTs, trackingId);
+        } catch (RuntimeException | InterruptedException | RetryableApplicationException | NonRetryableApplicationException ex) {
+            onFailure(ex);
+            throw ex;
+        }
+        limiter.onSuccess(operationProject);
+    }
+
+    @Override
+    public void exportToGCS(String jobId,
+                            TableSpec sourceTable,
+                            String gcsDestinationUri,
+                            GCSSnapshotFormat exportFormat,
+                            @Nullable String csvFieldDelimiter,
+                            @Nullable Boolean csvPrintHeader,
+                            @Nullable Boolean useAvroLogicalTypes,
+                            String trackingId,
+                            Map<String, String> jobLabels) throws InterruptedException, RetryableApplicationException {
+
+        limiter.acquire(operationProject);
+        try {
+            delegate.exportToGCS(jobId,
+                    sourceTable,
+                    gcsDestinationUri,
+                    exportFormat,
+                    csvFieldDelimiter,
+                    csvPrintHeader,
+                    useAvroLogicalTypes,
+                    trackingId,
+                    jobLabels);
+        } catch (RuntimeException | InterruptedException | RetryableApplicationException ex) {
+            onFailure(ex);
+            throw ex;
+        }
+        limiter.onSuccess(operationProject);
+    }
+
+    @Override
+    public Long getTableCreationTime(TableSpec table) throws NonRetryableApplicationException {
+        // metadata reads are not subject to job quotas
+        return delegate.getTableCreationTime(table);
+    }
+
+    private void onFailure(Exception ex) {
+        if (ControllerExceptionHelper.isRateLimitException(ex)) {
+            limiter.onDropped(operationProject);
+        } else {
+            limiter.onIgnore(operationProject);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.bq;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.RetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.GCSSnapshotFormat;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.ServiceCallInstrumentation;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+// Decorates a BigQueryService to record the latency and outcome of each call
+public class InstrumentedBigQueryService implements BigQueryService {
+
+    private static final String SERVICE = "BigQueryService";
+
+    private final BigQueryService delegate;
+    private final ServiceCallInstrumentation instrumentation;
+
+    public InstrumentedBigQueryService(BigQueryService delegate, ServiceCallInstrumentation instrumentation) {
+        this.delegate = delegate;
+        this.instrumentation = instrumentation;
+    }
+
+    @Override
+    public void createSnapshot(String jobId,
+                               TableSpec sourceTable,
+                               TableSpec destinationId,
+                               Timestamp snapshotExpirationTs,
+                               String trackingId) throws InterruptedException, RetryableApplicationException, NonRetryableApplicationException {
+
+        long startNanos = System.nanoTime();
+        try {
+            delegate.createSnapshot(jobId, sourceTable, destinationId, snapshotExpirationTs, trackingId);
+        } catch (Exception ex) {
+            instrumentation.record(SERVICE, "createSnapshot", startNanos, ex, trackingId, sourceTable);
+            throw ex;
+        }
+        instrumentation.record(SERVICE, "createSnapshot", startNanos, null, trackingId, sourceTable);
+    }
+
+    @Override
+    public void exportToGCS(String jobId,
+                            TableSpec sourceTable,
+                            String gcsDestinationUri,
+                            GCSSnapshotFormat exportFormat,
+                            @Nullable String csvFieldDelimiter,
+                            @Nullable Boolean csvPrintHeader,
+                            @Nullable Boolean useAvroLogicalTypes,
+                            String trackingId,
+                            Map<String, String> jobLabels) throws InterruptedException, RetryableApplicationException {
+
+        long startNanos = System.nanoTime();
+        try {
+            delegate.exportToGCS(jobId,
+                    sourceTable,
+                    gcsDestinationUri,
+                    exportFormat,
+                    csvFieldDelimiter,
+                    csvPrintHeader,
+                    useAvroLogicalTypes,
+                    trackingId,
+                    jobLabels);
+        } catch (Exception ex) {
+            instrumentation.record(SERVICE, "exportToGCS", startNanos, ex, trackingId, sourceTable);
+            throw ex;
+        }
+        instrumentation.record(SERVICE, "exportToGCS", startNanos, null, trackingId, sourceTable);
+    }
+
+    @Override
+    public Long getTableCreationTime(TableSpec table) throws NonRetryableApplicationException {
+
+        long startNanos = System.nanoTime();
+        try {
+            Long creationTime = delegate.getTableCreationTime(table);
+            instrumentation.record(SERVICE, "getTableCreationTime", startNanos, null, null, table);
+            return creationTime;
+        } catch (Exception ex) {
+            instrumentation.record(SERVICE, "getTableCreationTime", startNanos, ex, null, table);
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.bq;
+
+import com.google.cloud.pso.bq_snapshot_manager.services.map.PersistentMap;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads backup operations over a pool of backup operation projects.
+ *
+ * Projects are ranked via rendezvous hashing on the tracking ID. A request goes to the first project in that order
+ * whose adaptive concurrency limit (which reflects rate limit feedback) is not reached on this instance, or to the
+ * first project if all of them are saturated. Since the saturation is local to each instance and BigQuery job IDs are
+ * only unique within a project, the chosen project is persisted per tracking ID and reused when the request is retried.
+ */
+public class OperationProjectScheduler {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final PersistentMap assignments;
+    private final String assignmentsPrefix;
+
+    public OperationProjectScheduler(AdaptiveConcurrencyLimiter limiter, PersistentMap assignments, String assignmentsPrefix) {
+        this.limiter = limiter;
+        this.assignments = assignments;
+        this.assignmentsPrefix = assignmentsPrefix;
+    }
+
+    public String selectProject(List<String> pool, String trackingId) {
+
+        if (pool.size() == 1) {
+            return pool.get(0);
+        }
+
+        // a retry must run on the same project as the previous attempt to not submit the same job twice
+        String assignmentKey = String.format("%s/%s", assignmentsPrefix, trackingId);
+        String previous = assignments.get(assignmentKey);
+        if (previous != null && pool.contains(previous)) {
+            return previous;
+        }
+
+        List<String> ranked = rankByHash(pool, trackingId);
+
+        // saturated projects are only used if all projects in the pool are saturated
+        String selected = ranked.stream()
+                .filter(project -> limiter.getInFlight(project) < limiter.getLimit(project))
+                .findFirst()
+                .orElse(ranked.get(0));
+
+        assignments.put(assignmentKey, selected);
+        return selected;
+    }
+
+    // deterministic pick without headroom information
+    public static String selectProjectByHash(List<String> pool, String trackingId) {
+        String selected = null;
+        double selectedScore = Double.MAX_VALUE;
+        for (String project : pool) {
+            double score = rendezvousScore(trackingId, project, 1.0);
+            if (score < selectedScore) {
+                selected = project;
+                selectedScore = score;
+            }
+        }
+        return selected;
+    }
+
+    // weighted rendezvous hashing score. The lowest score wins
+    public static double rendezvousScore(String trackingId, String project, double weight) {
+        long hash = Hashing.murmur3_128()
+                .newHasher()
+                .putString(trackingId, StandardCharsets.UTF_8)
+                .putChar('|')
+                .putString(project, StandardCharsets.UTF_8)
+                .hash()
+                .asLong();
+        // map the hash to a uniform value in (0, 1)
+        double uniform = ((hash >>> 11) + 0.5) / (double) (1L << 53);
+        return -Math.log(uniform) / weight;
+    }
+
+    // projects ordered by their rendezvous hashing score for the tracking ID, best first
+    public static List<String> rankByHash(List<String> pool, String trackingId) {
+        return pool.stream()
+                .sorted(Comparator.comparingDouble(project -> rendezvousScore(trackingId, project, 1.0)))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.bq;
+
+import com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Table creation times prefetched per dataset and run, shared by all requests of a service instance.
+ * <p>
+ * The first lookup of a dataset in a run lists the whole dataset once and caches the creation time of each table,
+ * the following lookups of tables in the same dataset and run are served from memory. Concurrent lookups of the same
+ * dataset wait for a single listing. Tables are cached individually, so a large dataset only evicts some of its
+ * tables instead of the whole listing. A dataset is listed at most once per run and TTL, even if its tables were
+ * evicted: the evicted and new tables are looked up individually by the caller.
+ * Entries expire after a TTL to bound the staleness and memory of long-running instances.
+ */
+public class TableMetadataCache {
+
+    // datasets listed per run. Small entries, bounded separately from the tables
+    private static final long MAX_LISTED_DATASETS = 100_000;
+
+    private final Cache<String, Long> tableCreationTimes;
+    private final Cache<String, Boolean> listedDatasets;
+    private final long maxTables;
+
+    /**
+     * @param ttlSeconds how long a dataset listing is used after it's fetched
+     * @param maxTables  max number of tables to keep in memory across all datasets. Listings of larger datasets
+     *                   are not cached and their tables are looked up individually
+     */
+    public TableMetadataCache(long ttlSeconds, long maxTables) {
+        this.maxTables = maxTables;
+        this.tableCreationTimes = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .maximumSize(maxTables)
+                .recordStats()
+                .build();
+        this.listedDatasets = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .maximumSize(MAX_LISTED_DATASETS)
+                .recordStats()
+                .build();
+        PipelineMetrics.global().monitorCache(tableCreationTimes, "table_metadata");
+        PipelineMetrics.global().monitorCache(listedDatasets, "table_metadata_listings");
+    }
+
+    /**
+     * @param loader lists the creation times of all tables in the dataset, keyed by table name
+     * @return creation time (epoch millis) of the table, or null if it's not in the dataset listing (e.g. created
+     * after the listing, evicted, or in a dataset too large to cache)
+     */
+    public @Nullable Long getTableCreationTime(String runId,
+                                               String project,
+                                               String dataset,
+                                               String table,
+                                               Callable<Map<String, Long>> loader) throws ExecutionException {
+
+        String datasetKey = String.format("%s/%s.%s", runId, project, dataset);
+        String tableKey = String.format("%s.%s", datasetKey, table);
+
+        Long creationTime = tableCreationTimes.getIfPresent(tableKey);
+        if (creationTime != null) {
+            return creationTime;
+        }
+
+        listedDatasets.get(datasetKey, () -> {
+            Map<String, Long> tables = loader.call();
+            if (tables.size() <= maxTables) {
+                tables.forEach((name, time) -> tableCreationTimes.put(String.format("%s.%s", datasetKey, name), time));
+            }
+            return true;
+        });
+
+        // the listing might have just been loaded by this or a concurrent lookup
+        return tableCreationTimes.getIfPresent(tableKey);
+    }
+
+    public long getHitCount() {
+        return tableCreationTimes.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return tableCreationTimes.stats().missCount();
+    }
+
+    public long getListingCount() {
+        return listedDatasets.stats().missCount();
+    }
+
+    public long getSize() {
+        return tableCreationTimes.size();
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.concurrency;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.RetryableApplicationException;
+
+/**
+ * Thrown by the bulkhead decorators of the service interfaces when a downstream stays saturated for longer than the
+ * max wait. It's unchecked because not all service methods declare RetryableApplicationException. The controllers
+ * retry it since it's caused by one.
+ */
+public class BulkheadSaturatedException extends RuntimeException {
+    public BulkheadSaturatedException(RetryableApplicationException cause) {
+        super(cause.getMessage(), cause);
+    }
+}
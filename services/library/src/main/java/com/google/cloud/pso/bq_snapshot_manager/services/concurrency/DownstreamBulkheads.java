@@ -0,0 +1,210 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.concurrency;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.RetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.Utils;
+import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.BackupPolicyService;
+import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.BulkheadedBackupPolicyService;
+import com.google.cloud.pso.bq_snapshot_manager.services.bq.BigQueryService;
+import com.google.cloud.pso.bq_snapshot_manager.services.bq.BulkheadedBigQueryService;
+import com.google.cloud.pso.bq_snapshot_manager.services.map.BulkheadedPersistentMap;
+import com.google.cloud.pso.bq_snapshot_manager.services.map.PersistentMap;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.BulkheadedPubSubService;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubService;
+import com.google.cloud.pso.bq_snapshot_manager.services.scan.BulkheadedResourceScanner;
+import com.google.cloud.pso.bq_snapshot_manager.services.scan.ResourceScanner;
+import com.google.cloud.pso.bq_snapshot_manager.services.set.BulkheadedPersistentSet;
+import com.google.cloud.pso.bq_snapshot_manager.services.set.PersistentSet;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of concurrent blocking calls per downstream API within an instance, regardless of how many
+ * request or I/O threads are available. Callers that can't get a permit wait for up
+ * to maxWaitMs before failing with a RetryableApplicationException, which is then handled as a normal Pub/Sub retry.
+ * <p>
+ * The bulkheads are process-wide state and must be shared across requests (e.g. held by the controller). The apps
+ * apply them by wrapping their services with the wrap* methods.
+ */
+public class DownstreamBulkheads {
+
+    public enum Downstream {
+        GCS("MAX_CONCURRENT_GCS_CALLS", 64),
+        BIGQUERY("MAX_CONCURRENT_BIGQUERY_CALLS", 32),
+        PUBSUB("MAX_CONCURRENT_PUBSUB_CALLS", 32),
+        RESOURCE_MANAGER("MAX_CONCURRENT_RESOURCE_MANAGER_CALLS", 16);
+
+        private final String envName;
+        private final int defaultLimit;
+
+        Downstream(String envName, int defaultLimit) {
+            this.envName = envName;
+            this.defaultLimit = defaultLimit;
+        }
+
+        public String getEnvName() {
+            return envName;
+        }
+
+        public int getDefaultLimit() {
+            return defaultLimit;
+        }
+    }
+
+    public static final int DEFAULT_MAX_WAIT_MS = 30000;
+
+    // downstreams without a semaphore are not capped
+    private final Map<Downstream, Semaphore> semaphores = new EnumMap<>(Downstream.class);
+    private final Map<Downstream, Integer> limits = new EnumMap<>(Downstream.class);
+    private final long maxWaitMs;
+
+    /**
+     * @param limits max concurrent calls per downstream. Missing downstreams or limits <= 0 are not capped
+     */
+    public DownstreamBulkheads(Map<Downstream, Integer> limits, long maxWaitMs) {
+        for (Map.Entry<Downstream, Integer> entry : limits.entrySet()) {
+            if (entry.getValue() != null && entry.getValue() > 0) {
+                this.semaphores.put(entry.getKey(), new Semaphore(entry.getValue(), true));
+                this.limits.put(entry.getKey(), entry.getValue());
+            }
+        }
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    public static DownstreamBulkheads unbounded() {
+        return new DownstreamBulkheads(new EnumMap<>(Downstream.class), 0);
+    }
+
+    /**
+     * Reads MAX_CONCURRENT_<DOWNSTREAM>_CALLS (0 disables the cap) and DOWNSTREAM_MAX_WAIT_MS
+     */
+    public static DownstreamBulkheads fromEnv() {
+        Map<Downstream, Integer> limits = new EnumMap<>(Downstream.class);
+        for (Downstream downstream : Downstream.values()) {
+            limits.put(downstream, Utils.getConfigFromEnv(downstream.getEnvName(), downstream.getDefaultLimit()));
+        }
+        return new DownstreamBulkheads(
+                limits,
+                Utils.getConfigFromEnv("DOWNSTREAM_MAX_WAIT_MS", DEFAULT_MAX_WAIT_MS)
+        );
+    }
+
+    public <T> T call(Downstream downstream, Callable<T> callable) throws Exception {
+        Semaphore semaphore = semaphores.get(downstream);
+        if (semaphore == null) {
+            return callable.call();
+        }
+
+        acquire(downstream, semaphore);
+        try {
+            return callable.call();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Takes a slot of the downstream for a call of a service interface, to be returned with release(). Used by the
+     * Bulkheaded* decorators: a saturated downstream fails with an unchecked BulkheadSaturatedException since not all
+     * service methods declare RetryableApplicationException. Does nothing if the downstream is not capped.
+     */
+    public void acquire(Downstream downstream) {
+        Semaphore semaphore = semaphores.get(downstream);
+        if (semaphore == null) {
+            return;
+        }
+        try {
+            acquire(downstream, semaphore);
+        } catch (RetryableApplicationException ex) {
+            throw new BulkheadSaturatedException(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(String.format("Interrupted while waiting for a %s call slot", downstream), ex);
+        }
+    }
+
+    public void release(Downstream downstream) {
+        Semaphore semaphore = semaphores.get(downstream);
+        if (semaphore != null) {
+            semaphore.release();
+        }
+    }
+
+    private void acquire(Downstream downstream, Semaphore semaphore) throws InterruptedException, RetryableApplicationException {
+        if (!semaphore.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+            throw new RetryableApplicationException(String.format(
+                    "Concurrency limit of %s reached for %s calls after waiting %s ms",
+                    limits.get(downstream),
+                    downstream,
+                    maxWaitMs));
+        }
+    }
+
+    ////// decorators of the service interfaces. Services of uncapped downstreams are returned as is
+
+    public BigQueryService wrapBigQueryService(BigQueryService service) {
+        return semaphores.containsKey(Downstream.BIGQUERY) ? new BulkheadedBigQueryService(service, this) : service;
+    }
+
+    public BackupPolicyService wrapBackupPolicyService(BackupPolicyService service) {
+        return semaphores.containsKey(Downstream.GCS) ? new BulkheadedBackupPolicyService(service, this) : service;
+    }
+
+    public PersistentSet wrapPersistentSet(PersistentSet set) {
+        return semaphores.containsKey(Downstream.GCS) ? new BulkheadedPersistentSet(set, this) : set;
+    }
+
+    public PersistentMap wrapPersistentMap(PersistentMap map) {
+        return semaphores.containsKey(Downstream.GCS) ? new BulkheadedPersistentMap(map, this) : map;
+    }
+
+    public PubSubService wrapPubSubService(PubSubService service) {
+        return semaphores.containsKey(Downstream.PUBSUB) ? new BulkheadedPubSubService(service, this) : service;
+    }
+
+    public ResourceScanner wrapResourceScanner(ResourceScanner scanner) {
+        return semaphores.containsKey(Downstream.RESOURCE_MANAGER) || semaphores.containsKey(Downstream.BIGQUERY) ?
+                new BulkheadedResourceScanner(scanner, this) :
+                scanner;
+    }
+
+    /**
+     * @return the max concurrent calls to the downstream or null if it's not capped
+     */
+    public Integer getLimit(Downstream downstream) {
+        return limits.get(downstream);
+    }
+
+    public int getInFlight(Downstream downstream) {
+        Semaphore semaphore = semaphores.get(downstream);
+        return semaphore == null ? 0 : limits.get(downstream) - semaphore.availablePermits();
+    }
+
+    @Override
+    public String toString() {
+        return "DownstreamBulkheads{" +
+                "limits=" + limits +
+                ", maxWaitMs=" + maxWaitMs +
+                '}';
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.concurrency;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors used to fan out blocking GCP calls. Each task runs on its own virtual thread, so a thread
+ * blocked on an API call doesn't hold a platform thread.
+ * <p>
+ * Virtual threads don't bound concurrency. Calls to each downstream are capped by DownstreamBulkheads.
+ */
+public class IoExecutors {
+
+    public static ExecutorService newIoExecutor(String threadNamePrefix) {
+        return Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual()
+                        .name(threadNamePrefix + "-", 0)
+                        .factory()
+        );
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.export;
+
+import com.google.api.gax.rpc.ServerStream;
+import com.google.cloud.bigquery.storage.v1.*;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class BigQueryReadStreamSourceImpl implements TableReadStreamSource {
+
+    // created on first use so that snapshoters not using this engine don't open gRPC channels
+    private BigQueryReadClient client;
+
+    @Override
+    public TableReadSession createReadSession(String operationProject,
+                                              TableSpec table,
+                                              Long snapshotTimeMillis,
+                                              int maxStreamCount) throws IOException {
+
+        String tablePath = String.format("projects/%s/datasets/%s/tables/%s",
+                table.getProject(),
+                table.getDataset(),
+                table.getTable()
+        );
+
+        ReadSession.TableModifiers modifiers = ReadSession.TableModifiers.newBuilder()
+                .setSnapshotTime(com.google.protobuf.Timestamp.newBuilder()
+                        .setSeconds(snapshotTimeMillis / 1000)
+                        .setNanos((int) ((snapshotTimeMillis % 1000) * 1000000))
+                        .build())
+                .build();
+
+        ReadSession sessionToCreate = ReadSession.newBuilder()
+                .setTable(tablePath)
+                .setDataFormat(DataFormat.AVRO)
+                .setTableModifiers(modifiers)
+                .build();
+
+        CreateReadSessionRequest request = CreateReadSessionRequest.newBuilder()
+                .setParent(String.format("projects/%s", operationProject))
+                .setReadSession(sessionToCreate)
+                .setMaxStreamCount(maxStreamCount)
+                .build();
+
+        ReadSession session = getClient().createReadSession(request);
+
+        List<String> streamNames = session.getStreamsList()
+                .stream()
+                .map(ReadStream::getName)
+                .collect(Collectors.toList());
+
+        return new TableReadSession(session.getAvroSchema().getSchema(), streamNames);
+    }
+
+    @Override
+    public Iterator<InputStream> readRowBlocks(String streamName) throws IOException {
+
+        ReadRowsRequest request = ReadRowsRequest.newBuilder()
+                .setReadStream(streamName)
+                .build();
+
+        // the client resumes interrupted streams from the last received offset
+        ServerStream<ReadRowsResponse> responses = getClient().readRowsCallable().call(request);
+        Iterator<ReadRowsResponse> iterator = responses.iterator();
+
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public InputStream next() {
+                // read the serialized rows without copying them
+                return iterator.next().getAvroRows().getSerializedBinaryRows().newInput();
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() {
+        if (client != null) {
+            client.close();
+            client = null;
+        }
+    }
+
+    private synchronized BigQueryReadClient getClient() throws IOException {
+        if (client == null) {
+            client = BigQueryReadClient.create();
+        }
+        return client;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.export;
+
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+
+public class GcsSnapshotFileSinkImpl implements SnapshotFileSink {
+
+    private final Storage storage;
+
+    public GcsSnapshotFileSinkImpl(String projectId) {
+        this.storage = StorageOptions
+                .newBuilder()
+                .setProjectId(projectId)
+                .build()
+                .getService();
+    }
+
+    @Override
+    public OutputStream create(String fileUri) {
+        BlobInfo blobInfo = BlobInfo.newBuilder(BlobId.fromGsUtilUri(fileUri))
+                .setContentType("application/octet-stream")
+                .build();
+
+        // resumable upload. Each file is uploaded independently so that streams could be written in parallel
+        WriteChannel writer = storage.writer(blobInfo);
+        return Channels.newOutputStream(writer);
+    }
+
+    @Override
+    public void delete(String fileUri) {
+        // returns false if the file doesn't exist
+        storage.delete(BlobId.fromGsUtilUri(fileUri));
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.export;
+
+import com.google.cloud.storage.BlobId;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Writes gs://bucket/path files under a local root directory as root/bucket/path. Used for local runs and tests
+public class LocalSnapshotFileSinkImpl implements SnapshotFileSink {
+
+    private final Path rootDir;
+
+    public LocalSnapshotFileSinkImpl(Path rootDir) {
+        this.rootDir = rootDir;
+    }
+
+    @Override
+    public OutputStream create(String fileUri) throws IOException {
+        Path file = toLocalPath(fileUri);
+        Files.createDirectories(file.getParent());
+        return Files.newOutputStream(file);
+    }
+
+    @Override
+    public void delete(String fileUri) throws IOException {
+        Files.deleteIfExists(toLocalPath(fileUri));
+    }
+
+    public Path toLocalPath(String fileUri) {
+        BlobId blobId = BlobId.fromGsUtilUri(fileUri);
+        return rootDir.resolve(blobId.getBucket()).resolve(blobId.getName());
+    }
+}
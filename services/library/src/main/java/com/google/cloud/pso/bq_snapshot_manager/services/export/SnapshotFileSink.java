@@ -0,0 +1,38 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Destination of the files written by the Storage Read API export engine
+public interface SnapshotFileSink {
+
+    /**
+     * Opens a new file for writing. The file is committed when the returned stream is closed
+     * @param fileUri file location in the format gs://bucket/path/file
+     */
+    OutputStream create(String fileUri) throws IOException;
+
+    /**
+     * Deletes a file if it exists
+     * @param fileUri file location in the format gs://bucket/path/file
+     */
+    void delete(String fileUri) throws IOException;
+}
@@ -0,0 +1,230 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.export;
+
+import com.google.cloud.Tuple;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.GCSSnapshotEngine;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.GCSSnapshotFormat;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GCS snapshot engine that reads a table through the BigQuery Storage Read API and encodes the rows in-process.
+ * Each read stream is written to its own file, in parallel, following the same file naming as a multi-file
+ * extract job (i.e. gs://path/* is expanded to gs://path/000000000000, gs://path/000000000001, etc).
+ * If any stream fails, the files of all streams are deleted before the error is thrown.
+ */
+public class StorageReadExporter {
+
+    // max time to wait for the in-flight streams of a failed export to stop
+    private static final long DISCARD_WAIT_SECONDS = 60;
+
+    private final String operationProject;
+    private final TableReadStreamSource readStreamSource;
+    private final SnapshotFileSink fileSink;
+    private final int maxParallelStreams;
+
+    /**
+     * @param operationProject project to run the read sessions in
+     */
+    public StorageReadExporter(String operationProject,
+                               TableReadStreamSource readStreamSource,
+                               SnapshotFileSink fileSink,
+                               int maxParallelStreams) {
+        if (maxParallelStreams < 1) {
+            throw new IllegalArgumentException(String.format("maxParallelStreams must be at least 1. Received %s", maxParallelStreams));
+        }
+        this.operationProject = operationProject;
+        this.readStreamSource = readStreamSource;
+        this.fileSink = fileSink;
+        this.maxParallelStreams = maxParallelStreams;
+    }
+
+    /**
+     * Exports a table snapshot to files
+     * @param sourceTable table to export (without time travel decorator)
+     * @param snapshotTimeMillis time travel point in unix epoch millis
+     * @param destinationUri multi-file destination in the format gs://bucket/path/*
+     * @param exportFormat one of the Avro formats
+     * @return Tuple of number of files written and number of rows exported
+     */
+    public Tuple<Integer, Long> export(TableSpec sourceTable,
+                                       Long snapshotTimeMillis,
+                                       String destinationUri,
+                                       GCSSnapshotFormat exportFormat) throws IOException, InterruptedException {
+
+        CodecFactory codecFactory = getAvroCodec(exportFormat);
+
+        TableReadSession session = readStreamSource.createReadSession(
+                operationProject,
+                sourceTable,
+                snapshotTimeMillis,
+                maxParallelStreams
+        );
+
+        Schema schema = new Schema.Parser().parse(session.getAvroSchema());
+
+        // an empty table could return a session without streams. Write one file with the schema only (same as extract jobs)
+        List<String> streamNames = session.getStreamNames().isEmpty() ?
+                Collections.singletonList(null) :
+                session.getStreamNames();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(streamNames.size(), maxParallelStreams));
+        try {
+            List<Future<Long>> futures = new ArrayList<>(streamNames.size());
+            for (int i = 0; i < streamNames.size(); i++) {
+                String streamName = streamNames.get(i);
+                String fileUri = prepareFileUri(destinationUri, i);
+                futures.add(executor.submit(() -> writeStream(schema, codecFactory, streamName, fileUri)));
+            }
+
+            long totalRows = 0;
+            for (Future<Long> future : futures) {
+                totalRows += getOrThrow(future);
+            }
+            return Tuple.of(streamNames.size(), totalRows);
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            // each file is committed when its stream is closed, even if the stream failed or was interrupted.
+            // Delete all files of the export so that a failed export doesn't leave a partial snapshot behind
+            discardFiles(executor, destinationUri, streamNames.size(), ex);
+            throw ex;
+        } finally {
+            // stop any in-flight streams in case one of them failed
+            executor.shutdownNow();
+        }
+    }
+
+    private void discardFiles(ExecutorService executor, String destinationUri, int filesCount, Exception failure) {
+
+        // wait for the in-flight streams to stop before deleting their files
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(DISCARD_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                failure.addSuppressed(new IOException(
+                        String.format("Streams of %s didn't stop within %s seconds. Some files might not be deleted", destinationUri, DISCARD_WAIT_SECONDS)));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (int i = 0; i < filesCount; i++) {
+            try {
+                fileSink.delete(prepareFileUri(destinationUri, i));
+            } catch (IOException | RuntimeException ex) {
+                failure.addSuppressed(ex);
+            }
+        }
+    }
+
+    private long writeStream(Schema schema, CodecFactory codecFactory, String streamName, String fileUri) throws IOException {
+
+        GenericDatumReader<GenericRecord> datumReader = new GenericDatumReader<>(schema);
+        long rowsCount = 0;
+
+        try (DataFileWriter<GenericRecord> fileWriter = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(schema))) {
+            fileWriter.setCodec(codecFactory);
+            fileWriter.create(schema, fileSink.create(fileUri));
+
+            if (streamName != null) {
+                Iterator<InputStream> rowBlocks = readStreamSource.readRowBlocks(streamName);
+
+                // decoder and record are reused across rows to avoid per-row allocations
+                BinaryDecoder decoder = null;
+                GenericRecord record = null;
+                while (rowBlocks.hasNext()) {
+                    decoder = DecoderFactory.get().binaryDecoder(rowBlocks.next(), decoder);
+                    while (!decoder.isEnd()) {
+                        record = datumReader.read(record, decoder);
+                        fileWriter.append(record);
+                        rowsCount++;
+                    }
+                }
+            }
+        }
+        return rowsCount;
+    }
+
+    private static long getOrThrow(Future<Long> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            // surface the original exception so that retryable API errors are still detected by the controllers
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    public static CodecFactory getAvroCodec(GCSSnapshotFormat format) {
+
+        if (!GCSSnapshotEngine.isSupportedFormat(GCSSnapshotEngine.STORAGE_READ_API, format)) {
+            throw new IllegalArgumentException(
+                    String.format("Format '%s' is not supported by the %s engine. Only Avro formats are supported.",
+                            format,
+                            GCSSnapshotEngine.STORAGE_READ_API)
+            );
+        }
+
+        String compression = GCSSnapshotFormat.getFormatAndCompression(format).y();
+        if (compression == null) {
+            return CodecFactory.nullCodec();
+        }
+        switch (compression) {
+            case "DEFLATE":
+                return CodecFactory.deflateCodec(CodecFactory.DEFAULT_DEFLATE_LEVEL);
+            case "SNAPPY":
+                return CodecFactory.snappyCodec();
+            default:
+                throw new IllegalArgumentException(String.format("Avro compression '%s' is not supported", compression));
+        }
+    }
+
+    public static String prepareFileUri(String destinationUri, int fileIndex) {
+        // expand the wildcard the same way BigQuery extract jobs do
+        if (!destinationUri.endsWith("*")) {
+            throw new IllegalArgumentException(
+                    String.format("Destination uri must end with a wildcard '*'. Received %s", destinationUri));
+        }
+        return String.format("%s%012d", destinationUri.substring(0, destinationUri.length() - 1), fileIndex);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.export;
+
+import java.util.List;
+
+public class TableReadSession {
+
+    // Avro schema (JSON) of the rows returned by all streams of the session
+    private final String avroSchema;
+    private final List<String> streamNames;
+
+    public TableReadSession(String avroSchema, List<String> streamNames) {
+        this.avroSchema = avroSchema;
+        this.streamNames = streamNames;
+    }
+
+    public String getAvroSchema() {
+        return avroSchema;
+    }
+
+    public List<String> getStreamNames() {
+        return streamNames;
+    }
+
+    @Override
+    public String toString() {
+        return "TableReadSession{" +
+                "avroSchema='" + avroSchema + '\'' +
+                ", streamNames=" + streamNames +
+                '}';
+    }
+}
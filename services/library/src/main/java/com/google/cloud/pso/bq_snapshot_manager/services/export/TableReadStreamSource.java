@@ -0,0 +1,51 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.export;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+// Source of table rows for the Storage Read API export engine.
+// Abstracted from the BigQuery Read client so that the engine could be tested against local fakes
+public interface TableReadStreamSource extends AutoCloseable {
+
+    /**
+     * Creates a read session on the table as of the given snapshot time
+     * @param operationProject project to bill the read session to
+     * @param table table to read (without time travel decorator)
+     * @param snapshotTimeMillis time travel point in unix epoch millis
+     * @param maxStreamCount upper bound for the number of parallel streams in the session
+     */
+    TableReadSession createReadSession(String operationProject,
+                                       TableSpec table,
+                                       Long snapshotTimeMillis,
+                                       int maxStreamCount) throws IOException;
+
+    /**
+     * Reads all row blocks of a stream. Each block holds one or more Avro binary encoded rows
+     * in the session schema, concatenated without a container header.
+     */
+    Iterator<InputStream> readRowBlocks(String streamName) throws IOException;
+
+    @Override
+    void close();
+}
@@ -0,0 +1,56 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.map;
+
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads.Downstream;
+
+import javax.annotation.Nullable;
+
+// Decorates a PersistentMap to cap the concurrent GCS calls of the instance
+public class BulkheadedPersistentMap implements PersistentMap {
+
+    private final PersistentMap delegate;
+    private final DownstreamBulkheads bulkheads;
+
+    public BulkheadedPersistentMap(PersistentMap delegate, DownstreamBulkheads bulkheads) {
+        this.delegate = delegate;
+        this.bulkheads = bulkheads;
+    }
+
+    @Override
+    public void put(String key, String value) {
+        bulkheads.acquire(Downstream.GCS);
+        try {
+            delegate.put(key, value);
+        } finally {
+            bulkheads.release(Downstream.GCS);
+        }
+    }
+
+    @Nullable
+    @Override
+    public String get(String key) {
+        bulkheads.acquire(Downstream.GCS);
+        try {
+            return delegate.get(key);
+        } finally {
+            bulkheads.release(Downstream.GCS);
+        }
+    }
+}
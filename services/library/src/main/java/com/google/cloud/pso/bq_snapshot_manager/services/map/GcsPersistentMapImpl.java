@@ -18,18 +18,31 @@
 
 package com.google.cloud.pso.bq_snapshot_manager.services.map;
 
+import com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics;
 import com.google.cloud.storage.*;
 
+import javax.annotation.Nullable;
+import java.net.HttpURLConnection;
 import java.nio.charset.StandardCharsets;
 
+import static com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics.ExternalService.GCS;
+
 public class GcsPersistentMapImpl implements PersistentMap{
 
     private Storage storage;
     private String bucketName;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
 
     public GcsPersistentMapImpl(String bucketName) {
         // Instantiates a client
-        this.storage = StorageOptions.getDefaultInstance().getService();
+        this(StorageOptions.getDefaultInstance().getService(), bucketName);
+    }
+
+    /**
+     * @param storage a client shared with other services of the same instance
+     */
+    public GcsPersistentMapImpl(Storage storage, String bucketName) {
+        this.storage = storage;
         this.bucketName = bucketName;
     }
 
@@ -37,15 +50,24 @@ public class GcsPersistentMapImpl implements PersistentMap{
     public void put(String key, String value) {
         BlobId blobId = BlobId.of(bucketName, key);
         BlobInfo blobInfo = BlobInfo.newBuilder(blobId).setContentType("text/plain").build();
-        storage.create(blobInfo, value.getBytes(StandardCharsets.UTF_8));
+        metrics.timeExternalCall(GCS, "create", () -> storage.create(blobInfo, value.getBytes(StandardCharsets.UTF_8)));
     }
 
     @Override
-    public String get(String key) {
-        BlobId blobId = BlobId.of(bucketName, key);
-        Blob blob = storage.get(blobId);
-        byte [] content = blob.getContent();
-        return new String(content, StandardCharsets.UTF_8);
+    public @Nullable String get(String key) {
+        // single request that downloads the content, instead of a metadata lookup followed by a download
+        // a missing key is an expected result, not a failed call
+        return metrics.timeExternalCall(GCS, "read", () -> {
+            try {
+                byte[] content = storage.readAllBytes(BlobId.of(bucketName, key));
+                return new String(content, StandardCharsets.UTF_8);
+            } catch (StorageException ex) {
+                if (ex.getCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                    return null;
+                }
+                throw ex;
+            }
+        });
     }
 
 }
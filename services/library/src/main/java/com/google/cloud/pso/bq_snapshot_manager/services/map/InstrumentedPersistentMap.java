@@ -0,0 +1,61 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.map;
+
+import com.google.cloud.pso.bq_snapshot_manager.helpers.ServiceCallInstrumentation;
+
+import javax.annotation.Nullable;
+
+// Decorates a PersistentMap to record the latency and outcome of each call
+public class InstrumentedPersistentMap implements PersistentMap {
+
+    private static final String SERVICE = "PersistentMap";
+
+    private final PersistentMap delegate;
+    private final ServiceCallInstrumentation instrumentation;
+
+    public InstrumentedPersistentMap(PersistentMap delegate, ServiceCallInstrumentation instrumentation) {
+        this.delegate = delegate;
+        this.instrumentation = instrumentation;
+    }
+
+    @Override
+    public void put(String key, String value) {
+        long startNanos = System.nanoTime();
+        try {
+            delegate.put(key, value);
+        } catch (RuntimeException ex) {
+            instrumentation.record(SERVICE, "put", startNanos, ex, null, null);
+            throw ex;
+        }
+        instrumentation.record(SERVICE, "put", startNanos, null, null, null);
+    }
+
+    @Override
+    public @Nullable String get(String key) {
+        long startNanos = System.nanoTime();
+        try {
+            String value = delegate.get(key);
+            instrumentation.record(SERVICE, "get", startNanos, null, null, null);
+            return value;
+        } catch (RuntimeException ex) {
+            instrumentation.record(SERVICE, "get", startNanos, ex, null, null);
+            throw ex;
+        }
+    }
+}
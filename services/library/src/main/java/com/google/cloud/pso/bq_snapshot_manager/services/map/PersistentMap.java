@@ -18,8 +18,15 @@
 
 package com.google.cloud.pso.bq_snapshot_manager.services.map;
 
+import javax.annotation.Nullable;
+
 public interface PersistentMap {
 
     void put(String key,  String value);
+
+    /**
+     * @return the value or null if the key doesn't exist
+     */
+    @Nullable
     String get(String key);
 }
@@ -0,0 +1,47 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.pubsub;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.JsonMessage;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads.Downstream;
+
+import java.io.IOException;
+import java.util.List;
+
+// Decorates a PubSubService to cap the concurrent Pub/Sub calls of the instance
+public class BulkheadedPubSubService implements PubSubService {
+
+    private final PubSubService delegate;
+    private final DownstreamBulkheads bulkheads;
+
+    public BulkheadedPubSubService(PubSubService delegate, DownstreamBulkheads bulkheads) {
+        this.delegate = delegate;
+        this.bulkheads = bulkheads;
+    }
+
+    @Override
+    public PubSubPublishResults publishTableOperationRequests(String projectId, String topicId, List<JsonMessage> messages) throws IOException, InterruptedException {
+        bulkheads.acquire(Downstream.PUBSUB);
+        try {
+            return delegate.publishTableOperationRequests(projectId, topicId, messages);
+        } finally {
+            bulkheads.release(Downstream.PUBSUB);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.pubsub;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses JSON requests directly from the PubSub message bytes.
+ * The bytes are decoded to chars on the fly while Gson streams through them, so no intermediate String
+ * copies of the payload are created.
+ *
+ * Payloads published by Cloud Scheduler jobs could be escaped (e.g. {\"isDryRun\":true} when the JSON was
+ * pasted as a string) or encoded twice as a JSON string. Both forms are detected and unescaped exactly once
+ * instead of stripping every backslash from the payload, which would corrupt legitimate escapes in values.
+ */
+public class PubSubJsonReader {
+
+    // max number of payload chars to include in parsing errors
+    private static final int ERROR_EXCERPT_LENGTH = 256;
+
+    public static <T> T read(Gson gson, byte[] data, Class<T> type) throws NonRetryableApplicationException {
+        try {
+            JsonReader reader = open(data);
+            T result = gson.fromJson(reader, type);
+            if (result == null) {
+                throw new NonRetryableApplicationException(
+                        String.format("Empty %s payload", type.getSimpleName()));
+            }
+            checkFullyConsumed(reader);
+            return result;
+        } catch (IOException | JsonParseException e) {
+            throw parsingError(type.getSimpleName(), data, e);
+        }
+    }
+
+    public static JsonObject readObject(byte[] data) throws NonRetryableApplicationException {
+        try {
+            JsonReader reader = open(data);
+            JsonElement element = JsonParser.parseReader(reader);
+            if (!element.isJsonObject()) {
+                throw new JsonParseException("Expected a JSON object but found " + element);
+            }
+            checkFullyConsumed(reader);
+            return element.getAsJsonObject();
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            throw parsingError("JSON object", data, e);
+        }
+    }
+
+    /**
+     * @return a JsonReader over the message bytes, positioned at the first token of the actual JSON document
+     */
+    public static JsonReader open(byte[] data) throws IOException {
+        byte[] json = isEscapedObject(data) ? unescape(data) : data;
+        JsonReader reader = new JsonReader(new Utf8Reader(json));
+        if (reader.peek() == JsonToken.STRING) {
+            // the payload is a JSON document encoded as a JSON string
+            reader = new JsonReader(new StringReader(reader.nextString()));
+        }
+        return reader;
+    }
+
+    /**
+     * @return true if the payload is an object with escaped quotes, i.e. starts with {\"
+     */
+    static boolean isEscapedObject(byte[] data) {
+        int i = skipWhitespace(data, 0);
+        if (i >= data.length || data[i] != '{') {
+            return false;
+        }
+        i = skipWhitespace(data, i + 1);
+        return i + 1 < data.length && data[i] == '\\' && data[i + 1] == '"';
+    }
+
+    /**
+     * Removes one level of escaping (i.e. \" -> " and \\ -> \). Other escape sequences are kept as they are
+     */
+    static byte[] unescape(byte[] data) {
+        byte[] result = new byte[data.length];
+        int length = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == '\\' && i + 1 < data.length && (data[i + 1] == '"' || data[i + 1] == '\\')) {
+                i++;
+            }
+            result[length++] = data[i];
+        }
+        byte[] trimmed = new byte[length];
+        System.arraycopy(result, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+    private static int skipWhitespace(byte[] data, int from) {
+        int i = from;
+        while (i < data.length && (data[i] == ' ' || data[i] == '\n' || data[i] == '\r' || data[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static void checkFullyConsumed(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new JsonSyntaxException("JSON document was not fully consumed.");
+        }
+    }
+
+    private static NonRetryableApplicationException parsingError(String what, byte[] data, Exception cause) {
+        // only decode the payload to a String when it's needed for troubleshooting
+        String payload = new String(data, StandardCharsets.UTF_8);
+        if (payload.length() > ERROR_EXCERPT_LENGTH) {
+            payload = payload.substring(0, ERROR_EXCERPT_LENGTH) + "...";
+        }
+        return new NonRetryableApplicationException(
+                String.format("Failed to parse %s from payload '%s': %s", what, payload, cause.getMessage()));
+    }
+
+    /**
+     * Minimal UTF-8 decoding Reader over a byte array. Unlike InputStreamReader, it doesn't allocate
+     * intermediate byte/char buffers. Malformed sequences are replaced with U+FFFD
+     */
+    static class Utf8Reader extends Reader {
+
+        private static final char REPLACEMENT = '\uFFFD';
+
+        private final byte[] data;
+        private int position;
+        // low surrogate of a 4-byte sequence that didn't fit in the previous read
+        private char pendingLowSurrogate;
+
+        Utf8Reader(byte[] data) {
+            this.data = data;
+            this.position = 0;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            int count = 0;
+            if (pendingLowSurrogate != 0) {
+                buffer[offset + count++] = pendingLowSurrogate;
+                pendingLowSurrogate = 0;
+            }
+            while (count < length && position < data.length) {
+                // ASCII, by far the most common case for our payloads
+                int asciiEnd = Math.min(data.length, position + length - count);
+                int i = position;
+                int out = offset + count;
+                while (i < asciiEnd && data[i] >= 0) {
+                    buffer[out++] = (char) data[i++];
+                }
+                count += i - position;
+                position = i;
+                if (count == length || position == data.length) {
+                    break;
+                }
+                int codePoint = decodeMultiByte();
+                if (codePoint < 0x10000) {
+                    buffer[offset + count++] = (char) codePoint;
+                } else {
+                    buffer[offset + count++] = Character.highSurrogate(codePoint);
+                    if (count < length) {
+                        buffer[offset + count++] = Character.lowSurrogate(codePoint);
+                    } else {
+                        pendingLowSurrogate = Character.lowSurrogate(codePoint);
+                    }
+                }
+            }
+            return count == 0 ? -1 : count;
+        }
+
+        private int decodeMultiByte() {
+            int b = data[position] & 0xFF;
+            int extraBytes;
+            int codePoint;
+            if ((b & 0xE0) == 0xC0) {
+                extraBytes = 1;
+                codePoint = b & 0x1F;
+            } else if ((b & 0xF0) == 0xE0) {
+                extraBytes = 2;
+                codePoint = b & 0x0F;
+            } else if ((b & 0xF8) == 0xF0) {
+                extraBytes = 3;
+                codePoint = b & 0x07;
+            } else {
+                position++;
+                return REPLACEMENT;
+            }
+            if (position + extraBytes >= data.length) {
+                // truncated sequence at the end of the payload
+                position = data.length;
+                return REPLACEMENT;
+            }
+            for (int i = 1; i <= extraBytes; i++) {
+                int next = data[position + i] & 0xFF;
+                if ((next & 0xC0) != 0x80) {
+                    position += i;
+                    return REPLACEMENT;
+                }
+                codePoint = (codePoint << 6) | (next & 0x3F);
+            }
+            position += extraBytes + 1;
+            if (codePoint > Character.MAX_CODE_POINT
+                    || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+                return REPLACEMENT;
+            }
+            return codePoint;
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+}
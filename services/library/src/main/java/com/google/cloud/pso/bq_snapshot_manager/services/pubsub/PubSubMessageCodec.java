@@ -0,0 +1,438 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.pubsub;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.pso.bq_snapshot_manager.entities.JsonMessage;
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupMethod;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicy;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicyAndState;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicyFields;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupState;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorBatchRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter.SnapshoterRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.TaggerRequest;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of the requests exchanged between the services over PubSub.
+ * Messages are encoded in the protobuf wire format following the schema in pubsub_messages_v1.proto.
+ * The message type and schema version are carried in the 'content-type' attribute so that consumers could
+ * accept both JSON (no attribute) and binary messages while the publishers are migrated.
+ */
+public class PubSubMessageCodec {
+
+    public static final String CONTENT_TYPE_ATTRIBUTE = "content-type";
+    public static final int VERSION = 1;
+
+    public static final String CONFIGURATOR_REQUEST = contentType("configurator-request");
+    public static final String CONFIGURATOR_BATCH_REQUEST = contentType("configurator-batch-request");
+    public static final String SNAPSHOTER_REQUEST = contentType("snapshoter-request");
+    public static final String TAGGER_REQUEST = contentType("tagger-request");
+
+    // field numbers of the BackupPolicy message. They must never change
+    private static final Map<BackupPolicyFields, Integer> POLICY_FIELD_NUMBERS = new EnumMap<>(BackupPolicyFields.class);
+    private static final Map<Integer, BackupPolicyFields> POLICY_FIELDS_BY_NUMBER = new HashMap<>();
+
+    static {
+        BackupPolicyFields[] policyFields = {
+                BackupPolicyFields.backup_cron,
+                BackupPolicyFields.backup_method,
+                BackupPolicyFields.backup_time_travel_offset_days,
+                BackupPolicyFields.bq_snapshot_expiration_days,
+                BackupPolicyFields.bq_snapshot_storage_dataset,
+                BackupPolicyFields.backup_storage_project,
+                BackupPolicyFields.backup_operation_project,
+                BackupPolicyFields.backup_operation_project_pool,
+                BackupPolicyFields.gcs_snapshot_storage_location,
+                BackupPolicyFields.gcs_snapshot_format,
+                BackupPolicyFields.gcs_csv_delimiter,
+                BackupPolicyFields.gcs_csv_export_header,
+                BackupPolicyFields.gcs_avro_use_logical_types,
+                BackupPolicyFields.gcs_snapshot_engine,
+                BackupPolicyFields.config_source
+        };
+        for (int i = 0; i < policyFields.length; i++) {
+            POLICY_FIELD_NUMBERS.put(policyFields[i], i + 1);
+            POLICY_FIELDS_BY_NUMBER.put(i + 1, policyFields[i]);
+        }
+    }
+
+    private static String contentType(String messageType) {
+        return String.format("application/vnd.bq-backup-manager.%s.v%s+protobuf", messageType, VERSION);
+    }
+
+    /**
+     * @return the binary content type of the message or null if the message has no binary encoding
+     */
+    @Nullable
+    public static String getContentType(JsonMessage message) {
+        if (message instanceof ConfiguratorRequest) {
+            return CONFIGURATOR_REQUEST;
+        }
+        if (message instanceof ConfiguratorBatchRequest) {
+            return CONFIGURATOR_BATCH_REQUEST;
+        }
+        if (message instanceof SnapshoterRequest) {
+            return SNAPSHOTER_REQUEST;
+        }
+        if (message instanceof TaggerRequest) {
+            return TAGGER_REQUEST;
+        }
+        return null;
+    }
+
+    /**
+     * @return the content type attribute of a received message or null if it's a JSON message
+     */
+    @Nullable
+    public static String getContentType(@Nullable Map<String, String> attributes) {
+        return attributes == null ? null : attributes.get(CONTENT_TYPE_ATTRIBUTE);
+    }
+
+    public static boolean isBinary(@Nullable Map<String, String> attributes) {
+        return getContentType(attributes) != null;
+    }
+
+    public static byte[] encode(JsonMessage message) {
+        try {
+            if (message instanceof ConfiguratorRequest) {
+                return toBytes(out -> writeConfiguratorRequest(out, (ConfiguratorRequest) message));
+            }
+            if (message instanceof ConfiguratorBatchRequest) {
+                return toBytes(out -> writeConfiguratorBatchRequest(out, (ConfiguratorBatchRequest) message));
+            }
+            if (message instanceof SnapshoterRequest) {
+                return toBytes(out -> writeSnapshoterRequest(out, (SnapshoterRequest) message));
+            }
+            if (message instanceof TaggerRequest) {
+                return toBytes(out -> writeTaggerRequest(out, (TaggerRequest) message));
+            }
+        } catch (IOException ex) {
+            // writing to a byte array doesn't do I/O
+            throw new IllegalStateException(ex);
+        }
+        throw new IllegalArgumentException(String.format("No binary encoding for %s", message.getClass().getSimpleName()));
+    }
+
+    public static ConfiguratorRequest decodeConfiguratorRequest(String contentType, byte[] data) throws NonRetryableApplicationException {
+        checkContentType(contentType, CONFIGURATOR_REQUEST);
+        return decode(data, PubSubMessageCodec::readConfiguratorRequest);
+    }
+
+    public static ConfiguratorBatchRequest decodeConfiguratorBatchRequest(String contentType, byte[] data) throws NonRetryableApplicationException {
+        checkContentType(contentType, CONFIGURATOR_BATCH_REQUEST);
+        return decode(data, PubSubMessageCodec::readConfiguratorBatchRequest);
+    }
+
+    public static SnapshoterRequest decodeSnapshoterRequest(String contentType, byte[] data) throws NonRetryableApplicationException {
+        checkContentType(contentType, SNAPSHOTER_REQUEST);
+        return decode(data, PubSubMessageCodec::readSnapshoterRequest);
+    }
+
+    public static TaggerRequest decodeTaggerRequest(String contentType, byte[] data) throws NonRetryableApplicationException {
+        checkContentType(contentType, TAGGER_REQUEST);
+        return decode(data, PubSubMessageCodec::readTaggerRequest);
+    }
+
+    private static void checkContentType(String actual, String expected) throws NonRetryableApplicationException {
+        if (!expected.equals(actual)) {
+            throw new NonRetryableApplicationException(String.format(
+                    "Unsupported message content type '%s'. Expected '%s'", actual, expected));
+        }
+    }
+
+    private interface Writer {
+        void write(CodedOutputStream out) throws IOException;
+    }
+
+    private interface Reader<T> {
+        T read(CodedInputStream in) throws IOException;
+    }
+
+    private static byte[] toBytes(Writer writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        // the default 4KB buffer is much larger than the (nested) messages
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes, 256);
+        writer.write(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static <T> T decode(byte[] data, Reader<T> reader) throws NonRetryableApplicationException {
+        try {
+            return reader.read(CodedInputStream.newInstance(data));
+        } catch (IOException | IllegalArgumentException ex) {
+            // a malformed message won't succeed on retry
+            throw new NonRetryableApplicationException(String.format("Failed to decode binary message: %s", ex.getMessage()));
+        }
+    }
+
+    ////// writers
+
+    private static void writeString(CodedOutputStream out, int field, @Nullable String value) throws IOException {
+        if (value != null) {
+            out.writeString(field, value);
+        }
+    }
+
+    private static void writeMessage(CodedOutputStream out, int field, @Nullable Object value, Writer writer) throws IOException {
+        if (value != null) {
+            out.writeByteArray(field, toBytes(writer));
+        }
+    }
+
+    private static void writeTimestamp(CodedOutputStream out, int field, @Nullable Timestamp ts) throws IOException {
+        writeMessage(out, field, ts, o -> {
+            o.writeInt64(1, ts.getSeconds());
+            o.writeInt32(2, ts.getNanos());
+        });
+    }
+
+    private static void writeTableSpec(CodedOutputStream out, int field, @Nullable TableSpec table) throws IOException {
+        writeMessage(out, field, table, o -> {
+            writeString(o, 1, table.getProject());
+            writeString(o, 2, table.getDataset());
+            writeString(o, 3, table.getTable());
+        });
+    }
+
+    private static void writeBackupPolicyAndState(CodedOutputStream out, int field, @Nullable BackupPolicyAndState policyAndState) throws IOException {
+        writeMessage(out, field, policyAndState, o -> {
+            BackupPolicy policy = policyAndState.getPolicy();
+            writeMessage(o, 1, policy, p -> {
+                for (Map.Entry<String, String> entry : policy.toMap().entrySet()) {
+                    writeString(p, POLICY_FIELD_NUMBERS.get(BackupPolicyFields.valueOf(entry.getKey())), entry.getValue());
+                }
+            });
+            BackupState state = policyAndState.getState();
+            writeMessage(o, 2, state, s -> {
+                writeTimestamp(s, 1, state.getLastBackupAt());
+                writeString(s, 2, state.getLastBqSnapshotStorageUri());
+                writeString(s, 3, state.getLastGcsSnapshotStorageUri());
+            });
+        });
+    }
+
+    private static void writeConfiguratorRequest(CodedOutputStream out, ConfiguratorRequest request) throws IOException {
+        writeTableSpec(out, 1, request.getTargetTable());
+        writeString(out, 2, request.getRunId());
+        writeString(out, 3, request.getTrackingId());
+        out.writeBool(4, request.isDryRun());
+        out.writeBool(5, request.isForceRun());
+        writeTimestamp(out, 6, request.getRefTimestamp());
+    }
+
+    private static void writeConfiguratorBatchRequest(CodedOutputStream out, ConfiguratorBatchRequest batch) throws IOException {
+        writeString(out, 1, batch.getRunId());
+        for (ConfiguratorRequest request : batch.getRequests()) {
+            writeMessage(out, 2, request, o -> writeConfiguratorRequest(o, request));
+        }
+    }
+
+    private static void writeSnapshoterRequest(CodedOutputStream out, SnapshoterRequest request) throws IOException {
+        writeTableSpec(out, 1, request.getTargetTable());
+        writeString(out, 2, request.getRunId());
+        writeString(out, 3, request.getTrackingId());
+        out.writeBool(4, request.isDryRun());
+        writeBackupPolicyAndState(out, 5, request.getBackupPolicyAndState());
+    }
+
+    private static void writeTaggerRequest(CodedOutputStream out, TaggerRequest request) throws IOException {
+        writeTableSpec(out, 1, request.getTargetTable());
+        writeString(out, 2, request.getRunId());
+        writeString(out, 3, request.getTrackingId());
+        out.writeBool(4, request.isDryRun());
+        writeBackupPolicyAndState(out, 5, request.getBackupPolicyAndState());
+        writeString(out, 6, request.getAppliedBackupMethod() == null ? null : request.getAppliedBackupMethod().name());
+        writeTableSpec(out, 7, request.getBigQuerySnapshotTableSpec());
+        writeString(out, 8, request.getGcsSnapshotUri());
+        writeTimestamp(out, 9, request.getLastBackUpAt());
+    }
+
+    ////// readers (unknown fields are skipped to stay compatible with newer publishers)
+
+    private static <T> T readMessage(CodedInputStream in, Reader<T> reader) throws IOException {
+        return reader.read(CodedInputStream.newInstance(in.readByteArray()));
+    }
+
+    private static Timestamp readTimestamp(CodedInputStream in) throws IOException {
+        long seconds = 0;
+        int nanos = 0;
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: seconds = in.readInt64(); break;
+                case 2: nanos = in.readInt32(); break;
+                default: in.skipField(tag);
+            }
+        }
+        return Timestamp.ofTimeSecondsAndNanos(seconds, nanos);
+    }
+
+    private static TableSpec readTableSpec(CodedInputStream in) throws IOException {
+        String project = null;
+        String dataset = null;
+        String table = null;
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: project = in.readStringRequireUtf8(); break;
+                case 2: dataset = in.readStringRequireUtf8(); break;
+                case 3: table = in.readStringRequireUtf8(); break;
+                default: in.skipField(tag);
+            }
+        }
+        return new TableSpec(project, dataset, table);
+    }
+
+    private static BackupPolicy readBackupPolicy(CodedInputStream in) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            BackupPolicyFields field = POLICY_FIELDS_BY_NUMBER.get(WireFormat.getTagFieldNumber(tag));
+            if (field == null) {
+                in.skipField(tag);
+            } else {
+                fields.put(field.toString(), in.readStringRequireUtf8());
+            }
+        }
+        // same parsing and validation as policies stored in tags
+        return BackupPolicy.fromMap(fields);
+    }
+
+    private static BackupState readBackupState(CodedInputStream in) throws IOException {
+        Timestamp lastBackupAt = null;
+        String lastBqSnapshotStorageUri = null;
+        String lastGcsSnapshotStorageUri = null;
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: lastBackupAt = readMessage(in, PubSubMessageCodec::readTimestamp); break;
+                case 2: lastBqSnapshotStorageUri = in.readStringRequireUtf8(); break;
+                case 3: lastGcsSnapshotStorageUri = in.readStringRequireUtf8(); break;
+                default: in.skipField(tag);
+            }
+        }
+        return new BackupState(lastBackupAt, lastBqSnapshotStorageUri, lastGcsSnapshotStorageUri);
+    }
+
+    private static BackupPolicyAndState readBackupPolicyAndState(CodedInputStream in) throws IOException {
+        BackupPolicy policy = null;
+        BackupState state = null;
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: policy = readMessage(in, PubSubMessageCodec::readBackupPolicy); break;
+                case 2: state = readMessage(in, PubSubMessageCodec::readBackupState); break;
+                default: in.skipField(tag);
+            }
+        }
+        return new BackupPolicyAndState(policy, state);
+    }
+
+    private static ConfiguratorRequest readConfiguratorRequest(CodedInputStream in) throws IOException {
+        TableSpec targetTable = null;
+        String runId = null;
+        String trackingId = null;
+        boolean isDryRun = false;
+        boolean isForceRun = false;
+        Timestamp refTimestamp = null;
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: targetTable = readMessage(in, PubSubMessageCodec::readTableSpec); break;
+                case 2: runId = in.readStringRequireUtf8(); break;
+                case 3: trackingId = in.readStringRequireUtf8(); break;
+                case 4: isDryRun = in.readBool(); break;
+                case 5: isForceRun = in.readBool(); break;
+                case 6: refTimestamp = readMessage(in, PubSubMessageCodec::readTimestamp); break;
+                default: in.skipField(tag);
+            }
+        }
+        return new ConfiguratorRequest(targetTable, runId, trackingId, isDryRun, isForceRun, refTimestamp);
+    }
+
+    private static ConfiguratorBatchRequest readConfiguratorBatchRequest(CodedInputStream in) throws IOException {
+        String runId = null;
+        List<ConfiguratorRequest> requests = new ArrayList<>();
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: runId = in.readStringRequireUtf8(); break;
+                case 2: requests.add(readMessage(in, PubSubMessageCodec::readConfiguratorRequest)); break;
+                default: in.skipField(tag);
+            }
+        }
+        return new ConfiguratorBatchRequest(runId, requests);
+    }
+
+    private static SnapshoterRequest readSnapshoterRequest(CodedInputStream in) throws IOException {
+        TableSpec targetTable = null;
+        String runId = null;
+        String trackingId = null;
+        boolean isDryRun = false;
+        BackupPolicyAndState backupPolicyAndState = null;
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: targetTable = readMessage(in, PubSubMessageCodec::readTableSpec); break;
+                case 2: runId = in.readStringRequireUtf8(); break;
+                case 3: trackingId = in.readStringRequireUtf8(); break;
+                case 4: isDryRun = in.readBool(); break;
+                case 5: backupPolicyAndState = readMessage(in, PubSubMessageCodec::readBackupPolicyAndState); break;
+                default: in.skipField(tag);
+            }
+        }
+        return new SnapshoterRequest(targetTable, runId, trackingId, isDryRun, backupPolicyAndState);
+    }
+
+    private static TaggerRequest readTaggerRequest(CodedInputStream in) throws IOException {
+        TableSpec targetTable = null;
+        String runId = null;
+        String trackingId = null;
+        boolean isDryRun = false;
+        BackupPolicyAndState backupPolicyAndState = null;
+        BackupMethod appliedBackupMethod = null;
+        TableSpec bigQuerySnapshotTableSpec = null;
+        String gcsSnapshotUri = null;
+        Timestamp lastBackUpAt = null;
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: targetTable = readMessage(in, PubSubMessageCodec::readTableSpec); break;
+                case 2: runId = in.readStringRequireUtf8(); break;
+                case 3: trackingId = in.readStringRequireUtf8(); break;
+                case 4: isDryRun = in.readBool(); break;
+                case 5: backupPolicyAndState = readMessage(in, PubSubMessageCodec::readBackupPolicyAndState); break;
+                case 6: appliedBackupMethod = BackupMethod.valueOf(in.readStringRequireUtf8()); break;
+                case 7: bigQuerySnapshotTableSpec = readMessage(in, PubSubMessageCodec::readTableSpec); break;
+                case 8: gcsSnapshotUri = in.readStringRequireUtf8(); break;
+                case 9: lastBackUpAt = readMessage(in, PubSubMessageCodec::readTimestamp); break;
+                default: in.skipField(tag);
+            }
+        }
+        return new TaggerRequest(targetTable, runId, trackingId, isDryRun, backupPolicyAndState,
+                appliedBackupMethod, bigQuerySnapshotTableSpec, gcsSnapshotUri, lastBackUpAt);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.pubsub;
+
+import com.google.cloud.pso.bq_snapshot_manager.helpers.Utils;
+
+import java.util.Arrays;
+
+/**
+ * Encoding of the published requests. All services accept both, so consumers must be deployed before
+ * switching the publishers to BINARY.
+ */
+public enum PubSubMessageEncoding {
+    JSON,
+    BINARY;
+
+    public static final String ENV = "PUBSUB_MESSAGE_ENCODING";
+
+    public static PubSubMessageEncoding fromEnv() {
+        String value = Utils.getConfigFromEnv(ENV, false).trim();
+        return value.isBlank() ? JSON : fromString(value);
+    }
+
+    public static PubSubMessageEncoding fromString(String text) throws IllegalArgumentException {
+        for (PubSubMessageEncoding encoding : PubSubMessageEncoding.values()) {
+            if (encoding.name().equalsIgnoreCase(text)) {
+                return encoding;
+            }
+        }
+        throw new IllegalArgumentException(
+                String.format("Invalid enum text '%s'. Available values are '%s'",
+                        text,
+                        Arrays.asList(PubSubMessageEncoding.values())
+                )
+        );
+    }
+}
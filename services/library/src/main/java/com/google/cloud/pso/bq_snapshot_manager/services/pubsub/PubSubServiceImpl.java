@@ -21,6 +21,7 @@ package com.google.cloud.pso.bq_snapshot_manager.services.pubsub;
 
 import com.google.api.core.ApiFuture;
 import com.google.cloud.pso.bq_snapshot_manager.entities.JsonMessage;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics;
 import com.google.cloud.pubsub.v1.Publisher;
 import com.google.protobuf.ByteString;
 import com.google.pubsub.v1.PubsubMessage;
@@ -31,8 +32,20 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import static com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics.ExternalService.PUBSUB;
+
 public class PubSubServiceImpl implements PubSubService {
 
+    private final PubSubMessageEncoding encoding;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+
+    public PubSubServiceImpl() {
+        this(PubSubMessageEncoding.JSON);
+    }
+
+    public PubSubServiceImpl(PubSubMessageEncoding encoding) {
+        this.encoding = encoding;
+    }
 
     @Override
     public PubSubPublishResults publishTableOperationRequests(String projectId, String topicId, List<JsonMessage> messages)
@@ -46,20 +59,28 @@ public class PubSubServiceImpl implements PubSubService {
             TopicName topicName = TopicName.of(projectId, topicId);
             // Create a publisher instance with default settings bound to the topic
             publisher = Publisher.newBuilder(topicName).build();
-            for (final JsonMessage msg : messages) {
-                ByteString data = ByteString.copyFromUtf8(msg.toJsonString());
-                PubsubMessage pubsubMessage = PubsubMessage.newBuilder().setData(data).build();
-
-                // Once published, returns a server-assigned message id (unique within the topic)
-                ApiFuture<String> future = publisher.publish(pubsubMessage);
-                try{
-                    // wait and retrieves results
-                    String messageId = future.get();
-                    successMessages.add(new SuccessPubSubMessage(msg, messageId));
-                }catch (Exception ex){
-                    failedMessages.add(new FailedPubSubMessage(msg, ex));
+
+            // publish all messages first so that the publisher could send them in batches.
+            // The batch is timed until all messages are acknowledged by the server
+            final Publisher batchPublisher = publisher;
+            metrics.timeExternalCall(PUBSUB, "publish_batch", () -> {
+                List<ApiFuture<String>> futures = new ArrayList<>(messages.size());
+                for (final JsonMessage msg : messages) {
+                    // Once published, returns a server-assigned message id (unique within the topic)
+                    futures.add(batchPublisher.publish(toPubsubMessage(msg)));
                 }
-            }
+
+                for (int i = 0; i < messages.size(); i++) {
+                    JsonMessage msg = messages.get(i);
+                    try{
+                        // wait and retrieves results
+                        String messageId = futures.get(i).get();
+                        successMessages.add(new SuccessPubSubMessage(msg, messageId));
+                    }catch (Exception ex){
+                        failedMessages.add(new FailedPubSubMessage(msg, ex));
+                    }
+                }
+            });
 
             return new PubSubPublishResults(successMessages, failedMessages);
 
@@ -71,4 +92,15 @@ public class PubSubServiceImpl implements PubSubService {
             }
         }
     }
+
+    private PubsubMessage toPubsubMessage(JsonMessage msg) {
+        String contentType = encoding == PubSubMessageEncoding.BINARY ? PubSubMessageCodec.getContentType(msg) : null;
+        if (contentType == null) {
+            return PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8(msg.toJsonString())).build();
+        }
+        return PubsubMessage.newBuilder()
+                .setData(ByteString.copyFrom(PubSubMessageCodec.encode(msg)))
+                .putAttributes(PubSubMessageCodec.CONTENT_TYPE_ATTRIBUTE, contentType)
+                .build();
+    }
 }
@@ -0,0 +1,110 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.pubsub;
+
+import com.google.cloud.pso.bq_snapshot_manager.helpers.Utils;
+import com.google.pubsub.v1.ProjectSubscriptionName;
+
+public class StreamingPullConfig {
+
+    public static final String SUBSCRIPTION_ENV = "PUBSUB_PULL_SUBSCRIPTION";
+
+    private final String subscription;
+    private final long maxOutstandingMessages;
+    private final long maxOutstandingBytes;
+    private final int executorThreads;
+    private final int parallelPullCount;
+    private final int shutdownTimeoutSeconds;
+
+    public StreamingPullConfig(String subscription,
+                               long maxOutstandingMessages,
+                               long maxOutstandingBytes,
+                               int executorThreads,
+                               int parallelPullCount,
+                               int shutdownTimeoutSeconds) {
+        this.subscription = subscription;
+        this.maxOutstandingMessages = maxOutstandingMessages;
+        this.maxOutstandingBytes = maxOutstandingBytes;
+        this.executorThreads = executorThreads;
+        this.parallelPullCount = parallelPullCount;
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+    }
+
+    /**
+     * @return the streaming pull config of this app, or null if PUBSUB_PULL_SUBSCRIPTION is not set (i.e. push mode)
+     */
+    public static StreamingPullConfig fromEnv() {
+        String subscription = Utils.getConfigFromEnv(SUBSCRIPTION_ENV, false).trim();
+        if (subscription.isBlank()) {
+            return null;
+        }
+
+        // short subscription names are resolved against the project hosting the solution
+        if (!ProjectSubscriptionName.isParsableFrom(subscription)) {
+            subscription = ProjectSubscriptionName.of(
+                    Utils.getConfigFromEnv("PROJECT_ID", true),
+                    subscription
+            ).toString();
+        }
+
+        return new StreamingPullConfig(
+                subscription,
+                Utils.getConfigFromEnv("PULL_MAX_OUTSTANDING_MESSAGES", 100),
+                Utils.getConfigFromEnv("PULL_MAX_OUTSTANDING_MEGABYTES", 100) * 1024L * 1024L,
+                Utils.getConfigFromEnv("PULL_EXECUTOR_THREADS", 8),
+                Utils.getConfigFromEnv("PULL_PARALLEL_STREAMS", 1),
+                Utils.getConfigFromEnv("PULL_SHUTDOWN_TIMEOUT_SECONDS", 30)
+        );
+    }
+
+    public String getSubscription() {
+        return subscription;
+    }
+
+    public long getMaxOutstandingMessages() {
+        return maxOutstandingMessages;
+    }
+
+    public long getMaxOutstandingBytes() {
+        return maxOutstandingBytes;
+    }
+
+    public int getExecutorThreads() {
+        return executorThreads;
+    }
+
+    public int getParallelPullCount() {
+        return parallelPullCount;
+    }
+
+    public int getShutdownTimeoutSeconds() {
+        return shutdownTimeoutSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamingPullConfig{" +
+                "subscription='" + subscription + '\'' +
+                ", maxOutstandingMessages=" + maxOutstandingMessages +
+                ", maxOutstandingBytes=" + maxOutstandingBytes +
+                ", executorThreads=" + executorThreads +
+                ", parallelPullCount=" + parallelPullCount +
+                ", shutdownTimeoutSeconds=" + shutdownTimeoutSeconds +
+                '}';
+    }
+}
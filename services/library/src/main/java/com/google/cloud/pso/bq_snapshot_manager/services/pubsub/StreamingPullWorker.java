@@ -0,0 +1,178 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.pubsub;
+
+import com.google.api.core.ApiService;
+import com.google.api.gax.batching.FlowControlSettings;
+import com.google.api.gax.batching.FlowController;
+import com.google.api.gax.core.InstantiatingExecutorProvider;
+import com.google.cloud.pso.bq_snapshot_manager.entities.PubSubEvent;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.LoggingHelper;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.TrackingHelper;
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.MessageReceiver;
+import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import com.google.pubsub.v1.PubsubMessage;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Long-running alternative to the push endpoint of an app. Messages are consumed from a pull subscription over
+ * streaming pull and passed to the same handler used by the push endpoint. The handler's response is mapped to
+ * the message outcome the same way Pub/Sub maps push responses: 2xx (incl. non-retryable errors) acks the
+ * message and anything else (i.e. retryable errors) nacks it so that it's redelivered.
+ * Acks and nacks are batched and sent over the stream by the Subscriber.
+ */
+public class StreamingPullWorker {
+
+    private final StreamingPullConfig config;
+    private final PubSubMessageHandler handler;
+    private final LoggingHelper logger;
+    private Subscriber subscriber;
+
+    public StreamingPullWorker(StreamingPullConfig config, PubSubMessageHandler handler, LoggingHelper logger) {
+        this.config = config;
+        this.handler = handler;
+        this.logger = logger;
+    }
+
+    public synchronized void start() {
+        if (subscriber != null) {
+            return;
+        }
+
+        // Block pulling new messages once the outstanding messages or bytes reach the limits
+        // instead of pulling them and letting their ack deadlines expire in the client
+        FlowControlSettings flowControlSettings = FlowControlSettings.newBuilder()
+                .setMaxOutstandingElementCount(config.getMaxOutstandingMessages())
+                .setMaxOutstandingRequestBytes(config.getMaxOutstandingBytes())
+                .setLimitExceededBehavior(FlowController.LimitExceededBehavior.Block)
+                .build();
+
+        // the executor threads run the handler, i.e. they bound the number of messages processed concurrently
+        subscriber = Subscriber.newBuilder(config.getSubscription(), (MessageReceiver) this::receiveMessage)
+                .setFlowControlSettings(flowControlSettings)
+                .setParallelPullCount(config.getParallelPullCount())
+                .setExecutorProvider(InstantiatingExecutorProvider.newBuilder()
+                        .setExecutorThreadCount(config.getExecutorThreads())
+                        .build())
+                .build();
+
+        subscriber.addListener(new ApiService.Listener() {
+            @Override
+            public void failed(ApiService.State from, Throwable failure) {
+                logger.logSevereWithTracker(TrackingHelper.MIN_RUN_ID,
+                        null,
+                        String.format("Streaming pull from '%s' failed in state %s: %s",
+                                config.getSubscription(), from, failure.getMessage()));
+            }
+        }, MoreExecutors.directExecutor());
+
+        subscriber.startAsync().awaitRunning();
+
+        logger.logInfoWithTracker(TrackingHelper.MIN_RUN_ID,
+                null,
+                String.format("Started streaming pull worker with %s", config));
+    }
+
+    /**
+     * Stops pulling new messages and waits for the outstanding ones to be processed and acked/nacked.
+     * Messages that are not done within the timeout are redelivered after their ack deadline.
+     */
+    public synchronized void stop() {
+        if (subscriber == null) {
+            return;
+        }
+        try {
+            subscriber.stopAsync().awaitTerminated(config.getShutdownTimeoutSeconds(), TimeUnit.SECONDS);
+        } catch (TimeoutException ex) {
+            logger.logWarnWithTracker(TrackingHelper.MIN_RUN_ID,
+                    null,
+                    String.format("Streaming pull worker didn't stop within %s seconds",
+                            config.getShutdownTimeoutSeconds()));
+        } catch (IllegalStateException ex) {
+            // the subscriber has already failed and the failure is logged by the listener
+        } finally {
+            subscriber = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return subscriber != null && subscriber.isRunning();
+    }
+
+    private void receiveMessage(PubsubMessage message, AckReplyConsumer consumer) {
+        receiveMessage(
+                toPubSubEvent(message.getMessageId(),
+                        message.getPublishTime(),
+                        message.getData(),
+                        message.getAttributesMap()),
+                consumer
+        );
+    }
+
+    void receiveMessage(PubSubEvent event, AckReplyConsumer consumer) {
+
+        boolean ack;
+        try {
+            ack = shouldAck(handler.receiveMessage(event));
+        } catch (Exception ex) {
+            // the controllers handle their own exceptions, anything reaching here is unexpected and is retried
+            logger.logWarnWithTracker(TrackingHelper.MIN_RUN_ID,
+                    null,
+                    String.format("Unhandled exception while processing message '%s'. Message will be redelivered: %s",
+                            event.getMessage().getMessageId(), ex.getMessage()));
+            ack = false;
+        }
+
+        if (ack) {
+            consumer.ack();
+        } else {
+            consumer.nack();
+        }
+    }
+
+    public static boolean shouldAck(ResponseEntity response) {
+        return response != null && response.getStatusCode().is2xxSuccessful();
+    }
+
+    /**
+     * Converts a pulled message to the same event the push endpoint receives
+     */
+    public static PubSubEvent toPubSubEvent(String messageId,
+                                            Timestamp publishTime,
+                                            ByteString data,
+                                            Map<String, String> attributes) {
+        PubSubEvent event = new PubSubEvent();
+        event.setMessage(event.new Message(
+                messageId,
+                Instant.ofEpochSecond(publishTime.getSeconds(), publishTime.getNanos()).toString(),
+                data.toByteArray(),
+                new HashMap<>(attributes)
+        ));
+        return event;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.pubsub;
+
+import com.google.cloud.pso.bq_snapshot_manager.helpers.LoggingHelper;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.Utils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs a StreamingPullWorker for the app's PubSubMessageHandler when PUBSUB_PULL_SUBSCRIPTION is set.
+ * Otherwise, the app only serves its push endpoint.
+ * The worker is stopped before the web server on shutdown so that in-flight messages could finish.
+ */
+@Component
+public class StreamingPullWorkerLifecycle implements SmartLifecycle {
+
+    private final ObjectProvider<PubSubMessageHandler> handlerProvider;
+    private StreamingPullWorker worker;
+
+    public StreamingPullWorkerLifecycle(ObjectProvider<PubSubMessageHandler> handlerProvider) {
+        this.handlerProvider = handlerProvider;
+    }
+
+    @Override
+    public synchronized void start() {
+        StreamingPullConfig config = StreamingPullConfig.fromEnv();
+        if (config == null) {
+            return;
+        }
+
+        PubSubMessageHandler handler = handlerProvider.getIfUnique();
+        if (handler == null) {
+            throw new IllegalStateException(String.format(
+                    "%s is set but the app doesn't have a unique PubSubMessageHandler",
+                    StreamingPullConfig.SUBSCRIPTION_ENV));
+        }
+
+        LoggingHelper logger = new LoggingHelper(
+                StreamingPullWorker.class.getSimpleName(),
+                null,
+                Utils.getConfigFromEnv("PROJECT_ID", true),
+                Utils.getConfigFromEnv("APPLICATION_NAME", false)
+        );
+
+        worker = new StreamingPullWorker(config, handler, logger);
+        worker.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (worker != null) {
+            worker.stop();
+            worker = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return worker != null;
+    }
+
+    @Override
+    public int getPhase() {
+        // higher phases are stopped first, i.e. before the web server
+        return Integer.MAX_VALUE - 1;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.scan;
+
+import com.google.cloud.Tuple;
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads.Downstream;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+// Decorates a ResourceScanner to cap the concurrent Resource Manager (projects, folders) and BigQuery (datasets, tables) calls of the instance
+public class BulkheadedResourceScanner implements ResourceScanner {
+
+    private final ResourceScanner delegate;
+    private final DownstreamBulkheads bulkheads;
+
+    public BulkheadedResourceScanner(ResourceScanner delegate, DownstreamBulkheads bulkheads) {
+        this.delegate = delegate;
+        this.bulkheads = bulkheads;
+    }
+
+    @Override
+    public List<String> listProjects(Long folderId) throws NonRetryableApplicationException, GeneralSecurityException, IOException {
+        bulkheads.acquire(Downstream.RESOURCE_MANAGER);
+        try {
+            return delegate.listProjects(folderId);
+        } finally {
+            bulkheads.release(Downstream.RESOURCE_MANAGER);
+        }
+    }
+
+    @Override
+    public List<String> listDatasets(String project) throws NonRetryableApplicationException, InterruptedException {
+        bulkheads.acquire(Downstream.BIGQUERY);
+        try {
+            return delegate.listDatasets(project);
+        } finally {
+            bulkheads.release(Downstream.BIGQUERY);
+        }
+    }
+
+    @Override
+    public List<String> listTables(String project, String dataset) throws InterruptedException, NonRetryableApplicationException {
+        bulkheads.acquire(Downstream.BIGQUERY);
+        try {
+            return delegate.listTables(project, dataset);
+        } finally {
+            bulkheads.release(Downstream.BIGQUERY);
+        }
+    }
+
+    @Override
+    public Tuple<String, String> getParentFolderId(String project, String runId) throws IOException {
+        bulkheads.acquire(Downstream.RESOURCE_MANAGER);
+        try {
+            return delegate.getParentFolderId(project, runId);
+        } finally {
+            bulkheads.release(Downstream.RESOURCE_MANAGER);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.scan;
+
+import com.google.cloud.Tuple;
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.ServiceCallInstrumentation;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+// Decorates a ResourceScanner to record the latency and outcome of each call
+public class InstrumentedResourceScanner implements ResourceScanner {
+
+    private static final String SERVICE = "ResourceScanner";
+
+    private final ResourceScanner delegate;
+    private final ServiceCallInstrumentation instrumentation;
+
+    public InstrumentedResourceScanner(ResourceScanner delegate, ServiceCallInstrumentation instrumentation) {
+        this.delegate = delegate;
+        this.instrumentation = instrumentation;
+    }
+
+    @Override
+    public List<String> listProjects(Long folderId) throws NonRetryableApplicationException, GeneralSecurityException, IOException {
+        long startNanos = System.nanoTime();
+        try {
+            List<String> projects = delegate.listProjects(folderId);
+            instrumentation.record(SERVICE, "listProjects", startNanos, null, null, null);
+            return projects;
+        } catch (Exception ex) {
+            instrumentation.record(SERVICE, "listProjects", startNanos, ex, null, null);
+            throw ex;
+        }
+    }
+
+    @Override
+    public List<String> listDatasets(String project) throws NonRetryableApplicationException, InterruptedException {
+        long startNanos = System.nanoTime();
+        try {
+            List<String> datasets = delegate.listDatasets(project);
+            instrumentation.record(SERVICE, "listDatasets", startNanos, null, null, null);
+            return datasets;
+        } catch (Exception ex) {
+            instrumentation.record(SERVICE, "listDatasets", startNanos, ex, null, null);
+            throw ex;
+        }
+    }
+
+    @Override
+    public List<String> listTables(String project, String dataset) throws InterruptedException, NonRetryableApplicationException {
+        long startNanos = System.nanoTime();
+        try {
+            List<String> tables = delegate.listTables(project, dataset);
+            instrumentation.record(SERVICE, "listTables", startNanos, null, null, null);
+            return tables;
+        } catch (Exception ex) {
+            instrumentation.record(SERVICE, "listTables", startNanos, ex, null, null);
+            throw ex;
+        }
+    }
+
+    @Override
+    public Tuple<String, String> getParentFolderId(String project, String runId) throws IOException {
+        long startNanos = System.nanoTime();
+        try {
+            Tuple<String, String> parentFolder = delegate.getParentFolderId(project, runId);
+            instrumentation.record(SERVICE, "getParentFolderId", startNanos, null, runId, null);
+            return parentFolder;
+        } catch (Exception ex) {
+            instrumentation.record(SERVICE, "getParentFolderId", startNanos, ex, runId, null);
+            throw ex;
+        }
+    }
+}
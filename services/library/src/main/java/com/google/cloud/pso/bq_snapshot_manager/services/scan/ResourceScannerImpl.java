@@ -45,8 +45,13 @@ import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreOptions;
 import com.google.cloud.datastore.Entity;
 import com.google.cloud.datastore.Key;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.Utils;
 
+import static com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics.ExternalService.BIGQUERY;
+import static com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics.ExternalService.DATASTORE;
+import static com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics.ExternalService.RESOURCE_MANAGER;
+
 public class ResourceScannerImpl implements ResourceScanner {
 
     public static final String DATASTORE_KIND = "project_folder_cache";
@@ -60,6 +65,8 @@ public class ResourceScannerImpl implements ResourceScanner {
 
     private Datastore datastore;
 
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+
     public final Integer RESOURCE_MANAGER_PAGE_SIZE = 300;
 
     public ResourceScannerImpl() throws IOException, GeneralSecurityException {
@@ -71,32 +78,34 @@ public class ResourceScannerImpl implements ResourceScanner {
 
     @Override
     public List<String> listTables(String projectId, String datasetId) {
-        return StreamSupport.stream(bqService.listTables(DatasetId.of(projectId, datasetId))
+        // timed until all pages are fetched
+        return metrics.timeExternalCall(BIGQUERY, "list_tables", () -> StreamSupport.stream(bqService.listTables(DatasetId.of(projectId, datasetId))
                                 .iterateAll() // lazy fetching of pages
                                 .spliterator(),
                         false)
                 .filter(t -> t.getDefinition().getType().equals(TableDefinition.Type.TABLE))
                 .map(t -> String.format("%s.%s.%s", projectId, datasetId, t.getTableId().getTable()))
-                .collect(Collectors.toCollection(ArrayList::new));
+                .collect(Collectors.toCollection(ArrayList::new)));
     }
 
     @Override
     public List<String> listDatasets(String projectId) {
-        return StreamSupport.stream(bqService.listDatasets(projectId)
+        return metrics.timeExternalCall(BIGQUERY, "list_datasets", () -> StreamSupport.stream(bqService.listDatasets(projectId)
                                 .iterateAll() // lazy fetching of pages
                                 .spliterator(),
                         false)
                 .map(d -> String.format("%s.%s", projectId, d.getDatasetId().getDataset()))
-                .collect(Collectors.toCollection(ArrayList::new));
+                .collect(Collectors.toCollection(ArrayList::new)));
     }
 
     @Override
     public List<String> listProjects(Long folderId) throws IOException {
 
-        ListProjectsResponse listProjectsResponse = cloudResourceManager.projects().list()
-                .setParent("folders/" + folderId)
-                .setPageSize(RESOURCE_MANAGER_PAGE_SIZE)
-                .execute();
+        ListProjectsResponse listProjectsResponse = metrics.timeExternalCall(RESOURCE_MANAGER, "list_projects",
+                () -> cloudResourceManager.projects().list()
+                        .setParent("folders/" + folderId)
+                        .setPageSize(RESOURCE_MANAGER_PAGE_SIZE)
+                        .execute());
 
         List<String> allProjects = pagedProjectsToList(listProjectsResponse.getProjects());
 
@@ -105,12 +114,14 @@ public class ResourceScannerImpl implements ResourceScanner {
         while (nextPageToken != null){
 
             // submit a new request for the next page
-            listProjectsResponse = cloudResourceManager.projects()
-                    .list()
-                    .setParent("folders/" + folderId)
-                    .setPageSize(RESOURCE_MANAGER_PAGE_SIZE)
-                    .setPageToken(nextPageToken)
-                    .execute();
+            final String pageToken = nextPageToken;
+            listProjectsResponse = metrics.timeExternalCall(RESOURCE_MANAGER, "list_projects",
+                    () -> cloudResourceManager.projects()
+                            .list()
+                            .setParent("folders/" + folderId)
+                            .setPageSize(RESOURCE_MANAGER_PAGE_SIZE)
+                            .setPageToken(pageToken)
+                            .execute());
 
             // add all entries listed in that page
             allProjects.addAll(pagedProjectsToList(listProjectsResponse.getProjects()));
@@ -161,17 +172,19 @@ public class ResourceScannerImpl implements ResourceScanner {
         String keyStr = generateProjectFolderCacheKey(projectId, runId);
 
         Key projectFolderKey = datastore.newKeyFactory().setKind(DATASTORE_KIND).newKey(keyStr);
-        Entity projectFolderEntity = datastore.get(projectFolderKey);
+        Entity projectFolderEntity = metrics.timeExternalCall(DATASTORE, "get", () -> datastore.get(projectFolderKey));
+        metrics.recordCacheGet(DATASTORE_KIND, projectFolderEntity != null);
 
         if(projectFolderEntity == null){
             // 2.a project-folder entity doesn't exist in the cache
 
             // 2.a.1. Query the Resource Manager API
-            String parentFolderFromApi = cloudResourceManager
-                    .projects()
-                    .get(String.format("projects/%s", projectId))
-                    .execute()
-                    .getParent();
+            String parentFolderFromApi = metrics.timeExternalCall(RESOURCE_MANAGER, "get_project",
+                    () -> cloudResourceManager
+                            .projects()
+                            .get(String.format("projects/%s", projectId))
+                            .execute()
+                            .getParent());
 
             // API returns "folders/folder_name" and we just return folder_name
             String parentFolderFinal = parentFolderFromApi.startsWith("folders/")?
@@ -188,7 +201,8 @@ public class ResourceScannerImpl implements ResourceScanner {
                     .set("expires_at", Utils.addSeconds(now, Utils.SECONDS_IN_DAY)) // TTL 1 day
                     .build();
 
-            datastore.put(projectFolderEntity);
+            final Entity newProjectFolderEntity = projectFolderEntity;
+            metrics.timeExternalCall(DATASTORE, "put", () -> datastore.put(newProjectFolderEntity));
 
             // 2.a.3 return it to the caller
             return Tuple.of(parentFolderFinal, PROJECT_FOLDER_LKP_SRC_API);
@@ -0,0 +1,63 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.set;
+
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads.Downstream;
+
+// Decorates a PersistentSet to cap the concurrent GCS calls of the instance
+public class BulkheadedPersistentSet implements PersistentSet {
+
+    private final PersistentSet delegate;
+    private final DownstreamBulkheads bulkheads;
+
+    public BulkheadedPersistentSet(PersistentSet delegate, DownstreamBulkheads bulkheads) {
+        this.delegate = delegate;
+        this.bulkheads = bulkheads;
+    }
+
+    @Override
+    public void add(String key) {
+        bulkheads.acquire(Downstream.GCS);
+        try {
+            delegate.add(key);
+        } finally {
+            bulkheads.release(Downstream.GCS);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        bulkheads.acquire(Downstream.GCS);
+        try {
+            delegate.remove(key);
+        } finally {
+            bulkheads.release(Downstream.GCS);
+        }
+    }
+
+    @Override
+    public boolean contains(String key) {
+        bulkheads.acquire(Downstream.GCS);
+        try {
+            return delegate.contains(key);
+        } finally {
+            bulkheads.release(Downstream.GCS);
+        }
+    }
+}
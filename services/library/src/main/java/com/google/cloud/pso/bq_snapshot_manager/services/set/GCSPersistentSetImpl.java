@@ -18,12 +18,16 @@
 
 package com.google.cloud.pso.bq_snapshot_manager.services.set;
 
+import com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics;
 import com.google.cloud.storage.*;
 
+import static com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics.ExternalService.GCS;
+
 public class GCSPersistentSetImpl implements PersistentSet {
 
     private Storage storage;
     private String bucketName;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
 
     public GCSPersistentSetImpl(String bucketName) {
         // Instantiates a client
@@ -35,18 +39,18 @@ public class GCSPersistentSetImpl implements PersistentSet {
     public void add(String key) {
         BlobId blobId = BlobId.of(bucketName, key);
         BlobInfo blobInfo = BlobInfo.newBuilder(blobId).build();
-        storage.create(blobInfo);
+        metrics.timeExternalCall(GCS, "create", () -> storage.create(blobInfo));
     }
 
     public void remove(String key) {
         BlobId blobId = BlobId.of(bucketName, key);
-        storage.delete(blobId);
+        metrics.timeExternalCall(GCS, "delete", () -> storage.delete(blobId));
     }
 
     @Override
     public boolean contains(String key) {
         BlobId blobId = BlobId.of(bucketName, key);
-        Blob blob = storage.get(blobId);
+        Blob blob = metrics.timeExternalCall(GCS, "get", () -> storage.get(blobId));
         return blob != null;
     }
 }
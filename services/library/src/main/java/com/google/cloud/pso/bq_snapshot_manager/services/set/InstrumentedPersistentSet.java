@@ -0,0 +1,71 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.set;
+
+import com.google.cloud.pso.bq_snapshot_manager.helpers.ServiceCallInstrumentation;
+
+// Decorates a PersistentSet to record the latency and outcome of each call
+public class InstrumentedPersistentSet implements PersistentSet {
+
+    private static final String SERVICE = "PersistentSet";
+
+    private final PersistentSet delegate;
+    private final ServiceCallInstrumentation instrumentation;
+
+    public InstrumentedPersistentSet(PersistentSet delegate, ServiceCallInstrumentation instrumentation) {
+        this.delegate = delegate;
+        this.instrumentation = instrumentation;
+    }
+
+    @Override
+    public void add(String key) {
+        long startNanos = System.nanoTime();
+        try {
+            delegate.add(key);
+        } catch (RuntimeException ex) {
+            instrumentation.record(SERVICE, "add", startNanos, ex, null, null);
+            throw ex;
+        }
+        instrumentation.record(SERVICE, "add", startNanos, null, null, null);
+    }
+
+    @Override
+    public void remove(String key) {
+        long startNanos = System.nanoTime();
+        try {
+            delegate.remove(key);
+        } catch (RuntimeException ex) {
+            instrumentation.record(SERVICE, "remove", startNanos, ex, null, null);
+            throw ex;
+        }
+        instrumentation.record(SERVICE, "remove", startNanos, null, null, null);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        long startNanos = System.nanoTime();
+        try {
+            boolean contains = delegate.contains(key);
+            instrumentation.record(SERVICE, "contains", startNanos, null, null, null);
+            return contains;
+        } catch (RuntimeException ex) {
+            instrumentation.record(SERVICE, "contains", startNanos, ex, null, null);
+            throw ex;
+        }
+    }
+}
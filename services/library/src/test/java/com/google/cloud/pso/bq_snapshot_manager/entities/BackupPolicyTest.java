@@ -322,4 +322,58 @@ public class BackupPolicyTest {
 
         assertEquals(expected, actual);
     }
+
+    @Test
+    public void testGcsSnapshotEngine(){
+
+        BackupPolicy policy = new BackupPolicy.BackupPolicyBuilder("* * * * * *",BackupMethod.GCS_SNAPSHOT,TimeTravelOffsetDays.DAYS_0,BackupConfigSource.SYSTEM,"project")
+                .setGcsSnapshotStorageLocation("gs://backups")
+                .setGcsExportFormat(GCSSnapshotFormat.AVRO_SNAPPY)
+                .setGcsUseAvroLogicalTypes(true)
+                .setGcsSnapshotEngine(GCSSnapshotEngine.STORAGE_READ_API)
+                .build();
+
+        assertEquals("STORAGE_READ_API", policy.toMap().get(BackupPolicyFields.gcs_snapshot_engine.toString()));
+        assertEquals(policy, BackupPolicy.fromMap(policy.toMap()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGcsSnapshotEngine_unsupportedFormat(){
+
+        new BackupPolicy.BackupPolicyBuilder("* * * * * *",BackupMethod.GCS_SNAPSHOT,TimeTravelOffsetDays.DAYS_0,BackupConfigSource.SYSTEM,"project")
+                .setGcsSnapshotStorageLocation("gs://backups")
+                .setGcsExportFormat(GCSSnapshotFormat.PARQUET)
+                .setGcsSnapshotEngine(GCSSnapshotEngine.STORAGE_READ_API)
+                .build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGcsSnapshotEngine_withoutAvroLogicalTypes(){
+
+        new BackupPolicy.BackupPolicyBuilder("* * * * * *",BackupMethod.GCS_SNAPSHOT,TimeTravelOffsetDays.DAYS_0,BackupConfigSource.SYSTEM,"project")
+                .setGcsSnapshotStorageLocation("gs://backups")
+                .setGcsExportFormat(GCSSnapshotFormat.AVRO_SNAPPY)
+                .setGcsUseAvroLogicalTypes(false)
+                .setGcsSnapshotEngine(GCSSnapshotEngine.STORAGE_READ_API)
+                .build();
+    }
+
+    @Test
+    public void testBackupOperationProjectPool(){
+
+        Map<String, String> tagMap = new HashMap<>();
+        tagMap.put("backup_cron", "* * * * * *");
+        tagMap.put("backup_method", "BigQuery Snapshot");
+        tagMap.put("backup_time_travel_offset_days", "0");
+        tagMap.put("backup_storage_project", "project");
+        tagMap.put("bq_snapshot_storage_dataset", "dataset");
+        tagMap.put("bq_snapshot_expiration_days", "15");
+        tagMap.put("backup_operation_project_pool", "ops-1, ops-2,ops-3");
+
+        BackupPolicy policy = BackupPolicy.fromMap(tagMap);
+
+        assertEquals(Arrays.asList("ops-1", "ops-2", "ops-3"), policy.getBackupOperationProjectPool());
+        assertEquals("ops-1,ops-2,ops-3", policy.toMap().get("backup_operation_project_pool"));
+        assertEquals(policy, BackupPolicy.fromMap(policy.toMap()));
+    }
 }
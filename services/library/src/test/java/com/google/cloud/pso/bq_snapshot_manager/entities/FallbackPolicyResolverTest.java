@@ -0,0 +1,166 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.entities;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.*;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FallbackPolicyResolverTest {
+
+    private static BackupPolicy policy(String cron) {
+        return new BackupPolicy.BackupPolicyBuilder(
+                cron,
+                BackupMethod.BIGQUERY_SNAPSHOT,
+                TimeTravelOffsetDays.DAYS_0,
+                BackupConfigSource.SYSTEM,
+                "storage-project")
+                .setBigQuerySnapshotStorageDataset("backups")
+                .setBigQuerySnapshotExpirationDays(15.0)
+                .build();
+    }
+
+    private final FallbackPolicyResolver resolver;
+
+    public FallbackPolicyResolverTest() {
+        Map<String, BackupPolicy> tables = new HashMap<>();
+        tables.put("p1.raw_1.t1", policy("0 0 1 * * *"));
+        tables.put("*.*.tmp_?", policy("0 0 2 * * *"));
+        tables.put("regex:_bkp$", policy("0 0 13 * * *"));
+
+        Map<String, BackupPolicy> datasets = new HashMap<>();
+        datasets.put("p1.d1", policy("0 0 3 * * *"));
+        datasets.put("p1.raw_*", policy("0 0 4 * * *"));
+        datasets.put("p1.r*", policy("0 0 5 * * *"));
+        datasets.put("regex:^p2\\.landing_[0-9]+$", policy("0 0 6 * * *"));
+        datasets.put("regex:^p2\\..*$", policy("0 0 7 * * *"));
+        datasets.put("p2.landing_1*", policy("0 0 8 * * *"));
+        datasets.put("example.com:p3.d", policy("0 0 9 * * *"));
+
+        Map<String, BackupPolicy> projects = new HashMap<>();
+        projects.put("p1", policy("0 0 10 * * *"));
+        projects.put("dev-*", policy("0 0 11 * * *"));
+
+        Map<String, BackupPolicy> folders = new HashMap<>();
+        folders.put("123", policy("0 0 12 * * *"));
+
+        resolver = FallbackPolicyResolver.compile(
+                new FallbackBackupPolicy(policy("0 0 0 * * *"), folders, projects, datasets, tables));
+    }
+
+    private void assertMatch(String table, FallbackPolicyMatch.Level level, String rule, String cron) {
+        FallbackPolicyMatch match = resolver.resolveOverride(TableSpec.fromSqlString(table));
+        assertEquals(level, match.getLevel());
+        assertEquals(rule, match.getRule());
+        assertEquals(cron, match.getPolicy().getCron());
+    }
+
+    @Test
+    public void testExactLevels() {
+        assertMatch("p1.raw_1.t1", FallbackPolicyMatch.Level.TABLE, "p1.raw_1.t1", "0 0 1 * * *");
+        assertMatch("p1.d1.t", FallbackPolicyMatch.Level.DATASET, "p1.d1", "0 0 3 * * *");
+        assertMatch("p1.other.t", FallbackPolicyMatch.Level.PROJECT, "p1", "0 0 10 * * *");
+    }
+
+    @Test
+    public void testWildcards() {
+        // table level wildcard beats dataset and project levels
+        assertMatch("p1.d1.tmp_a", FallbackPolicyMatch.Level.TABLE, "*.*.tmp_?", "0 0 2 * * *");
+        // '?' matches exactly one character
+        assertMatch("p1.d1.tmp_ab", FallbackPolicyMatch.Level.DATASET, "p1.d1", "0 0 3 * * *");
+        // the wildcard with most literal characters wins
+        assertMatch("p1.raw_2.t", FallbackPolicyMatch.Level.DATASET, "p1.raw_*", "0 0 4 * * *");
+        assertMatch("p1.ref.t", FallbackPolicyMatch.Level.DATASET, "p1.r*", "0 0 5 * * *");
+        assertMatch("dev-42.d.t", FallbackPolicyMatch.Level.PROJECT, "dev-*", "0 0 11 * * *");
+    }
+
+    @Test
+    public void testRegex() {
+        // wildcards win over regular expressions on the same level
+        assertMatch("p2.landing_12.t", FallbackPolicyMatch.Level.DATASET, "p2.landing_1*", "0 0 8 * * *");
+        // the longest regular expression wins
+        assertMatch("p2.landing_22.t", FallbackPolicyMatch.Level.DATASET, "regex:^p2\\.landing_[0-9]+$", "0 0 6 * * *");
+        assertMatch("p2.other.t", FallbackPolicyMatch.Level.DATASET, "regex:^p2\\..*$", "0 0 7 * * *");
+        // like the Dispatcher exclude lists, unanchored expressions match anywhere in the name
+        assertMatch("p9.d.t_bkp", FallbackPolicyMatch.Level.TABLE, "regex:_bkp$", "0 0 13 * * *");
+        assertMatch("p1.d1.t_bkp_old", FallbackPolicyMatch.Level.DATASET, "p1.d1", "0 0 3 * * *");
+    }
+
+    @Test
+    public void testDomainScopedProject() {
+        FallbackPolicyMatch match = resolver.resolveOverride(new TableSpec("example.com:p3", "d", "t"));
+        assertEquals("example.com:p3.d", match.getRule());
+    }
+
+    @Test
+    public void testFolderAndDefault() {
+        assertNull(resolver.resolveOverride(TableSpec.fromSqlString("p9.d.t")));
+        assertEquals("0 0 12 * * *", resolver.resolveFolder("123").getPolicy().getCron());
+        assertNull(resolver.resolveFolder("456"));
+        assertEquals(FallbackPolicyMatch.Level.DEFAULT, resolver.getDefaultMatch().getLevel());
+        assertEquals("0 0 0 * * *", resolver.getDefaultMatch().getPolicy().getCron());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidDatasetKey() {
+        FallbackPolicyResolver.compile(new FallbackBackupPolicy(
+                policy("0 0 0 * * *"), new HashMap<>(), new HashMap<>(),
+                Map.of("no_dataset", policy("0 0 0 * * *")), new HashMap<>()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRegex() {
+        FallbackPolicyResolver.compile(new FallbackBackupPolicy(
+                policy("0 0 0 * * *"), new HashMap<>(), Map.of("regex:[", policy("0 0 0 * * *")),
+                new HashMap<>(), new HashMap<>()));
+    }
+
+    @Test
+    public void testLookupsDontAllocate() {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        TableSpec[] tables = {
+                TableSpec.fromSqlString("p1.raw_1.t1"),
+                TableSpec.fromSqlString("p1.raw_2.t"),
+                TableSpec.fromSqlString("p2.landing_22.t"),
+                TableSpec.fromSqlString("p9.d.t")
+        };
+        // warm up
+        for (int i = 0; i < 20_000; i++) {
+            resolver.resolveOverride(tables[i % tables.length]);
+        }
+
+        long before = threadMXBean.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 20_000; i++) {
+            resolver.resolveOverride(tables[i % tables.length]);
+        }
+        long allocated = threadMXBean.getCurrentThreadAllocatedBytes() - before;
+
+        // allow for some noise from the measurement itself
+        assertTrue(String.format("Allocated %s bytes", allocated), allocated < 20_000);
+    }
+}
@@ -24,6 +24,7 @@ import com.google.cloud.bigquery.BigQuery;
 import com.google.cloud.pso.bq_snapshot_manager.entities.JsonMessage;
 import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
 import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorBatchRequest;
 import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorRequest;
 import com.google.cloud.pso.bq_snapshot_manager.services.PersistentSetTestImpl;
 import com.google.cloud.pso.bq_snapshot_manager.services.ResourceScannerTestImpl;
@@ -129,4 +130,31 @@ public class DispatcherTest {
 
         assertEquals(expected,actual);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCreateBatchesPerDataset() {
+
+        List<ConfiguratorRequest> requests = new ArrayList<>();
+        for (String table : Arrays.asList("p1.d1.t1", "p1.d2.t1", "p1.d1.t2", "p1.d1.t3", "p2.d1.t1")) {
+            requests.add(new ConfiguratorRequest(TableSpec.fromSqlString(table), runId, table, false, false, Timestamp.now()));
+        }
+
+        List<ConfiguratorBatchRequest> batches = Dispatcher.createBatchesPerDataset(requests, 2, runId);
+
+        List<List<String>> actual = batches.stream()
+                .map(batch -> batch.getRequests().stream()
+                        .map(ConfiguratorRequest::getTrackingId)
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+
+        assertEquals(
+                Arrays.asList(
+                        Arrays.asList("p1.d1.t1", "p1.d1.t2"),
+                        Arrays.asList("p1.d1.t3"),
+                        Arrays.asList("p1.d2.t1"),
+                        Arrays.asList("p2.d1.t1")
+                ),
+                actual);
+        assertEquals(runId, batches.get(0).getRunId());
+    }
+}
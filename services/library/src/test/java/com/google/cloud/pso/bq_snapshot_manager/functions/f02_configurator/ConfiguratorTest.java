@@ -20,6 +20,8 @@ package com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator;
 
 import com.google.cloud.Timestamp;
 import com.google.cloud.Tuple;
+import com.google.cloud.bigquery.BigQueryException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.JsonMessage;
 import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.GCSSnapshotFormat;
 import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
 import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
@@ -40,12 +42,24 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ConfiguratorTest {
 
@@ -95,7 +109,8 @@ public class ConfiguratorTest {
                 "test-bqSnapshoterTopic",
                 "test-gcsSnapshoterTopic",
                 "test-templateId",
-                "bq_backup_manager"
+                "bq_backup_manager",
+                0
         );
 
         Configurator configurator = new Configurator(
@@ -136,7 +151,7 @@ public class ConfiguratorTest {
                 new PubSubServiceTestImpl(),
                 new ResourceScannerTestImpl(),
                 new PersistentSetTestImpl(),
-                fallbackBackupPolicy,
+                FallbackPolicyResolver.compile(fallbackBackupPolicy),
                 "test-prefix",
                 2
         );
@@ -218,6 +233,44 @@ public class ConfiguratorTest {
                 , testFalse.y());
     }
 
+    @Test
+    public void testGetCronNextTriggerWithOffset() {
+
+        // daily at 1 PM shifted by 1 hour
+        Tuple<Boolean, LocalDateTime> daily = Configurator.getCronNextTrigger(
+                "0 0 13 * * *",
+                Timestamp.parseTimestamp("2022-10-06T14:00:00Z"), // last backup
+                Timestamp.parseTimestamp("2022-10-07T13:30:00Z"), // now
+                3600
+        );
+        assertEquals(false, daily.x());
+        assertEquals(LocalDateTime.of(2022, 10, 7, 14, 0), daily.y());
+
+        // hourly shifted by 1.5 hours keeps the hourly frequency
+        Tuple<Boolean, LocalDateTime> hourly = Configurator.getCronNextTrigger(
+                "0 0 * * * *",
+                Timestamp.parseTimestamp("2022-10-06T01:30:00Z"), // last backup
+                Timestamp.parseTimestamp("2022-10-06T02:45:00Z"), // now
+                5400
+        );
+        assertEquals(true, hourly.x());
+        assertEquals(LocalDateTime.of(2022, 10, 6, 2, 30), hourly.y());
+    }
+
+    @Test
+    public void testCronJitterOffset() {
+
+        TableSpec table = TableSpec.fromSqlString("p.d.t");
+
+        assertEquals(0L, CronJitter.computeOffsetSeconds(table, 0));
+        assertEquals(0L, CronJitter.computeOffsetSeconds(table, -1));
+
+        long offset = CronJitter.computeOffsetSeconds(table, 3600);
+        assertTrue(offset >= 0 && offset < 3600);
+        // stable across calls
+        assertEquals(offset, CronJitter.computeOffsetSeconds(TableSpec.fromSqlString("p.d.t"), 3600));
+    }
+
     @Test
     public void testIsBackupCronTime_case1() {
 
@@ -317,7 +370,8 @@ public class ConfiguratorTest {
                 "test-bqSnapshoterTopic",
                 "test-gcsSnapshoterTopic",
                 "test-templateId",
-                "bq_backup_manager"
+                "bq_backup_manager",
+                0
         );
 
         Configurator configurator = new Configurator(
@@ -358,7 +412,7 @@ public class ConfiguratorTest {
                 new PubSubServiceTestImpl(),
                 new ResourceScannerTestImpl(),
                 new PersistentSetTestImpl(),
-                fallbackBackupPolicy,
+                FallbackPolicyResolver.compile(fallbackBackupPolicy),
                 "test-prefix",
                 2
         );
@@ -376,6 +430,352 @@ public class ConfiguratorTest {
         );
     }
 
+    private Configurator createConcurrentConfigurator(CountDownLatch bothCallsStarted,
+                                                      boolean tableExists,
+                                                      ExecutorService executor) {
+        ConfiguratorConfig config = new ConfiguratorConfig(
+                "test-project",
+                "test-bqSnapshoterTopic",
+                "test-gcsSnapshoterTopic",
+                "test-templateId",
+                "bq_backup_manager",
+                0
+        );
+
+        return new Configurator(
+                config,
+                new BigQueryService() {
+                    @Override
+                    public void createSnapshot(String jobId, TableSpec sourceTable, TableSpec destinationId, Timestamp snapshotExpirationTs, String trackingId) {
+
+                    }
+
+                    @Override
+                    public void exportToGCS(String jobId, TableSpec sourceTable, String gcsDestinationUri, GCSSnapshotFormat exportFormat, @Nullable String csvFieldDelimiter, @Nullable Boolean csvPrintHeader, @Nullable Boolean useAvroLogicalTypes, String trackingId, Map<String, String> jobLabels) {
+
+                    }
+
+                    @Override
+                    public Long getTableCreationTime(TableSpec table) throws NonRetryableApplicationException {
+                        awaitOtherCall(bothCallsStarted);
+                        if (!tableExists) {
+                            throw new NonRetryableApplicationException("table not found");
+                        }
+                        return Utils.timestampToUnixTimeMillis(Timestamp.MIN_VALUE);
+                    }
+                },
+                new BackupPolicyService() {
+
+                    @Override
+                    public void createOrUpdateBackupPolicyAndStateForTable(TableSpec tableSpec, BackupPolicyAndState backupPolicy) {
+
+                    }
+
+                    @Override
+                    public @Nullable BackupPolicyAndState getBackupPolicyAndStateForTable(TableSpec tableSpec) {
+                        awaitOtherCall(bothCallsStarted);
+                        return null;
+                    }
+
+                    @Override
+                    public void shutdown() {
+
+                    }
+                },
+                new PubSubServiceTestImpl(),
+                new ResourceScannerTestImpl(),
+                new PersistentSetTestImpl(),
+                FallbackPolicyResolver.compile(fallbackBackupPolicy),
+                "test-prefix",
+                2,
+                executor
+        );
+    }
+
+    // only returns if the other call is running at the same time
+    private static void awaitOtherCall(CountDownLatch bothCallsStarted) {
+        bothCallsStarted.countDown();
+        try {
+            if (!bothCallsStarted.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("API calls were not executed concurrently");
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void testExecuteRunsIndependentCallsConcurrently() throws Exception {
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            ConfiguratorResponse response = createConcurrentConfigurator(new CountDownLatch(2), true, executor).execute(
+                    new ConfiguratorRequest(
+                            TableSpec.fromSqlString("p3.d1.t1"),
+                            "1665734583289-T",
+                            "1665734583289-T-xyz",
+                            false,
+                            false,
+                            Timestamp.now()
+                    ),
+                    "pubsubmessageid"
+            );
+
+            // folder level policy resolved from the concurrent folder lookup
+            assertEquals("System attached fallback policy on level 'folder-from-stub' without backup state from previous runs",
+                    response.getBackupPolicySource());
+            assertTrue(response.isBackupTime());
+            assertEquals(1, response.getBigQueryBackupPublishingResults().getSuccessMessages().size());
+            assertEquals(0, response.getGcsBackupPublishingResults().getSuccessMessages().size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExecutePropagatesConcurrentCallExceptions() throws Exception {
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            createConcurrentConfigurator(new CountDownLatch(2), false, executor).execute(
+                    new ConfiguratorRequest(
+                            TableSpec.fromSqlString("p3.d1.t1"),
+                            "1665734583289-T",
+                            "1665734583289-T-xyz",
+                            false,
+                            false,
+                            Timestamp.now()
+                    ),
+                    "pubsubmessageid"
+            );
+            fail("Expected NonRetryableApplicationException");
+        } catch (NonRetryableApplicationException ex) {
+            // the original exception type is surfaced to the ControllerExceptionHelper
+            assertEquals("table not found", ex.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExecuteBatch() throws Exception {
+
+        ConfiguratorConfig config = new ConfiguratorConfig(
+                "test-project",
+                "test-bqSnapshoterTopic",
+                "test-gcsSnapshoterTopic",
+                "test-templateId",
+                "bq_backup_manager",
+                0
+        );
+
+        List<Integer> publishedBatchSizes = new ArrayList<>();
+        PersistentSetTestImpl persistentSet = new PersistentSetTestImpl();
+
+        Configurator configurator = new Configurator(
+                config,
+                new BigQueryService() {
+                    @Override
+                    public void createSnapshot(String jobId, TableSpec sourceTable, TableSpec destinationId, Timestamp snapshotExpirationTs, String trackingId) {
+
+                    }
+
+                    @Override
+                    public void exportToGCS(String jobId, TableSpec sourceTable, String gcsDestinationUri, GCSSnapshotFormat exportFormat, @Nullable String csvFieldDelimiter, @Nullable Boolean csvPrintHeader, @Nullable Boolean useAvroLogicalTypes, String trackingId, Map<String, String> jobLabels) {
+
+                    }
+
+                    @Override
+                    public Long getTableCreationTime(TableSpec table) throws NonRetryableApplicationException {
+                        if (table.getTable().equals("deleted")) {
+                            throw new NonRetryableApplicationException("table not found");
+                        }
+                        return Utils.timestampToUnixTimeMillis(Timestamp.MIN_VALUE);
+                    }
+                },
+                new BackupPolicyService() {
+
+                    @Override
+                    public void createOrUpdateBackupPolicyAndStateForTable(TableSpec tableSpec, BackupPolicyAndState backupPolicy) {
+
+                    }
+
+                    @Override
+                    public @Nullable BackupPolicyAndState getBackupPolicyAndStateForTable(TableSpec tableSpec) {
+                        return null;
+                    }
+
+                    @Override
+                    public void shutdown() {
+
+                    }
+                },
+                new PubSubServiceTestImpl() {
+                    @Override
+                    public PubSubPublishResults publishTableOperationRequests(String projectId, String topicId, List<JsonMessage> messages) throws IOException, InterruptedException {
+                        publishedBatchSizes.add(messages.size());
+                        return super.publishTableOperationRequests(projectId, topicId, messages);
+                    }
+                },
+                new ResourceScannerTestImpl(),
+                persistentSet,
+                FallbackPolicyResolver.compile(fallbackBackupPolicy),
+                "test-prefix",
+                2
+        );
+
+        List<ConfiguratorRequest> requests = new ArrayList<>();
+        for (String table : Arrays.asList("p3.d1.t1", "p3.d1.deleted", "p3.d1.t2")) {
+            requests.add(new ConfiguratorRequest(
+                    TableSpec.fromSqlString(table),
+                    "1665734583289-T",
+                    "1665734583289-T-" + table,
+                    false,
+                    false,
+                    Timestamp.now()));
+        }
+
+        ConfiguratorBatchResponse batchResponse = configurator.executeBatch(
+                new ConfiguratorBatchRequest("1665734583289-T", requests),
+                "pubsubmessageid"
+        );
+
+        List<ConfiguratorBatchResponse.TableResult> results = batchResponse.getTableResults();
+        assertEquals(3, results.size());
+
+        // one failed table doesn't fail the others
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("table not found", results.get(1).getError().getMessage());
+        assertTrue(results.get(2).isSuccess());
+
+        // the snapshot requests of all tables are published in one call and split per table in the responses
+        assertEquals(Collections.singletonList(2), publishedBatchSizes);
+        for (int i : new int[]{0, 2}) {
+            ConfiguratorResponse response = results.get(i).getResponse();
+            assertEquals(requests.get(i).getTrackingId(), response.getTrackingId());
+            assertEquals(1, response.getBigQueryBackupPublishingResults().getSuccessMessages().size());
+            SnapshoterRequest snapshoterRequest = (SnapshoterRequest) response.getBigQueryBackupPublishingResults()
+                    .getSuccessMessages().get(0).getMsg();
+            assertEquals(requests.get(i).getTargetTable(), snapshoterRequest.getTargetTable());
+            assertEquals(0, response.getGcsBackupPublishingResults().getSuccessMessages().size());
+        }
+
+        // successful tables and non-retryable failures are flagged as processed
+        assertTrue(persistentSet.contains("test-prefix/1665734583289-T-p3.d1.t1"));
+        assertTrue(persistentSet.contains("test-prefix/1665734583289-T-p3.d1.deleted"));
+    }
+
+    @Test
+    public void testExecuteBatchTwiceSkipsProcessedTables() throws Exception {
+
+        ConfiguratorConfig config = new ConfiguratorConfig(
+                "test-project",
+                "test-bqSnapshoterTopic",
+                "test-gcsSnapshoterTopic",
+                "test-templateId",
+                "bq_backup_manager",
+                0
+        );
+
+        List<Integer> publishedBatchSizes = new ArrayList<>();
+        AtomicInteger flakyLookups = new AtomicInteger();
+
+        Configurator configurator = new Configurator(
+                config,
+                new BigQueryService() {
+                    @Override
+                    public void createSnapshot(String jobId, TableSpec sourceTable, TableSpec destinationId, Timestamp snapshotExpirationTs, String trackingId) {
+
+                    }
+
+                    @Override
+                    public void exportToGCS(String jobId, TableSpec sourceTable, String gcsDestinationUri, GCSSnapshotFormat exportFormat, @Nullable String csvFieldDelimiter, @Nullable Boolean csvPrintHeader, @Nullable Boolean useAvroLogicalTypes, String trackingId, Map<String, String> jobLabels) {
+
+                    }
+
+                    @Override
+                    public Long getTableCreationTime(TableSpec table) throws NonRetryableApplicationException {
+                        // transient error on the first delivery only
+                        if (table.getTable().equals("flaky") && flakyLookups.incrementAndGet() == 1) {
+                            throw new BigQueryException(503, "backend error");
+                        }
+                        if (table.getTable().equals("deleted")) {
+                            throw new NonRetryableApplicationException("table not found");
+                        }
+                        return Utils.timestampToUnixTimeMillis(Timestamp.MIN_VALUE);
+                    }
+                },
+                new BackupPolicyService() {
+
+                    @Override
+                    public void createOrUpdateBackupPolicyAndStateForTable(TableSpec tableSpec, BackupPolicyAndState backupPolicy) {
+
+                    }
+
+                    @Override
+                    public @Nullable BackupPolicyAndState getBackupPolicyAndStateForTable(TableSpec tableSpec) {
+                        return null;
+                    }
+
+                    @Override
+                    public void shutdown() {
+
+                    }
+                },
+                new PubSubServiceTestImpl() {
+                    @Override
+                    public PubSubPublishResults publishTableOperationRequests(String projectId, String topicId, List<JsonMessage> messages) throws IOException, InterruptedException {
+                        if (!messages.isEmpty()) {
+                            publishedBatchSizes.add(messages.size());
+                        }
+                        return super.publishTableOperationRequests(projectId, topicId, messages);
+                    }
+                },
+                new ResourceScannerTestImpl(),
+                new PersistentSetTestImpl(),
+                FallbackPolicyResolver.compile(fallbackBackupPolicy),
+                "test-prefix",
+                2
+        );
+
+        List<ConfiguratorRequest> requests = new ArrayList<>();
+        for (String table : Arrays.asList("p3.d1.t1", "p3.d1.flaky", "p3.d1.t2", "p3.d1.deleted")) {
+            requests.add(new ConfiguratorRequest(
+                    TableSpec.fromSqlString(table),
+                    "1665734583289-T",
+                    "1665734583289-T-" + table,
+                    false,
+                    false,
+                    Timestamp.now()));
+        }
+        ConfiguratorBatchRequest batchRequest = new ConfiguratorBatchRequest("1665734583289-T", requests);
+
+        List<ConfiguratorBatchResponse.TableResult> firstResults = configurator.executeBatch(batchRequest, "pubsubmessageid")
+                .getTableResults();
+        assertTrue(firstResults.get(0).isSuccess());
+        assertFalse(firstResults.get(1).isSuccess());
+        assertTrue(firstResults.get(2).isSuccess());
+        assertFalse(firstResults.get(3).isSuccess());
+
+        // redelivery of the same batch, e.g. after the retryable error of the flaky table
+        List<ConfiguratorBatchResponse.TableResult> secondResults = configurator.executeBatch(batchRequest, "pubsubmessageid")
+                .getTableResults();
+        assertEquals(4, secondResults.size());
+        for (int i : new int[]{0, 2, 3}) {
+            // processed tables and non-retryable failures are skipped, not reported as failures again
+            assertTrue(secondResults.get(i).isSuccess());
+            assertTrue(secondResults.get(i).isSkipped());
+            assertNull(secondResults.get(i).getResponse());
+        }
+        assertTrue(secondResults.get(1).isSuccess());
+        assertFalse(secondResults.get(1).isSkipped());
+        assertEquals(1, secondResults.get(1).getResponse().getBigQueryBackupPublishingResults().getSuccessMessages().size());
+
+        // the processed tables are not backed up twice
+        assertEquals(Arrays.asList(2, 1), publishedBatchSizes);
+    }
+
     @Test
     public void testConfiguratorWithBqSnapshots() throws IOException, NonRetryableApplicationException, InterruptedException {
 
@@ -0,0 +1,123 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.Tuple;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.scheduling.support.CronExpression;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cron due-time evaluation of a batch of tables:
+ * parsing the cron on every call (previous behaviour), the cached per-table path and the bulk API (with and without
+ * cron jitter offsets).
+ * <p>
+ * Run with: mvn -pl library test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.CronCacheBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CronCacheBenchmark {
+
+    private static final String[] CRONS = {
+            "0 0 0 * * *",
+            "0 0 13 * * *",
+            "0 0 */6 * * *",
+            "0 30 2 * * MON-FRI",
+            "0 0 0 1 * *"
+    };
+
+    @Param({"100000"})
+    public int tables;
+
+    private String[] crons;
+    private long[] lastBackupAt;
+    // offsets of a 1 day jitter window
+    private long[] jitterOffsets;
+    private Timestamp[] lastBackupAtTimestamps;
+    private Timestamp reference;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        reference = Timestamp.parseTimestamp("2022-10-07T14:00:00Z");
+        crons = new String[tables];
+        lastBackupAt = new long[tables];
+        jitterOffsets = new long[tables];
+        lastBackupAtTimestamps = new Timestamp[tables];
+        for (int i = 0; i < tables; i++) {
+            crons[i] = CRONS[random.nextInt(CRONS.length)];
+            lastBackupAt[i] = reference.getSeconds() - random.nextInt(3 * 86400);
+            lastBackupAtTimestamps[i] = Timestamp.ofTimeSecondsAndNanos(lastBackupAt[i], 0);
+            jitterOffsets[i] = random.nextInt(86400);
+        }
+    }
+
+    @Benchmark
+    public void parsePerCall(Blackhole blackhole) {
+        LocalDateTime now = LocalDateTime.ofEpochSecond(reference.getSeconds(), 0, ZoneOffset.UTC);
+        for (int i = 0; i < tables; i++) {
+            LocalDateTime next = CronExpression.parse(crons[i])
+                    .next(LocalDateTime.ofEpochSecond(lastBackupAt[i], 0, ZoneOffset.UTC));
+            blackhole.consume(next.isBefore(now));
+        }
+    }
+
+    @Benchmark
+    public void cachedPerTable(Blackhole blackhole) {
+        for (int i = 0; i < tables; i++) {
+            Tuple<Boolean, LocalDateTime> due = Configurator.getCronNextTrigger(
+                    crons[i],
+                    lastBackupAtTimestamps[i],
+                    reference
+            );
+            blackhole.consume(due.x());
+        }
+    }
+
+    @Benchmark
+    public boolean[] bulk() {
+        return CronCache.evaluateDue(crons, lastBackupAt, reference.getSeconds());
+    }
+
+    @Benchmark
+    public boolean[] bulkWithJitter() {
+        return CronCache.evaluateDue(crons, lastBackupAt, jitterOffsets, reference.getSeconds());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CronCacheBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+}
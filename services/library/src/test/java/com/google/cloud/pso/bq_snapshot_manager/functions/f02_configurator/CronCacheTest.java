@@ -0,0 +1,142 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator;
+
+import com.google.cloud.Timestamp;
+import org.junit.Test;
+import org.springframework.scheduling.support.CronExpression;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class CronCacheTest {
+
+    private static final String[] CRONS = {
+            "0 0 0 * * *",
+            "0 0 13 * * *",
+            "0 */10 * * * *",
+            "0 30 */6 * * MON-FRI",
+            "0 0 0 1 * *"
+    };
+
+    @Test
+    public void testGetCompiled() {
+        assertSame(CronCache.getCompiled("0 0 0 * * *"), CronCache.getCompiled("0 0 0 * * *"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetCompiledInvalid() {
+        CronCache.getCompiled("not a cron");
+    }
+
+    @Test
+    public void testNextMatchesCronExpression() {
+
+        Random random = new Random(42);
+        long from = Timestamp.parseTimestamp("2022-10-01T00:00:00Z").getSeconds();
+
+        for (int i = 0; i < 5000; i++) {
+            String cron = CRONS[random.nextInt(CRONS.length)];
+            // random times within 60 days, including repeated lookups in the same buckets
+            LocalDateTime after = LocalDateTime.ofEpochSecond(from + random.nextInt(60 * 86400), 0, ZoneOffset.UTC);
+
+            assertEquals(
+                    CronExpression.parse(cron).next(after),
+                    CronCache.next(cron, after)
+            );
+        }
+    }
+
+    @Test
+    public void testEvaluateDueMatchesGetCronNextTrigger() {
+
+        Random random = new Random(7);
+        Timestamp reference = Timestamp.parseTimestamp("2022-10-07T14:00:00Z");
+
+        int count = 5000;
+        String[] crons = new String[count];
+        long[] lastBackupAt = new long[count];
+        boolean[] expected = new boolean[count];
+
+        for (int i = 0; i < count; i++) {
+            crons[i] = CRONS[random.nextInt(CRONS.length)];
+            if (i % 100 == 0) {
+                // never backed up
+                lastBackupAt[i] = Long.MIN_VALUE;
+                expected[i] = true;
+            } else {
+                lastBackupAt[i] = reference.getSeconds() - random.nextInt(40 * 86400);
+                expected[i] = Configurator.getCronNextTrigger(
+                        crons[i],
+                        Timestamp.ofTimeSecondsAndNanos(lastBackupAt[i], 0),
+                        reference
+                ).x();
+            }
+        }
+
+        assertArrayEquals(expected, CronCache.evaluateDue(crons, lastBackupAt, reference.getSeconds()));
+    }
+
+    @Test
+    public void testEvaluateDueWithOffsetsMatchesGetCronNextTrigger() {
+
+        Random random = new Random(11);
+        Timestamp reference = Timestamp.parseTimestamp("2022-10-07T14:00:00Z");
+
+        int count = 5000;
+        String[] crons = new String[count];
+        long[] lastBackupAt = new long[count];
+        long[] offsets = new long[count];
+        boolean[] expected = new boolean[count];
+
+        for (int i = 0; i < count; i++) {
+            crons[i] = CRONS[random.nextInt(CRONS.length)];
+            // offsets within a jitter window of 2 days, i.e. larger than the period of the daily crons
+            offsets[i] = random.nextInt(2 * 86400);
+            lastBackupAt[i] = reference.getSeconds() - random.nextInt(40 * 86400);
+            expected[i] = Configurator.getCronNextTrigger(
+                    crons[i],
+                    Timestamp.ofTimeSecondsAndNanos(lastBackupAt[i], 0),
+                    reference,
+                    offsets[i]
+            ).x();
+        }
+
+        assertArrayEquals(expected, CronCache.evaluateDue(crons, lastBackupAt, offsets, reference.getSeconds()));
+    }
+
+    @Test
+    public void testLatestBefore() {
+        long[] triggers = {10, 20, 30};
+        assertEquals(Long.MIN_VALUE, CronCache.latestBefore(triggers, 10));
+        assertEquals(10, CronCache.latestBefore(triggers, 11));
+        assertEquals(20, CronCache.latestBefore(triggers, 30));
+        assertEquals(30, CronCache.latestBefore(triggers, 1000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEvaluateDueLengthMismatch() {
+        CronCache.evaluateDue(new String[]{"0 0 0 * * *"}, new long[0], 0);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupMethod;
+import org.junit.Test;
+import org.springframework.scheduling.support.CronExpression;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CronLoadPlannerTest {
+
+    private static final String DAILY_AT_MIDNIGHT = "0 0 0 * * *";
+    private static final String HOURLY_HEARTBEAT = "0 0 * * * *";
+
+    private List<CronLoadPlanner.TableSchedule> createTables(int count, Timestamp lastBackupAt) {
+        List<CronLoadPlanner.TableSchedule> tables = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tables.add(new CronLoadPlanner.TableSchedule(
+                    new TableSpec("p", "d", "t" + i),
+                    DAILY_AT_MIDNIGHT,
+                    lastBackupAt
+            ));
+        }
+        return tables;
+    }
+
+    @Test
+    public void testPlanWithoutJitter() {
+
+        CronLoadReport report = CronLoadPlanner.plan(
+                createTables(1000, Timestamp.parseTimestamp("2022-10-06T00:00:00Z")),
+                HOURLY_HEARTBEAT,
+                Timestamp.parseTimestamp("2022-10-06T00:00:00Z"),
+                Timestamp.parseTimestamp("2022-10-09T00:00:00Z"),
+                0
+        );
+
+        assertEquals(72, report.getHeartbeatsCount());
+        // all tables are due at the first heartbeat after midnight
+        assertEquals(1000L, report.getPeakBackups());
+        assertEquals(2000L, report.getTotalBackups());
+        assertEquals(1000L, (long) report.getDueBackupsPerHeartbeat().get(LocalDateTime.of(2022, 10, 7, 1, 0)));
+    }
+
+    @Test
+    public void testPlanWithJitter() {
+
+        CronLoadReport report = CronLoadPlanner.plan(
+                createTables(1000, Timestamp.parseTimestamp("2022-10-06T00:00:00Z")),
+                HOURLY_HEARTBEAT,
+                Timestamp.parseTimestamp("2022-10-06T00:00:00Z"),
+                Timestamp.parseTimestamp("2022-10-09T00:00:00Z"),
+                24 * 3600
+        );
+
+        assertEquals(72, report.getHeartbeatsCount());
+        // the load is spread over the day
+        assertTrue(report.getPeakBackups() < 100);
+        // each table is still backed up once a day (the schedule is shifted into the first day)
+        assertEquals(3000L, report.getTotalBackups());
+    }
+
+    @Test
+    public void testPlanNeverBackedUp() {
+
+        CronLoadReport report = CronLoadPlanner.plan(
+                createTables(10, null),
+                HOURLY_HEARTBEAT,
+                Timestamp.parseTimestamp("2022-10-06T00:00:00Z"),
+                Timestamp.parseTimestamp("2022-10-06T03:00:00Z"),
+                24 * 3600
+        );
+
+        // tables without a previous backup are due at the first heartbeat
+        assertEquals(10L, (long) report.getDueBackupsPerHeartbeat().get(LocalDateTime.of(2022, 10, 6, 1, 0)));
+    }
+
+    @Test
+    public void testPlanJobsAndBytesPerProject() {
+
+        List<CronLoadPlanner.TableSchedule> tables = new ArrayList<>();
+        // due after the next midnight only, on the table project
+        tables.add(new CronLoadPlanner.TableSchedule(
+                new TableSpec("p", "d", "t1"), DAILY_AT_MIDNIGHT, Timestamp.parseTimestamp("2022-10-06T00:00:00Z"),
+                BackupMethod.BIGQUERY_SNAPSHOT, 100, null));
+        // never backed up, both methods on an operation project
+        tables.add(new CronLoadPlanner.TableSchedule(
+                new TableSpec("p", "d", "t2"), DAILY_AT_MIDNIGHT, null,
+                BackupMethod.BOTH, 10, Collections.singletonList("op")));
+
+        CronLoadReport report = CronLoadPlanner.plan(
+                tables,
+                HOURLY_HEARTBEAT,
+                Timestamp.parseTimestamp("2022-10-06T00:00:00Z"),
+                Timestamp.parseTimestamp("2022-10-08T00:00:00Z"),
+                0
+        );
+
+        assertEquals(49, report.getHoursCount());
+        assertEquals(LocalDateTime.of(2022, 10, 6, 1, 0), report.getHour(1));
+
+        assertEquals(1L, report.getBqSnapshotJobs("p", 25));
+        assertEquals(100L, report.getBqSnapshotBytes("p", 25));
+        assertEquals(0L, report.getBqSnapshotJobs("p", 1));
+
+        assertEquals(1L, report.getBqSnapshotJobs("op", 1));
+        assertEquals(1L, report.getGcsExportJobs("op", 1));
+        assertEquals(10L, report.getGcsExportBytes("op", 25));
+
+        // 1 backup of t1 and 2 backups of t2, with 2 jobs each
+        assertEquals(3L, report.getTotalBackups());
+        assertEquals(5L, report.getTotalJobs());
+    }
+
+    @Test
+    public void testPlanSpreadsJobsOverPool() {
+
+        List<CronLoadPlanner.TableSchedule> tables = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            tables.add(new CronLoadPlanner.TableSchedule(
+                    new TableSpec("p", "d", "t" + i), DAILY_AT_MIDNIGHT, null,
+                    BackupMethod.GCS_SNAPSHOT, 1, Arrays.asList("op1", "op2")));
+        }
+
+        CronLoadReport report = CronLoadPlanner.plan(
+                tables,
+                HOURLY_HEARTBEAT,
+                Timestamp.parseTimestamp("2022-10-06T00:00:00Z"),
+                Timestamp.parseTimestamp("2022-10-06T02:00:00Z"),
+                0
+        );
+
+        long op1 = report.getGcsExportJobs("op1", 1);
+        long op2 = report.getGcsExportJobs("op2", 1);
+        assertEquals(1000L, op1 + op2);
+        assertTrue(op1 > 400 && op2 > 400);
+    }
+
+    @Test
+    public void testPlanMoreTablesThanAChunk() {
+
+        CronLoadReport report = CronLoadPlanner.plan(
+                createTables(CronLoadPlanner.CHUNK_SIZE * 2 + 1, Timestamp.parseTimestamp("2022-10-06T00:00:00Z")),
+                HOURLY_HEARTBEAT,
+                Timestamp.parseTimestamp("2022-10-06T00:00:00Z"),
+                Timestamp.parseTimestamp("2022-10-08T00:00:00Z"),
+                0
+        );
+
+        assertEquals(CronLoadPlanner.CHUNK_SIZE * 2 + 1, report.getPeakBackups());
+    }
+
+    @Test
+    public void testCronTimeline() {
+
+        CronExpression cron = CronExpression.parse("0 15 */5 * * MON-FRI");
+        long fromSeconds = Timestamp.parseTimestamp("2022-10-06T00:00:00Z").getSeconds();
+        long toSeconds = fromSeconds + 30 * 86400;
+
+        CronTimeline timeline = new CronTimeline(cron, fromSeconds, toSeconds);
+
+        // before, inside and after the precomputed range
+        for (long t = fromSeconds - 86400; t < toSeconds + 86400; t += 1234) {
+            long expected = cron.next(CronTimeline.toDateTime(t)).toEpochSecond(ZoneOffset.UTC);
+            assertEquals(expected, timeline.next(t));
+        }
+    }
+}
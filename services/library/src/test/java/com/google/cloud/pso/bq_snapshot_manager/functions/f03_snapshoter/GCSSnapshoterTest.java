@@ -20,24 +20,40 @@ package com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter;
 
 import com.google.cloud.Timestamp;
 import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.RetryableApplicationException;
 import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
 import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.*;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.TaggerRequestLookup;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.TaggerRequestTransport;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.Utils;
 import com.google.cloud.pso.bq_snapshot_manager.services.PersistentMapTestImpl;
 import com.google.cloud.pso.bq_snapshot_manager.services.PersistentSetTestImpl;
 import com.google.cloud.pso.bq_snapshot_manager.services.PubSubServiceTestImpl;
+import com.google.cloud.pso.bq_snapshot_manager.services.TableReadStreamSourceTestImpl;
 import com.google.cloud.pso.bq_snapshot_manager.services.bq.BigQueryService;
+import com.google.cloud.pso.bq_snapshot_manager.services.export.LocalSnapshotFileSinkImpl;
+import com.google.cloud.pso.bq_snapshot_manager.services.export.StorageReadExporter;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import javax.annotation.Nullable;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class GCSSnapshoterTest {
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     @Test
     public void testPrepareGcsUriForMultiFileExport() {
 
@@ -53,7 +69,7 @@ public class GCSSnapshoterTest {
     }
 
     @Test
-    public void testExecute() throws NonRetryableApplicationException, IOException, InterruptedException {
+    public void testExecute() throws NonRetryableApplicationException, RetryableApplicationException, IOException, InterruptedException {
 
         GCSSnapshoter gcsSnapshoter = new GCSSnapshoter(
                 new SnapshoterConfig("host-project", "data-region", "bq_backup_manager"),
@@ -76,6 +92,7 @@ public class GCSSnapshoterTest {
                 "test-set-prefix",
                 new PersistentMapTestImpl(),
                 "test-map-prefix",
+                null,
                 -3
         );
 
@@ -110,4 +127,138 @@ public class GCSSnapshoterTest {
         assertEquals(expectedSourceTable, actualResponse.getComputedSourceTable());
         assertEquals(operationTime, actualResponse.getOperationTs());
     }
+
+    @Test
+    public void testExecute_storageReadApi() throws NonRetryableApplicationException, RetryableApplicationException, IOException, InterruptedException {
+
+        LocalSnapshotFileSinkImpl sink = new LocalSnapshotFileSinkImpl(tempFolder.getRoot().toPath());
+
+        GCSSnapshoter gcsSnapshoter = new GCSSnapshoter(
+                new SnapshoterConfig("host-project", "data-region", "bq_backup_manager"),
+                new BigQueryService() {
+                    @Override
+                    public void createSnapshot(String jobId, TableSpec sourceTable, TableSpec destinationId, Timestamp snapshotExpirationTs, String trackingId) {
+                    }
+
+                    @Override
+                    public void exportToGCS(String jobId, TableSpec sourceTable, String gcsDestinationUri, GCSSnapshotFormat exportFormat, @Nullable String csvFieldDelimiter, @Nullable Boolean csvPrintHeader, @Nullable Boolean useAvroLogicalTypes, String trackingId, Map<String, String> jobLabels) {
+                        throw new IllegalStateException("Extract jobs must not be used with the STORAGE_READ_API engine");
+                    }
+
+                    @Override
+                    public Long getTableCreationTime(TableSpec table) {
+                        return null;
+                    }
+                },
+                new PubSubServiceTestImpl(),
+                new PersistentSetTestImpl(),
+                "test-set-prefix",
+                new PersistentMapTestImpl(),
+                "test-map-prefix",
+                new StorageReadExporter("project", new TableReadStreamSourceTestImpl(2, 1, 10), sink, 4),
+                -3
+        );
+
+        BackupPolicy backupPolicy = new BackupPolicy.BackupPolicyBuilder("test-cron",
+                BackupMethod.GCS_SNAPSHOT,
+                TimeTravelOffsetDays.DAYS_0,
+                BackupConfigSource.SYSTEM,
+                "project")
+                .setGcsSnapshotStorageLocation("gs://backups")
+                .setGcsExportFormat(GCSSnapshotFormat.AVRO_DEFLATE)
+                .setGcsUseAvroLogicalTypes(true)
+                .setGcsSnapshotEngine(GCSSnapshotEngine.STORAGE_READ_API)
+                .build();
+
+        Timestamp operationTime = Timestamp.ofTimeSecondsAndNanos(1667478075L, 0);
+
+        gcsSnapshoter.execute(
+                new SnapshoterRequest(
+                        TableSpec.fromSqlString("project.dataset.table"),
+                        "runId",
+                        "trackingId",
+                        false,
+                        new BackupPolicyAndState(backupPolicy, null)
+                ),
+                operationTime,
+                "pubsub-message-id");
+
+        String folder = "gs://backups/project/dataset/table/trackingId/1667478075000/AVRO_DEFLATE/";
+        assertTrue(Files.exists(sink.toLocalPath(folder + "000000000000")));
+        assertTrue(Files.exists(sink.toLocalPath(folder + "000000000001")));
+    }
+
+    @Test
+    public void testExecute_jobLabelsTransport() throws NonRetryableApplicationException, RetryableApplicationException, IOException, InterruptedException {
+
+        Map<String, Map<String, String>> submittedJobLabels = new HashMap<>();
+        PersistentMapTestImpl persistentMap = new PersistentMapTestImpl();
+
+        GCSSnapshoter gcsSnapshoter = new GCSSnapshoter(
+                new SnapshoterConfig("host-project", "data-region", "bq_backup_manager"),
+                new BigQueryService() {
+                    @Override
+                    public void createSnapshot(String jobId, TableSpec sourceTable, TableSpec destinationId, Timestamp snapshotExpirationTs, String trackingId) {
+                    }
+
+                    @Override
+                    public void exportToGCS(String jobId, TableSpec sourceTable, String gcsDestinationUri, GCSSnapshotFormat exportFormat, @Nullable String csvFieldDelimiter, @Nullable Boolean csvPrintHeader, @Nullable Boolean useAvroLogicalTypes, String trackingId, Map<String, String> jobLabels) {
+                        submittedJobLabels.put(jobId, jobLabels);
+                    }
+
+                    @Override
+                    public Long getTableCreationTime(TableSpec table) {
+                        return null;
+                    }
+                },
+                new PubSubServiceTestImpl(),
+                new PersistentSetTestImpl(),
+                "test-set-prefix",
+                persistentMap,
+                "test-map-prefix",
+                null,
+                TaggerRequestTransport.JOB_LABELS,
+                -3
+        );
+
+        Timestamp operationTime = Timestamp.ofTimeSecondsAndNanos(1667478075L, 0);
+
+        for (BackupConfigSource configSource : BackupConfigSource.values()) {
+            BackupPolicy backupPolicy = new BackupPolicy.BackupPolicyBuilder("test-cron",
+                    BackupMethod.GCS_SNAPSHOT,
+                    TimeTravelOffsetDays.DAYS_0,
+                    configSource,
+                    "project")
+                    .setGcsSnapshotStorageLocation("gs://backups")
+                    .setGcsExportFormat(GCSSnapshotFormat.AVRO_SNAPPY)
+                    .setGcsUseAvroLogicalTypes(true)
+                    .build();
+
+            submittedJobLabels.clear();
+            gcsSnapshoter.execute(
+                    new SnapshoterRequest(
+                            TableSpec.fromSqlString("project.dataset.table"),
+                            "runId",
+                            "trackingId-" + configSource,
+                            false,
+                            new BackupPolicyAndState(backupPolicy, null)
+                    ),
+                    operationTime,
+                    "pubsub-message-id");
+
+            String jobId = submittedJobLabels.keySet().iterator().next();
+            Map<String, String> jobLabels = submittedJobLabels.get(jobId);
+            String storedRequest = persistentMap.get(String.format("test-map-prefix/%s", jobId));
+
+            assertEquals("bq_backup_manager", jobLabels.get(TaggerRequestLookup.APP_LABEL));
+            if (configSource == BackupConfigSource.MANUAL) {
+                // the Tagger reads the manually attached policy from the backup policy store
+                assertEquals("1667478075000000", jobLabels.get(TaggerRequestLookup.OPERATION_TS_LABEL));
+                assertNull(storedRequest);
+            } else {
+                assertNull(jobLabels.get(TaggerRequestLookup.OPERATION_TS_LABEL));
+                assertNotNull(storedRequest);
+            }
+        }
+    }
 }
@@ -23,7 +23,11 @@ import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
 import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.*;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class SnapshoterRequestTest {
 
@@ -84,4 +88,36 @@ public class SnapshoterRequestTest {
 
         assertEquals("source_project", request.computeBackupOperationProject());
     }
+
+    @Test
+    public void testComputeBackupOperationProject_pool() {
+
+        // test with a pool of backup operation projects. The pool takes precedence over backupOperationProject
+
+        List<String> pool = Arrays.asList("operation-project-1", "operation-project-2", "operation-project-3");
+
+        BackupPolicy policy = new BackupPolicy.BackupPolicyBuilder("test-cron",
+                BackupMethod.BIGQUERY_SNAPSHOT,
+                TimeTravelOffsetDays.DAYS_0,
+                BackupConfigSource.SYSTEM,
+                "storage-project")
+                .setBackupOperationProject("operation-project")
+                .setBackupOperationProjectPool(pool)
+                .setBigQuerySnapshotExpirationDays(0.0)
+                .setBigQuerySnapshotStorageDataset("test-dataset")
+                .build();
+
+        SnapshoterRequest request = new SnapshoterRequest(
+                TableSpec.fromSqlString("source_project.dataset.table"),
+                "run-id",
+                "tracking-id",
+                false,
+                new BackupPolicyAndState(policy, null)
+        );
+
+        String project = request.computeBackupOperationProject();
+        assertTrue(pool.contains(project));
+        // deterministic per tracking id
+        assertEquals(project, request.computeBackupOperationProject());
+    }
 }
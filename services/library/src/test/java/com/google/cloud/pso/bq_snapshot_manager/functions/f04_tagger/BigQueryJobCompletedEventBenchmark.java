@@ -0,0 +1,94 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the Tagger's previous handling of export job completion events (one JsonParser.parseString
+ * per extracted field) with the single pass BigQueryJobCompletedEvent parser, over the captured
+ * sample events in src/test/resources/bq_job_completed_events.
+ * <p>
+ * Run with: mvn -pl library test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.BigQueryJobCompletedEventBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BigQueryJobCompletedEventBenchmark {
+
+    @Param({"extract_job_succeeded", "extract_job_failed"})
+    public String event;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() throws IOException {
+        data = BigQueryJobCompletedEventTest.sampleEvent(event);
+    }
+
+    @Benchmark
+    public Object[] treeParsing() {
+        String jsonStr = new String(data, StandardCharsets.UTF_8);
+        // isGCSExportJobMessage, then each field is extracted from a new parse tree
+        getJob(jsonStr);
+        String jobId = getJob(jsonStr).get("jobName").getAsJsonObject().get("jobId").getAsString();
+        String projectId = getJob(jsonStr).get("jobName").getAsJsonObject().get("projectId").getAsString();
+        boolean isSuccessful = !getJob(jsonStr).get("jobStatus").getAsJsonObject().get("error").getAsJsonObject().has("message");
+        JsonObject error = getJob(jsonStr).get("jobStatus").getAsJsonObject().get("error").getAsJsonObject();
+        String errorMessage = error.has("message") ? error.get("message").getAsString() : "";
+        return new Object[]{jobId, projectId, isSuccessful, errorMessage};
+    }
+
+    @Benchmark
+    public BigQueryJobCompletedEvent singlePassParsing() throws NonRetryableApplicationException {
+        return BigQueryJobCompletedEvent.parse(data);
+    }
+
+    private static JsonObject getJob(String jsonStr) {
+        return JsonParser.parseString(jsonStr)
+                .getAsJsonObject().get("protoPayload")
+                .getAsJsonObject().get("serviceData")
+                .getAsJsonObject().get("jobCompletedEvent")
+                .getAsJsonObject().get("job")
+                .getAsJsonObject();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BigQueryJobCompletedEventBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.common.io.Resources;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BigQueryJobCompletedEventTest {
+
+    static byte[] sampleEvent(String name) throws IOException {
+        return Resources.toByteArray(Resources.getResource(String.format("bq_job_completed_events/%s.json", name)));
+    }
+
+    @Test
+    public void testParseSuccessfulJob() throws IOException, NonRetryableApplicationException {
+        BigQueryJobCompletedEvent event = BigQueryJobCompletedEvent.parse(sampleEvent("extract_job_succeeded"));
+
+        assertEquals("1675960287852-F-4999ca89-d448-47d2-81de-fc5afba8e484_export_6f2d8e2b_3c4a_4c8e_9b1a_0e8d9f7a6b5c_bq_backup_manager",
+                event.getJobId());
+        assertEquals("backup-project", event.getProjectId());
+        assertEquals("EU", event.getLocation());
+        assertEquals("DONE", event.getState());
+        assertEquals("1675960287852-F-4999ca89-d448-47d2-81de-fc5afba8e484", event.getLabel("tracking_id"));
+        assertEquals("data-project.sales.orders", event.getLabel("table_spec"));
+        assertEquals(3, event.getLabels().size());
+        // the snapshot decorator is not part of the source table
+        assertEquals(new TableSpec("data-project", "sales", "orders"), event.getSourceTable());
+        assertEquals("gs://backups-bucket/data-project/sales/orders/1675960287852-F-4999ca89-d448-47d2-81de-fc5afba8e484/1675960286000/AVRO_SNAPPY/*",
+                event.getDestinationUri());
+        assertTrue(event.isSuccessful());
+        assertNull(event.getErrorMessage());
+    }
+
+    @Test
+    public void testParseFailedJob() throws IOException, NonRetryableApplicationException {
+        BigQueryJobCompletedEvent event = BigQueryJobCompletedEvent.parse(sampleEvent("extract_job_failed"));
+
+        assertFalse(event.isSuccessful());
+        assertTrue(event.getErrorMessage().startsWith("Access Denied: BigQuery BigQuery: Permission denied while writing data."));
+        assertEquals("backup-project", event.getProjectId());
+    }
+
+    @Test
+    public void testParseLegacyErrorString() throws NonRetryableApplicationException {
+        // some sinks render the empty error as a string
+        String json = "{\"protoPayload\":{\"serviceData\":{\"jobCompletedEvent\":{\"job\":{" +
+                "\"jobName\":{\"jobId\":\"job-1\",\"projectId\":\"p\"}," +
+                "\"jobStatus\":{\"error\":\"{}\",\"state\":\"DONE\"}}}}}}";
+
+        BigQueryJobCompletedEvent event = BigQueryJobCompletedEvent.parse(json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("job-1", event.getJobId());
+        assertTrue(event.isSuccessful());
+        assertTrue(event.getLabels().isEmpty());
+    }
+
+    @Test
+    public void testOtherPayloadsAreNotEvents() throws NonRetryableApplicationException {
+        String taggerRequest = "{\"targetTable\":{\"project\":\"p\",\"dataset\":\"d\",\"table\":\"t\"}," +
+                "\"runId\":\"1675960287852-F\",\"trackingId\":\"1675960287852-F-4999ca89\",\"isDryRun\":false}";
+
+        assertNull(BigQueryJobCompletedEvent.parse(taggerRequest.getBytes(StandardCharsets.UTF_8)));
+        assertNull(BigQueryJobCompletedEvent.parse("{\"protoPayload\":{\"serviceData\":\"x\"}}".getBytes(StandardCharsets.UTF_8)));
+
+        try {
+            BigQueryJobCompletedEvent.parse("{\"protoPayload\":".getBytes(StandardCharsets.UTF_8));
+            fail("Expected NonRetryableApplicationException for a truncated payload");
+        } catch (NonRetryableApplicationException e) {
+            assertTrue(e.getMessage().contains("job completion event"));
+        }
+    }
+}
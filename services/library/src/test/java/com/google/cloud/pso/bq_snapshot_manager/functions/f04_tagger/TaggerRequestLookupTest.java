@@ -0,0 +1,177 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.RetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupConfigSource;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupMethod;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicy;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicyAndState;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.GCSSnapshotFormat;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.TimeTravelOffsetDays;
+import com.google.cloud.pso.bq_snapshot_manager.services.BackupPolicyServiceTestImpl;
+import com.google.cloud.pso.bq_snapshot_manager.services.PersistentMapTestImpl;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TaggerRequestLookupTest {
+
+    private static final String APP_NAME = "bq_backup_manager";
+    private static final String JOB_ID = "1675960287852-F-4999ca89-d448-47d2-81de-fc5afba8e484_export_6f2d8e2b_3c4a_4c8e_9b1a_0e8d9f7a6b5c_bq_backup_manager";
+    private static final String TRACKING_ID = "1675960287852-F-4999ca89-d448-47d2-81de-fc5afba8e484";
+
+    private static final TableSpec TABLE = new TableSpec("data-project", "sales", "orders");
+    private static final String DESTINATION_URI =
+            "gs://backups-bucket/data-project/sales/orders/1675960287852-F-4999ca89-d448-47d2-81de-fc5afba8e484/1675960286000/AVRO_SNAPPY/*";
+    private static final Timestamp OPERATION_TS = Timestamp.ofTimeMicroseconds(1675960287852123L);
+
+    // the successful event of a job submitted with TaggerRequestTransport.JOB_LABELS
+    private static BigQueryJobCompletedEvent eventWithOperationTsLabel() throws IOException, NonRetryableApplicationException {
+        String json = new String(BigQueryJobCompletedEventTest.sampleEvent("extract_job_succeeded"), StandardCharsets.UTF_8)
+                .replace("\"app\": \"bq_backup_manager\",",
+                        String.format("\"app\": \"bq_backup_manager\", \"%s\": \"%s\",",
+                                TaggerRequestLookup.OPERATION_TS_LABEL,
+                                TaggerRequestLookup.createJobLabels(APP_NAME, OPERATION_TS).get(TaggerRequestLookup.OPERATION_TS_LABEL)));
+        return BigQueryJobCompletedEvent.parse(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static BackupPolicyAndState manualPolicy() {
+        return new BackupPolicyAndState(
+                new BackupPolicy.BackupPolicyBuilder("0 0 * * * *",
+                        BackupMethod.GCS_SNAPSHOT,
+                        TimeTravelOffsetDays.DAYS_0,
+                        BackupConfigSource.MANUAL,
+                        "backup-project")
+                        .setGcsSnapshotStorageLocation("gs://backups-bucket")
+                        .setGcsExportFormat(GCSSnapshotFormat.AVRO_SNAPPY)
+                        .setGcsUseAvroLogicalTypes(true)
+                        .build(),
+                null);
+    }
+
+    @Test
+    public void testLookupStoredRequest() throws IOException, NonRetryableApplicationException, RetryableApplicationException {
+        TaggerRequest stored = new TaggerRequest(
+                new TableSpec("data-project", "sales", "orders"),
+                "1675960287852-F",
+                TRACKING_ID,
+                false,
+                null,
+                BackupMethod.GCS_SNAPSHOT,
+                null,
+                "gs://backups-bucket/data-project/sales/orders/1675960286000/*",
+                null
+        );
+        PersistentMapTestImpl persistentMap = new PersistentMapTestImpl();
+        persistentMap.put(TaggerRequestLookup.getPersistentMapKey(JOB_ID), new Gson().toJson(stored));
+
+        TaggerRequest actual = new TaggerRequestLookup(persistentMap, APP_NAME)
+                .lookup(BigQueryJobCompletedEvent.parse(BigQueryJobCompletedEventTest.sampleEvent("extract_job_succeeded")),
+                        new BackupPolicyServiceTestImpl());
+
+        assertEquals(stored, actual);
+    }
+
+    @Test(expected = RetryableApplicationException.class)
+    public void testMissingRequestIsRetryable() throws IOException, NonRetryableApplicationException, RetryableApplicationException {
+        new TaggerRequestLookup(new PersistentMapTestImpl(), APP_NAME)
+                .lookup(BigQueryJobCompletedEvent.parse(BigQueryJobCompletedEventTest.sampleEvent("extract_job_succeeded")),
+                        new BackupPolicyServiceTestImpl());
+    }
+
+    @Test
+    public void testFailedJobIsResolvedFromTheEvent() throws IOException, NonRetryableApplicationException, RetryableApplicationException {
+        // nothing is stored for the job, the request is built from the event
+        TaggerRequest actual = new TaggerRequestLookup(new PersistentMapTestImpl(), APP_NAME)
+                .lookup(BigQueryJobCompletedEvent.parse(BigQueryJobCompletedEventTest.sampleEvent("extract_job_failed")),
+                        new BackupPolicyServiceTestImpl());
+
+        assertEquals(new TableSpec("data-project", "sales", "orders"), actual.getTargetTable());
+        assertEquals(TRACKING_ID, actual.getTrackingId());
+        assertEquals("1675960287852-F", actual.getRunId());
+        assertEquals(BackupMethod.GCS_SNAPSHOT, actual.getAppliedBackupMethod());
+        assertFalse(actual.isDryRun());
+        assertNull(actual.getBackupPolicyAndState());
+    }
+
+    @Test(expected = NonRetryableApplicationException.class)
+    public void testJobOfAnotherApplicationIsRejected() throws IOException, NonRetryableApplicationException, RetryableApplicationException {
+        new TaggerRequestLookup(new PersistentMapTestImpl(), "other_app")
+                .lookup(BigQueryJobCompletedEvent.parse(BigQueryJobCompletedEventTest.sampleEvent("extract_job_succeeded")),
+                        new BackupPolicyServiceTestImpl());
+    }
+
+    @Test
+    public void testRebuildFromJobLabels() throws IOException, NonRetryableApplicationException, RetryableApplicationException {
+        BackupPolicyServiceTestImpl backupPolicyService = new BackupPolicyServiceTestImpl();
+        backupPolicyService.createOrUpdateBackupPolicyAndStateForTable(TABLE, manualPolicy());
+
+        // nothing is stored in the persistent map for the job
+        TaggerRequest actual = new TaggerRequestLookup(new PersistentMapTestImpl(), APP_NAME)
+                .lookup(eventWithOperationTsLabel(), backupPolicyService);
+
+        assertEquals(
+                new TaggerRequest(
+                        TABLE,
+                        "1675960287852-F",
+                        TRACKING_ID,
+                        false,
+                        manualPolicy(),
+                        BackupMethod.GCS_SNAPSHOT,
+                        null,
+                        DESTINATION_URI,
+                        OPERATION_TS
+                ),
+                actual);
+    }
+
+    @Test(expected = NonRetryableApplicationException.class)
+    public void testRebuildWithoutStoredPolicyFails() throws IOException, NonRetryableApplicationException, RetryableApplicationException {
+        // the request is neither derivable nor stored, retrying won't help
+        new TaggerRequestLookup(new PersistentMapTestImpl(), APP_NAME)
+                .lookup(eventWithOperationTsLabel(), new BackupPolicyServiceTestImpl());
+    }
+
+    @Test
+    public void testCanRebuildFromJobLabels() {
+        assertTrue(TaggerRequestLookup.canRebuildFromJobLabels(manualPolicy()));
+        assertFalse(TaggerRequestLookup.canRebuildFromJobLabels(new BackupPolicyAndState(
+                new BackupPolicy.BackupPolicyBuilder("0 0 * * * *",
+                        BackupMethod.GCS_SNAPSHOT,
+                        TimeTravelOffsetDays.DAYS_0,
+                        BackupConfigSource.SYSTEM,
+                        "backup-project")
+                        .setGcsSnapshotStorageLocation("gs://backups-bucket")
+                        .setGcsExportFormat(GCSSnapshotFormat.AVRO_SNAPPY)
+                        .setGcsUseAvroLogicalTypes(true)
+                        .build(),
+                null)));
+    }
+}
@@ -21,6 +21,8 @@ package com.google.cloud.pso.bq_snapshot_manager.helpers;
 import com.google.api.gax.rpc.ApiException;
 import com.google.api.gax.rpc.ResourceExhaustedException;
 import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.bigquery.BigQueryError;
+import com.google.cloud.bigquery.BigQueryException;
 import com.google.cloud.storage.StorageException;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
@@ -30,6 +32,8 @@ import org.springframework.http.HttpStatus;
 import javax.net.ssl.SSLException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class ControllerExceptionHelperTest {
 
@@ -214,4 +218,22 @@ public class ControllerExceptionHelperTest {
                     );
         }
     }
+
+    @Test
+    public void testIsRateLimitException() {
+
+        BigQueryException jobRateLimit = new BigQueryException(
+                403, "Exceeded rate limits", new BigQueryError("jobRateLimitExceeded", "", "Exceeded rate limits"));
+        BigQueryException internalError = new BigQueryException(
+                500, "Internal error", new BigQueryError("internalError", "", "Internal error"));
+
+        assertTrue(ControllerExceptionHelper.isRateLimitException(jobRateLimit));
+        // wrapped causes are checked as well
+        assertTrue(ControllerExceptionHelper.isRateLimitException(new RuntimeException(jobRateLimit)));
+        assertTrue(ControllerExceptionHelper.isRateLimitException(new StatusRuntimeException(Status.RESOURCE_EXHAUSTED)));
+
+        // retryable but not a rate limit signal
+        assertFalse(ControllerExceptionHelper.isRateLimitException(internalError));
+        assertFalse(ControllerExceptionHelper.isRateLimitException(new IndexOutOfBoundsException()));
+    }
 }
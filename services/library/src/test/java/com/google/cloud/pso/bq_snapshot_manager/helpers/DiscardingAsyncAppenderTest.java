@@ -0,0 +1,101 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.helpers;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.AppenderBase;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DiscardingAsyncAppenderTest {
+
+    // blocks the async appender's worker on the first event until released
+    private static class BlockingAppender extends AppenderBase<ILoggingEvent> {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final List<ILoggingEvent> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            entered.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(event);
+        }
+    }
+
+    @Test
+    public void testOnlyDebugAndInfoEntriesAreDiscarded() throws InterruptedException {
+        LoggerContext loggerContext = new LoggerContext();
+        // the async appender copies the MDC of each event before queueing it
+        loggerContext.setMDCAdapter(new LogbackMDCAdapter());
+
+        BlockingAppender downstream = new BlockingAppender();
+        downstream.setContext(loggerContext);
+        downstream.start();
+
+        DiscardingAsyncAppender asyncAppender = new DiscardingAsyncAppender();
+        asyncAppender.setContext(loggerContext);
+        asyncAppender.setQueueSize(10);
+        asyncAppender.setDiscardingThreshold(5);
+        asyncAppender.addAppender(downstream);
+        asyncAppender.start();
+
+        ch.qos.logback.classic.Logger logbackLogger = loggerContext.getLogger("DiscardingAsyncAppenderTest");
+        logbackLogger.setLevel(Level.INFO);
+        logbackLogger.addAppender(asyncAppender);
+        LoggingHelper logger = new LoggingHelper(logbackLogger, "DiscardingAsyncAppenderTest", 1, "host-project", "bq_backup_manager");
+
+        long discardedBefore = DiscardingAsyncAppender.getDiscardedInfoEventCount();
+
+        // taken by the worker, which then waits
+        logger.logInfoWithTracker("1672531200000-T-uuid", null, "first");
+        assertTrue(downstream.entered.await(10, TimeUnit.SECONDS));
+
+        // 6 are queued until less than 5 slots are free, the other 4 are discarded
+        for (int i = 0; i < 10; i++) {
+            logger.logInfoWithTracker("1672531200000-T-uuid", null, "info " + i);
+        }
+        logger.logWarnWithTracker("1672531200000-T-uuid", null, "warn");
+        logger.logUnified(false, "1", "1672531200000-T", "1672531200000-T-uuid",
+                TableSpec.fromSqlString("p.d.t"), null, null, true, null, false);
+
+        downstream.released.countDown();
+        asyncAppender.stop();
+
+        assertEquals(4, DiscardingAsyncAppender.getDiscardedInfoEventCount() - discardedBefore);
+        assertEquals(9, downstream.events.size());
+        assertEquals(Level.WARN, downstream.events.get(7).getLevel());
+        assertTrue(LoggingHelper.isReportingLog(downstream.events.get(8).getArgumentArray()));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.helpers;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupConfigSource;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupMethod;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicy;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicyAndState;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.TimeTravelOffsetDays;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter.SnapshoterRequest;
+import net.logstash.logback.encoder.LogstashEncoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of a LoggingHelper call, including the JSON encoding of the entry by the LogstashEncoder
+ * configured in logback.xml (written to a null stream). The logger level is INFO, as in the deployed services,
+ * so DEBUG entries are filtered.
+ * The GC profiler reports the allocated bytes per log call (gc.alloc.rate.norm).
+ * <p>
+ * Run with: mvn -pl library test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.google.cloud.pso.bq_snapshot_manager.helpers.LoggingHelperBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggingHelperBenchmark {
+
+    private static final String TRACKING_ID = "1672531200000-T-6f2d8e2b-3c4a-4c8e-9b1a-0e8d9f7a6b5c";
+    private static final TableSpec TABLE = TableSpec.fromSqlString("source-project.dataset.table");
+
+    private LoggerContext loggerContext;
+    private LoggingHelper logger;
+    private SnapshoterRequest request;
+
+    @Setup
+    public void setup() {
+        loggerContext = new LoggerContext();
+
+        LogstashEncoder encoder = new LogstashEncoder();
+        encoder.setContext(loggerContext);
+        encoder.start();
+
+        OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<>();
+        appender.setContext(loggerContext);
+        appender.setEncoder(encoder);
+        appender.setOutputStream(OutputStream.nullOutputStream());
+        appender.start();
+
+        ch.qos.logback.classic.Logger logbackLogger = loggerContext.getLogger(LoggingHelperBenchmark.class.getSimpleName());
+        logbackLogger.setLevel(Level.INFO);
+        logbackLogger.setAdditive(false);
+        logbackLogger.addAppender(appender);
+
+        logger = new LoggingHelper(logbackLogger, LoggingHelperBenchmark.class.getSimpleName(), 3, "host-project", "bq_backup_manager");
+
+        BackupPolicy policy = new BackupPolicy.BackupPolicyBuilder("0 0 */6 * * *",
+                BackupMethod.BIGQUERY_SNAPSHOT,
+                TimeTravelOffsetDays.DAYS_0,
+                BackupConfigSource.SYSTEM,
+                "backup-project")
+                .setBackupOperationProject("operation-project")
+                .setBigQuerySnapshotStorageDataset("backups")
+                .setBigQuerySnapshotExpirationDays(15.0)
+                .build();
+        request = new SnapshoterRequest(TABLE, "1672531200000-T", TRACKING_ID, false, new BackupPolicyAndState(policy, null));
+    }
+
+    @TearDown
+    public void tearDown() {
+        loggerContext.stop();
+    }
+
+    @Benchmark
+    public void info() {
+        logger.logInfoWithTracker(TRACKING_ID, TABLE, "Will take a BigQuery Snapshot");
+    }
+
+    @Benchmark
+    public void infoFormatted() {
+        logger.logInfoWithTracker(false, TRACKING_ID, TABLE, String.format("Parsed Request: %s", request));
+    }
+
+    @Benchmark
+    public void debugFormatted() {
+        logger.logDebugWithTracker(false, TRACKING_ID, TABLE, String.format("Parsed Request: %s", request));
+    }
+
+    @Benchmark
+    public void debugSupplier() {
+        logger.logDebugWithTracker(false, TRACKING_ID, TABLE, () -> String.format("Parsed Request: %s", request));
+    }
+
+    @Benchmark
+    public void functionStart() {
+        logger.logFunctionStart(TRACKING_ID, TABLE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LoggingHelperBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()
+        ).run();
+    }
+}
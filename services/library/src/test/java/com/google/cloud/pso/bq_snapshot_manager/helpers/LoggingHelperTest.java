@@ -0,0 +1,131 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.helpers;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LoggingHelperTest {
+
+    private ListAppender<ILoggingEvent> appender;
+    private LoggingHelper logger;
+
+    @Before
+    public void setup() {
+        LoggerContext loggerContext = new LoggerContext();
+        appender = new ListAppender<>();
+        appender.setContext(loggerContext);
+        appender.start();
+
+        ch.qos.logback.classic.Logger logbackLogger = loggerContext.getLogger("LoggingHelperTest");
+        logbackLogger.setLevel(Level.INFO);
+        logbackLogger.addAppender(appender);
+
+        logger = new LoggingHelper(logbackLogger, "LoggingHelperTest", 1, "host-project", "bq_backup_manager");
+    }
+
+    // kv attributes are rendered as key=value
+    private static Map<String, String> attributes(ILoggingEvent event) {
+        Map<String, String> attributes = new HashMap<>();
+        Arrays.stream(event.getArgumentArray())
+                .map(Object::toString)
+                .forEach(kv -> attributes.put(
+                        kv.substring(0, kv.indexOf('=')),
+                        kv.substring(kv.indexOf('=') + 1)));
+        return attributes;
+    }
+
+    @Test
+    public void testGlobalAttributes() {
+        logger.logWarnWithTracker(true, "1672531200000-T-uuid", TableSpec.fromSqlString("p.d.t"), "msg");
+
+        ILoggingEvent event = appender.list.get(0);
+        Map<String, String> attributes = attributes(event);
+
+        assertEquals("bq_backup_manager | DEFAULT_LOG | LoggingHelperTest | Dry-Run | 1672531200000-T-uuid | msg", event.getMessage());
+        assertEquals(12, attributes.size());
+        assertEquals("bq_backup_manager", attributes.get("global_app"));
+        assertEquals("1672531200000-T-uuid", attributes.get("global_tracker"));
+        assertEquals("true", attributes.get("global_is_dry_run"));
+        assertEquals("t", attributes.get("global_tablespec_table"));
+        assertEquals("1672531200000-T", attributes.get("global_run_id"));
+        assertEquals("WARN", attributes.get("severity"));
+        assertEquals("projects/host-project/traces/1672531200000-T-uuid", attributes.get("logging.googleapis.com/trace"));
+    }
+
+    @Test
+    public void testTrackerAttributesFollowTheTracker() {
+        logger.logInfoWithTracker("1672531200000-T-uuid", null, "first");
+        logger.logInfoWithTracker("1672531300000-T-uuid", null, "second");
+        logger.logInfoWithTracker("invalid", null, "third");
+
+        assertEquals("1672531200000-T", attributes(appender.list.get(0)).get("global_run_id"));
+        assertEquals("1672531300000-T", attributes(appender.list.get(1)).get("global_run_id"));
+        assertEquals(TrackingHelper.MIN_RUN_ID, attributes(appender.list.get(2)).get("global_run_id"));
+        assertEquals("null", attributes(appender.list.get(2)).get("global_tablespec_project"));
+    }
+
+    @Test
+    public void testCompactUnifiedLog() {
+        LoggingHelper compactLogger = new LoggingHelper(
+                ((LoggerContext) appender.getContext()).getLogger("LoggingHelperTest"),
+                "LoggingHelperTest", 1, "host-project", "bq_backup_manager",
+                UnifiedLogFormat.COMPACT, 1024);
+
+        compactLogger.logUnified(false, "2", "1672531200000-T", "1672531200000-T-uuid",
+                TableSpec.fromSqlString("p.d.t"), null, null, false, new IllegalStateException("failed"), false);
+
+        Map<String, String> attributes = attributes(appender.list.get(0));
+        assertEquals("false", attributes.get("unified_is_successful"));
+        assertTrue(attributes.get("unified_error").startsWith("java.lang.IllegalStateException: failed"));
+        assertEquals(16, attributes.get("unified_error_fingerprint").length());
+        assertEquals("null", attributes.get("unified_input_json"));
+        assertEquals("0", attributes.get("unified_input_json_bytes"));
+    }
+
+    @Test
+    public void testDisabledLevelsAreSkipped() {
+        boolean[] supplierCalled = {false};
+
+        logger.logDebugWithTracker("1672531200000-T-uuid", null, () -> {
+            supplierCalled[0] = true;
+            return "debug";
+        });
+        logger.logDebugWithTracker("1672531200000-T-uuid", null, "debug");
+
+        assertFalse(supplierCalled[0]);
+        assertTrue(appender.list.isEmpty());
+
+        logger.logInfoWithTracker("1672531200000-T-uuid", null, () -> "info");
+        assertEquals(1, appender.list.size());
+    }
+}
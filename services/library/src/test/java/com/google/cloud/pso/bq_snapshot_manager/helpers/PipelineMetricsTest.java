@@ -0,0 +1,103 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.helpers;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics.ExternalService.GCS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class PipelineMetricsTest {
+
+    @Test
+    public void testTimeExternalCall() throws IOException {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(registry);
+
+        assertEquals("content", metrics.timeExternalCall(GCS, "read", () -> "content"));
+        assertNull(metrics.timeExternalCall(GCS, "read", () -> null));
+        try {
+            metrics.timeExternalCall(GCS, "read", () -> {
+                throw new IOException("test");
+            });
+            fail("the exception of the call should be re-thrown");
+        } catch (IOException ex) {
+            assertEquals("test", ex.getMessage());
+        }
+
+        Timer success = registry.get(PipelineMetrics.EXTERNAL_CALL_METRIC)
+                .tags("service", "gcs", "operation", "read", "outcome", PipelineMetrics.SUCCESS)
+                .timer();
+        Timer error = registry.get(PipelineMetrics.EXTERNAL_CALL_METRIC)
+                .tags("service", "gcs", "operation", "read", "outcome", PipelineMetrics.ERROR)
+                .timer();
+        assertEquals(2, success.count());
+        assertEquals(1, error.count());
+    }
+
+    @Test
+    public void testRecordStage() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(registry);
+
+        long startNanos = System.nanoTime();
+        metrics.recordStage("tagger", true, false, startNanos);
+        metrics.recordStage("tagger", false, true, startNanos);
+        metrics.recordStage("tagger", false, false, startNanos);
+        metrics.recordStage("tagger", false, false, startNanos);
+
+        assertEquals(1, registry.get(PipelineMetrics.STAGE_METRIC).tags("stage", "tagger", "outcome", PipelineMetrics.SUCCESS).timer().count());
+        assertEquals(1, registry.get(PipelineMetrics.STAGE_METRIC).tags("stage", "tagger", "outcome", PipelineMetrics.RETRYABLE_ERROR).timer().count());
+        assertEquals(2, registry.get(PipelineMetrics.STAGE_METRIC).tags("stage", "tagger", "outcome", PipelineMetrics.NON_RETRYABLE_ERROR).timer().count());
+    }
+
+    @Test
+    public void testCacheAndDedupCounters() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(registry);
+
+        Cache<String, String> cache = CacheBuilder.newBuilder().recordStats().build();
+        metrics.monitorCache(cache, "test_cache");
+        cache.put("a", "1");
+        cache.getIfPresent("a");
+        cache.getIfPresent("b");
+        cache.getIfPresent("c");
+
+        metrics.recordCacheGet("datastore_cache", true);
+        metrics.recordCacheGet("datastore_cache", false);
+        metrics.recordCacheGet("datastore_cache", false);
+
+        metrics.recordDedupHit("tagger", "tracking_id");
+        metrics.recordDedupHit("tagger", "tracking_id");
+
+        assertEquals(1.0, registry.get(PipelineMetrics.CACHE_GETS_METRIC).tags("cache", "test_cache", "result", "hit").functionCounter().count(), 0);
+        assertEquals(2.0, registry.get(PipelineMetrics.CACHE_GETS_METRIC).tags("cache", "test_cache", "result", "miss").functionCounter().count(), 0);
+        assertEquals(1.0, registry.get(PipelineMetrics.CACHE_GETS_METRIC).tags("cache", "datastore_cache", "result", "hit").counter().count(), 0);
+        assertEquals(2.0, registry.get(PipelineMetrics.CACHE_GETS_METRIC).tags("cache", "datastore_cache", "result", "miss").counter().count(), 0);
+        assertEquals(2.0, registry.get(PipelineMetrics.DEDUP_METRIC).tags("stage", "tagger", "check", "tracking_id").counter().count(), 0);
+    }
+}
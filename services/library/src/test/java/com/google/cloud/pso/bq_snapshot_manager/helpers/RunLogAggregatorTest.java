@@ -0,0 +1,160 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.helpers;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RunLogAggregatorTest {
+
+    private static final String RUN_ID = "1672531200000-T";
+
+    private ListAppender<ILoggingEvent> appender;
+    private LoggingHelper logger;
+
+    @Before
+    public void setup() {
+        LoggerContext loggerContext = new LoggerContext();
+        appender = new ListAppender<>();
+        appender.setContext(loggerContext);
+        appender.start();
+
+        ch.qos.logback.classic.Logger logbackLogger = loggerContext.getLogger("RunLogAggregatorTest");
+        logbackLogger.setLevel(Level.INFO);
+        logbackLogger.addAppender(appender);
+
+        logger = new LoggingHelper(logbackLogger, "RunLogAggregatorTest", 1, "host-project", "bq_backup_manager");
+    }
+
+    // kv attributes are rendered as key=value
+    private static Map<String, String> attributes(ILoggingEvent event) {
+        Map<String, String> attributes = new HashMap<>();
+        Arrays.stream(event.getArgumentArray())
+                .map(Object::toString)
+                .forEach(kv -> attributes.put(
+                        kv.substring(0, kv.indexOf('=')),
+                        kv.substring(kv.indexOf('=') + 1)));
+        return attributes;
+    }
+
+    private List<Map<String, String>> summaries() {
+        return appender.list.stream()
+                .map(RunLogAggregatorTest::attributes)
+                .filter(a -> "RUN_SUMMARY_LOG".equals(a.get("global_app_log")))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testEntriesAreRolledUpPerEvent() {
+        RunLogAggregator aggregator = new RunLogAggregator(logger, RUN_ID, 0);
+
+        aggregator.logInfo("table_excluded", "regex:.*_tmp", "p.d1", null, "p.d1.a_tmp", 1, () -> "a");
+        aggregator.logInfo("table_excluded", "regex:.*_tmp", "p.d1", null, "p.d1.b_tmp", 1, () -> "b");
+        aggregator.logInfo("table_excluded", "p.d2.c", "p.d2", null, "p.d2.c", 1, () -> "c");
+        aggregator.count("dispatched", "published", null, 5);
+
+        // nothing is sampled
+        assertTrue(appender.list.isEmpty());
+
+        aggregator.flush();
+
+        List<Map<String, String>> summaries = summaries();
+        assertEquals(2, summaries.size());
+
+        Map<String, String> excluded = summaries.get(0);
+        assertEquals("table_excluded", excluded.get("run_summary_event"));
+        assertEquals("3", excluded.get("run_summary_count"));
+        assertEquals("0", excluded.get("run_summary_sampled_count"));
+        assertEquals("{\"p.d2.c\":1,\"regex:.*_tmp\":2}", excluded.get("run_summary_counts_by_reason"));
+        assertEquals("{\"p.d1\":2,\"p.d2\":1}", excluded.get("run_summary_counts_by_dataset"));
+        assertEquals(RUN_ID, excluded.get("global_run_id"));
+
+        Map<String, String> dispatched = summaries.get(1);
+        assertEquals("5", dispatched.get("run_summary_count"));
+        assertEquals("{\"" + RunLogAggregator.NO_DATASET + "\":5}", dispatched.get("run_summary_counts_by_dataset"));
+
+        // counts are reset after a summary
+        aggregator.flush();
+        assertEquals(2, summaries().size());
+    }
+
+    @Test
+    public void testSummariesAreLoggedEveryInterval() {
+        RunLogAggregator aggregator = new RunLogAggregator(logger, RUN_ID, 100, 2);
+
+        aggregator.logInfo("table_excluded", "r", "p.d", null, "p.d.a", 1, () -> "a");
+        assertEquals(1, appender.list.size());
+
+        aggregator.logInfo("table_excluded", "r", "p.d", null, "p.d.b", 1, () -> "b");
+        // two sampled entries and the summary
+        assertEquals(3, appender.list.size());
+        assertEquals("2", summaries().get(0).get("run_summary_sampled_count"));
+    }
+
+    @Test
+    public void testSamplingIsDeterministic() {
+        List<String> keys = IntStream.range(0, 10000)
+                .mapToObj(i -> String.format("%s-T-%s", RUN_ID, i))
+                .collect(Collectors.toList());
+
+        long sampled = keys.stream().filter(k -> LoggingHelper.isSampled(k, 10)).count();
+        assertTrue(sampled > 800 && sampled < 1200);
+
+        for (String key : keys) {
+            assertEquals(LoggingHelper.isSampled(key, 10), LoggingHelper.isSampled(key, 10));
+            // a key sampled at a lower percentage is also sampled at a higher one
+            if (LoggingHelper.isSampled(key, 10)) {
+                assertTrue(LoggingHelper.isSampled(key, 50));
+            }
+        }
+        assertTrue(LoggingHelper.isSampled("any", 100));
+        assertFalse(LoggingHelper.isSampled("any", 0));
+    }
+
+    @Test
+    public void testTopGroupsAreCapped() {
+        Map<String, Long> counts = new HashMap<>();
+        for (int i = 0; i < RunLogAggregator.MAX_GROUPS_PER_SUMMARY + 10; i++) {
+            counts.put("d" + i, (long) i);
+        }
+
+        Map<String, Long> top = RunLogAggregator.topGroups(counts);
+
+        assertEquals(RunLogAggregator.MAX_GROUPS_PER_SUMMARY, top.size());
+        assertEquals(counts.values().stream().mapToLong(Long::longValue).sum(),
+                top.values().stream().mapToLong(Long::longValue).sum());
+        assertFalse(top.containsKey("d0"));
+        assertTrue(top.containsKey("d109"));
+    }
+}
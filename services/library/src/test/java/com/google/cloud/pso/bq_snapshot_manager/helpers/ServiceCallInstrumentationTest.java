@@ -0,0 +1,138 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.helpers;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.google.cloud.pso.bq_snapshot_manager.services.set.InstrumentedPersistentSet;
+import com.google.cloud.pso.bq_snapshot_manager.services.set.PersistentSet;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.net.SocketException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ServiceCallInstrumentationTest {
+
+    // contains() succeeds after the given delay, add() fails with the given exception
+    private static class TestPersistentSet implements PersistentSet {
+        private final long delayMs;
+        private final RuntimeException addException;
+
+        private TestPersistentSet(long delayMs, RuntimeException addException) {
+            this.delayMs = delayMs;
+            this.addException = addException;
+        }
+
+        @Override
+        public void add(String key) {
+            throw addException;
+        }
+
+        @Override
+        public void remove(String key) {
+        }
+
+        @Override
+        public boolean contains(String key) {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }
+    }
+
+    private static ListAppender<ILoggingEvent> listAppender(ch.qos.logback.classic.Logger logbackLogger) {
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.setContext(logbackLogger.getLoggerContext());
+        appender.start();
+        logbackLogger.setLevel(Level.INFO);
+        logbackLogger.addAppender(appender);
+        return appender;
+    }
+
+    @Test
+    public void testOutcomeAndRetryableClassification() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        LoggingHelper logger = new LoggingHelper(ServiceCallInstrumentationTest.class.getSimpleName(), 0, "test", "bq_backup_manager");
+        ServiceCallInstrumentation instrumentation = new ServiceCallInstrumentation(true, logger, 0, registry);
+
+        PersistentSet retryableSet = instrumentation.wrapPersistentSet(
+                new TestPersistentSet(0, new RuntimeException("wrapped", new SocketException("test socket exception"))));
+        PersistentSet nonRetryableSet = instrumentation.wrapPersistentSet(
+                new TestPersistentSet(0, new IllegalStateException("test")));
+
+        assertTrue(retryableSet.contains("key"));
+        for (PersistentSet set : new PersistentSet[]{retryableSet, nonRetryableSet, nonRetryableSet}) {
+            try {
+                set.add("key");
+                fail("the exception of the delegate should be re-thrown");
+            } catch (RuntimeException expected) {
+                // expected
+            }
+        }
+
+        assertEquals(1, registry.get(ServiceCallInstrumentation.SERVICE_CALL_METRIC)
+                .tags("service", "PersistentSet", "method", "contains", "outcome", PipelineMetrics.SUCCESS).timer().count());
+        assertEquals(1, registry.get(ServiceCallInstrumentation.SERVICE_CALL_METRIC)
+                .tags("service", "PersistentSet", "method", "add", "outcome", PipelineMetrics.RETRYABLE_ERROR).timer().count());
+        assertEquals(2, registry.get(ServiceCallInstrumentation.SERVICE_CALL_METRIC)
+                .tags("service", "PersistentSet", "method", "add", "outcome", PipelineMetrics.NON_RETRYABLE_ERROR).timer().count());
+    }
+
+    @Test
+    public void testSlowCallsAreLogged() {
+        ch.qos.logback.classic.Logger logbackLogger = new LoggerContext().getLogger("ServiceCallInstrumentationTest");
+        ListAppender<ILoggingEvent> appender = listAppender(logbackLogger);
+        LoggingHelper logger = new LoggingHelper(logbackLogger, "ServiceCallInstrumentationTest", 0, "test", "bq_backup_manager");
+
+        PersistentSet slowSet = new ServiceCallInstrumentation(true, logger, 20, new SimpleMeterRegistry())
+                .wrapPersistentSet(new TestPersistentSet(30, null));
+        PersistentSet fastSet = new ServiceCallInstrumentation(true, logger, 10_000, new SimpleMeterRegistry())
+                .wrapPersistentSet(new TestPersistentSet(0, null));
+        PersistentSet noSlowLogsSet = new ServiceCallInstrumentation(true, logger, 0, new SimpleMeterRegistry())
+                .wrapPersistentSet(new TestPersistentSet(30, null));
+
+        slowSet.contains("key");
+        fastSet.contains("key");
+        noSlowLogsSet.contains("key");
+
+        assertEquals(1, appender.list.size());
+        assertEquals(Level.WARN, appender.list.get(0).getLevel());
+        assertTrue(appender.list.get(0).getFormattedMessage().contains("Slow call PersistentSet.contains"));
+    }
+
+    @Test
+    public void testDisabledInstrumentationReturnsTheServices() {
+        LoggingHelper logger = new LoggingHelper(ServiceCallInstrumentationTest.class.getSimpleName(), 0, "test", "bq_backup_manager");
+        PersistentSet set = new TestPersistentSet(0, null);
+
+        assertSame(set, new ServiceCallInstrumentation(false, logger, 0, new SimpleMeterRegistry()).wrapPersistentSet(set));
+        assertTrue(new ServiceCallInstrumentation(true, logger, 0, new SimpleMeterRegistry()).wrapPersistentSet(set)
+                instanceof InstrumentedPersistentSet);
+    }
+}
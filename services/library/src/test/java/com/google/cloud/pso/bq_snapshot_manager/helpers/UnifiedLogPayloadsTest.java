@@ -0,0 +1,135 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.helpers;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.JsonMessage;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.annotations.SerializedName;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UnifiedLogPayloadsTest {
+
+    // mirrors the shape of a ConfiguratorResponse with large publishing results
+    private static class Policy {
+        @SerializedName("backup_method")
+        private final String backupMethod = "BIGQUERY_SNAPSHOT";
+        @SerializedName("backup_operation_project_pool")
+        private final List<String> pool = Collections.nCopies(50, "operation-project");
+        @SerializedName("bq_snapshot_storage_dataset")
+        private final String dataset = "backups";
+    }
+
+    private static class PolicyAndState {
+        private final Policy policy = new Policy();
+        private final List<String> state = Collections.nCopies(20, "state");
+    }
+
+    private static class Response extends JsonMessage {
+        private final PolicyAndState backupPolicy = new PolicyAndState();
+        private final String backupPolicySource = "DATA_CATALOG";
+        private final boolean isBackupTime = true;
+        private final List<List<String>> publishingResults = new ArrayList<>();
+
+        private Response(int results) {
+            for (int i = 0; i < results; i++) {
+                publishingResults.add(List.of(UUID.nameUUIDFromBytes(String.valueOf(i).getBytes()).toString(), "x".repeat(300)));
+            }
+        }
+    }
+
+    @Test
+    public void testSmallMessagesAreKept() {
+        Response response = new Response(1);
+
+        UnifiedLogPayloads.CompactJson compact = UnifiedLogPayloads.compact(response, 100000);
+
+        assertEquals(response.toJsonString(), compact.json);
+        assertEquals(compact.bytes, response.toJsonString().length());
+        // stable across instances with the same content
+        assertEquals(compact.hash, UnifiedLogPayloads.compact(new Response(1), 100000).hash);
+        assertNotEquals(compact.hash, UnifiedLogPayloads.compact(new Response(2), 100000).hash);
+        assertNull(UnifiedLogPayloads.compact(null, 100).json);
+    }
+
+    @Test
+    public void testLargeMessagesKeepTheFieldsReadByTheViews() {
+        Response response = new Response(500);
+        int fullBytes = response.toJsonString().length();
+
+        for (int maxBytes : new int[]{4096, 1024, 200}) {
+            UnifiedLogPayloads.CompactJson compact = UnifiedLogPayloads.compact(response, maxBytes);
+
+            JsonObject json = JsonParser.parseString(compact.json).getAsJsonObject();
+            assertEquals(fullBytes, compact.bytes);
+            assertEquals(fullBytes, json.get(UnifiedLogPayloads.TRUNCATED_FROM_BYTES).getAsInt());
+            assertEquals(UnifiedLogPayloads.compact(response, Integer.MAX_VALUE).hash, compact.hash);
+            assertTrue(json.get("isBackupTime").getAsBoolean());
+            assertEquals("DATA_CATALOG", json.get("backupPolicySource").getAsString());
+            assertEquals("BIGQUERY_SNAPSHOT",
+                    json.getAsJsonObject("backupPolicy").getAsJsonObject("policy").get("backup_method").getAsString());
+            if (maxBytes >= 1024) {
+                assertTrue(compact.json.length() <= maxBytes);
+            }
+        }
+    }
+
+    private static Exception failAt(String message) {
+        try {
+            throw new IllegalStateException(message, new java.io.IOException("cause of " + message));
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    @Test
+    public void testStackTracesAreDeduplicatedByFingerprint() {
+        // same failure (from the same call site) on different tables
+        List<Exception> failures = new ArrayList<>();
+        for (String table : List.of("p.d.t1", "p.d.t2")) {
+            failures.add(failAt("table " + table));
+        }
+        Exception first = failures.get(0);
+        Exception second = failures.get(1);
+        String fingerprint = UnifiedLogPayloads.fingerprint(first);
+
+        assertEquals(fingerprint, UnifiedLogPayloads.fingerprint(second));
+        assertNotEquals(fingerprint, UnifiedLogPayloads.fingerprint(new IllegalStateException("table p.d.t1")));
+
+        String firstError = UnifiedLogPayloads.compactError(first, fingerprint, 100000);
+        String secondError = UnifiedLogPayloads.compactError(second, fingerprint, 100000);
+
+        assertTrue(firstError.contains("\tat "));
+        assertFalse(secondError.contains("\tat "));
+        assertTrue(secondError.contains("table p.d.t2"));
+        assertTrue(secondError.contains("cause of table p.d.t2"));
+        assertTrue(secondError.contains(fingerprint));
+    }
+}
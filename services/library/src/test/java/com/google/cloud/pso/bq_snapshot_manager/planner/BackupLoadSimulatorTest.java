@@ -0,0 +1,180 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.planner;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.*;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.CronLoadReport;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BackupLoadSimulatorTest {
+
+    private final BackupPolicy defaultPolicy = new BackupPolicy.BackupPolicyBuilder(
+            "0 0 0 * * *",
+            BackupMethod.BIGQUERY_SNAPSHOT,
+            TimeTravelOffsetDays.DAYS_0,
+            BackupConfigSource.SYSTEM,
+            "storage-project")
+            .setBigQuerySnapshotStorageDataset("backups")
+            .setBigQuerySnapshotExpirationDays(15.0)
+            .build();
+
+    private final BackupPolicy projectPolicy = new BackupPolicy.BackupPolicyBuilder(
+            "0 0 */6 * * *",
+            BackupMethod.GCS_SNAPSHOT,
+            TimeTravelOffsetDays.DAYS_0,
+            BackupConfigSource.SYSTEM,
+            "storage-project")
+            .setGcsSnapshotStorageLocation("gs://backups/")
+            .setGcsExportFormat(GCSSnapshotFormat.AVRO)
+            .setGcsUseAvroLogicalTypes(true)
+            .setBackupOperationProjectPool(Arrays.asList("op1", "op2"))
+            .build();
+
+    private final BackupPolicy folderPolicy = new BackupPolicy.BackupPolicyBuilder(
+            "0 0 0 * * *",
+            BackupMethod.BOTH,
+            TimeTravelOffsetDays.DAYS_0,
+            BackupConfigSource.SYSTEM,
+            "storage-project")
+            .setBigQuerySnapshotStorageDataset("backups")
+            .setBigQuerySnapshotExpirationDays(15.0)
+            .setGcsSnapshotStorageLocation("gs://backups/")
+            .setGcsExportFormat(GCSSnapshotFormat.AVRO)
+            .setGcsUseAvroLogicalTypes(true)
+            .setBackupOperationProject("op9")
+            .build();
+
+    private final FallbackBackupPolicy fallbackBackupPolicy = new FallbackBackupPolicy(
+            defaultPolicy,
+            Map.of("f1", folderPolicy),
+            Map.of("p2", projectPolicy),
+            new HashMap<>(),
+            new HashMap<>()
+    );
+
+    private final Timestamp from = Timestamp.parseTimestamp("2022-10-06T00:00:00Z");
+    private final Timestamp to = Timestamp.parseTimestamp("2022-10-08T00:00:00Z");
+
+    @Test
+    public void testSimulate() {
+
+        List<InventoryTable> inventory = Arrays.asList(
+                new InventoryTable(TableSpec.fromSqlString("p1.d.t1"), 100, null),
+                new InventoryTable(TableSpec.fromSqlString("p1.d.t2"), 50, null),
+                new InventoryTable(TableSpec.fromSqlString("p2.d.t3"), 10, null),
+                new InventoryTable(TableSpec.fromSqlString("p3.d.t4"), 1000, "f1")
+        );
+
+        Map<String, Timestamp> states = new HashMap<>();
+        states.put("p1.d.t1", Timestamp.parseTimestamp("2022-10-05T01:00:00Z"));
+        states.put("p2.d.t3", Timestamp.parseTimestamp("2022-10-05T23:00:00Z"));
+
+        CronLoadReport report = new BackupLoadSimulator(fallbackBackupPolicy, "0 0 * * * *", 0)
+                .simulate(inventory.iterator(), states, from, to);
+
+        assertEquals(49, report.getHoursCount());
+
+        // default policy runs on the table project. t2 was never backed up and is due at the first heartbeat
+        assertEquals(2L, report.getBqSnapshotJobs("p1", 1));
+        assertEquals(150L, report.getBqSnapshotBytes("p1", 1));
+        assertEquals(2L, report.getBqSnapshotJobs("p1", 25));
+        assertEquals(0L, report.getBqSnapshotJobs("p1", 48));
+
+        // project policy runs every 6 hours over a pool of projects
+        long poolJobs = 0;
+        long poolBytes = 0;
+        for (int hour = 0; hour < report.getHoursCount(); hour++) {
+            poolJobs += report.getGcsExportJobs("op1", hour) + report.getGcsExportJobs("op2", hour);
+            poolBytes += report.getGcsExportBytes("op1", hour) + report.getGcsExportBytes("op2", hour);
+        }
+        assertEquals(8L, poolJobs);
+        assertEquals(80L, poolBytes);
+        assertEquals(1L, report.getGcsExportJobs("op1", 7) + report.getGcsExportJobs("op2", 7));
+
+        // folder policy runs both methods on its operation project
+        assertEquals(1L, report.getBqSnapshotJobs("op9", 1));
+        assertEquals(1L, report.getGcsExportJobs("op9", 1));
+        assertEquals(1000L, report.getGcsExportBytes("op9", 25));
+
+        assertEquals(2 + 2 + 8 + 4, report.getTotalJobs());
+    }
+
+    @Test
+    public void testSimulateWithJitter() {
+
+        List<InventoryTable> inventory = new ArrayList<>();
+        Map<String, Timestamp> states = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            TableSpec table = new TableSpec("p1", "d", "t" + i);
+            inventory.add(new InventoryTable(table, 1, null));
+            states.put(table.toSqlString(), from);
+        }
+
+        CronLoadReport withoutJitter = new BackupLoadSimulator(fallbackBackupPolicy, "0 0 * * * *", 0)
+                .simulate(inventory.iterator(), states, from, to);
+        CronLoadReport withJitter = new BackupLoadSimulator(fallbackBackupPolicy, "0 0 * * * *", 86400)
+                .simulate(inventory.iterator(), states, from, to);
+
+        assertEquals(1000L, withoutJitter.getPeakHourlyJobs());
+        assertTrue(withJitter.getPeakHourlyJobs() < 100);
+    }
+
+    @Test
+    public void testReadInputsAndWriteCsv() throws IOException {
+
+        BufferedReader inventoryReader = new BufferedReader(new StringReader(
+                "table,size_bytes,folder_id\n" +
+                        "# comment\n" +
+                        "p1.d.t1,100,\n" +
+                        "p3.d.t4,1000,f1\n"));
+        BufferedReader statesReader = new BufferedReader(new StringReader(
+                "table,last_backup_at\n" +
+                        "p1.d.t1,2022-10-05T01:00:00Z\n"));
+
+        Map<String, Timestamp> states = BackupLoadSimulator.readStates(statesReader);
+        assertEquals(Timestamp.parseTimestamp("2022-10-05T01:00:00Z"), states.get("p1.d.t1"));
+
+        CronLoadReport report = new BackupLoadSimulator(fallbackBackupPolicy, "0 0 * * * *", 0)
+                .simulate(BackupLoadSimulator.readInventory(inventoryReader), states, from, to);
+
+        StringWriter writer = new StringWriter();
+        report.writeCsv(writer);
+        String[] lines = writer.toString().split("\n");
+
+        assertEquals(CronLoadReport.CSV_HEADER, lines[0]);
+        assertEquals("2022-10-06T01:00,p1,1,100,0,0", lines[1]);
+        assertEquals("2022-10-06T01:00,op9,1,1000,1,1000", lines[2]);
+        assertEquals(5, lines.length);
+    }
+}
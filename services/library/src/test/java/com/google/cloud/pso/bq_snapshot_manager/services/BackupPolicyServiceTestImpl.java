@@ -0,0 +1,49 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicyAndState;
+import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.BackupPolicyService;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class BackupPolicyServiceTestImpl implements BackupPolicyService {
+
+    private Map<TableSpec, BackupPolicyAndState> policies;
+
+    public BackupPolicyServiceTestImpl(){
+        policies = new HashMap<>();
+    }
+
+    @Override
+    public void createOrUpdateBackupPolicyAndStateForTable(TableSpec tableSpec, BackupPolicyAndState backupPolicyAndState) {
+        policies.put(tableSpec, backupPolicyAndState);
+    }
+
+    @Override
+    public BackupPolicyAndState getBackupPolicyAndStateForTable(TableSpec tableSpec) {
+        return policies.get(tableSpec);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
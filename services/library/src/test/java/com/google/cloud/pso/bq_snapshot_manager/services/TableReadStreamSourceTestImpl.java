@@ -0,0 +1,89 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.services.export.TableReadSession;
+import com.google.cloud.pso.bq_snapshot_manager.services.export.TableReadStreamSource;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// Serves a fixed number of streams, each with a fixed number of blocks of rows with schema (id INT64, name STRING)
+public class TableReadStreamSourceTestImpl implements TableReadStreamSource {
+
+    public static final String SCHEMA = "{\"type\":\"record\",\"name\":\"__root__\",\"fields\":[" +
+            "{\"name\":\"id\",\"type\":[\"null\",\"long\"]}," +
+            "{\"name\":\"name\",\"type\":[\"null\",\"string\"]}]}";
+
+    private final int streamsCount;
+    private final int blocksPerStream;
+    private final int rowsPerBlock;
+
+    public TableReadStreamSourceTestImpl(int streamsCount, int blocksPerStream, int rowsPerBlock) {
+        this.streamsCount = streamsCount;
+        this.blocksPerStream = blocksPerStream;
+        this.rowsPerBlock = rowsPerBlock;
+    }
+
+    @Override
+    public TableReadSession createReadSession(String operationProject, TableSpec table, Long snapshotTimeMillis, int maxStreamCount) {
+        List<String> streams = new ArrayList<>();
+        for (int i = 0; i < Math.min(streamsCount, maxStreamCount); i++) {
+            streams.add(String.format("stream-%s", i));
+        }
+        return new TableReadSession(SCHEMA, streams);
+    }
+
+    @Override
+    public Iterator<InputStream> readRowBlocks(String streamName) throws IOException {
+        Schema schema = new Schema.Parser().parse(SCHEMA);
+        GenericDatumWriter<GenericRecord> writer = new GenericDatumWriter<>(schema);
+
+        List<InputStream> blocks = new ArrayList<>();
+        for (int b = 0; b < blocksPerStream; b++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+            for (int r = 0; r < rowsPerBlock; r++) {
+                GenericRecord record = new GenericData.Record(schema);
+                record.put("id", (long) r);
+                record.put("name", String.format("%s-%s-%s", streamName, b, r));
+                writer.write(record, encoder);
+            }
+            encoder.flush();
+            blocks.add(new ByteArrayInputStream(out.toByteArray()));
+        }
+        return blocks.iterator();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.backup_policy;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupPolicyAndState;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.BackupState;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BackupPolicyWriteBehindBufferTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private static class FakeBackupPolicyService implements BackupPolicyService {
+        private final Map<TableSpec, BackupPolicyAndState> written = new ConcurrentHashMap<>();
+        private final AtomicInteger writes = new AtomicInteger();
+        private volatile boolean failWrites = false;
+
+        @Override
+        public void createOrUpdateBackupPolicyAndStateForTable(TableSpec tableSpec, BackupPolicyAndState backupPolicyAndState) throws IOException {
+            writes.incrementAndGet();
+            if (failWrites) {
+                throw new IOException("write failed");
+            }
+            written.put(tableSpec, backupPolicyAndState);
+        }
+
+        @Override
+        public BackupPolicyAndState getBackupPolicyAndStateForTable(TableSpec tableSpec) {
+            return written.get(tableSpec);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    private static BackupPolicyAndState stateWithUri(String uri) {
+        return new BackupPolicyAndState(null, new BackupState(Timestamp.parseTimestamp("2023-01-01T00:00:00Z"), uri, null));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCoalescesUpdatesOfTheSameTable() throws Exception {
+        FakeBackupPolicyService delegate = new FakeBackupPolicyService();
+        BackupPolicyWriteBehindBuffer buffer = new BackupPolicyWriteBehindBuffer(delegate, 300, executor);
+        TableSpec table = TableSpec.fromSqlString("p.d.t");
+
+        Future<?> first = executor.submit(() -> {
+            buffer.createOrUpdateBackupPolicyAndStateForTable(table, stateWithUri("uri-1"));
+            return null;
+        });
+        // the first update is buffered until the window ends
+        while (buffer.getPendingCount() == 0) {
+            Thread.sleep(5);
+        }
+        assertEquals(stateWithUri("uri-1"), buffer.getBackupPolicyAndStateForTable(table));
+
+        buffer.createOrUpdateBackupPolicyAndStateForTable(table, stateWithUri("uri-2"));
+        first.get();
+
+        // both callers returned after a single write of the last update
+        assertEquals(1, delegate.writes.get());
+        assertEquals(stateWithUri("uri-2"), delegate.written.get(table));
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testWritesAllTablesOfAWindow() throws Exception {
+        FakeBackupPolicyService delegate = new FakeBackupPolicyService();
+        BackupPolicyWriteBehindBuffer buffer = new BackupPolicyWriteBehindBuffer(delegate, 50, executor);
+
+        List<Future<?>> updates = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            TableSpec table = TableSpec.fromSqlString("p.d.t" + i);
+            updates.add(executor.submit(() -> {
+                buffer.createOrUpdateBackupPolicyAndStateForTable(table, stateWithUri(table.toSqlString()));
+                return null;
+            }));
+        }
+        for (Future<?> update : updates) {
+            update.get();
+        }
+
+        assertEquals(20, delegate.writes.get());
+        for (int i = 0; i < 20; i++) {
+            TableSpec table = TableSpec.fromSqlString("p.d.t" + i);
+            assertEquals(stateWithUri(table.toSqlString()), delegate.written.get(table));
+        }
+    }
+
+    @Test
+    public void testFailedWritesAreReportedToTheCallers() throws Exception {
+        FakeBackupPolicyService delegate = new FakeBackupPolicyService();
+        delegate.failWrites = true;
+        BackupPolicyWriteBehindBuffer buffer = new BackupPolicyWriteBehindBuffer(delegate, 10, executor);
+
+        try {
+            buffer.createOrUpdateBackupPolicyAndStateForTable(TableSpec.fromSqlString("p.d.t"), stateWithUri("uri-1"));
+            fail("Expected the write failure to be reported to the caller");
+        } catch (IOException ex) {
+            assertEquals("write failed", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testShutdownFlushesPendingUpdates() throws Exception {
+        FakeBackupPolicyService delegate = new FakeBackupPolicyService();
+        BackupPolicyWriteBehindBuffer buffer = new BackupPolicyWriteBehindBuffer(delegate, 60_000, executor);
+        TableSpec table = TableSpec.fromSqlString("p.d.t");
+
+        Future<?> update = executor.submit(() -> {
+            buffer.createOrUpdateBackupPolicyAndStateForTable(table, stateWithUri("uri-1"));
+            return null;
+        });
+        while (buffer.getPendingCount() == 0) {
+            Thread.sleep(5);
+        }
+
+        buffer.shutdown();
+        update.get();
+        assertEquals(stateWithUri("uri-1"), delegate.written.get(table));
+
+        // updates after shutdown are written directly
+        buffer.createOrUpdateBackupPolicyAndStateForTable(table, stateWithUri("uri-2"));
+        assertEquals(stateWithUri("uri-2"), delegate.written.get(table));
+        assertEquals(2, delegate.writes.get());
+    }
+}
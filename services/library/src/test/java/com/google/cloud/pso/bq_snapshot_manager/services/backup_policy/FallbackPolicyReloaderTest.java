@@ -0,0 +1,147 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.backup_policy;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.FallbackPolicyResolver;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FallbackPolicyReloaderTest {
+
+    private static String policyJson(String cron) {
+        return "{\n" +
+                "  \"default_policy\": {\n" +
+                "    \"backup_cron\": \"" + cron + "\",\n" +
+                "    \"backup_method\": \"BigQuery Snapshot\",\n" +
+                "    \"backup_time_travel_offset_days\": \"0\",\n" +
+                "    \"bq_snapshot_expiration_days\": \"15\",\n" +
+                "    \"backup_storage_project\": \"storage_project\",\n" +
+                "    \"backup_operation_project\": \"operation_project\",\n" +
+                "    \"bq_snapshot_storage_dataset\": \"dataset\",\n" +
+                "    \"config_source\": \"SYSTEM\"\n" +
+                "  },\n" +
+                "  \"folder_overrides\": {},\n" +
+                "  \"project_overrides\": {},\n" +
+                "  \"dataset_overrides\": {},\n" +
+                "  \"table_overrides\": {}\n" +
+                "}";
+    }
+
+    // in-memory versioned source that counts the content reads
+    private static class VersionedSourceTestImpl implements FallbackPolicySource {
+
+        private final Map<String, String> versions = new HashMap<>();
+        private String latestVersion;
+        private int reads = 0;
+
+        void upload(String version, String json) {
+            versions.put(version, json);
+            latestVersion = version;
+        }
+
+        @Override
+        public String getLatestVersion() {
+            return latestVersion;
+        }
+
+        @Override
+        public String read(String version) {
+            reads++;
+            return versions.get(version);
+        }
+    }
+
+    @Test
+    public void testReloadOnlyOnNewVersion() throws Exception {
+
+        VersionedSourceTestImpl source = new VersionedSourceTestImpl();
+        source.upload("gs://bucket/policy.json#1", policyJson("0 0 1 * * *"));
+
+        FallbackPolicyReloader reloader = new FallbackPolicyReloader(source);
+
+        assertTrue(reloader.reload());
+        FallbackPolicyResolver first = reloader.getResolver();
+        assertEquals("gs://bucket/policy.json#1", first.getVersion());
+        assertEquals("0 0 1 * * *", first.getDefaultMatch().getPolicy().getCron());
+
+        // same generation: no content read and no recompilation
+        assertFalse(reloader.reload());
+        assertSame(first, reloader.getResolver());
+        assertEquals(1, source.reads);
+
+        source.upload("gs://bucket/policy.json#2", policyJson("0 0 2 * * *"));
+        assertTrue(reloader.reload());
+        assertEquals("gs://bucket/policy.json#2", reloader.getResolver().getVersion());
+        assertEquals("0 0 2 * * *", reloader.getResolver().getDefaultMatch().getPolicy().getCron());
+        assertEquals(2, source.reads);
+        // requests that already took the previous version keep using it
+        assertEquals("0 0 1 * * *", first.getDefaultMatch().getPolicy().getCron());
+    }
+
+    @Test
+    public void testInvalidVersionKeepsLastValidPolicy() throws Exception {
+
+        VersionedSourceTestImpl source = new VersionedSourceTestImpl();
+        source.upload("v1", policyJson("0 0 1 * * *"));
+
+        FallbackPolicyReloader reloader = new FallbackPolicyReloader(source);
+        reloader.reload();
+
+        source.upload("v2", "{ not a policy");
+        try {
+            reloader.reload();
+            fail("Expected NonRetryableApplicationException");
+        } catch (NonRetryableApplicationException ex) {
+            assertTrue(ex.getMessage().contains("v2"));
+        }
+        assertEquals("v1", reloader.getResolver().getVersion());
+    }
+
+    @Test(expected = NonRetryableApplicationException.class)
+    public void testMissingPolicy() throws Exception {
+        new FallbackPolicyReloader(new VersionedSourceTestImpl()).reload();
+    }
+
+    @Test
+    public void testStaticSourceVersion() throws Exception {
+        FallbackPolicyReloader reloader = new FallbackPolicyReloader(
+                new FallbackPolicySourceStaticImpl(policyJson("0 0 1 * * *")));
+        assertTrue(reloader.reload());
+        assertTrue(reloader.getResolver().getVersion().startsWith("sha256:"));
+        assertFalse(reloader.reload());
+
+        assertEquals(reloader.getResolver().getVersion(),
+                new FallbackPolicySourceStaticImpl(policyJson("0 0 1 * * *")).getLatestVersion());
+    }
+
+    @Test
+    public void testGcsVersionGeneration() {
+        assertEquals(1712345678901234L,
+                FallbackPolicySourceGCSImpl.toGeneration("gs://bucket/path/policy.json#1712345678901234"));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.bq;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.RetryableApplicationException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void testAdditiveIncreaseMultiplicativeDecrease() throws InterruptedException, RetryableApplicationException {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 6, 0.5, 100, new SimpleMeterRegistry());
+
+        // 4 successes at limit 4 add ~1 to the limit
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire("p1");
+            limiter.onSuccess("p1");
+        }
+        assertEquals(4, limiter.getLimit("p1"));
+        limiter.acquire("p1");
+        limiter.onSuccess("p1");
+        assertEquals(5, limiter.getLimit("p1"));
+
+        limiter.acquire("p1");
+        limiter.onDropped("p1");
+        assertEquals(2, limiter.getLimit("p1"));
+
+        // never below the min limit
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire("p1");
+            limiter.onDropped("p1");
+        }
+        assertEquals(1, limiter.getLimit("p1"));
+
+        // other keys are not affected
+        assertEquals(4, limiter.getLimit("p2"));
+        assertEquals(0, limiter.getInFlight("p1"));
+    }
+
+    @Test
+    public void testMaxLimit() throws InterruptedException, RetryableApplicationException {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 3, 0.5, 100, new SimpleMeterRegistry());
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire("p1");
+            limiter.onSuccess("p1");
+        }
+        assertEquals(3, limiter.getLimit("p1"));
+    }
+
+    @Test(expected = RetryableApplicationException.class)
+    public void testAcquireTimeout() throws InterruptedException, RetryableApplicationException {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 50, new SimpleMeterRegistry());
+        limiter.acquire("p1");
+        limiter.acquire("p1");
+    }
+
+    @Test
+    public void testWaiterIsReleased() throws InterruptedException, RetryableApplicationException {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 5000, new SimpleMeterRegistry());
+        limiter.acquire("p1");
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire("p1");
+                acquired.countDown();
+            } catch (Exception e) {
+                failed.set(true);
+            }
+        });
+        waiter.start();
+
+        limiter.onIgnore("p1");
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiter.join();
+        assertEquals(false, failed.get());
+        assertEquals(1, limiter.getInFlight("p1"));
+    }
+
+    @Test
+    public void testLimitMetric() throws InterruptedException, RetryableApplicationException {
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 10, 0.5, 100, registry);
+
+        limiter.acquire("p1");
+        limiter.onDropped("p1");
+
+        assertEquals(2.0,
+                registry.get(AdaptiveConcurrencyLimiter.LIMIT_METRIC).tag("operation_project", "p1").gauge().value(),
+                0.0);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.bq;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.RetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.services.PersistentMapTestImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OperationProjectSchedulerTest {
+
+    private final List<String> pool = Arrays.asList("p1", "p2", "p3");
+
+    @Test
+    public void testDeterministicPerTrackingId() {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 8, 0.5, 100, new SimpleMeterRegistry());
+
+        // each scheduler has its own assignments
+        String first = new OperationProjectScheduler(limiter, new PersistentMapTestImpl(), "test").selectProject(pool, "tracking-id-1");
+        String second = new OperationProjectScheduler(limiter, new PersistentMapTestImpl(), "test").selectProject(pool, "tracking-id-1");
+
+        assertEquals(first, second);
+        assertEquals(OperationProjectScheduler.selectProjectByHash(pool, "tracking-id-1"), first);
+    }
+
+    @Test
+    public void testSpreadsAcrossPool() {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 8, 0.5, 100, new SimpleMeterRegistry());
+        OperationProjectScheduler scheduler = new OperationProjectScheduler(limiter, new PersistentMapTestImpl(), "test");
+
+        Map<String, Integer> counts = countSelections(scheduler, 3000);
+
+        for (String project : pool) {
+            assertTrue(String.format("%s got %s", project, counts.get(project)), counts.get(project) > 800);
+        }
+    }
+
+    @Test
+    public void testSkipsSaturatedProjects() throws InterruptedException, RetryableApplicationException {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 100, new SimpleMeterRegistry());
+        OperationProjectScheduler scheduler = new OperationProjectScheduler(limiter, new PersistentMapTestImpl(), "test");
+
+        limiter.acquire("p1");
+        limiter.acquire("p2");
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("p3", scheduler.selectProject(pool, "tracking-id-" + i));
+        }
+    }
+
+    @Test
+    public void testRetryReusesProjectOfPreviousAttempt() throws InterruptedException, RetryableApplicationException {
+
+        PersistentMapTestImpl assignments = new PersistentMapTestImpl();
+
+        AdaptiveConcurrencyLimiter firstLimiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 100, new SimpleMeterRegistry());
+        String hashPick = OperationProjectScheduler.selectProjectByHash(pool, "tracking-id-1");
+        firstLimiter.acquire(hashPick);
+
+        // the first attempt skips the saturated project
+        String first = new OperationProjectScheduler(firstLimiter, assignments, "test").selectProject(pool, "tracking-id-1");
+        assertNotEquals(hashPick, first);
+
+        // the retry lands on another instance where that project is not saturated
+        AdaptiveConcurrencyLimiter secondLimiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 100, new SimpleMeterRegistry());
+        String second = new OperationProjectScheduler(secondLimiter, assignments, "test").selectProject(pool, "tracking-id-1");
+
+        assertEquals(first, second);
+        assertEquals(first, assignments.get("test/tracking-id-1"));
+    }
+
+    @Test
+    public void testRankByHash() {
+        List<String> ranked = OperationProjectScheduler.rankByHash(pool, "tracking-id-1");
+
+        assertEquals(pool.size(), ranked.size());
+        assertTrue(ranked.containsAll(pool));
+        assertEquals(OperationProjectScheduler.selectProjectByHash(pool, "tracking-id-1"), ranked.get(0));
+    }
+
+    private Map<String, Integer> countSelections(OperationProjectScheduler scheduler, int requests) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String project : pool) {
+            counts.put(project, 0);
+        }
+        for (int i = 0; i < requests; i++) {
+            String project = scheduler.selectProject(pool, "tracking-id-" + i);
+            counts.put(project, counts.get(project) + 1);
+        }
+        return counts;
+    }
+}
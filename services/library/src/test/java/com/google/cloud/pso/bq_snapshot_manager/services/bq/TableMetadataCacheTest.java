@@ -0,0 +1,124 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.bq;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TableMetadataCacheTest {
+
+    private static Callable<Map<String, Long>> countingLoader(AtomicInteger listings) {
+        return () -> {
+            listings.incrementAndGet();
+            Map<String, Long> tables = new HashMap<>();
+            tables.put("t1", 1L);
+            tables.put("t2", 2L);
+            return tables;
+        };
+    }
+
+    @Test
+    public void testOneListingPerDatasetAndRun() throws Exception {
+        TableMetadataCache cache = new TableMetadataCache(600, 1000);
+        AtomicInteger listings = new AtomicInteger();
+
+        assertEquals(Long.valueOf(1L), cache.getTableCreationTime("run-1", "p", "d", "t1", countingLoader(listings)));
+        assertEquals(Long.valueOf(2L), cache.getTableCreationTime("run-1", "p", "d", "t2", countingLoader(listings)));
+        // tables missing from the listing don't list the dataset again
+        assertNull(cache.getTableCreationTime("run-1", "p", "d", "new_table", countingLoader(listings)));
+        assertEquals(1, listings.get());
+
+        // other datasets and later runs list again
+        cache.getTableCreationTime("run-1", "p", "d2", "t1", countingLoader(listings));
+        cache.getTableCreationTime("run-2", "p", "d", "t1", countingLoader(listings));
+        assertEquals(3, listings.get());
+        assertEquals(3, cache.getListingCount());
+        assertEquals(6, cache.getSize());
+    }
+
+    @Test
+    public void testDatasetLargerThanACacheSegment() throws Exception {
+        // Guava splits the max size across 4 segments, i.e. 50000 tables per segment
+        TableMetadataCache cache = new TableMetadataCache(600, 200_000);
+        AtomicInteger listings = new AtomicInteger();
+        Callable<Map<String, Long>> largeLoader = () -> {
+            listings.incrementAndGet();
+            Map<String, Long> tables = new HashMap<>();
+            for (long i = 0; i < 60_000; i++) {
+                tables.put("t" + i, i);
+            }
+            return tables;
+        };
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Long.valueOf(i), cache.getTableCreationTime("run-1", "p", "d", "t" + i, largeLoader));
+        }
+        assertEquals(1, listings.get());
+        assertEquals(60_000, cache.getSize());
+    }
+
+    @Test
+    public void testDatasetLargerThanTheCacheIsListedOnce() throws Exception {
+        TableMetadataCache cache = new TableMetadataCache(600, 1);
+        AtomicInteger listings = new AtomicInteger();
+
+        // not cached, the tables are looked up individually by the caller
+        assertNull(cache.getTableCreationTime("run-1", "p", "d", "t1", countingLoader(listings)));
+        assertNull(cache.getTableCreationTime("run-1", "p", "d", "t2", countingLoader(listings)));
+        assertEquals(1, listings.get());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testConcurrentLookupsShareOneListing() throws Exception {
+        TableMetadataCache cache = new TableMetadataCache(600, 1000);
+        AtomicInteger listings = new AtomicInteger();
+        Callable<Map<String, Long>> slowLoader = () -> {
+            Thread.sleep(50);
+            return countingLoader(listings).call();
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            String table = i % 2 == 0 ? "t1" : "t2";
+            results.add(executor.submit(() -> cache.getTableCreationTime("run-1", "p", "d", table, slowLoader)));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(Long.valueOf(i % 2 == 0 ? 1L : 2L), results.get(i).get());
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(1, listings.get());
+    }
+}
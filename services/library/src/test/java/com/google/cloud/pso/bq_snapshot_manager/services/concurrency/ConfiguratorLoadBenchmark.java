@@ -0,0 +1,158 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.concurrency;
+
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads.Downstream;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of one Configurator instance under a burst of requests, with the blocking API calls simulated by sleeps
+ * of typical latencies: the attached policy (GCS), table creation time (BigQuery) and folder lookup (Resource Manager)
+ * followed by the two publishes (Pub/Sub). Each benchmark op processes the whole burst, i.e.
+ * requests per second per instance = requests / (ms per op / 1000).
+ * <ul>
+ * <li>platformThreads: requests run on a fixed pool of platform threads and the independent calls on a cached
+ * platform thread pool (before)</li>
+ * <li>virtualThreads: requests and calls each run on their own virtual thread, as with
+ * spring.threads.virtual.enabled and IoExecutors (after)</li>
+ * </ul>
+ * In both models, the concurrent requests are bounded by the Cloud Run max concurrency per instance and the calls
+ * per downstream are capped by the default DownstreamBulkheads, or not capped at all.
+ * <p>
+ * Run with: mvn -pl library test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.google.cloud.pso.bq_snapshot_manager.services.concurrency.ConfiguratorLoadBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ConfiguratorLoadBenchmark {
+
+    private static final long GCS_LATENCY_MS = 40;
+    private static final long BIGQUERY_LATENCY_MS = 60;
+    private static final long RESOURCE_MANAGER_LATENCY_MS = 30;
+    private static final long PUBSUB_LATENCY_MS = 25;
+
+    @Param({"platformThreads", "virtualThreads"})
+    public String model;
+
+    @Param({"2000"})
+    public int requests;
+
+    // Cloud Run max concurrent requests per instance
+    @Param({"80", "1000"})
+    public int maxConcurrentRequests;
+
+    @Param({"default", "uncapped"})
+    public String downstreamLimits;
+
+    private ExecutorService requestExecutor;
+    private ExecutorService ioExecutor;
+    // bounds the in-flight requests of the thread-per-request model like the Cloud Run concurrency setting
+    private Semaphore requestSlots;
+    private DownstreamBulkheads bulkheads;
+
+    @Setup
+    public void setup() {
+        Map<Downstream, Integer> limits = new EnumMap<>(Downstream.class);
+        for (Downstream downstream : Downstream.values()) {
+            limits.put(downstream, "default".equals(downstreamLimits) ? downstream.getDefaultLimit() : 0);
+        }
+        bulkheads = new DownstreamBulkheads(limits, DownstreamBulkheads.DEFAULT_MAX_WAIT_MS);
+        requestSlots = new Semaphore(maxConcurrentRequests);
+
+        switch (model) {
+            case "platformThreads":
+                requestExecutor = Executors.newFixedThreadPool(maxConcurrentRequests);
+                ioExecutor = Executors.newCachedThreadPool();
+                break;
+            case "virtualThreads":
+                requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+                ioExecutor = IoExecutors.newIoExecutor("load-io");
+                break;
+            default:
+                throw new IllegalArgumentException(model);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        requestExecutor.shutdownNow();
+        ioExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public int burst() throws Exception {
+        List<Future<Integer>> futures = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            futures.add(requestExecutor.submit(this::handleLimitedRequest));
+        }
+        int total = 0;
+        for (Future<Integer> future : futures) {
+            total += future.get();
+        }
+        return total;
+    }
+
+    private int handleLimitedRequest() throws Exception {
+        requestSlots.acquire();
+        try {
+            return handleRequest();
+        } finally {
+            requestSlots.release();
+        }
+    }
+
+    private int handleRequest() throws Exception {
+        Future<Integer> policy = ioExecutor.submit(() -> bulkheads.call(Downstream.GCS, () -> blockingCall(GCS_LATENCY_MS)));
+        Future<Integer> creationTime = ioExecutor.submit(() -> bulkheads.call(Downstream.BIGQUERY, () -> blockingCall(BIGQUERY_LATENCY_MS)));
+        Future<Integer> folder = ioExecutor.submit(() -> bulkheads.call(Downstream.RESOURCE_MANAGER, () -> blockingCall(RESOURCE_MANAGER_LATENCY_MS)));
+        int result = policy.get() + creationTime.get() + folder.get();
+
+        Future<Integer> bqPublish = ioExecutor.submit(() -> bulkheads.call(Downstream.PUBSUB, () -> blockingCall(PUBSUB_LATENCY_MS)));
+        Future<Integer> gcsPublish = ioExecutor.submit(() -> bulkheads.call(Downstream.PUBSUB, () -> blockingCall(PUBSUB_LATENCY_MS)));
+        return result + bqPublish.get() + gcsPublish.get();
+    }
+
+    private static int blockingCall(long latencyMs) throws InterruptedException {
+        Thread.sleep(latencyMs);
+        return 1;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ConfiguratorLoadBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.concurrency;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.RetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.ControllerExceptionHelper;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads.Downstream;
+import com.google.cloud.pso.bq_snapshot_manager.services.PersistentSetTestImpl;
+import com.google.cloud.pso.bq_snapshot_manager.services.set.PersistentSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DownstreamBulkheadsTest {
+
+    @Test
+    public void testCallCapsConcurrentCallsPerDownstream() throws Exception {
+        DownstreamBulkheads bulkheads = new DownstreamBulkheads(Map.of(Downstream.GCS, 2), 10000);
+        ExecutorService executor = IoExecutors.newIoExecutor("test-io");
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(executor.submit(() -> bulkheads.call(Downstream.GCS, () -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                inFlight.decrementAndGet();
+                return 1;
+            })));
+        }
+        for (Future<Integer> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(2, maxInFlight.get());
+        assertEquals(0, bulkheads.getInFlight(Downstream.GCS));
+    }
+
+    @Test
+    public void testCallFailsWithRetryableExceptionAfterMaxWait() throws Exception {
+        DownstreamBulkheads bulkheads = new DownstreamBulkheads(Map.of(Downstream.BIGQUERY, 1), 50);
+        ExecutorService executor = IoExecutors.newIoExecutor("test-io");
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Boolean> holder = executor.submit(() -> bulkheads.call(Downstream.BIGQUERY, () -> {
+            started.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        }));
+        started.await();
+
+        try {
+            bulkheads.call(Downstream.BIGQUERY, () -> "never");
+            fail("Expected RetryableApplicationException");
+        } catch (RetryableApplicationException ex) {
+            assertTrue(ex.getMessage().contains("BIGQUERY"));
+        }
+
+        // other downstreams are not affected
+        assertEquals("ok", bulkheads.call(Downstream.GCS, () -> "ok"));
+
+        release.countDown();
+        assertTrue(holder.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testWrappedServiceFailsRetryablyWhenSaturated() throws Exception {
+        DownstreamBulkheads bulkheads = new DownstreamBulkheads(Map.of(Downstream.GCS, 1), 50);
+        ExecutorService executor = IoExecutors.newIoExecutor("test-io");
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PersistentSet persistentSet = bulkheads.wrapPersistentSet(new PersistentSet() {
+            @Override
+            public void add(String key) {
+            }
+
+            @Override
+            public void remove(String key) {
+            }
+
+            @Override
+            public boolean contains(String key) {
+                started.countDown();
+                try {
+                    return release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        Future<Boolean> holder = executor.submit(() -> persistentSet.contains("flag"));
+        started.await();
+
+        try {
+            persistentSet.add("flag");
+            fail("Expected BulkheadSaturatedException");
+        } catch (BulkheadSaturatedException ex) {
+            assertTrue(ControllerExceptionHelper.isCausedByRetryableException(ex));
+        }
+
+        release.countDown();
+        assertTrue(holder.get());
+        assertEquals(0, bulkheads.getInFlight(Downstream.GCS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testUncappedDownstreamIsNotWrapped() {
+        DownstreamBulkheads bulkheads = DownstreamBulkheads.unbounded();
+        PersistentSet persistentSet = new PersistentSetTestImpl();
+        assertSame(persistentSet, bulkheads.wrapPersistentSet(persistentSet));
+    }
+
+    @Test
+    public void testUnbounded() throws Exception {
+        DownstreamBulkheads bulkheads = DownstreamBulkheads.unbounded();
+        assertNull(bulkheads.getLimit(Downstream.PUBSUB));
+        assertEquals("ok", bulkheads.call(Downstream.PUBSUB, () -> "ok"));
+    }
+
+    @Test
+    public void testNonPositiveLimitsAreNotCapped() {
+        DownstreamBulkheads bulkheads = new DownstreamBulkheads(Map.of(Downstream.GCS, 0, Downstream.PUBSUB, 5), 10);
+        assertNull(bulkheads.getLimit(Downstream.GCS));
+        assertEquals(Integer.valueOf(5), bulkheads.getLimit(Downstream.PUBSUB));
+    }
+}
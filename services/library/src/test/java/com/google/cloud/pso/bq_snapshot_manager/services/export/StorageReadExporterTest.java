@@ -0,0 +1,188 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.export;
+
+import com.google.cloud.Tuple;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.GCSSnapshotFormat;
+import com.google.cloud.pso.bq_snapshot_manager.services.TableReadStreamSourceTestImpl;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StorageReadExporterTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testPrepareFileUri() {
+        assertEquals("gs://backups/a/b/000000000000",
+                StorageReadExporter.prepareFileUri("gs://backups/a/b/*", 0));
+        assertEquals("gs://backups/a/b/000000000012",
+                StorageReadExporter.prepareFileUri("gs://backups/a/b/*", 12));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrepareFileUri_noWildcard() {
+        StorageReadExporter.prepareFileUri("gs://backups/a/b/", 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetAvroCodec_nonAvro() {
+        StorageReadExporter.getAvroCodec(GCSSnapshotFormat.PARQUET);
+    }
+
+    @Test
+    public void testExport() throws IOException, InterruptedException {
+
+        Path root = tempFolder.getRoot().toPath();
+        LocalSnapshotFileSinkImpl sink = new LocalSnapshotFileSinkImpl(root);
+
+        StorageReadExporter exporter = new StorageReadExporter(
+                "project",
+                new TableReadStreamSourceTestImpl(5, 3, 100),
+                sink,
+                4
+        );
+
+        Tuple<Integer, Long> filesAndRows = exporter.export(
+                TableSpec.fromSqlString("project.dataset.table"),
+                1667478075000L,
+                "gs://backups/project/dataset/table/*",
+                GCSSnapshotFormat.AVRO_SNAPPY
+        );
+
+        // streams are capped by the max parallelism
+        assertEquals(Integer.valueOf(4), filesAndRows.x());
+        assertEquals(Long.valueOf(4 * 3 * 100), filesAndRows.y());
+
+        long readRows = 0;
+        for (int i = 0; i < 4; i++) {
+            Path file = sink.toLocalPath(StorageReadExporter.prepareFileUri("gs://backups/project/dataset/table/*", i));
+            assertTrue(Files.exists(file));
+            try (DataFileReader<GenericRecord> reader = new DataFileReader<>(file.toFile(), new GenericDatumReader<>())) {
+                assertEquals("snappy", reader.getMetaString("avro.codec"));
+                while (reader.hasNext()) {
+                    GenericRecord record = reader.next();
+                    assertTrue(record.get("name").toString().startsWith("stream-" + i));
+                    readRows++;
+                }
+            }
+        }
+        assertEquals(4 * 3 * 100, readRows);
+    }
+
+    @Test
+    public void testExport_emptyTable() throws IOException, InterruptedException {
+
+        Path root = tempFolder.getRoot().toPath();
+        LocalSnapshotFileSinkImpl sink = new LocalSnapshotFileSinkImpl(root);
+
+        StorageReadExporter exporter = new StorageReadExporter(
+                "project",
+                new TableReadStreamSourceTestImpl(0, 0, 0),
+                sink,
+                4
+        );
+
+        Tuple<Integer, Long> filesAndRows = exporter.export(
+                TableSpec.fromSqlString("project.dataset.table"),
+                1667478075000L,
+                "gs://backups/empty/*",
+                GCSSnapshotFormat.AVRO
+        );
+
+        assertEquals(Integer.valueOf(1), filesAndRows.x());
+        assertEquals(Long.valueOf(0), filesAndRows.y());
+        assertTrue(Files.exists(sink.toLocalPath("gs://backups/empty/000000000000")));
+    }
+
+    @Test
+    public void testExport_failedStreamDeletesAllFiles() throws IOException, InterruptedException {
+
+        Path root = tempFolder.getRoot().toPath();
+        LocalSnapshotFileSinkImpl sink = new LocalSnapshotFileSinkImpl(root);
+
+        // stream-2 fails after its first block of rows
+        TableReadStreamSourceTestImpl failingSource = new TableReadStreamSourceTestImpl(4, 3, 100) {
+            @Override
+            public Iterator<InputStream> readRowBlocks(String streamName) throws IOException {
+                Iterator<InputStream> blocks = super.readRowBlocks(streamName);
+                if (!streamName.equals("stream-2")) {
+                    return blocks;
+                }
+                return new Iterator<InputStream>() {
+                    private int served = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return true;
+                    }
+
+                    @Override
+                    public InputStream next() {
+                        if (served++ == 1) {
+                            throw new IllegalStateException("stream reset");
+                        }
+                        return blocks.next();
+                    }
+                };
+            }
+        };
+
+        StorageReadExporter exporter = new StorageReadExporter(
+                "project",
+                failingSource,
+                sink,
+                4
+        );
+
+        try {
+            exporter.export(
+                    TableSpec.fromSqlString("project.dataset.table"),
+                    1667478075000L,
+                    "gs://backups/failed/*",
+                    GCSSnapshotFormat.AVRO
+            );
+            fail("Expected the failure of stream-2");
+        } catch (IllegalStateException ex) {
+            assertEquals("stream reset", ex.getMessage());
+        }
+
+        // neither the partial file of the failed stream nor the files of the other streams are left behind
+        for (int i = 0; i < 4; i++) {
+            assertFalse(Files.exists(sink.toLocalPath(StorageReadExporter.prepareFileUri("gs://backups/failed/*", i))));
+        }
+    }
+}
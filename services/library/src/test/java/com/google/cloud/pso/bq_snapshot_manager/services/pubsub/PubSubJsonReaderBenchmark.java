@@ -0,0 +1,114 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.pubsub;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.pso.bq_snapshot_manager.entities.JsonMessage;
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorBatchRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter.SnapshoterRequest;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous controllers' JSON decoding (decode to String, strip backslashes, parse the String)
+ * with parsing directly from the message bytes via PubSubJsonReader.
+ * The GC profiler reports the allocated bytes per operation (gc.alloc.rate.norm).
+ * <p>
+ * Run with: mvn -pl library test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubJsonReaderBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PubSubJsonReaderBenchmark {
+
+    // a single table request from the Configurator and a 50 tables batch from the Dispatcher
+    @Param({"SnapshoterRequest", "ConfiguratorBatchRequest"})
+    public String messageType;
+
+    private final Gson gson = new Gson();
+    private Class<? extends JsonMessage> messageClass;
+    private byte[] data;
+
+    private static JsonMessage sample(String messageType) {
+        if (messageType.equals("SnapshoterRequest")) {
+            return new SnapshoterRequest(
+                    TableSpec.fromSqlString("source-project.dataset.table"),
+                    "1672531200000-T",
+                    "1672531200000-T-6f2d8e2b-3c4a-4c8e-9b1a-0e8d9f7a6b5c",
+                    false,
+                    PubSubMessageCodecTest.samplePolicyAndState()
+            );
+        }
+        List<ConfiguratorRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            requests.add(new ConfiguratorRequest(
+                    TableSpec.fromSqlString(String.format("source-project.dataset.table_%s", i)),
+                    "1672531200000-H",
+                    String.format("1672531200000-H-6f2d8e2b-3c4a-4c8e-9b1a-%012d", i),
+                    false,
+                    false,
+                    Timestamp.parseTimestamp("2023-01-01T00:00:00Z")
+            ));
+        }
+        return new ConfiguratorBatchRequest("1672531200000-H", requests);
+    }
+
+    @Setup
+    public void setup() {
+        JsonMessage message = sample(messageType);
+        messageClass = message.getClass();
+        data = message.toJsonString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public JsonMessage stringDecode() {
+        String requestJsonString = new String(data, StandardCharsets.UTF_8);
+        requestJsonString = requestJsonString.replace("\\", "");
+        return gson.fromJson(requestJsonString, messageClass);
+    }
+
+    @Benchmark
+    public JsonMessage streamingDecode() throws NonRetryableApplicationException {
+        return PubSubJsonReader.read(gson, data, messageClass);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PubSubJsonReaderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.google.cloud.pso.bq_snapshot_manager.services.pubsub;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f01_dispatcher.DispatcherRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorBatchRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter.SnapshoterRequest;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PubSubJsonReaderTest {
+
+    private final Gson gson = new Gson();
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testReadMatchesStringParsing() throws NonRetryableApplicationException {
+        SnapshoterRequest expected = new SnapshoterRequest(
+                TableSpec.fromSqlString("source-project.dataset.table"),
+                "1672531200000-T",
+                "1672531200000-T-6f2d8e2b",
+                false,
+                PubSubMessageCodecTest.samplePolicyAndState()
+        );
+
+        SnapshoterRequest actual = PubSubJsonReader.read(gson, bytes(gson.toJson(expected)), SnapshoterRequest.class);
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testReadKeepsLegitimateEscapes() throws NonRetryableApplicationException {
+        // regexes and quotes in values must survive parsing. Stripping all backslashes used to corrupt them
+        String json = "{\"isForceRun\":true,\"isDryRun\":false,\"bigQueryScope\":{" +
+                "\"tableExcludeList\":[\"p1\\\\.d1\\\\..*\",\"say \\\"hi\\\"\"]}}";
+
+        DispatcherRequest request = PubSubJsonReader.read(gson, bytes(json), DispatcherRequest.class);
+
+        assertTrue(request.isForceRun());
+        assertEquals(Arrays.asList("p1\\.d1\\..*", "say \"hi\""), request.getBigQueryScope().getTableExcludeList());
+    }
+
+    @Test
+    public void testReadEscapedAndDoubleEncodedPayloads() throws NonRetryableApplicationException {
+        String escaped = "{\\\"isForceRun\\\":true,\\\"isDryRun\\\":true,\\\"bigQueryScope\\\":{" +
+                "\\\"projectIncludeList\\\":[\\\"p1\\\"],\\\"tableExcludeList\\\":[\\\"p1\\\\\\\\.d1\\\"]}}";
+        String doubleEncoded = gson.toJson("{\"isForceRun\":true,\"isDryRun\":true,\"bigQueryScope\":{" +
+                "\"projectIncludeList\":[\"p1\"],\"tableExcludeList\":[\"p1\\\\.d1\"]}}");
+
+        for (String payload : Arrays.asList(escaped, doubleEncoded)) {
+            DispatcherRequest request = PubSubJsonReader.read(gson, bytes(payload), DispatcherRequest.class);
+            assertTrue(request.isForceRun());
+            assertTrue(request.isDryRun());
+            assertEquals(Arrays.asList("p1"), request.getBigQueryScope().getProjectIncludeList());
+            assertEquals(Arrays.asList("p1\\.d1"), request.getBigQueryScope().getTableExcludeList());
+        }
+    }
+
+    @Test
+    public void testReadObject() throws NonRetryableApplicationException {
+        JsonObject batch = PubSubJsonReader.readObject(bytes(" {\"runId\":\"1-H\",\"requests\":[]} "));
+
+        assertTrue(batch.has(ConfiguratorBatchRequest.REQUESTS_FIELD));
+        assertEquals("1-H", batch.get("runId").getAsString());
+    }
+
+    @Test
+    public void testInvalidPayloadsAreNotRetryable() {
+        for (String payload : Arrays.asList("", "{\"isDryRun\":", "{} {}", "[1,2]", "not json")) {
+            try {
+                PubSubJsonReader.readObject(bytes(payload));
+                fail("Expected NonRetryableApplicationException for payload " + payload);
+            } catch (NonRetryableApplicationException e) {
+                assertTrue(e.getMessage().contains("Failed to parse"));
+            }
+        }
+        try {
+            PubSubJsonReader.read(gson, bytes(""), DispatcherRequest.class);
+            fail("Expected NonRetryableApplicationException for an empty payload");
+        } catch (NonRetryableApplicationException e) {
+            assertFalse(e.getMessage().isEmpty());
+        }
+    }
+
+    @Test
+    public void testUtf8ReaderDecodesMultiByteCharacters() throws IOException {
+        // 2, 3 and 4 bytes sequences (the emoji is a surrogate pair in UTF-16)
+        String text = "café € 😀 end";
+        byte[] data = bytes(text);
+
+        // read one char at a time to split the surrogate pair across reads
+        PubSubJsonReader.Utf8Reader reader = new PubSubJsonReader.Utf8Reader(data);
+        StringBuilder decoded = new StringBuilder();
+        char[] buffer = new char[1];
+        while (reader.read(buffer, 0, 1) != -1) {
+            decoded.append(buffer[0]);
+        }
+        assertEquals(text, decoded.toString());
+
+        // malformed and truncated sequences are replaced instead of failing
+        byte[] malformed = {'a', (byte) 0xC3, 'b', (byte) 0xE2, (byte) 0x82};
+        char[] all = new char[10];
+        int count = new PubSubJsonReader.Utf8Reader(malformed).read(all, 0, all.length);
+        assertEquals("a\uFFFDb\uFFFD", new String(all, 0, count));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.pubsub;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.JsonMessage;
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter.SnapshoterRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.TaggerRequest;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JSON and binary (v1) encodings of the requests that embed a backup policy.
+ * The encoded sizes are printed before the benchmarks run.
+ * <p>
+ * Run with: mvn -pl library test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubMessageCodecBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PubSubMessageCodecBenchmark {
+
+    @Param({"SnapshoterRequest", "TaggerRequest"})
+    public String messageType;
+
+    private final Gson gson = new Gson();
+    private JsonMessage message;
+    private Class<? extends JsonMessage> messageClass;
+    private String contentType;
+    private byte[] json;
+    private byte[] binary;
+
+    private static JsonMessage sample(String messageType) {
+        if (messageType.equals("SnapshoterRequest")) {
+            return new SnapshoterRequest(
+                    TableSpec.fromSqlString("source-project.dataset.table"),
+                    "1672531200000-T",
+                    "1672531200000-T-6f2d8e2b-3c4a-4c8e-9b1a-0e8d9f7a6b5c",
+                    false,
+                    PubSubMessageCodecTest.samplePolicyAndState()
+            );
+        }
+        return PubSubMessageCodecTest.sampleTaggerRequest();
+    }
+
+    @Setup
+    public void setup() {
+        message = sample(messageType);
+        messageClass = message.getClass();
+        contentType = PubSubMessageCodec.getContentType(message);
+        json = message.toJsonString().getBytes(StandardCharsets.UTF_8);
+        binary = PubSubMessageCodec.encode(message);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return gson.toJson(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public JsonMessage jsonDecode() {
+        return gson.fromJson(new String(json, StandardCharsets.UTF_8), messageClass);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return PubSubMessageCodec.encode(message);
+    }
+
+    @Benchmark
+    public JsonMessage binaryDecode() throws NonRetryableApplicationException {
+        return messageClass == SnapshoterRequest.class ?
+                PubSubMessageCodec.decodeSnapshoterRequest(contentType, binary) :
+                PubSubMessageCodec.decodeTaggerRequest(contentType, binary);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (String messageType : new String[]{"SnapshoterRequest", "TaggerRequest"}) {
+            JsonMessage message = sample(messageType);
+            System.out.printf("%s: JSON %s bytes, binary %s bytes%n",
+                    messageType,
+                    message.toJsonString().getBytes(StandardCharsets.UTF_8).length,
+                    PubSubMessageCodec.encode(message).length);
+        }
+
+        new Runner(new OptionsBuilder()
+                .include(PubSubMessageCodecBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+}
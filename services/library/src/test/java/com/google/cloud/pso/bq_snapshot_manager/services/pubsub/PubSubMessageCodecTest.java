@@ -0,0 +1,196 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.pubsub;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.*;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorBatchRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter.SnapshoterRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.TaggerRequest;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PubSubMessageCodecTest {
+
+    static BackupPolicyAndState samplePolicyAndState() {
+        BackupPolicy policy = new BackupPolicy.BackupPolicyBuilder("0 0 0 * * *",
+                BackupMethod.BOTH,
+                TimeTravelOffsetDays.DAYS_7,
+                BackupConfigSource.SYSTEM,
+                "storage-project")
+                .setBackupOperationProjectPool(Arrays.asList("operation-project-1", "operation-project-2"))
+                .setBigQuerySnapshotExpirationDays(15.0)
+                .setBigQuerySnapshotStorageDataset("backups")
+                .setGcsSnapshotStorageLocation("gs://backups-bucket/snapshots/")
+                .setGcsExportFormat(GCSSnapshotFormat.AVRO_SNAPPY)
+                .setGcsUseAvroLogicalTypes(true)
+                .setGcsSnapshotEngine(GCSSnapshotEngine.STORAGE_READ_API)
+                .build();
+
+        BackupState state = new BackupState(
+                Timestamp.parseTimestamp("2023-01-01T00:00:00.123Z"),
+                "project.backups.table_1672531200000",
+                null
+        );
+        return new BackupPolicyAndState(policy, state);
+    }
+
+    static TaggerRequest sampleTaggerRequest() {
+        return new TaggerRequest(
+                TableSpec.fromSqlString("source-project.dataset.table"),
+                "1672531200000-T",
+                "1672531200000-T-6f2d8e2b-3c4a-4c8e-9b1a-0e8d9f7a6b5c",
+                false,
+                samplePolicyAndState(),
+                BackupMethod.BIGQUERY_SNAPSHOT,
+                TableSpec.fromSqlString("storage-project.backups.table_1672531200000"),
+                null,
+                Timestamp.parseTimestamp("2023-01-02T00:00:00Z")
+        );
+    }
+
+    @Test
+    public void testConfiguratorRequestRoundTrip() throws NonRetryableApplicationException {
+        ConfiguratorRequest expected = new ConfiguratorRequest(
+                TableSpec.fromSqlString("p.d.t"),
+                "run-id",
+                "tracking-id",
+                true,
+                false,
+                Timestamp.parseTimestamp("2023-01-01T10:00:00Z")
+        );
+
+        ConfiguratorRequest actual = PubSubMessageCodec.decodeConfiguratorRequest(
+                PubSubMessageCodec.getContentType(expected),
+                PubSubMessageCodec.encode(expected));
+
+        assertEquals(expected, actual);
+        assertEquals(expected.isForceRun(), actual.isForceRun());
+        assertEquals(expected.getRefTimestamp(), actual.getRefTimestamp());
+    }
+
+    @Test
+    public void testConfiguratorBatchRequestRoundTrip() throws NonRetryableApplicationException {
+        ConfiguratorRequest request1 = new ConfiguratorRequest(TableSpec.fromSqlString("p.d.t1"), "run-id", "tracking-1", false, true, Timestamp.ofTimeSecondsAndNanos(100, 0));
+        ConfiguratorRequest request2 = new ConfiguratorRequest(TableSpec.fromSqlString("p.d.t2"), "run-id", "tracking-2", false, true, Timestamp.ofTimeSecondsAndNanos(100, 0));
+        ConfiguratorBatchRequest expected = new ConfiguratorBatchRequest("run-id", List.of(request1, request2));
+
+        ConfiguratorBatchRequest actual = PubSubMessageCodec.decodeConfiguratorBatchRequest(
+                PubSubMessageCodec.CONFIGURATOR_BATCH_REQUEST,
+                PubSubMessageCodec.encode(expected));
+
+        assertEquals("run-id", actual.getRunId());
+        assertEquals(List.of(request1, request2), actual.getRequests());
+    }
+
+    @Test
+    public void testSnapshoterRequestRoundTrip() throws NonRetryableApplicationException {
+        SnapshoterRequest expected = new SnapshoterRequest(
+                TableSpec.fromSqlString("p.d.t"),
+                "run-id",
+                "tracking-id",
+                false,
+                samplePolicyAndState()
+        );
+
+        SnapshoterRequest actual = PubSubMessageCodec.decodeSnapshoterRequest(
+                PubSubMessageCodec.SNAPSHOTER_REQUEST,
+                PubSubMessageCodec.encode(expected));
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testTaggerRequestRoundTrip() throws NonRetryableApplicationException {
+        TaggerRequest expected = sampleTaggerRequest();
+
+        TaggerRequest actual = PubSubMessageCodec.decodeTaggerRequest(
+                PubSubMessageCodec.TAGGER_REQUEST,
+                PubSubMessageCodec.encode(expected));
+
+        assertEquals(expected, actual);
+        assertNull(actual.getGcsSnapshotUri());
+        assertNull(actual.getBackupPolicyAndState().getLastGcsSnapshotStorageUri());
+    }
+
+    @Test
+    public void testBinaryIsSmallerThanJson() {
+        TaggerRequest request = sampleTaggerRequest();
+        assertTrue(PubSubMessageCodec.encode(request).length * 2 < request.toJsonString().length());
+    }
+
+    @Test
+    public void testDecodeRejectsOtherContentTypes() {
+        ConfiguratorRequest request = new ConfiguratorRequest(TableSpec.fromSqlString("p.d.t"), "r", "t", false, false, Timestamp.now());
+        try {
+            PubSubMessageCodec.decodeConfiguratorRequest(
+                    "application/vnd.bq-backup-manager.configurator-request.v2+protobuf",
+                    PubSubMessageCodec.encode(request));
+            fail("Expected NonRetryableApplicationException");
+        } catch (NonRetryableApplicationException ex) {
+            assertTrue(ex.getMessage().contains("Unsupported message content type"));
+        }
+    }
+
+    @Test
+    public void testDecodeMalformedMessage() {
+        try {
+            PubSubMessageCodec.decodeSnapshoterRequest(PubSubMessageCodec.SNAPSHOTER_REQUEST, new byte[]{0x2A, 0x7F, 0x01});
+            fail("Expected NonRetryableApplicationException");
+        } catch (NonRetryableApplicationException ex) {
+            assertTrue(ex.getMessage().startsWith("Failed to decode binary message"));
+        }
+    }
+
+    @Test
+    public void testDecodeSkipsUnknownFields() throws NonRetryableApplicationException {
+        ConfiguratorRequest expected = new ConfiguratorRequest(TableSpec.fromSqlString("p.d.t"), "r", "t", false, false, Timestamp.ofTimeSecondsAndNanos(1, 0));
+        byte[] encoded = PubSubMessageCodec.encode(expected);
+
+        // append field 99 (string "new") as a newer publisher would
+        byte[] withUnknownField = Arrays.copyOf(encoded, encoded.length + 6);
+        System.arraycopy(new byte[]{(byte) 0x9A, 0x06, 0x03, 'n', 'e', 'w'}, 0, withUnknownField, encoded.length, 6);
+
+        assertEquals(expected, PubSubMessageCodec.decodeConfiguratorRequest(PubSubMessageCodec.CONFIGURATOR_REQUEST, withUnknownField));
+    }
+
+    @Test
+    public void testIsBinary() {
+        assertFalse(PubSubMessageCodec.isBinary(null));
+        assertFalse(PubSubMessageCodec.isBinary(Map.of("other", "value")));
+        assertTrue(PubSubMessageCodec.isBinary(Map.of(PubSubMessageCodec.CONTENT_TYPE_ATTRIBUTE, PubSubMessageCodec.TAGGER_REQUEST)));
+    }
+
+    @Test
+    public void testEncodingFromString() {
+        assertEquals(PubSubMessageEncoding.BINARY, PubSubMessageEncoding.fromString("binary"));
+        assertEquals(PubSubMessageEncoding.JSON, PubSubMessageEncoding.fromString("JSON"));
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.pubsub;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
+import com.google.cloud.pso.bq_snapshot_manager.entities.TableSpec;
+import com.google.cloud.pso.bq_snapshot_manager.entities.backup_policy.*;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorBatchRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f02_configurator.ConfiguratorRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter.SnapshoterRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.TaggerRequest;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks PubSubMessageCodec against the published schema in pubsub_messages_v1.proto: every message encoded by the
+ * codec is parsed with a descriptor built from the .proto file and each schema field must hold the expected value
+ * (i.e. the field numbers, including the BackupPolicy ones, agree). The parsed messages are then re-encoded by
+ * protobuf and decoded by the codec.
+ * <p>
+ * protoc isn't part of the build, so the .proto file is parsed here. This only supports the subset of the
+ * language used by the schema (top-level messages with scalar, message and repeated fields).
+ */
+public class PubSubMessageSchemaTest {
+
+    private static final String SCHEMA_RESOURCE = "/pubsub_messages_v1.proto";
+
+    private static final Map<String, FieldDescriptorProto.Type> SCALAR_TYPES = Map.of(
+            "string", FieldDescriptorProto.Type.TYPE_STRING,
+            "int64", FieldDescriptorProto.Type.TYPE_INT64,
+            "int32", FieldDescriptorProto.Type.TYPE_INT32,
+            "bool", FieldDescriptorProto.Type.TYPE_BOOL
+    );
+
+    private static final Pattern PACKAGE = Pattern.compile("package\\s+([\\w.]+)\\s*;");
+    private static final Pattern MESSAGE = Pattern.compile("message\\s+(\\w+)\\s*\\{([^}]*)}");
+    private static final Pattern FIELD = Pattern.compile("(repeated\\s+)?(\\w+)\\s+(\\w+)\\s*=\\s*(\\d+)\\s*;");
+
+    private final Descriptors.FileDescriptor schema = loadSchema();
+
+    private static Descriptors.FileDescriptor loadSchema() {
+        String text;
+        try (InputStream in = PubSubMessageSchemaTest.class.getResourceAsStream(SCHEMA_RESOURCE)) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8).replaceAll("//[^\n]*", "");
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        Matcher packageMatcher = PACKAGE.matcher(text);
+        assertTrue("No package in " + SCHEMA_RESOURCE, packageMatcher.find());
+        String packageName = packageMatcher.group(1);
+
+        FileDescriptorProto.Builder file = FileDescriptorProto.newBuilder()
+                .setName(SCHEMA_RESOURCE.substring(1))
+                .setPackage(packageName)
+                .setSyntax("proto3");
+
+        Matcher messageMatcher = MESSAGE.matcher(text);
+        while (messageMatcher.find()) {
+            DescriptorProto.Builder message = DescriptorProto.newBuilder().setName(messageMatcher.group(1));
+            String body = messageMatcher.group(2);
+            Matcher fieldMatcher = FIELD.matcher(body);
+            int parsedFields = 0;
+            while (fieldMatcher.find()) {
+                parsedFields++;
+                String type = fieldMatcher.group(2);
+                FieldDescriptorProto.Builder field = FieldDescriptorProto.newBuilder()
+                        .setName(fieldMatcher.group(3))
+                        .setNumber(Integer.parseInt(fieldMatcher.group(4)))
+                        .setLabel(fieldMatcher.group(1) == null ?
+                                FieldDescriptorProto.Label.LABEL_OPTIONAL :
+                                FieldDescriptorProto.Label.LABEL_REPEATED);
+                if (SCALAR_TYPES.containsKey(type)) {
+                    field.setType(SCALAR_TYPES.get(type));
+                } else {
+                    field.setType(FieldDescriptorProto.Type.TYPE_MESSAGE).setTypeName("." + packageName + "." + type);
+                }
+                message.addField(field);
+            }
+            // fail on syntax this parser doesn't understand instead of silently dropping fields
+            assertEquals("Unparsed content in message " + message.getName(),
+                    parsedFields, body.split(";", -1).length - 1);
+            file.addMessageType(message);
+        }
+
+        try {
+            // validates unique field numbers and names and resolves the message types
+            return Descriptors.FileDescriptor.buildFrom(file.build(), new Descriptors.FileDescriptor[0]);
+        } catch (Descriptors.DescriptorValidationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    ////// expected field values by schema field name
+
+    private static Map<String, Object> fields(Timestamp timestamp) {
+        return Map.of("seconds", timestamp.getSeconds(), "nanos", timestamp.getNanos());
+    }
+
+    private static Map<String, Object> fields(TableSpec table) {
+        return Map.of("project", table.getProject(), "dataset", table.getDataset(), "table", table.getTable());
+    }
+
+    private static Map<String, Object> fields(BackupPolicyAndState policyAndState) {
+        return Map.of(
+                // the schema field names are the BackupPolicyFields names
+                "policy", new HashMap<String, Object>(policyAndState.getPolicy().toMap()),
+                "state", Map.of(
+                        "last_backup_at", fields(policyAndState.getLastBackupAt()),
+                        "last_bq_snapshot_storage_uri", policyAndState.getLastBqSnapshotStorageUri(),
+                        "last_gcs_snapshot_storage_uri", policyAndState.getLastGcsSnapshotStorageUri()
+                )
+        );
+    }
+
+    private static Map<String, Object> fields(ConfiguratorRequest request) {
+        return Map.of(
+                "target_table", fields(request.getTargetTable()),
+                "run_id", request.getRunId(),
+                "tracking_id", request.getTrackingId(),
+                "is_dry_run", request.isDryRun(),
+                "is_force_run", request.isForceRun(),
+                "ref_timestamp", fields(request.getRefTimestamp())
+        );
+    }
+
+    ////// samples with all schema fields set to non-default values
+
+    private static BackupPolicyAndState fullPolicyAndState() {
+        BackupPolicy policy = new BackupPolicy.BackupPolicyBuilder("0 0 0 * * *",
+                BackupMethod.BOTH,
+                TimeTravelOffsetDays.DAYS_7,
+                BackupConfigSource.SYSTEM,
+                "storage-project")
+                .setBackupOperationProject("operation-project")
+                .setBackupOperationProjectPool(Arrays.asList("operation-project-1", "operation-project-2"))
+                .setBigQuerySnapshotExpirationDays(15.0)
+                .setBigQuerySnapshotStorageDataset("backups")
+                .setGcsSnapshotStorageLocation("gs://backups-bucket/snapshots/")
+                .setGcsExportFormat(GCSSnapshotFormat.CSV_GZIP)
+                .setGcsCsvDelimiter("|")
+                .setGcsCsvExportHeader(true)
+                .setGcsUseAvroLogicalTypes(false)
+                .setGcsSnapshotEngine(GCSSnapshotEngine.EXTRACT_JOB)
+                .build();
+
+        BackupState state = new BackupState(
+                Timestamp.parseTimestamp("2023-01-01T00:00:00.123Z"),
+                "project.backups.table_1672531200000",
+                "gs://backups-bucket/snapshots/project/dataset/table/1672531200000/"
+        );
+        return new BackupPolicyAndState(policy, state);
+    }
+
+    private static ConfiguratorRequest fullConfiguratorRequest(String table) {
+        return new ConfiguratorRequest(
+                TableSpec.fromSqlString("source-project.dataset." + table),
+                "1672531200000-T",
+                "1672531200000-T-" + table,
+                true,
+                true,
+                Timestamp.parseTimestamp("2023-01-01T10:00:00.5Z")
+        );
+    }
+
+    ////// checks
+
+    private Descriptor messageType(String name) {
+        Descriptor descriptor = schema.findMessageTypeByName(name);
+        assertTrue("No message " + name + " in " + SCHEMA_RESOURCE, descriptor != null);
+        return descriptor;
+    }
+
+    /**
+     * Asserts that the message has no unknown fields and that its schema fields are exactly the expected ones,
+     * with the expected values
+     */
+    @SuppressWarnings("unchecked")
+    private static void assertFields(String path, DynamicMessage message, Map<String, Object> expected) {
+        assertTrue(path + " has fields unknown to the schema: " + message.getUnknownFields(),
+                message.getUnknownFields().asMap().isEmpty());
+
+        Set<String> schemaFields = new HashSet<>();
+        for (FieldDescriptor field : message.getDescriptorForType().getFields()) {
+            schemaFields.add(field.getName());
+        }
+        assertEquals(path + " schema fields", expected.keySet(), schemaFields);
+
+        for (FieldDescriptor field : message.getDescriptorForType().getFields()) {
+            String fieldPath = path + "." + field.getName();
+            Object expectedValue = expected.get(field.getName());
+            Object actualValue = message.getField(field);
+            if (field.isRepeated()) {
+                List<Object> expectedValues = (List<Object>) expectedValue;
+                List<Object> actualValues = (List<Object>) actualValue;
+                assertEquals(fieldPath + " size", expectedValues.size(), actualValues.size());
+                for (int i = 0; i < expectedValues.size(); i++) {
+                    assertValue(fieldPath + "[" + i + "]", field, actualValues.get(i), expectedValues.get(i));
+                }
+            } else {
+                assertTrue(fieldPath + " is not set", message.hasField(field));
+                assertValue(fieldPath, field, actualValue, expectedValue);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void assertValue(String path, FieldDescriptor field, Object actual, Object expected) {
+        if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+            assertFields(path, (DynamicMessage) actual, (Map<String, Object>) expected);
+        } else {
+            assertEquals(path, expected, actual);
+        }
+    }
+
+    private DynamicMessage parseWithSchema(String messageType, byte[] encoded, Map<String, Object> expected)
+            throws InvalidProtocolBufferException {
+        DynamicMessage message = DynamicMessage.parseFrom(messageType(messageType), encoded);
+        assertFields(messageType, message, expected);
+        return message;
+    }
+
+    @Test
+    public void testBackupPolicyFieldNames() {
+        Set<String> policyFields = new HashSet<>();
+        for (BackupPolicyFields field : BackupPolicyFields.values()) {
+            policyFields.add(field.toString());
+        }
+        for (FieldDescriptor field : messageType("BackupPolicy").getFields()) {
+            assertTrue("Unknown BackupPolicy field " + field.getName(), policyFields.contains(field.getName()));
+        }
+        // the sample policy sets every field of the schema, so that testSnapshoterRequest checks all field numbers
+        assertEquals(
+                messageType("BackupPolicy").getFields().size(),
+                fullPolicyAndState().getPolicy().toMap().size());
+    }
+
+    @Test
+    public void testConfiguratorRequest() throws IOException, NonRetryableApplicationException {
+        ConfiguratorRequest expected = fullConfiguratorRequest("t1");
+
+        DynamicMessage message = parseWithSchema("ConfiguratorRequest", PubSubMessageCodec.encode(expected), fields(expected));
+
+        ConfiguratorRequest actual = PubSubMessageCodec.decodeConfiguratorRequest(
+                PubSubMessageCodec.CONFIGURATOR_REQUEST, message.toByteArray());
+        assertEquals(expected, actual);
+        assertEquals(expected.isForceRun(), actual.isForceRun());
+        assertEquals(expected.getRefTimestamp(), actual.getRefTimestamp());
+    }
+
+    @Test
+    public void testConfiguratorBatchRequest() throws IOException, NonRetryableApplicationException {
+        List<ConfiguratorRequest> requests = List.of(fullConfiguratorRequest("t1"), fullConfiguratorRequest("t2"));
+        ConfiguratorBatchRequest expected = new ConfiguratorBatchRequest("1672531200000-T", requests);
+
+        List<Object> requestFields = new ArrayList<>();
+        for (ConfiguratorRequest request : requests) {
+            requestFields.add(fields(request));
+        }
+        DynamicMessage message = parseWithSchema("ConfiguratorBatchRequest", PubSubMessageCodec.encode(expected),
+                Map.of("run_id", expected.getRunId(), "requests", requestFields));
+
+        ConfiguratorBatchRequest actual = PubSubMessageCodec.decodeConfiguratorBatchRequest(
+                PubSubMessageCodec.CONFIGURATOR_BATCH_REQUEST, message.toByteArray());
+        assertEquals(expected.getRunId(), actual.getRunId());
+        assertEquals(requests, actual.getRequests());
+    }
+
+    @Test
+    public void testSnapshoterRequest() throws IOException, NonRetryableApplicationException {
+        SnapshoterRequest expected = new SnapshoterRequest(
+                TableSpec.fromSqlString("source-project.dataset.table"),
+                "1672531200000-T",
+                "1672531200000-T-tracking",
+                true,
+                fullPolicyAndState()
+        );
+
+        DynamicMessage message = parseWithSchema("SnapshoterRequest", PubSubMessageCodec.encode(expected), Map.of(
+                "target_table", fields(expected.getTargetTable()),
+                "run_id", expected.getRunId(),
+                "tracking_id", expected.getTrackingId(),
+                "is_dry_run", expected.isDryRun(),
+                "backup_policy_and_state", fields(expected.getBackupPolicyAndState())
+        ));
+
+        SnapshoterRequest actual = PubSubMessageCodec.decodeSnapshoterRequest(
+                PubSubMessageCodec.SNAPSHOTER_REQUEST, message.toByteArray());
+        assertEquals(expected, actual);
+        assertEquals(expected.getBackupPolicyAndState().getPolicy(), actual.getBackupPolicyAndState().getPolicy());
+    }
+
+    @Test
+    public void testTaggerRequest() throws IOException, NonRetryableApplicationException {
+        TaggerRequest expected = new TaggerRequest(
+                TableSpec.fromSqlString("source-project.dataset.table"),
+                "1672531200000-T",
+                "1672531200000-T-tracking",
+                true,
+                fullPolicyAndState(),
+                BackupMethod.BOTH,
+                TableSpec.fromSqlString("storage-project.backups.table_1672531200000"),
+                "gs://backups-bucket/snapshots/source-project/dataset/table/1672531200000/",
+                Timestamp.parseTimestamp("2023-01-02T00:00:00.25Z")
+        );
+
+        Map<String, Object> expectedFields = new HashMap<>();
+        expectedFields.put("target_table", fields(expected.getTargetTable()));
+        expectedFields.put("run_id", expected.getRunId());
+        expectedFields.put("tracking_id", expected.getTrackingId());
+        expectedFields.put("is_dry_run", expected.isDryRun());
+        expectedFields.put("backup_policy_and_state", fields(expected.getBackupPolicyAndState()));
+        expectedFields.put("applied_backup_method", expected.getAppliedBackupMethod().name());
+        expectedFields.put("bigquery_snapshot_table_spec", fields(expected.getBigQuerySnapshotTableSpec()));
+        expectedFields.put("gcs_snapshot_uri", expected.getGcsSnapshotUri());
+        expectedFields.put("last_backup_at", fields(expected.getLastBackUpAt()));
+        DynamicMessage message = parseWithSchema("TaggerRequest", PubSubMessageCodec.encode(expected), expectedFields);
+
+        TaggerRequest actual = PubSubMessageCodec.decodeTaggerRequest(
+                PubSubMessageCodec.TAGGER_REQUEST, message.toByteArray());
+        assertEquals(expected, actual);
+        assertEquals(expected.getGcsSnapshotUri(), actual.getGcsSnapshotUri());
+        assertEquals(expected.getLastBackUpAt(), actual.getLastBackUpAt());
+    }
+}
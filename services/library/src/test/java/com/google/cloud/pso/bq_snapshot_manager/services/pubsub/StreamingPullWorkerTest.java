@@ -0,0 +1,94 @@
+/*
+ *
+ *  * Copyright 2023 Google LLC
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     https://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package com.google.cloud.pso.bq_snapshot_manager.services.pubsub;
+
+import com.google.cloud.pso.bq_snapshot_manager.entities.PubSubEvent;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.LoggingHelper;
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class StreamingPullWorkerTest {
+
+    private final LoggingHelper logger = new LoggingHelper(
+            StreamingPullWorkerTest.class.getSimpleName(), 0, "test", "bq_backup_manager");
+
+    private final PubSubEvent event = StreamingPullWorker.toPubSubEvent(
+            "msg-1",
+            Timestamp.newBuilder().setSeconds(1672531200).setNanos(500000000).build(),
+            ByteString.copyFromUtf8("{\"runId\":\"1-A\"}"),
+            Map.of("key", "value")
+    );
+
+    private static class TestAckReplyConsumer implements AckReplyConsumer {
+        private String reply = null;
+
+        @Override
+        public void ack() {
+            reply = "ack";
+        }
+
+        @Override
+        public void nack() {
+            reply = "nack";
+        }
+    }
+
+    private String replyTo(PubSubMessageHandler handler) {
+        StreamingPullConfig config = new StreamingPullConfig("projects/p/subscriptions/s", 10, 1024, 1, 1, 1);
+        TestAckReplyConsumer consumer = new TestAckReplyConsumer();
+        new StreamingPullWorker(config, handler, logger).receiveMessage(event, consumer);
+        return consumer.reply;
+    }
+
+    @Test
+    public void testReceiveMessageAcksSuccessAndNonRetryableErrors() {
+        // controllers return 200 for success and for non-retryable errors
+        assertEquals("ack", replyTo(event -> new ResponseEntity("done", HttpStatus.OK)));
+    }
+
+    @Test
+    public void testReceiveMessageNacksRetryableErrors() {
+        // controllers return 429 for retryable errors
+        assertEquals("nack", replyTo(event -> new ResponseEntity("retry", HttpStatus.TOO_MANY_REQUESTS)));
+    }
+
+    @Test
+    public void testReceiveMessageNacksUnhandledExceptions() {
+        assertEquals("nack", replyTo(event -> {
+            throw new RuntimeException("unexpected");
+        }));
+    }
+
+    @Test
+    public void testToPubSubEvent() {
+        PubSubEvent.Message actual = event.getMessage();
+
+        assertEquals("msg-1", actual.getMessageId());
+        assertEquals("2023-01-01T00:00:00.500Z", actual.getPublishTime());
+        assertEquals("{\"runId\":\"1-A\"}", actual.dataToUtf8String());
+        assertEquals("value", actual.getAttributes().get("key"));
+    }
+}
@@ -26,10 +26,20 @@ import com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter.Snapsho
 import com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter.BigQuerySnapshoterResponse;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.ControllerExceptionHelper;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.LoggingHelper;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.ServiceCallInstrumentation;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.TrackingHelper;
+import com.google.cloud.pso.bq_snapshot_manager.services.bq.AdaptiveConcurrencyLimiter;
 import com.google.cloud.pso.bq_snapshot_manager.services.bq.BigQueryServiceImpl;
+import com.google.cloud.pso.bq_snapshot_manager.services.bq.ConcurrencyLimitedBigQueryService;
+import com.google.cloud.pso.bq_snapshot_manager.services.bq.OperationProjectScheduler;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads;
 import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubServiceImpl;
+import com.google.cloud.pso.bq_snapshot_manager.services.map.GcsPersistentMapImpl;
 import com.google.cloud.pso.bq_snapshot_manager.services.set.GCSPersistentSetImpl;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubMessageHandler;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubJsonReader;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubMessageCodec;
 import com.google.gson.Gson;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -42,15 +52,22 @@ import org.springframework.web.bind.annotation.RestController;
 
 @SpringBootApplication(scanBasePackages = "com.google.cloud.pso.bq_snapshot_manager")
 @RestController
-public class BigQuerySnapshoterController {
+public class BigQuerySnapshoterController implements PubSubMessageHandler {
 
     private final LoggingHelper logger;
+    private final ServiceCallInstrumentation serviceCallInstrumentation;
 
     private static final Integer functionNumber = 3;
 
     private Gson gson;
     Environment environment;
 
+    // shared across requests so that the limits adapt to the load of the whole instance
+    private final AdaptiveConcurrencyLimiter jobConcurrencyLimiter;
+    private final OperationProjectScheduler operationProjectScheduler;
+    // caps the concurrent calls per downstream API across all requests of the instance
+    private final DownstreamBulkheads bulkheads;
+
     public BigQuerySnapshoterController() {
 
         gson = new Gson();
@@ -61,11 +78,38 @@ public class BigQuerySnapshoterController {
                 environment.getProjectId(),
                 environment.getApplicationName()
         );
+
+        serviceCallInstrumentation = new ServiceCallInstrumentation(
+                environment.isServiceCallInstrumentationEnabled(),
+                logger,
+                environment.getSlowCallThresholdMs()
+        );
+        bulkheads = DownstreamBulkheads.fromEnv();
+        logger.logInfoWithTracker(
+                TrackingHelper.MIN_RUN_ID,
+                null,
+                String.format("Running I/O calls with %s", bulkheads)
+        );
+        jobConcurrencyLimiter = new AdaptiveConcurrencyLimiter(
+                environment.getJobConcurrencyInitialLimit(),
+                environment.getJobConcurrencyMinLimit(),
+                environment.getJobConcurrencyMaxLimit(),
+                AdaptiveConcurrencyLimiter.DEFAULT_BACKOFF_RATIO,
+                environment.getJobConcurrencyMaxWaitMs()
+        );
+        operationProjectScheduler = new OperationProjectScheduler(
+                jobConcurrencyLimiter,
+                bulkheads.wrapPersistentMap(serviceCallInstrumentation.wrapPersistentMap(new GcsPersistentMapImpl(environment.getGcsFlagsBucket()))),
+                "snapshoter-bq-operation-projects"
+        );
     }
 
+    @Override
     @RequestMapping(value = "/", method = RequestMethod.POST)
     public ResponseEntity receiveMessage(@RequestBody PubSubEvent requestBody) {
 
+        long startNanos = System.nanoTime();
+
         String trackingId = TrackingHelper.MIN_RUN_ID;
 
         // These values will be updated based on the execution flow and logged at the end
@@ -84,24 +128,36 @@ public class BigQuerySnapshoterController {
                 throw new NonRetryableApplicationException("Request body or message is Null.");
             }
 
-            String requestJsonString = requestBody.getMessage().dataToUtf8String();
-
-            // remove any escape characters (e.g. from Terraform
-            requestJsonString = requestJsonString.replace("\\", "");
-
-            logger.logInfoWithTracker(trackingId, null, String.format("Received payload: %s", requestJsonString));
-
-            snapshoterRequest = gson.fromJson(requestJsonString, SnapshoterRequest.class);
+            PubSubEvent.Message message = requestBody.getMessage();
+            if (PubSubMessageCodec.isBinary(message.getAttributes())) {
+                // binary messages are logged once parsed
+                snapshoterRequest = PubSubMessageCodec.decodeSnapshoterRequest(
+                        PubSubMessageCodec.getContentType(message.getAttributes()),
+                        message.getData()
+                );
+            } else {
+                // JSON messages are parsed straight from the message bytes and logged once parsed
+                snapshoterRequest = PubSubJsonReader.read(gson, message.getData(), SnapshoterRequest.class);
+            }
 
             trackingId =  snapshoterRequest.getTrackingId();
 
             logger.logInfoWithTracker(snapshoterRequest.isDryRun(), trackingId, snapshoterRequest.getTargetTable(), String.format("Parsed Request: %s",  snapshoterRequest.toString()));
 
+            // resolve the project once so that all operations of this request run (and are billed) on the same project
+            String operationProject = snapshoterRequest.computeBackupOperationProject(operationProjectScheduler);
+
             BigQuerySnapshoter snapshoter = new BigQuerySnapshoter(
                     environment.toConfig(),
-                    new BigQueryServiceImpl(snapshoterRequest.computeBackupOperationProject()),
-                    new PubSubServiceImpl(),
-                    new GCSPersistentSetImpl(environment.getGcsFlagsBucket()),
+                    // instrumented inside the limiter so that the latency excludes the wait for a permit.
+                    // The bulkhead stays outside the limiter so that a saturated bulkhead doesn't shrink the job limit
+                    bulkheads.wrapBigQueryService(new ConcurrencyLimitedBigQueryService(
+                            serviceCallInstrumentation.wrapBigQueryService(new BigQueryServiceImpl(operationProject)),
+                            jobConcurrencyLimiter,
+                            operationProject
+                    )),
+                    bulkheads.wrapPubSubService(serviceCallInstrumentation.wrapPubSubService(new PubSubServiceImpl(environment.getPubSubMessageEncoding()))),
+                    bulkheads.wrapPersistentSet(serviceCallInstrumentation.wrapPersistentSet(new GCSPersistentSetImpl(environment.getGcsFlagsBucket()))),
                     "snapshoter-bq-flags",
                     functionNumber);
 
@@ -139,6 +195,8 @@ public class BigQuerySnapshoterController {
                 isRetryableError
         );
 
+        PipelineMetrics.global().recordStage("snapshoter-bq", isSuccess, isRetryableError, startNanos);
+
         return responseEntity;
     }
 
@@ -19,6 +19,7 @@ package com.google.cloud.pso.bq_snapshot_manager.snapshoter_bq;
 
 import com.google.cloud.pso.bq_snapshot_manager.functions.f03_snapshoter.SnapshoterConfig;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.Utils;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubMessageEncoding;
 
 public class Environment {
 
@@ -46,4 +47,35 @@ public class Environment {
     public String getApplicationName(){
         return Utils.getConfigFromEnv("APPLICATION_NAME", true);
     }
+
+    // adaptive concurrency limits for BigQuery job submissions per backup operation project (per instance)
+    public Integer getJobConcurrencyInitialLimit(){
+        return Utils.getConfigFromEnv("JOB_CONCURRENCY_INITIAL_LIMIT", 10);
+    }
+
+    public Integer getJobConcurrencyMinLimit(){
+        return Utils.getConfigFromEnv("JOB_CONCURRENCY_MIN_LIMIT", 1);
+    }
+
+    public Integer getJobConcurrencyMaxLimit(){
+        return Utils.getConfigFromEnv("JOB_CONCURRENCY_MAX_LIMIT", 80);
+    }
+
+    public Integer getJobConcurrencyMaxWaitMs(){
+        return Utils.getConfigFromEnv("JOB_CONCURRENCY_MAX_WAIT_MS", 10000);
+    }
+
+    public PubSubMessageEncoding getPubSubMessageEncoding(){
+        return PubSubMessageEncoding.fromEnv();
+    }
+
+    // wraps the services in decorators that record the latency and outcome of each call
+    public boolean isServiceCallInstrumentationEnabled(){
+        return Utils.getBooleanConfigFromEnv("SERVICE_CALL_INSTRUMENTATION_ENABLED", true);
+    }
+
+    // service calls slower than this are logged. 0 disables the slow call logs
+    public Integer getSlowCallThresholdMs(){
+        return Utils.getConfigFromEnv("SLOW_CALL_THRESHOLD_MS", 5000);
+    }
 }
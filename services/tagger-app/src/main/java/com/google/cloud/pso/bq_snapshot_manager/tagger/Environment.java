@@ -48,4 +48,19 @@ public class Environment {
     public String getGcsBackupPoliciesBucket(){
         return Utils.getConfigFromEnv("GCS_BACKUP_POLICIES_BUCKET", true);
     }
+
+    // 0 disables the write-behind buffer and each request writes its own update
+    public Integer getWriteBehindWindowMs(){
+        return Utils.getConfigFromEnv("TAGGER_WRITE_BEHIND_WINDOW_MS", 0);
+    }
+
+    // wraps the services in decorators that record the latency and outcome of each call
+    public boolean isServiceCallInstrumentationEnabled(){
+        return Utils.getBooleanConfigFromEnv("SERVICE_CALL_INSTRUMENTATION_ENABLED", true);
+    }
+
+    // service calls slower than this are logged. 0 disables the slow call logs
+    public Integer getSlowCallThresholdMs(){
+        return Utils.getConfigFromEnv("SLOW_CALL_THRESHOLD_MS", 5000);
+    }
 }
@@ -20,20 +20,28 @@ package com.google.cloud.pso.bq_snapshot_manager.tagger;
 import com.google.cloud.Tuple;
 import com.google.cloud.pso.bq_snapshot_manager.entities.NonRetryableApplicationException;
 import com.google.cloud.pso.bq_snapshot_manager.entities.PubSubEvent;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.BigQueryJobCompletedEvent;
 import com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.Tagger;
 import com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.TaggerResponse;
 import com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.TaggerRequest;
+import com.google.cloud.pso.bq_snapshot_manager.functions.f04_tagger.TaggerRequestLookup;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.ControllerExceptionHelper;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.LoggingHelper;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.PipelineMetrics;
+import com.google.cloud.pso.bq_snapshot_manager.helpers.ServiceCallInstrumentation;
 import com.google.cloud.pso.bq_snapshot_manager.helpers.TrackingHelper;
 import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.BackupPolicyService;
 import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.BackupPolicyServiceGCSImpl;
+import com.google.cloud.pso.bq_snapshot_manager.services.backup_policy.BackupPolicyWriteBehindBuffer;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.DownstreamBulkheads;
+import com.google.cloud.pso.bq_snapshot_manager.services.concurrency.IoExecutors;
 import com.google.cloud.pso.bq_snapshot_manager.services.map.GcsPersistentMapImpl;
-import com.google.cloud.pso.bq_snapshot_manager.services.map.PersistentMap;
 import com.google.cloud.pso.bq_snapshot_manager.services.set.GCSPersistentSetImpl;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubMessageHandler;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubMessageCodec;
+import com.google.cloud.pso.bq_snapshot_manager.services.pubsub.PubSubJsonReader;
 import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import jakarta.annotation.PreDestroy;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.http.HttpStatus;
@@ -43,14 +51,26 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+
 @SpringBootApplication(scanBasePackages = "com.google.cloud.pso.bq_snapshot_manager")
 @RestController
-public class TaggerController {
+public class TaggerController implements PubSubMessageHandler {
 
     private final LoggingHelper logger;
+    private final ServiceCallInstrumentation serviceCallInstrumentation;
     private static final Integer functionNumber = 4;
     private Gson gson;
     Environment environment;
+    // shared by all requests to write the policy and state files concurrently
+    private final ExecutorService ioExecutor;
+    // caps the concurrent calls per downstream API across all requests of the instance
+    private final DownstreamBulkheads bulkheads;
+    // null if the write-behind buffer is disabled
+    private final BackupPolicyWriteBehindBuffer policyWriteBuffer;
+    // reads the requests stored by the GCS Snapshoter with one client for all requests
+    private final TaggerRequestLookup taggerRequestLookup;
 
     public TaggerController() {
 
@@ -62,11 +82,48 @@ public class TaggerController {
                 environment.getProjectId(),
                 environment.getApplicationName()
         );
+
+        serviceCallInstrumentation = new ServiceCallInstrumentation(
+                environment.isServiceCallInstrumentationEnabled(),
+                logger,
+                environment.getSlowCallThresholdMs()
+        );
+
+        ioExecutor = IoExecutors.newIoExecutor("tagger-io");
+        bulkheads = DownstreamBulkheads.fromEnv();
+        logger.logInfoWithTracker(
+                TrackingHelper.MIN_RUN_ID,
+                null,
+                String.format("Running I/O calls with %s", bulkheads)
+        );
+        taggerRequestLookup = new TaggerRequestLookup(
+                bulkheads.wrapPersistentMap(serviceCallInstrumentation.wrapPersistentMap(new GcsPersistentMapImpl(environment.getGcsFlagsBucket()))),
+                environment.getApplicationName()
+        );
+
+        int writeBehindWindowMs = environment.getWriteBehindWindowMs();
+        if (writeBehindWindowMs > 0) {
+            // the bulkhead wraps the flushed service and not the buffer, so that buffered calls don't hold a permit
+            policyWriteBuffer = new BackupPolicyWriteBehindBuffer(
+                    bulkheads.wrapBackupPolicyService(serviceCallInstrumentation.wrapBackupPolicyService(
+                            new BackupPolicyServiceGCSImpl(environment.getGcsBackupPoliciesBucket(), ioExecutor)
+                    )),
+                    writeBehindWindowMs,
+                    ioExecutor
+            );
+        } else {
+            policyWriteBuffer = null;
+        }
+        logger.logInfoWithTracker(TrackingHelper.MIN_RUN_ID, null,
+                String.format("Backup policy write-behind window is %s ms", writeBehindWindowMs));
     }
 
+    @Override
     @RequestMapping(value = "/", method = RequestMethod.POST)
     public ResponseEntity receiveMessage(@RequestBody PubSubEvent requestBody) {
 
+        long startNanos = System.nanoTime();
+
         String trackingId = TrackingHelper.MIN_RUN_ID;
         BackupPolicyService backupPolicyService = null;
 
@@ -86,53 +143,62 @@ public class TaggerController {
                 throw new NonRetryableApplicationException("Request body or message is Null.");
             }
 
-            String requestJsonString = requestBody.getMessage().dataToUtf8String();
+            PubSubEvent.Message message = requestBody.getMessage();
 
-            logger.logInfoWithTracker(trackingId, null, String.format("Received payload: %s", requestJsonString));
+            backupPolicyService = policyWriteBuffer != null ?
+                    policyWriteBuffer :
+                    bulkheads.wrapBackupPolicyService(serviceCallInstrumentation.wrapBackupPolicyService(
+                            new BackupPolicyServiceGCSImpl(environment.getGcsBackupPoliciesBucket(), ioExecutor)
+                    ));
 
             // The received pubsub message could have been sent by two different sources
-            // 1. BigQuery Snapshoter: as a TaggerRequest JSON payload
+            // 1. BigQuery Snapshoter: as a TaggerRequest JSON or binary payload
             // 2. From a log sink listening for BQ export job completion events. These jobs are originally submitted by the GCS Snapshoter
 
-            boolean isGCSExportJobMessage = isGCSExportJobMessage(requestJsonString);
-            if(isGCSExportJobMessage){
-                // parse the pubsub request as a BQ Export job completion notification
-
-                String jobId = getGcsExportJobId(requestJsonString);
-                String jobProjectId = getGcsExportJobProjectId(requestJsonString);
-                trackingId = TrackingHelper.parseTrackingIdFromBQExportJobId(jobId);
-                boolean isSuccessfulJob = isSuccessfulJob(requestJsonString);
-                String jobError = getGcsExportJobError(requestJsonString);
-
-                PersistentMap persistentMap = new GcsPersistentMapImpl(environment.getGcsFlagsBucket());
-                String taggerRequestFile = String.format("%s/%s", "snapshoter-gcs-tagger-requests", jobId);
-                String taggerRequestJson = persistentMap.get(taggerRequestFile);
-                taggerRequest = gson.fromJson(taggerRequestJson, TaggerRequest.class);
-
-                // After parsing the taggerRequest for tracking, throw a non retryable exception if the backup job failed
-                if (!isSuccessfulJob){
-                    String msg = String.format("GCS export job '%s' on project '%s' has failed with error `%s`. Please check the BigQuery logs in the backup project where the job ran.",
-                            jobId,
-                            jobProjectId,
-                            jobError
-                    );
-                    throw new NonRetryableApplicationException(msg);
+            if (PubSubMessageCodec.isBinary(message.getAttributes())) {
+                // binary messages are logged once parsed
+                taggerRequest = PubSubMessageCodec.decodeTaggerRequest(
+                        PubSubMessageCodec.getContentType(message.getAttributes()),
+                        message.getData()
+                );
+            } else {
+                // a log sink event is parsed in one pass. Other JSON payloads are parsed as a TaggerRequest
+                BigQueryJobCompletedEvent jobEvent = BigQueryJobCompletedEvent.parse(message.getData());
+                if(jobEvent != null){
+                    // parse the pubsub request as a BQ Export job completion notification
+
+                    String jobId = jobEvent.getJobId();
+                    trackingId = TrackingHelper.parseTrackingIdFromBQExportJobId(jobId);
+
+                    logger.logInfoWithTracker(trackingId, null, () -> String.format("Received job completion event: %s", jobEvent));
+
+                    // rebuilt from the event and job labels, or read from the requests stored by the GCS Snapshoter
+                    taggerRequest = taggerRequestLookup.lookup(jobEvent, backupPolicyService);
+
+                    // After parsing the taggerRequest for tracking, throw a non retryable exception if the backup job failed
+                    if (!jobEvent.isSuccessful()){
+                        String msg = String.format("GCS export job '%s' on project '%s' has failed with error `%s`. Please check the BigQuery logs in the backup project where the job ran.",
+                                jobId,
+                                jobEvent.getProjectId(),
+                                jobEvent.getErrorMessage()
+                        );
+                        throw new NonRetryableApplicationException(msg);
+                    }
+
+                }else{
+                    // parse the pubsub request as a taggerRequest (from BQ Snapshoter)
+                    taggerRequest = PubSubJsonReader.read(gson, message.getData(), TaggerRequest.class);
                 }
-
-            }else{
-                // parse the pubsub request as a taggerRequest (from BQ Snapshoter)
-                taggerRequest = gson.fromJson(requestJsonString, TaggerRequest.class);
             }
 
             trackingId = taggerRequest.getTrackingId();
 
             logger.logInfoWithTracker(taggerRequest.isDryRun(), trackingId, taggerRequest.getTargetTable(), String.format("Parsed Request: %s", taggerRequest.toString()));
 
-            backupPolicyService = new BackupPolicyServiceGCSImpl(environment.getGcsBackupPoliciesBucket());
             Tagger tagger = new Tagger(
                     environment.toConfig(),
                     backupPolicyService,
-                    new GCSPersistentSetImpl(environment.getGcsFlagsBucket()),
+                    bulkheads.wrapPersistentSet(serviceCallInstrumentation.wrapPersistentSet(new GCSPersistentSetImpl(environment.getGcsFlagsBucket()))),
                     "tagger-flags",
                     functionNumber
             );
@@ -157,7 +223,8 @@ public class TaggerController {
             error = e;
 
         }finally {
-            if(backupPolicyService != null){
+            // the write-behind buffer is shared by all requests and flushed on shutdown
+            if(backupPolicyService != null && backupPolicyService != policyWriteBuffer){
                 backupPolicyService.shutdown();
             }
         }
@@ -175,80 +242,61 @@ public class TaggerController {
                 isRetryableError
         );
 
+        PipelineMetrics.global().recordStage("tagger", isSuccess, isRetryableError, startNanos);
+
         return responseEntity;
     }
 
+    @PreDestroy
+    public void shutdown() {
+        // write the buffered updates before the instance stops. Their requests are still waiting for them
+        if (policyWriteBuffer != null) {
+            policyWriteBuffer.shutdown();
+        }
+        ioExecutor.shutdown();
+    }
+
     public boolean isGCSExportJobMessage(String jsonStr){
         try{
-            getGcsExportJobId(jsonStr);
+            parseJobCompletedEvent(jsonStr);
             return true;
         }catch (Exception ex){
             return false;
         }
     }
 
-    public static String getGcsExportJobError(String jsonStr){
-
-        JsonObject errorObject =  JsonParser.parseString(jsonStr)
-                .getAsJsonObject().get("protoPayload")
-                .getAsJsonObject().get("serviceData")
-                .getAsJsonObject().get("jobCompletedEvent")
-                .getAsJsonObject().get("job")
-                .getAsJsonObject().get("jobStatus")
-                .getAsJsonObject().get("error").getAsJsonObject();
-
-        if(errorObject.has("message")){
-            return errorObject.get("message").getAsString();
-        }else{
-            return "";
-        }
+    public static String getGcsExportJobError(String jsonStr) {
+        String error = parseJobCompletedEvent(jsonStr).getErrorMessage();
+        return error == null ? "" : error;
     }
 
-    public static boolean isSuccessfulJob(String jsonStr){
-
-        // if job has error message then it's not successful
-        return !JsonParser.parseString(jsonStr)
-                .getAsJsonObject().get("protoPayload")
-                .getAsJsonObject().get("serviceData")
-                .getAsJsonObject().get("jobCompletedEvent")
-                .getAsJsonObject().get("job")
-                .getAsJsonObject().get("jobStatus")
-                .getAsJsonObject().get("error")
-                .getAsJsonObject().has("message");
+    public static boolean isSuccessfulJob(String jsonStr) {
+        return parseJobCompletedEvent(jsonStr).isSuccessful();
     }
 
-    public static String getGcsExportJobId(String jsonStr){
-
-        return JsonParser.parseString(jsonStr)
-                .getAsJsonObject().get("protoPayload")
-                .getAsJsonObject().get("serviceData")
-                .getAsJsonObject().get("jobCompletedEvent")
-                .getAsJsonObject().get("job")
-                .getAsJsonObject().get("jobName")
-                .getAsJsonObject().get("jobId").getAsString();
+    public static String getGcsExportJobId(String jsonStr) {
+        return parseJobCompletedEvent(jsonStr).getJobId();
     }
 
-    public static String getGcsExportJobProjectId(String jsonStr){
-
-        return JsonParser.parseString(jsonStr)
-                .getAsJsonObject().get("protoPayload")
-                .getAsJsonObject().get("serviceData")
-                .getAsJsonObject().get("jobCompletedEvent")
-                .getAsJsonObject().get("job")
-                .getAsJsonObject().get("jobName")
-                .getAsJsonObject().get("projectId").getAsString();
+    public static String getGcsExportJobProjectId(String jsonStr) {
+        return parseJobCompletedEvent(jsonStr).getProjectId();
     }
 
-    public static String getGcsExportJobLabel(String jsonStr, String label){
+    public static String getGcsExportJobLabel(String jsonStr, String label) {
+        return parseJobCompletedEvent(jsonStr).getLabel(label);
+    }
 
-        return JsonParser.parseString(jsonStr)
-                .getAsJsonObject().get("protoPayload")
-                .getAsJsonObject().get("serviceData")
-                .getAsJsonObject().get("jobCompletedEvent")
-                .getAsJsonObject().get("job")
-                .getAsJsonObject().get("jobConfiguration")
-                .getAsJsonObject().get("labels").getAsJsonObject()
-                .get(label).getAsString();
+    // the helpers above parse the event on each call. The request flow parses it once via BigQueryJobCompletedEvent
+    private static BigQueryJobCompletedEvent parseJobCompletedEvent(String jsonStr) {
+        try {
+            BigQueryJobCompletedEvent event = BigQueryJobCompletedEvent.parse(jsonStr.getBytes(StandardCharsets.UTF_8));
+            if (event == null) {
+                throw new IllegalArgumentException("Not a BigQuery job completion event");
+            }
+            return event;
+        } catch (NonRetryableApplicationException ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
     }
 
     public static void main(String[] args) {
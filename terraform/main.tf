@@ -84,6 +84,38 @@ locals {
     {
       name = "APPLICATION_NAME",
       value = var.application_name
+    },
+    {
+      name = "PUBSUB_MESSAGE_ENCODING",
+      value = var.pubsub_message_encoding
+    },
+    {
+      name = "LOG_APPENDER_PROFILE",
+      value = var.log_appender_profile
+    },
+    {
+      name = "LOG_ASYNC_QUEUE_SIZE",
+      value = tostring(var.log_async_queue_size)
+    },
+    {
+      name = "UNIFIED_LOG_FORMAT",
+      value = var.unified_log_format
+    },
+    {
+      name = "UNIFIED_LOG_MAX_JSON_BYTES",
+      value = tostring(var.unified_log_max_json_bytes)
+    },
+    {
+      name = "MANAGEMENT_ENDPOINTS_WEB_EXPOSURE_INCLUDE",
+      value = var.actuator_exposed_endpoints
+    },
+    {
+      name = "SERVICE_CALL_INSTRUMENTATION_ENABLED",
+      value = tostring(var.service_call_instrumentation_enabled)
+    },
+    {
+      name = "SLOW_CALL_THRESHOLD_MS",
+      value = tostring(var.slow_call_threshold_ms)
     }
   ]
 
@@ -99,7 +131,22 @@ locals {
     local.fallback_policy_dataset_level_backup_op_projects,
     local.fallback_policy_table_level_backup_op_projects
   ))
-  all_backup_op_projects = [for e in distinct(concat(var.additional_backup_operation_projects, local.fallback_policy_backup_op_projects)): e if e != null]
+  # projects listed in the comma separated backup_operation_project_pool field on all fallback policy levels
+  fallback_policy_backup_op_project_pools = flatten([
+    for policy in concat(
+      [lookup(var.fallback_policy, "default_policy")],
+      values(lookup(var.fallback_policy, "folder_overrides")),
+      values(lookup(var.fallback_policy, "project_overrides")),
+      values(lookup(var.fallback_policy, "dataset_overrides")),
+      values(lookup(var.fallback_policy, "table_overrides"))
+    ) : [for p in split(",", lookup(policy, "backup_operation_project_pool", "")) : trimspace(p) if trimspace(p) != ""]
+  ])
+  # var.fallback_policy_gcs_uri is not read at plan time, projects used only there must be in var.additional_backup_operation_projects
+  all_backup_op_projects = [for e in distinct(concat(
+    var.additional_backup_operation_projects,
+    local.fallback_policy_backup_op_projects,
+    local.fallback_policy_backup_op_project_pools
+  )): e if e != null]
 
 }
 
@@ -182,6 +229,14 @@ module "cloud-run-dispatcher" {
       name = "OUTPUT_TOPIC",
       value = module.pubsub-configurator.topic-name,
     },
+    {
+      name = "CONFIGURATOR_BATCH_SIZE",
+      value = tostring(var.dispatcher_configurator_batch_size)
+    },
+    {
+      name = "LOG_SAMPLING_PERCENTAGE",
+      value = tostring(var.dispatcher_log_sampling_percentage)
+    },
   ]
   )
   common_labels = local.common_labels
@@ -216,6 +271,22 @@ module "cloud-run-configurator" {
     {
       name = "BACKUP_TAG_TEMPLATE_ID",
       value = module.data-catalog.tag_template_id
+    },
+    {
+      name = "CRON_JITTER_WINDOW_SECONDS",
+      value = tostring(var.configurator_cron_jitter_window_seconds)
+    },
+    {
+      name = "BACKUP_POLICY_GCS_URI",
+      value = var.fallback_policy_gcs_uri
+    },
+    {
+      name = "BACKUP_POLICY_REFRESH_SECONDS",
+      value = tostring(var.fallback_policy_refresh_seconds)
+    },
+    {
+      name = "TABLE_METADATA_CACHE_TTL_SECONDS",
+      value = tostring(var.configurator_table_metadata_cache_ttl_seconds)
     }
   ]
   )
@@ -240,6 +311,10 @@ module "cloud-run-snapshoter-bq" {
     {
       name = "OUTPUT_TOPIC",
       value = module.pubsub-tagger.topic-name,
+    },
+    {
+      name = "TAGGER_REQUEST_TRANSPORT",
+      value = var.tagger_request_transport
     }
   ]
   )
@@ -288,6 +363,10 @@ module "cloud-run-tagger" {
       name = "TAG_TEMPLATE_ID",
       value = module.data-catalog.tag_template_id,
     },
+    {
+      name = "TAGGER_WRITE_BEHIND_WINDOW_MS",
+      value = var.tagger_write_behind_window_ms,
+    },
   ]
   )
 
@@ -124,6 +124,16 @@ resource "google_data_catalog_tag_template" "snapshot_tag_template" {
     is_required = false
   }
 
+  fields {
+    field_id = "backup_operation_project_pool"
+    display_name = "Backup Operation Project Pool (comma separated)"
+    order = 11
+    type {
+      primitive_type = "STRING"
+    }
+    is_required = false
+  }
+
   fields {
     field_id = "bq_snapshot_storage_dataset"
     display_name = "BigQuery - Dataset where the snapshot is stored"
@@ -225,6 +235,23 @@ resource "google_data_catalog_tag_template" "snapshot_tag_template" {
     is_required = false
   }
 
+  fields {
+    field_id = "gcs_snapshot_engine"
+    display_name = "GCS - Snapshot engine"
+    order = 4
+    type {
+      enum_type {
+        allowed_values {
+          display_name = "EXTRACT_JOB"
+        }
+        allowed_values {
+          display_name = "STORAGE_READ_API"
+        }
+      }
+    }
+    is_required = false
+  }
+
   fields {
     field_id = "last_backup_at"
     display_name = "Read-Only - Timestamp of the latest backup taken"
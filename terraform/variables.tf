@@ -240,6 +240,102 @@ variable "configurator_service_timeout_seconds" {
   default = 300 # 5m
 }
 
+variable "configurator_cron_jitter_window_seconds" {
+  description = "When > 0, each table's backup cron is shifted by a stable per-table offset within this window to spread the backups of tables sharing the same cron. 0 disables it."
+  type = number
+  default = 0
+}
+
+variable "fallback_policy_gcs_uri" {
+  description = "Optional gs://bucket/path/fallback_policy.json object holding the fallback policy JSON. When set, the Configurator uses it instead of var.fallback_policy and new generations of the object are picked up without re-deploying. The Configurator service account needs read access to the object. Terraform doesn't read the object: var.fallback_policy is still used to find the backup operation projects, and projects used only in the object must be added to var.additional_backup_operation_projects."
+  type = string
+  default = ""
+}
+
+variable "fallback_policy_refresh_seconds" {
+  description = "How often the Configurator checks var.fallback_policy_gcs_uri for a new generation. 0 disables reloading."
+  type = number
+  default = 60
+}
+
+variable "configurator_table_metadata_cache_ttl_seconds" {
+  description = "How long the Configurator reuses the table creation times it lists once per dataset and run. 0 disables the prefetching and looks up each table individually."
+  type = number
+  default = 600
+}
+
+variable "dispatcher_configurator_batch_size" {
+  description = "When > 1, the Dispatcher sends the tables of each dataset to the Configurator in batches of up to this many tables per message instead of one message per table. The Configurator timeout and subscription ack deadline should allow processing a whole batch."
+  type = number
+  default = 0
+}
+
+variable "dispatcher_log_sampling_percentage" {
+  description = "Percentage [0, 100] of the per-entity INFO entries of the Dispatcher's scope listing (e.g. excluded tables) that are logged individually. All of them are counted in the RUN_SUMMARY_LOG entries. Entries are sampled by entity ID."
+  type = number
+  default = 100
+}
+
+variable "pubsub_message_encoding" {
+  description = "Encoding of the requests published between the services. 'json' or 'binary'. All services accept both, so switching is safe once every service runs a version that decodes binary messages."
+  type = string
+  default = "json"
+}
+
+variable "tagger_write_behind_window_ms" {
+  description = "When > 0, each Tagger instance coalesces the policy/state updates of the same table received within this window and writes them in parallel. Requests still wait for their update to be written before they are acknowledged. 0 disables the buffer."
+  type = number
+  default = 0
+}
+
+variable "tagger_request_transport" {
+  description = "How the GCS Snapshoter passes the Tagger request of an export job. 'persistent_map' stores it in the flags bucket. 'job_labels' lets the Tagger rebuild it from the job completion event, the job labels and the stored backup policy, and only stores the requests of tables without a manually attached policy. Deploy the Tagger before switching to 'job_labels'."
+  type = string
+  default = "persistent_map"
+}
+
+variable "log_appender_profile" {
+  description = "How the services write their log entries. 'sync' writes them on the request thread. 'async' queues them and writes them on a background thread. When the queue is almost full, DEBUG and INFO entries are discarded, except for the unified logs used by the BigQuery views. WARN and ERROR entries are never discarded."
+  type = string
+  default = "sync"
+}
+
+variable "log_async_queue_size" {
+  description = "Number of log entries that can be queued per service instance when log_appender_profile is 'async'. DEBUG and INFO entries are discarded when less than 20% of the queue is free."
+  type = number
+  default = 8192
+}
+
+variable "unified_log_format" {
+  description = "Format of the UNIFIED_LOG entries. 'full' logs the whole input/output JSON and stack trace of each request. 'compact' caps the JSON fields to unified_log_max_json_bytes (keeping the fields read by the BigQuery views), adds their content hash and size, and logs the full stack trace of an error only the first time its fingerprint is seen by a service instance."
+  type = string
+  default = "full"
+}
+
+variable "unified_log_max_json_bytes" {
+  description = "Max size of the unified_input_json, unified_output_json and unified_error fields when unified_log_format is 'compact'."
+  type = number
+  default = 8192
+}
+
+variable "actuator_exposed_endpoints" {
+  description = "Comma separated Spring Boot actuator endpoints exposed by the services. 'prometheus' exposes the pipeline metrics (external call timers, stage histograms, cache and dedup counters) on /actuator/prometheus for scraping."
+  type = string
+  default = "health,prometheus"
+}
+
+variable "service_call_instrumentation_enabled" {
+  description = "Wraps the services (BigQueryService, BackupPolicyService, PersistentSet, PersistentMap, PubSubService and ResourceScanner) in decorators that record the latency and outcome of each call in the bq_backup_manager_service_calls_seconds metric."
+  type = bool
+  default = true
+}
+
+variable "slow_call_threshold_ms" {
+  description = "Service calls slower than this are logged as warnings with the service, method and outcome. 0 disables the slow call logs. Only used if service_call_instrumentation_enabled is true."
+  type = number
+  default = 5000
+}
+
 variable "configurator_subscription_ack_deadline_seconds" {
   description = "This value is the maximum time after a subscriber receives a message before the subscriber should acknowledge the message. If it timeouts without ACK PubSub will retry the message."
   type = number
@@ -369,7 +465,7 @@ variable "fallback_policy" {
 variable "additional_backup_operation_projects" {
   type = list(string)
   default = []
-  description = "Projects were backup operations will run but not defined in the fallback policy (e.g. in Tag policies). Used to deploy required resources on these projects."
+  description = "Projects were backup operations will run but not defined in var.fallback_policy (e.g. in Tag policies or only in the var.fallback_policy_gcs_uri object). Used to deploy required resources on these projects."
 }
 
 #########################################################################################################